@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Run benchmarks in the current JVM, with warmup and measurement iterations, like JMH's average time mode.
+ * 
+ * <p>Besides the time per operation, the bytes allocated per operation are measured, 
+ * if the JVM supports thread allocation counting (HotSpot does).</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class BenchmarkRunner {
+    
+    private final static int BATCH_SIZE = 1000;  //operations between two clock checks
+    
+    private int warmupIterations = 5;
+    private int measureIterations = 5;
+    private long iterationTime = 1000L;  //milliseconds
+    
+    private final Map<String, Benchmark> benchmarks = new LinkedHashMap<String, Benchmark>();
+    
+    private Object sink;
+    private final AllocationCounter allocation = new AllocationCounter();
+    
+    public BenchmarkRunner add(String name, Benchmark benchmark){
+        benchmarks.put(name, benchmark);
+        return this;
+    }
+    
+    /**
+     * Run the benchmarks, whose name contains the filter.
+     * @param filter null for all benchmarks
+     * @param out where to print the results
+     * @return 
+     */
+    public List<Result> run(String filter, PrintStream out){
+        out.println(String.format("# JVM: %s %s, warmup: %d x %d ms, measurement: %d x %d ms", 
+                System.getProperty("java.vm.name"), System.getProperty("java.version"), 
+                warmupIterations, iterationTime, measureIterations, iterationTime));
+        out.println(String.format("%-40s %5s %12s %10s %12s", "Benchmark", "Cnt", "Score", "Error", "Units"));
+        List<Result> results = new ArrayList<Result>();
+        for(Entry<String, Benchmark> entry : benchmarks.entrySet()){
+            String name = entry.getKey();
+            if(filter != null && !name.contains(filter)){
+                continue;
+            }
+            Result result = run(name, entry.getValue());
+            results.add(result);
+            out.println(String.format("%-40s %5d %12.1f %10.1f %12s", name, measureIterations, result.getScore(), result.getError(), "ns/op"));
+            if(result.getAllocation() >= 0){
+                out.println(String.format("%-40s %5d %12.1f %10s %12s", name + ":alloc", measureIterations, result.getAllocation(), "", "B/op"));
+            }
+        }
+        return results;
+    }
+    
+    private Result run(String name, Benchmark benchmark){
+        for(int i=0; i<warmupIterations; i++){
+            iterate(benchmark);
+        }
+        double[] scores = new double[measureIterations];
+        double allocated = 0;
+        for(int i=0; i<measureIterations; i++){
+            long bytes = allocation.get();
+            long[] r = iterate(benchmark);
+            scores[i] = (double)r[1] / r[0];
+            if(bytes >= 0){
+                allocated += (double)(allocation.get() - bytes) / r[0];
+            }
+        }
+        double mean = 0;
+        for(double s : scores){
+            mean += s;
+        }
+        mean /= scores.length;
+        double variance = 0;
+        for(double s : scores){
+            variance += (s - mean) * (s - mean);
+        }
+        double error = scores.length > 1 ? Math.sqrt(variance / (scores.length - 1)) : 0;
+        double alloc = allocation.isSupported() ? allocated / measureIterations : -1;
+        return new Result(name, mean, error, alloc);
+    }
+    
+    /**
+     * @return the operations and the nanoseconds of an iteration
+     */
+    private long[] iterate(Benchmark benchmark){
+        long ops = 0;
+        long begin = System.nanoTime();
+        long deadline = begin + iterationTime * 1000000L;
+        long now = begin;
+        while(now < deadline){
+            for(int i=0; i<BATCH_SIZE; i++){
+                sink = benchmark.run();
+            }
+            ops += BATCH_SIZE;
+            now = System.nanoTime();
+        }
+        return new long[]{ops, now - begin};
+    }
+    
+    /**
+     * The last value returned by the benchmarks. It keeps the results reachable.
+     */
+    public Object getSink(){
+        return sink;
+    }
+
+    public BenchmarkRunner setWarmupIterations(int warmupIterations) {
+        this.warmupIterations = warmupIterations;
+        return this;
+    }
+
+    public BenchmarkRunner setMeasureIterations(int measureIterations) {
+        this.measureIterations = measureIterations;
+        return this;
+    }
+
+    /**
+     * @param iterationTime time of each iteration, in milliseconds
+     */
+    public BenchmarkRunner setIterationTime(long iterationTime) {
+        this.iterationTime = iterationTime;
+        return this;
+    }
+    
+    public static class Result {
+        
+        private final String name;
+        private final double score;
+        private final double error;
+        private final double allocation;
+        
+        Result(String name, double score, double error, double allocation){
+            this.name = name;
+            this.score = score;
+            this.error = error;
+            this.allocation = allocation;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return nanoseconds per operation
+         */
+        public double getScore() {
+            return score;
+        }
+
+        /**
+         * @return standard deviation of the score
+         */
+        public double getError() {
+            return error;
+        }
+
+        /**
+         * @return bytes allocated per operation, -1 if not supported
+         */
+        public double getAllocation() {
+            return allocation;
+        }
+        
+    }
+    
+    /**
+     * Read the allocated bytes of current thread, through the HotSpot extension of ThreadMXBean.
+     */
+    private static class AllocationCounter {
+        
+        private ThreadMXBean bean;
+        private Method method;
+        
+        AllocationCounter(){
+            bean = ManagementFactory.getThreadMXBean();
+            try{
+                Class<?> clazz = Class.forName("com.sun.management.ThreadMXBean");
+                method = clazz.getMethod("getThreadAllocatedBytes", long.class);
+                method.invoke(bean, Thread.currentThread().getId());
+            }catch(Exception ex){
+                method = null;
+            }
+        }
+        
+        boolean isSupported(){
+            return method != null;
+        }
+        
+        long get(){
+            if(method == null){
+                return -1;
+            }
+            try{
+                return (Long)method.invoke(bean, Thread.currentThread().getId());
+            }catch(Exception ex){
+                return -1;
+            }
+        }
+        
+    }
+    
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench;
+
+import com.bugull.mongo.BuguMapper;
+import com.bugull.mongo.bench.entity.ArrayEntity;
+import com.bugull.mongo.bench.entity.FlatEntity;
+import com.bugull.mongo.bench.entity.NestedEntity;
+import com.bugull.mongo.bench.entity.WideEntity;
+import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.exception.FieldException;
+import com.bugull.mongo.utils.IdUtil;
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import org.bson.BasicBSONEncoder;
+
+/**
+ * Benchmarks of the mapping layer, which don't need a database.
+ * 
+ * <p>Usage: bench/run.sh [filter], or java -cp bench-classes:classes:libs/* com.bugull.mongo.bench.MappingBenchmark [filter] <br/>
+ * Compare the output with bench/baseline/mapping.txt to find regressions.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MappingBenchmark {
+    
+    public static void main(String[] args){
+        String filter = args.length > 0 ? args[0] : null;
+        BenchmarkRunner runner = new BenchmarkRunner();
+        
+        addEntity(runner, "flat", FlatEntity.class, FlatEntity.sample());
+        addEntity(runner, "wide", WideEntity.class, WideEntity.sample());
+        addEntity(runner, "nested", NestedEntity.class, NestedEntity.sample());
+        addEntity(runner, "array", ArrayEntity.class, ArrayEntity.sample());
+        
+        runner.add("FieldsCache.getField", new Benchmark(){
+            @Override
+            public Object run(){
+                try{
+                    return FieldsCache.getInstance().getField(WideEntity.class, "f37");
+                }catch(FieldException ex){
+                    throw new IllegalStateException(ex);
+                }
+            }
+        });
+        
+        final String id = FlatEntity.sample().getId();
+        runner.add("IdUtil.toDbId", new Benchmark(){
+            @Override
+            public Object run(){
+                return IdUtil.toDbId(FlatEntity.class, id);
+            }
+        });
+        
+        runner.add("MapperUtil.getSort", new Benchmark(){
+            @Override
+            public Object run(){
+                return MapperUtil.getSort("{'score':-1, 'age':1, 'id':-1}");
+            }
+        });
+        
+        final FlatEntity flat = FlatEntity.sample();
+        runner.add("BuguMapper.toJsonString", new Benchmark(){
+            @Override
+            public Object run(){
+                return BuguMapper.toJsonString(flat);
+            }
+        });
+        
+        runner.run(filter, System.out);
+    }
+    
+    private static <T> void addEntity(BenchmarkRunner runner, String name, final Class<T> clazz, final T entity){
+        //decode the document read from BSON, as it's read from database
+        byte[] bson = new BasicBSONEncoder().encode(MapperUtil.toDBObject(entity));
+        final DBObject dbo = new DefaultDBDecoder().decode(bson, (DBCollection)null);
+        runner.add("toDBObject." + name, new Benchmark(){
+            @Override
+            public Object run(){
+                return MapperUtil.toDBObject(entity);
+            }
+        });
+        runner.add("fromDBObject." + name, new Benchmark(){
+            @Override
+            public Object run(){
+                return MapperUtil.fromDBObject(clazz, dbo);
+            }
+        });
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.entity;
+
+import com.bugull.mongo.SimpleEntity;
+import java.util.Random;
+
+/**
+ * A record like the YCSB user table: a sequence number, a counter and 10 string fields.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class AbstractRecord extends SimpleEntity {
+    
+    public final static int FIELD_COUNT = 10;
+    public final static int FIELD_LENGTH = 100;
+    
+    private final static char[] CHARS = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    
+    protected long seq;
+    protected int visits;
+    protected String field0;
+    protected String field1;
+    protected String field2;
+    protected String field3;
+    protected String field4;
+    protected String field5;
+    protected String field6;
+    protected String field7;
+    protected String field8;
+    protected String field9;
+    
+    /**
+     * Fill the record with random values.
+     * @param seq
+     * @param random 
+     */
+    public void fill(long seq, Random random){
+        this.seq = seq;
+        field0 = randomString(random);
+        field1 = randomString(random);
+        field2 = randomString(random);
+        field3 = randomString(random);
+        field4 = randomString(random);
+        field5 = randomString(random);
+        field6 = randomString(random);
+        field7 = randomString(random);
+        field8 = randomString(random);
+        field9 = randomString(random);
+    }
+    
+    public static String randomString(Random random){
+        char[] arr = new char[FIELD_LENGTH];
+        for(int i=0; i<arr.length; i++){
+            arr[i] = CHARS[random.nextInt(CHARS.length)];
+        }
+        return new String(arr);
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public int getVisits() {
+        return visits;
+    }
+
+}
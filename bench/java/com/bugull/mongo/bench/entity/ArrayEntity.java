@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.entity;
+
+import com.bugull.mongo.SimpleEntity;
+import com.bugull.mongo.annotations.Entity;
+
+/**
+ * An entity with primitive arrays.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Entity(name="bench_array")
+public class ArrayEntity extends SimpleEntity {
+    
+    private int[] counts;
+    private long[] times;
+    private double[] values;
+    private String[] tags;
+    
+    public static ArrayEntity sample(){
+        ArrayEntity e = new ArrayEntity();
+        e.id = "5f1d7a3e8c9b2a0012345678";
+        e.counts = new int[100];
+        e.times = new long[100];
+        e.values = new double[100];
+        e.tags = new String[20];
+        for(int i=0; i<100; i++){
+            e.counts[i] = i;
+            e.times[i] = 1500000000000L + i;
+            e.values[i] = i * 0.5;
+        }
+        for(int i=0; i<20; i++){
+            e.tags[i] = "tag" + i;
+        }
+        return e;
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.entity;
+
+import com.bugull.mongo.annotations.Entity;
+import com.bugull.mongo.annotations.EnsureIndex;
+import com.bugull.mongo.annotations.Ref;
+
+/**
+ * A record referencing a UserRecord, which is read and deleted in cascade.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Entity(name="bench_cascade")
+@EnsureIndex("{seq:1}")
+public class CascadeRecord extends AbstractRecord {
+    
+    @Ref(cascade="RD")
+    private UserRecord profile;
+
+    public UserRecord getProfile() {
+        return profile;
+    }
+
+    public void setProfile(UserRecord profile) {
+        this.profile = profile;
+    }
+
+}
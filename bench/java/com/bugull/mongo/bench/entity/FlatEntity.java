@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.entity;
+
+import com.bugull.mongo.SimpleEntity;
+import com.bugull.mongo.annotations.Entity;
+import java.util.Date;
+
+/**
+ * An entity with a few fields of common types.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Entity(name="bench_flat")
+public class FlatEntity extends SimpleEntity {
+    
+    private String name;
+    private int age;
+    private long score;
+    private double rate;
+    private boolean active;
+    private Date created;
+    private String email;
+    private float weight;
+    private short level;
+    private String grade;
+    
+    public static FlatEntity sample(){
+        FlatEntity e = new FlatEntity();
+        e.id = "5f1d7a3e8c9b2a0012345678";
+        e.name = "Frank";
+        e.age = 36;
+        e.score = 1234567890L;
+        e.rate = 0.75;
+        e.active = true;
+        e.created = new Date(1500000000000L);
+        e.email = "frank@example.com";
+        e.weight = 65.5f;
+        e.level = 3;
+        e.grade = "A";
+        return e;
+    }
+
+}
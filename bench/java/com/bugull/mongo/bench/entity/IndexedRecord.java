@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.entity;
+
+import com.bugull.mongo.annotations.Entity;
+import com.bugull.mongo.annotations.EnsureIndex;
+import com.bugull.mongo.lucene.annotations.IndexProperty;
+import com.bugull.mongo.lucene.annotations.Indexed;
+import java.util.Random;
+
+/**
+ * A record indexed by lucene, to measure the overhead of the lucene listener.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Entity(name="bench_indexed")
+@EnsureIndex("{seq:1}")
+@Indexed
+public class IndexedRecord extends AbstractRecord {
+    
+    @IndexProperty(analyze=true)
+    private String title;
+    
+    @IndexProperty
+    private String tag;
+    
+    @Override
+    public void fill(long seq, Random random){
+        super.fill(seq, random);
+        title = "record " + seq + " " + field0.substring(0, 20);
+        tag = "tag" + (seq % 100);
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.entity;
+
+import com.bugull.mongo.SimpleEntity;
+import com.bugull.mongo.annotations.Embed;
+import com.bugull.mongo.annotations.EmbedList;
+import com.bugull.mongo.annotations.Entity;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An entity with @Embed and @EmbedList fields.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Entity(name="bench_nested")
+public class NestedEntity extends SimpleEntity {
+    
+    private String name;
+    @Embed
+    private Address home;
+    @Embed
+    private Address office;
+    @EmbedList
+    private List<Address> history;
+    
+    public static NestedEntity sample(){
+        NestedEntity e = new NestedEntity();
+        e.id = "5f1d7a3e8c9b2a0012345678";
+        e.name = "Frank";
+        e.home = new Address("China", "Hangzhou", "Wensan Road", 310012);
+        e.office = new Address("China", "Hangzhou", "Xueyuan Road", 310013);
+        e.history = new ArrayList<Address>();
+        for(int i=0; i<10; i++){
+            e.history.add(new Address("China", "City" + i, "Street" + i, 310000 + i));
+        }
+        return e;
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.entity;
+
+import com.bugull.mongo.SimpleEntity;
+import com.bugull.mongo.annotations.Entity;
+
+/**
+ * An entity with 50 fields.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Entity(name="bench_wide")
+public class WideEntity extends SimpleEntity {
+    
+    private String f0;
+    private int f1;
+    private long f2;
+    private double f3;
+    private boolean f4;
+    private String f5;
+    private int f6;
+    private long f7;
+    private double f8;
+    private boolean f9;
+    private String f10;
+    private int f11;
+    private long f12;
+    private double f13;
+    private boolean f14;
+    private String f15;
+    private int f16;
+    private long f17;
+    private double f18;
+    private boolean f19;
+    private String f20;
+    private int f21;
+    private long f22;
+    private double f23;
+    private boolean f24;
+    private String f25;
+    private int f26;
+    private long f27;
+    private double f28;
+    private boolean f29;
+    private String f30;
+    private int f31;
+    private long f32;
+    private double f33;
+    private boolean f34;
+    private String f35;
+    private int f36;
+    private long f37;
+    private double f38;
+    private boolean f39;
+    private String f40;
+    private int f41;
+    private long f42;
+    private double f43;
+    private boolean f44;
+    private String f45;
+    private int f46;
+    private long f47;
+    private double f48;
+    private boolean f49;
+    
+    public static WideEntity sample(){
+        WideEntity e = new WideEntity();
+        e.id = "5f1d7a3e8c9b2a0012345678";
+        e.f0 = "value0";
+        e.f1 = 1;
+        e.f2 = 2L;
+        e.f3 = 3.5;
+        e.f4 = true;
+        e.f5 = "value5";
+        e.f6 = 6;
+        e.f7 = 7L;
+        e.f8 = 8.5;
+        e.f9 = false;
+        e.f10 = "value10";
+        e.f11 = 11;
+        e.f12 = 12L;
+        e.f13 = 13.5;
+        e.f14 = true;
+        e.f15 = "value15";
+        e.f16 = 16;
+        e.f17 = 17L;
+        e.f18 = 18.5;
+        e.f19 = false;
+        e.f20 = "value20";
+        e.f21 = 21;
+        e.f22 = 22L;
+        e.f23 = 23.5;
+        e.f24 = true;
+        e.f25 = "value25";
+        e.f26 = 26;
+        e.f27 = 27L;
+        e.f28 = 28.5;
+        e.f29 = false;
+        e.f30 = "value30";
+        e.f31 = 31;
+        e.f32 = 32L;
+        e.f33 = 33.5;
+        e.f34 = true;
+        e.f35 = "value35";
+        e.f36 = 36;
+        e.f37 = 37L;
+        e.f38 = 38.5;
+        e.f39 = false;
+        e.f40 = "value40";
+        e.f41 = 41;
+        e.f42 = 42L;
+        e.f43 = 43.5;
+        e.f44 = true;
+        e.f45 = "value45";
+        e.f46 = 46;
+        e.f47 = 47L;
+        e.f48 = 48.5;
+        e.f49 = false;
+        return e;
+    }
+
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.standin;
+
+import com.bugull.mongo.storage.MemoryDatabase;
+import com.bugull.mongo.utils.ThreadUtil;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.MongoException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.bson.BasicBSONEncoder;
+
+/**
+ * An in-process stand-in of mongod, which speaks the legacy wire protocol used by the Java driver 2.x. 
+ * 
+ * <p>It reports wire version 0, so the driver sends OP_INSERT, OP_UPDATE and OP_DELETE followed by getlasterror, 
+ * instead of write commands. The data is kept in a MemoryDatabase. 
+ * Aggregation, mapReduce, $where and authentication are not supported.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class WireServer {
+    
+    private final static Logger logger = Logger.getLogger(WireServer.class);
+    
+    private final static int OP_REPLY = 1;
+    private final static int OP_UPDATE = 2001;
+    private final static int OP_INSERT = 2002;
+    private final static int OP_QUERY = 2004;
+    private final static int OP_GET_MORE = 2005;
+    private final static int OP_DELETE = 2006;
+    private final static int OP_KILL_CURSORS = 2007;
+    
+    private final static int CURSOR_NOT_FOUND = 1;
+    private final static int QUERY_FAILURE = 2;
+    
+    private final static int MAX_BSON_SIZE = 16 * 1024 * 1024;
+    
+    private final MemoryDatabase database;
+    private final AtomicInteger requestId = new AtomicInteger();
+    private final AtomicLong cursorId = new AtomicLong();
+    private final ConcurrentMap<Long, List<DBObject>> cursors = new ConcurrentHashMap<Long, List<DBObject>>();
+    
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+    private volatile boolean running;
+    
+    public WireServer(MemoryDatabase database){
+        this.database = database;
+    }
+    
+    /**
+     * Start listening on the loopback address.
+     * @param port 0 for any free port
+     * @return the port listening on
+     * @throws IOException 
+     */
+    public int start(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+        executor = Executors.newCachedThreadPool(new ThreadFactory(){
+            @Override
+            public Thread newThread(Runnable r){
+                Thread t = new Thread(r, "bugu-wire-server");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        running = true;
+        executor.execute(new Runnable(){
+            @Override
+            public void run(){
+                while(running){
+                    try{
+                        Socket socket = serverSocket.accept();
+                        socket.setTcpNoDelay(true);
+                        executor.execute(new Connection(socket));
+                    }catch(IOException ex){
+                        if(running){
+                            logger.error("Can not accept connection", ex);
+                        }
+                    }
+                }
+            }
+        });
+        return serverSocket.getLocalPort();
+    }
+    
+    public void stop(){
+        running = false;
+        try{
+            serverSocket.close();
+        }catch(IOException ex){
+            logger.error("Can not close the server socket", ex);
+        }
+        ThreadUtil.safeClose(executor);
+        cursors.clear();
+    }
+    
+    public MemoryDatabase getDatabase(){
+        return database;
+    }
+    
+    private class Connection implements Runnable {
+        
+        private final Socket socket;
+        private DBObject lastError = ok();
+        
+        Connection(Socket socket){
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try{
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+                byte[] header = new byte[16];
+                while(running){
+                    try{
+                        in.readFully(header);
+                    }catch(IOException ex){
+                        break;  //closed by the driver
+                    }
+                    ByteBuffer hb = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+                    int length = hb.getInt();
+                    int id = hb.getInt();
+                    hb.getInt();
+                    int opCode = hb.getInt();
+                    byte[] body = new byte[length - 16];
+                    in.readFully(body);
+                    ByteBuffer bb = ByteBuffer.wrap(body).order(ByteOrder.LITTLE_ENDIAN);
+                    handle(opCode, id, bb, out);
+                    out.flush();
+                }
+            }catch(IOException ex){
+                logger.error("Connection failed", ex);
+            }finally{
+                try{
+                    socket.close();
+                }catch(IOException ex){
+                    //ignore
+                }
+            }
+        }
+        
+        private void handle(int opCode, int id, ByteBuffer bb, OutputStream out) throws IOException {
+            switch(opCode){
+                case OP_QUERY:
+                    handleQuery(id, bb, out);
+                    break;
+                case OP_GET_MORE:
+                    handleGetMore(id, bb, out);
+                    break;
+                case OP_INSERT:
+                    handleWrite(opCode, bb);
+                    break;
+                case OP_UPDATE:
+                    handleWrite(opCode, bb);
+                    break;
+                case OP_DELETE:
+                    handleWrite(opCode, bb);
+                    break;
+                case OP_KILL_CURSORS:
+                    bb.getInt();
+                    int n = bb.getInt();
+                    for(int i=0; i<n; i++){
+                        cursors.remove(bb.getLong());
+                    }
+                    break;
+                default:
+                    logger.error("Unsupported opCode: " + opCode);
+            }
+        }
+        
+        private void handleQuery(int id, ByteBuffer bb, OutputStream out) throws IOException {
+            bb.getInt();  //flags
+            String ns = readCString(bb);
+            int skip = bb.getInt();
+            int numberToReturn = bb.getInt();
+            DBObject query = readDocument(bb);
+            DBObject fields = bb.hasRemaining() ? readDocument(bb) : null;
+            try{
+                if(ns.endsWith(".$cmd")){
+                    String db = ns.substring(0, ns.length() - 5);
+                    reply(out, id, 0, 0, Collections.singletonList(command(db, query)));
+                    return;
+                }
+                List<DBObject> docs;
+                if(ns.endsWith(".system.namespaces")){
+                    docs = new ArrayList<DBObject>();
+                    for(String name : database.getNames(ns.substring(0, ns.indexOf('.') + 1))){
+                        docs.add(new BasicDBObject("name", name));
+                    }
+                }else if(ns.endsWith(".system.indexes")){
+                    docs = new ArrayList<DBObject>();
+                }else{
+                    DBObject condition = query;
+                    DBObject sort = null;
+                    if(query.containsField("$query") || query.containsField("query")){
+                        condition = (DBObject)(query.containsField("$query") ? query.get("$query") : query.get("query"));
+                        sort = (DBObject)(query.containsField("$orderby") ? query.get("$orderby") : query.get("orderby"));
+                    }
+                    docs = database.get(ns).find(condition, fields, sort, skip, 0);
+                }
+                sendBatch(out, id, docs, numberToReturn);
+            }catch(RuntimeException ex){
+                DBObject err = new BasicDBObject("$err", String.valueOf(ex.getMessage()));
+                err.put("code", 2);
+                reply(out, id, QUERY_FAILURE, 0, Collections.singletonList(err));
+            }
+        }
+        
+        private void sendBatch(OutputStream out, int id, List<DBObject> docs, int numberToReturn) throws IOException {
+            int n = Math.abs(numberToReturn);
+            boolean single = numberToReturn < 0 || numberToReturn == 1;
+            if(n == 0 || n >= docs.size()){
+                reply(out, id, 0, 0, docs);
+            }else if(single){
+                reply(out, id, 0, 0, docs.subList(0, n));
+            }else{
+                long cid = cursorId.incrementAndGet();
+                cursors.put(cid, new ArrayList<DBObject>(docs.subList(n, docs.size())));
+                reply(out, id, 0, cid, docs.subList(0, n));
+            }
+        }
+        
+        private void handleGetMore(int id, ByteBuffer bb, OutputStream out) throws IOException {
+            bb.getInt();
+            readCString(bb);
+            int n = bb.getInt();
+            long cid = bb.getLong();
+            List<DBObject> rest = cursors.remove(cid);
+            if(rest == null){
+                reply(out, id, CURSOR_NOT_FOUND, 0, new ArrayList<DBObject>());
+                return;
+            }
+            sendBatch(out, id, rest, n);
+        }
+        
+        private void handleWrite(int opCode, ByteBuffer bb){
+            try{
+                if(opCode == OP_INSERT){
+                    bb.getInt();
+                    String ns = readCString(bb);
+                    List<DBObject> list = new ArrayList<DBObject>();
+                    while(bb.hasRemaining()){
+                        list.add(readDocument(bb));
+                    }
+                    if(ns.endsWith(".system.indexes")){
+                        for(DBObject index : list){
+                            boolean unique = Boolean.TRUE.equals(index.get("unique"));
+                            database.get((String)index.get("ns")).createIndex((DBObject)index.get("key"), unique);
+                        }
+                    }else{
+                        database.get(ns).insert(list);
+                    }
+                    lastError = ok();
+                    lastError.put("n", 0);
+                }else if(opCode == OP_UPDATE){
+                    bb.getInt();
+                    String ns = readCString(bb);
+                    int flags = bb.getInt();
+                    DBObject selector = readDocument(bb);
+                    DBObject update = readDocument(bb);
+                    DBObject status = database.get(ns).update(selector, update, (flags & 1) != 0, (flags & 2) != 0);
+                    lastError = ok();
+                    lastError.putAll(status);
+                }else{
+                    bb.getInt();
+                    String ns = readCString(bb);
+                    int flags = bb.getInt();
+                    DBObject selector = readDocument(bb);
+                    int n = database.exists(ns) ? database.get(ns).remove(selector, (flags & 1) != 0) : 0;
+                    lastError = ok();
+                    lastError.put("n", n);
+                }
+            }catch(RuntimeException ex){
+                lastError = ok();
+                lastError.put("err", String.valueOf(ex.getMessage()));
+                lastError.put("code", ex instanceof MongoException ? ((MongoException)ex).getCode() : 2);
+                lastError.put("n", 0);
+            }
+        }
+        
+        private DBObject command(String db, DBObject cmd){
+            String name = cmd.keySet().iterator().next();
+            String lower = name.toLowerCase();
+            Object arg = cmd.get(name);
+            String ns = db + "." + arg;
+            DBObject result = ok();
+            if(lower.equals("ismaster")){
+                result.put("ismaster", true);
+                result.put("maxBsonObjectSize", MAX_BSON_SIZE);
+                result.put("maxMessageSizeBytes", MAX_BSON_SIZE * 3);
+                result.put("maxWriteBatchSize", 1000);
+                result.put("localTime", new Date());
+                result.put("minWireVersion", 0);
+                result.put("maxWireVersion", 0);
+            }else if(lower.equals("getlasterror")){
+                result = lastError;
+            }else if(lower.equals("ping") || lower.equals("create") || lower.equals("deleteindexes") || lower.equals("dropindexes")){
+                if(lower.equals("create")){
+                    database.get(ns);
+                }
+            }else if(lower.equals("buildinfo")){
+                result.put("version", "2.4.0");
+                BasicDBList version = new BasicDBList();
+                version.add(2);
+                version.add(4);
+                version.add(0);
+                version.add(0);
+                result.put("versionArray", version);
+            }else if(lower.equals("count")){
+                int skip = toInt(cmd.get("skip"));
+                int limit = Math.abs(toInt(cmd.get("limit")));
+                long n = database.exists(ns) ? database.get(ns).count((DBObject)cmd.get("query"), skip, limit) : 0;
+                result.put("n", (double)n);
+            }else if(lower.equals("distinct")){
+                List<?> values = database.exists(ns) ? database.get(ns).distinct((String)cmd.get("key"), (DBObject)cmd.get("query")) : new BasicDBList();
+                result.put("values", values);
+            }else if(lower.equals("drop")){
+                if(database.exists(ns)){
+                    database.drop(ns);
+                }else{
+                    result = error("ns not found");
+                }
+            }else if(lower.equals("findandmodify")){
+                DBObject value = database.get(ns).findAndModify((DBObject)cmd.get("query"), (DBObject)cmd.get("fields"), (DBObject)cmd.get("sort"), 
+                        Boolean.TRUE.equals(cmd.get("remove")), (DBObject)cmd.get("update"), Boolean.TRUE.equals(cmd.get("new")), Boolean.TRUE.equals(cmd.get("upsert")));
+                result.put("value", value);
+            }else{
+                result = error("no such cmd: " + name);
+            }
+            return result;
+        }
+        
+        private void reply(OutputStream out, int responseTo, int flags, long cid, List<DBObject> docs) throws IOException {
+            BasicBSONEncoder encoder = new BasicBSONEncoder();
+            List<byte[]> list = new ArrayList<byte[]>(docs.size());
+            int length = 36;
+            for(DBObject dbo : docs){
+                byte[] b = encoder.encode(dbo);
+                list.add(b);
+                length += b.length;
+            }
+            ByteBuffer bb = ByteBuffer.allocate(36).order(ByteOrder.LITTLE_ENDIAN);
+            bb.putInt(length);
+            bb.putInt(requestId.incrementAndGet());
+            bb.putInt(responseTo);
+            bb.putInt(OP_REPLY);
+            bb.putInt(flags);
+            bb.putLong(cid);
+            bb.putInt(0);
+            bb.putInt(docs.size());
+            out.write(bb.array());
+            for(byte[] b : list){
+                out.write(b);
+            }
+        }
+        
+    }
+    
+    private static DBObject ok(){
+        DBObject dbo = new BasicDBObject();
+        dbo.put("err", null);
+        dbo.put("ok", 1.0);
+        return dbo;
+    }
+    
+    private static DBObject error(String message){
+        DBObject dbo = new BasicDBObject();
+        dbo.put("errmsg", message);
+        dbo.put("ok", 0.0);
+        return dbo;
+    }
+    
+    private static int toInt(Object value){
+        return value instanceof Number ? ((Number)value).intValue() : 0;
+    }
+    
+    private static String readCString(ByteBuffer bb){
+        int begin = bb.position();
+        while(bb.get() != 0){
+            //find the end
+        }
+        int end = bb.position() - 1;
+        try{
+            return new String(bb.array(), begin, end - begin, "UTF-8");
+        }catch(IOException ex){
+            throw new IllegalStateException(ex);
+        }
+    }
+    
+    private static DBObject readDocument(ByteBuffer bb){
+        int length = bb.getInt(bb.position());
+        byte[] b = new byte[length];
+        bb.get(b);
+        return new DefaultDBDecoder().decode(b, (DBCollection)null);
+    }
+    
+}
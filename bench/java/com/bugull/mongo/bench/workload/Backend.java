@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.workload;
+
+/**
+ * Where the workload runs. A backend connects the default BuguConnection when started.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface Backend {
+    
+    public String getName();
+    
+    public void start() throws Exception;
+    
+    public void stop();
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.workload;
+
+import java.util.Random;
+
+/**
+ * Choose the keys of the records to operate on.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class KeyChooser {
+    
+    /**
+     * @param random
+     * @return a key between 0 (inclusive) and the count of records (exclusive)
+     */
+    public abstract int next(Random random);
+    
+    public static KeyChooser create(String distribution, int count){
+        if(distribution.equals("uniform")){
+            return new Uniform(count);
+        }else if(distribution.equals("zipfian")){
+            return new Zipfian(count);
+        }
+        throw new IllegalArgumentException("Unknown distribution: " + distribution);
+    }
+    
+    static class Uniform extends KeyChooser {
+        
+        private final int count;
+        
+        Uniform(int count){
+            this.count = count;
+        }
+
+        @Override
+        public int next(Random random) {
+            return random.nextInt(count);
+        }
+        
+    }
+    
+    /**
+     * The zipfian distribution of YCSB, with the hot keys scattered over the key space.
+     */
+    static class Zipfian extends KeyChooser {
+        
+        private final static double THETA = 0.99;
+        
+        private final int count;
+        private final double alpha;
+        private final double zetan;
+        private final double eta;
+        
+        Zipfian(int count){
+            this.count = count;
+            double zeta2 = zeta(2);
+            zetan = zeta(count);
+            alpha = 1.0 / (1.0 - THETA);
+            eta = (1 - Math.pow(2.0 / count, 1 - THETA)) / (1 - zeta2 / zetan);
+        }
+        
+        private double zeta(int n){
+            double sum = 0;
+            for(int i=0; i<n; i++){
+                sum += 1 / Math.pow(i + 1, THETA);
+            }
+            return sum;
+        }
+
+        @Override
+        public int next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            long rank;
+            if(uz < 1.0){
+                rank = 0;
+            }else if(uz < 1.0 + Math.pow(0.5, THETA)){
+                rank = 1;
+            }else{
+                rank = (long)(count * Math.pow(eta * u - eta + 1, alpha));
+            }
+            return (int)(scramble(rank) % count);
+        }
+        
+        /**
+         * FNV-1a hash, so the hot keys are not adjacent.
+         */
+        private long scramble(long value){
+            long hash = 0xCBF29CE484222325L;
+            for(int i=0; i<8; i++){
+                hash ^= (value & 0xFF);
+                hash *= 0x100000001B3L;
+                value >>= 8;
+            }
+            return hash & Long.MAX_VALUE;
+        }
+        
+    }
+
+}
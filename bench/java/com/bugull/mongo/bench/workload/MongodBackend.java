@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.workload;
+
+import com.bugull.mongo.BuguConnection;
+
+/**
+ * A real mongod, set by the system properties bench.host and bench.port. Default is 127.0.0.1:27017.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MongodBackend implements Backend {
+
+    @Override
+    public String getName() {
+        return "mongod";
+    }
+
+    @Override
+    public void start() throws Exception {
+        String host = System.getProperty("bench.host", "127.0.0.1");
+        int port = Integer.parseInt(System.getProperty("bench.port", "27017"));
+        BuguConnection.getInstance().connect(host, port, WorkloadDriver.DATABASE);
+    }
+
+    @Override
+    public void stop() {
+        BuguConnection.getInstance().close();
+    }
+
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.workload;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.bench.standin.WireServer;
+import com.bugull.mongo.storage.MemoryDatabase;
+
+/**
+ * The in-process stand-in of mongod. It measures the cost of the DAO layer and the driver, without the cost of a real server.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class StandInBackend implements Backend {
+    
+    private WireServer server;
+
+    @Override
+    public String getName() {
+        return "standin";
+    }
+
+    @Override
+    public void start() throws Exception {
+        server = new WireServer(new MemoryDatabase());
+        int port = server.start(0);
+        BuguConnection.getInstance().connect("127.0.0.1", port, WorkloadDriver.DATABASE);
+    }
+
+    @Override
+    public void stop() {
+        BuguConnection.getInstance().close();
+        server.stop();
+    }
+
+}
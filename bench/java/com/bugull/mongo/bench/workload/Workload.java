@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.workload;
+
+/**
+ * A mix of operations, by proportions like YCSB's core workloads.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public enum Workload {
+    
+    /**
+     * 95% read, 5% update, like YCSB workload B.
+     */
+    READ_HEAVY("read-heavy", 0.95, 0.05, 0, 0, 0),
+    
+    /**
+     * 20% read, 40% update, 30% insert, 10% remove.
+     */
+    WRITE_HEAVY("write-heavy", 0.2, 0.4, 0.3, 0, 0.1),
+    
+    /**
+     * 95% short scan, 5% insert, like YCSB workload E.
+     */
+    SCAN("scan", 0, 0, 0.05, 0.95, 0);
+    
+    private final String name;
+    private final double[] proportions;
+    
+    private Workload(String name, double read, double update, double insert, double scan, double remove){
+        this.name = name;
+        this.proportions = new double[]{read, update, insert, scan, remove};
+    }
+    
+    public String getName(){
+        return name;
+    }
+    
+    /**
+     * Choose an operation.
+     * @param p a random number between 0 and 1
+     * @return 
+     */
+    public Operation choose(double p){
+        Operation[] ops = Operation.values();
+        double sum = 0;
+        for(int i=0; i<ops.length; i++){
+            sum += proportions[i];
+            if(p < sum){
+                return ops[i];
+            }
+        }
+        return Operation.READ;
+    }
+    
+    public static Workload parse(String name){
+        for(Workload w : values()){
+            if(w.name.equals(name)){
+                return w;
+            }
+        }
+        throw new IllegalArgumentException("Unknown workload: " + name);
+    }
+    
+    public enum Operation {
+        READ, UPDATE, INSERT, SCAN, REMOVE
+    }
+
+}
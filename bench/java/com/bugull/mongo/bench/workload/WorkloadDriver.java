@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.bench.workload;
+
+import com.bugull.mongo.BuguDao;
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.bench.entity.AbstractRecord;
+import com.bugull.mongo.bench.entity.CascadeRecord;
+import com.bugull.mongo.bench.entity.IndexedRecord;
+import com.bugull.mongo.bench.entity.UserRecord;
+import com.bugull.mongo.bench.workload.Workload.Operation;
+import com.bugull.mongo.lucene.BuguIndex;
+import com.bugull.mongo.metrics.LatencyHistogram;
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Run a YCSB-like workload through BuguDao and BuguQuery, and report the throughput and latency percentiles per operation.
+ * 
+ * <p>Usage: java -cp bench-classes:classes:libs/* com.bugull.mongo.bench.workload.WorkloadDriver [options] <br/>
+ * -backend standin|mongod|memory (default standin) <br/>
+ * -workload read-heavy|write-heavy|scan (default read-heavy) <br/>
+ * -target plain|lucene|cascade (default plain) <br/>
+ * -distribution uniform|zipfian (default zipfian) <br/>
+ * -records 10000 -threads 4 -seconds 10</p>
+ * 
+ * <p>The "lucene" target indexes the records, and the "cascade" target reads and removes a referenced record in cascade.
+ * The records loaded are read and updated, while the records inserted in the run phase are the ones removed.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class WorkloadDriver<T extends AbstractRecord> {
+    
+    public final static String DATABASE = "bugu_bench";
+    
+    private final static int BATCH_SIZE = 1000;  //records per insert when loading
+    private final static int MAX_SCAN_LENGTH = 100;
+    
+    private final Class<T> clazz;
+    private BuguDao<T> dao;
+    private BuguDao<UserRecord> profileDao;
+    
+    private String[] ids;
+    private final AtomicLong seq = new AtomicLong();
+    private final ConcurrentLinkedQueue<String> inserted = new ConcurrentLinkedQueue<String>();
+    private final Map<Operation, LatencyHistogram> histograms = new EnumMap<Operation, LatencyHistogram>(Operation.class);
+    
+    public WorkloadDriver(Class<T> clazz){
+        this.clazz = clazz;
+        this.dao = new BuguDao<T>(clazz);
+        this.profileDao = clazz == CascadeRecord.class ? new BuguDao<UserRecord>(UserRecord.class) : null;
+        for(Operation op : Operation.values()){
+            histograms.put(op, new LatencyHistogram());
+        }
+    }
+    
+    /**
+     * Drop the collections, and insert the records.
+     * @param count 
+     */
+    public void load(int count){
+        dao.drop();
+        if(profileDao != null){
+            profileDao.drop();
+        }
+        //the dropped collections are forgotten, new DAOs create them with the indexes again
+        dao = new BuguDao<T>(clazz);
+        if(profileDao != null){
+            profileDao = new BuguDao<UserRecord>(UserRecord.class);
+        }
+        Random random = new Random(count);
+        ids = new String[count];
+        List<T> batch = new ArrayList<T>();
+        for(int i=0; i<count; i++){
+            batch.add(newRecord(random));
+            if(batch.size() == BATCH_SIZE || i == count - 1){
+                dao.insert(batch);
+                for(T t : batch){
+                    ids[(int)t.getSeq()] = t.getId();
+                }
+                batch.clear();
+            }
+        }
+    }
+    
+    /**
+     * Run the workload, and wait for it to finish.
+     * @param workload
+     * @param chooser
+     * @param threads
+     * @param seconds
+     * @return the elapsed time in nanoseconds
+     * @throws InterruptedException 
+     */
+    public long run(final Workload workload, final KeyChooser chooser, int threads, int seconds) throws InterruptedException {
+        for(LatencyHistogram h : histograms.values()){
+            h.reset();
+        }
+        final long deadline = System.nanoTime() + seconds * 1000000000L;
+        final CountDownLatch latch = new CountDownLatch(threads);
+        long begin = System.nanoTime();
+        for(int i=0; i<threads; i++){
+            final Random random = new Random(i);
+            Thread t = new Thread(new Runnable(){
+                @Override
+                public void run(){
+                    try{
+                        while(System.nanoTime() < deadline){
+                            Operation op = workload.choose(random.nextDouble());
+                            long start = System.nanoTime();
+                            Operation done = execute(op, chooser, random);
+                            histograms.get(done).record(System.nanoTime() - start);
+                        }
+                    }finally{
+                        latch.countDown();
+                    }
+                }
+            }, "bugu-workload-" + i);
+            t.start();
+        }
+        latch.await();
+        return System.nanoTime() - begin;
+    }
+    
+    /**
+     * @return the operation executed. A remove is executed as an insert, if there's nothing to remove.
+     */
+    private Operation execute(Operation op, KeyChooser chooser, Random random){
+        switch(op){
+            case READ:
+                T t = dao.findOne(ids[chooser.next(random)]);
+                if(t == null){
+                    throw new IllegalStateException("Record not found");
+                }
+                return op;
+            case UPDATE:
+                String field = clazz == IndexedRecord.class ? "title" : "field" + random.nextInt(AbstractRecord.FIELD_COUNT);
+                dao.update().set(ids[chooser.next(random)], field, AbstractRecord.randomString(random));
+                return op;
+            case SCAN:
+                int start = chooser.next(random);
+                int length = 1 + random.nextInt(MAX_SCAN_LENGTH);
+                dao.query().greaterThanEquals("seq", start).sort("{seq:1}").pageNumber(1).pageSize(length).results();
+                return op;
+            case REMOVE:
+                String id = inserted.poll();
+                if(id == null){
+                    //nothing to remove yet, so insert one
+                    return insert(random);
+                }
+                dao.remove(id);
+                return op;
+            default:
+                return insert(random);
+        }
+    }
+    
+    private Operation insert(Random random){
+        T record = newRecord(random);
+        dao.insert(record);
+        inserted.add(record.getId());
+        return Operation.INSERT;
+    }
+    
+    private T newRecord(Random random){
+        T t = null;
+        try{
+            t = clazz.getDeclaredConstructor().newInstance();
+        }catch(Exception ex){
+            throw new IllegalStateException(ex);
+        }
+        t.fill(seq.getAndIncrement(), random);
+        if(profileDao != null){
+            UserRecord profile = new UserRecord();
+            profile.fill(t.getSeq(), random);
+            profileDao.insert(profile);
+            ((CascadeRecord)t).setProfile(profile);
+        }
+        return t;
+    }
+    
+    public void report(String title, long elapsed, PrintStream out){
+        out.println("# " + title);
+        out.println(String.format("%-8s %10s %12s %10s %10s %10s %10s %10s", "Op", "Count", "Ops/s", "Mean(us)", "P50(us)", "P99(us)", "P99.9(us)", "Max(us)"));
+        long total = 0;
+        for(Operation op : Operation.values()){
+            LatencyHistogram h = histograms.get(op);
+            long count = h.getCount();
+            if(count == 0){
+                continue;
+            }
+            total += count;
+            out.println(String.format("%-8s %10d %12.1f %10.1f %10.1f %10.1f %10.1f %10.1f", op, count, count * 1e9 / elapsed, 
+                    h.getMean() / 1000.0, h.getPercentile(50) / 1000.0, h.getPercentile(99) / 1000.0, h.getPercentile(99.9) / 1000.0, h.getMax() / 1000.0));
+        }
+        out.println(String.format("%-8s %10d %12.1f", "TOTAL", total, total * 1e9 / elapsed));
+    }
+    
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<String, String>();
+        for(int i=0; i+1<args.length; i+=2){
+            options.put(args[i].replaceFirst("^-", ""), args[i+1]);
+        }
+        String backendName = getOption(options, "backend", "standin");
+        Workload workload = Workload.parse(getOption(options, "workload", "read-heavy"));
+        String target = getOption(options, "target", "plain");
+        String distribution = getOption(options, "distribution", "zipfian");
+        int records = Integer.parseInt(getOption(options, "records", "10000"));
+        int threads = Integer.parseInt(getOption(options, "threads", "4"));
+        int seconds = Integer.parseInt(getOption(options, "seconds", "10"));
+        
+        Backend backend = null;
+        if(backendName.equals("mongod")){
+            backend = new MongodBackend();
+        }else if(backendName.equals("memory")){
+            backend = new MemoryBackend();
+        }else{
+            backend = new StandInBackend();
+        }
+        backend.start();
+        File indexDir = null;
+        if(target.equals("lucene")){
+            indexDir = new File(System.getProperty("java.io.tmpdir"), "bugu-bench-index-" + System.nanoTime());
+            BuguIndex index = BuguIndex.getInstance();
+            index.setDirectoryPath(indexDir.getAbsolutePath());
+            index.setIndexReopenPeriod(1000L);
+            index.open();
+        }
+        try{
+            WorkloadDriver<? extends AbstractRecord> driver;
+            if(target.equals("lucene")){
+                driver = new WorkloadDriver<IndexedRecord>(IndexedRecord.class);
+            }else if(target.equals("cascade")){
+                driver = new WorkloadDriver<CascadeRecord>(CascadeRecord.class);
+            }else{
+                driver = new WorkloadDriver<UserRecord>(UserRecord.class);
+            }
+            driver.load(records);
+            //a short warmup, then the measurement
+            driver.run(workload, KeyChooser.create(distribution, records), threads, Math.max(1, seconds / 5));
+            long elapsed = driver.run(workload, KeyChooser.create(distribution, records), threads, seconds);
+            driver.report(String.format("backend=%s workload=%s target=%s distribution=%s records=%d threads=%d seconds=%d", 
+                    backend.getName(), workload.getName(), target, distribution, records, threads, seconds), elapsed, System.out);
+        }finally{
+            if(indexDir != null){
+                BuguIndex.getInstance().close();
+            }
+            backend.stop();
+        }
+    }
+    
+    private static String getOption(Map<String, String> options, String name, String defaultValue){
+        String value = options.get(name);
+        return value != null ? value : defaultValue;
+    }
+
+}
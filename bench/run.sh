@@ -0,0 +1,40 @@
+#!/bin/sh
+#
+# Compile the library and the benchmarks, then run a benchmark.
+#
+# Usage: bench/run.sh [main class] [arguments]
+# The main class is com.bugull.mongo.bench.MappingBenchmark by default, for example:
+#   bench/run.sh
+#   bench/run.sh toDBObject
+#   bench/run.sh com.bugull.mongo.bench.workload.WorkloadDriver -backend memory -seconds 10
+#
+# Set LIB_CLASSES to the compiled library (a directory or jar), to skip compiling src/java.
+# The classes are written to bench/target.
+
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+TARGET="$ROOT/bench/target"
+LIBS="$ROOT/libs/*"
+
+MAIN=com.bugull.mongo.bench.MappingBenchmark
+case "$1" in
+    com.bugull.*) MAIN=$1; shift ;;
+esac
+
+if [ -z "$LIB_CLASSES" ]; then
+    LIB_CLASSES="$TARGET/classes"
+    rm -rf "$LIB_CLASSES"
+    mkdir -p "$LIB_CLASSES"
+    # the servlets need the servlet API which is not in libs/, and ImageUploader needs the JPEG codec removed from newer JDKs.
+    # the benchmarks use neither of them.
+    find "$ROOT/src/java" -name "*.java" | xargs grep -L -e "import javax.servlet" -e "import com.sun.image.codec" > "$TARGET/sources.txt"
+    javac -nowarn -encoding UTF-8 -d "$LIB_CLASSES" -cp "$LIBS" @"$TARGET/sources.txt"
+fi
+
+rm -rf "$TARGET/bench-classes"
+mkdir -p "$TARGET/bench-classes"
+find "$ROOT/bench/java" -name "*.java" > "$TARGET/bench-sources.txt"
+javac -nowarn -encoding UTF-8 -d "$TARGET/bench-classes" -cp "$LIB_CLASSES:$LIBS" @"$TARGET/bench-sources.txt"
+
+exec java -cp "$TARGET/bench-classes:$LIB_CLASSES:$LIBS" $JAVA_OPTS "$MAIN" "$@"
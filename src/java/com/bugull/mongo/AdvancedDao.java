@@ -16,8 +16,16 @@
 
 package com.bugull.mongo;
 
+import com.bugull.mongo.BuguAggregation.Pipeline;
+import com.bugull.mongo.exception.AggregationException;
 import com.bugull.mongo.exception.MapReduceException;
+import com.bugull.mongo.interceptor.OperationType;
+import com.bugull.mongo.interceptor.Work;
+import com.bugull.mongo.misc.RollupBuffer;
+import com.bugull.mongo.storage.Storage;
+import com.bugull.mongo.utils.Aggregation;
 import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.Operator;
 import com.mongodb.BasicDBObject;
 import com.mongodb.CommandResult;
 import com.mongodb.DBCollection;
@@ -26,24 +34,68 @@ import com.mongodb.DBObject;
 import com.mongodb.MapReduceCommand;
 import com.mongodb.MapReduceCommand.OutputType;
 import com.mongodb.MapReduceOutput;
+import com.mongodb.MongoException;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
+import org.bson.types.ObjectId;
 
 /**
  * Aggregation and MapReduce.
  * 
+ * <p>The max, min, sum and average statistics are calculated by the aggregation framework. 
+ * They need mongoDB, so they are not supported when the entities are kept in memory.</p>
+ * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
 public class AdvancedDao<T> extends BuguDao<T>{
     
     private final static Logger logger = Logger.getLogger(AdvancedDao.class);
     
+    public final static String CHECKPOINT_COLLECTION = "bugu_mr_checkpoints";  //for incremental mapReduce
+    private final static String CHECKPOINT_VALUE = "value";
+    
+    private final static String TEMP_INFIX = "_mr_";  //for the temporary collections of mapReduceTemp
+    private final static long TEMP_MAX_AGE = 24L * 60L * 60L * 1000L;
+    private final static long TEMP_SWEEP_INTERVAL = 60L * 60L * 1000L;
+    
+    //full collection name --> time of the last sweep of temporary collections
+    private final static ConcurrentMap<String, AtomicLong> lastSweeps = new ConcurrentHashMap<String, AtomicLong>();
+    
+    //full name of output collection --> lock, so the jobs on the same output target run one by one
+    private final static ConcurrentMap<String, Object> outputLocks = new ConcurrentHashMap<String, Object>();
+    
     public AdvancedDao(Class<T> clazz){
         super(clazz);
     }
     
+    protected AdvancedDao(AdvancedDao<T> dao, Storage storage){
+        super(dao, storage);
+    }
+    
+    @Override
+    public AdvancedDao<T> partition(Date date){
+        return (AdvancedDao<T>)super.partition(date);
+    }
+    
+    @Override
+    public AdvancedDao<T> partition(String s){
+        return (AdvancedDao<T>)super.partition(s);
+    }
+    
+    @Override
+    protected AdvancedDao<T> createView(Storage storage){
+        return new AdvancedDao<T>(this, storage);
+    }
+    
     public double max(String key){
         return max(key, new BasicDBObject());
     }
@@ -53,24 +105,7 @@ public class AdvancedDao<T> extends BuguDao<T>{
     }
     
     private double max(String key, DBObject query){
-        if(!this.exists(query)){
-            return 0;
-        }
-        StringBuilder map = new StringBuilder("function(){emit('");
-        map.append(key);
-        map.append("', {'value':this.");
-        map.append(key);
-        map.append("});}");
-        String reduce = "function(key, values){var max=values[0].value; for(var i=1;i<values.length; i++){if(values[i].value>max){max=values[i].value;}} return {'value':max}}";
-        Iterable<DBObject> results = null;
-        try{
-            results = mapReduce(map.toString(), reduce, query);
-        }catch(MapReduceException ex){
-            logger.error(ex.getMessage(), ex);
-        }
-        DBObject result = results.iterator().next();
-        DBObject dbo = (DBObject)result.get("value");
-        return Double.parseDouble(dbo.get("value").toString());
+        return stats(key, query).getMax();
     }
     
     public double min(String key){
@@ -82,24 +117,7 @@ public class AdvancedDao<T> extends BuguDao<T>{
     }
     
     private double min(String key, DBObject query){
-        if(!this.exists(query)){
-            return 0;
-        }
-        StringBuilder map = new StringBuilder("function(){emit('");
-        map.append(key);
-        map.append("', {'value':this.");
-        map.append(key);
-        map.append("});}");
-        String reduce = "function(key, values){var min=values[0].value; for(var i=1;i<values.length; i++){if(values[i].value<min){min=values[i].value;}} return {'value':min}}";
-        Iterable<DBObject> results = null;
-        try{
-            results = mapReduce(map.toString(), reduce, query);
-        }catch(MapReduceException ex){
-            logger.error(ex.getMessage(), ex);
-        }
-        DBObject result = results.iterator().next();
-        DBObject dbo = (DBObject)result.get("value");
-        return Double.parseDouble(dbo.get("value").toString());
+        return stats(key, query).getMin();
     }
     
     public double sum(String key){
@@ -111,24 +129,7 @@ public class AdvancedDao<T> extends BuguDao<T>{
     }
     
     private double sum(String key, DBObject query){
-        if(!this.exists(query)){
-            return 0;
-        }
-        StringBuilder map = new StringBuilder("function(){emit('");
-        map.append(key);
-        map.append("', {'value':this.");
-        map.append(key);
-        map.append("});}");
-        String reduce = "function(key, values){var sum=0; for(var i=0;i<values.length; i++){sum+=values[i].value;} return {'value':sum}}";
-        Iterable<DBObject> results = null;
-        try{
-            results = mapReduce(map.toString(), reduce, query);
-        }catch(MapReduceException ex){
-            logger.error(ex.getMessage(), ex);
-        }
-        DBObject result = results.iterator().next();
-        DBObject dbo = (DBObject)result.get("value");
-        return Double.parseDouble(dbo.get("value").toString());
+        return stats(key, query).getSum();
     }
     
     public double average(String key){
@@ -140,16 +141,157 @@ public class AdvancedDao<T> extends BuguDao<T>{
     }
     
     private double average(String key, DBObject query){
-        long count = coll.count(query);
-        if(count == 0){
-            return 0;
+        return stats(key, query).getAverage();
+    }
+    
+    /**
+     * Get count, sum, min, max and average of a field, in one aggregation.
+     * @param key the numeric field
+     * @return 
+     */
+    public Statistics stats(String key){
+        return stats(key, new BasicDBObject());
+    }
+    
+    /**
+     * Get count, sum, min, max and average of a field, in one aggregation.
+     * @param key the numeric field
+     * @param query the matching condition
+     * @return 
+     */
+    public Statistics stats(String key, BuguQuery query){
+        return stats(key, query.getCondition());
+    }
+    
+    private Statistics stats(String key, DBObject query){
+        Map<String, Statistics> map = stats(new String[]{key}, query);
+        return map.get(key);
+    }
+    
+    /**
+     * Get the statistics of several fields, in one aggregation.
+     * @param keys the numeric fields
+     * @param query the matching condition
+     * @return map from field to its statistics
+     */
+    public Map<String, Statistics> stats(String[] keys, BuguQuery query){
+        return stats(keys, query.getCondition());
+    }
+    
+    private Map<String, Statistics> stats(String[] keys, DBObject query){
+        Map<Object, Map<String, Statistics>> groups = stats(keys, new String[0], query);
+        Map<String, Statistics> result = groups.get(null);
+        if(result == null){
+            //nothing matched
+            result = new HashMap<String, Statistics>();
+            for(String key : keys){
+                result.put(key, new Statistics());
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Get the statistics of a field for each group, in one aggregation.
+     * @param key the numeric field
+     * @param groupBy the field to group by
+     * @param query the matching condition
+     * @return map from group value to the statistics
+     */
+    public Map<Object, Statistics> stats(String key, String groupBy, BuguQuery query){
+        Map<Object, Map<String, Statistics>> groups = stats(new String[]{key}, new String[]{groupBy}, query.getCondition());
+        Map<Object, Statistics> result = new LinkedHashMap<Object, Statistics>();
+        for(Entry<Object, Map<String, Statistics>> entry : groups.entrySet()){
+            result.put(entry.getKey(), entry.getValue().get(key));
+        }
+        return result;
+    }
+    
+    /**
+     * Get the statistics of several fields for each group, in one aggregation.
+     * @param keys the numeric fields
+     * @param groupBy the fields to group by. When there are more than one, the group value is a DBObject.
+     * @param query the matching condition
+     * @return map from group value to the statistics of each field
+     */
+    public Map<Object, Map<String, Statistics>> stats(String[] keys, String[] groupBy, BuguQuery query){
+        return stats(keys, groupBy, query.getCondition());
+    }
+    
+    private Map<Object, Map<String, Statistics>> stats(String[] keys, String[] groupBy, DBObject query){
+        checkMongo("stats");
+        //the output field can't contain ".", so use the index as name
+        DBObject group = new BasicDBObject();
+        if(groupBy.length == 0){
+            group.put(Operator.ID, null);
+        }else if(groupBy.length == 1){
+            group.put(Operator.ID, "$" + groupBy[0]);
+        }else{
+            DBObject id = new BasicDBObject();
+            for(int i=0; i<groupBy.length; i++){
+                id.put("g" + i, "$" + groupBy[i]);
+            }
+            group.put(Operator.ID, id);
+        }
+        group.put("count", new BasicDBObject(Aggregation.SUM, 1));
+        for(int i=0; i<keys.length; i++){
+            String field = "$" + keys[i];
+            group.put("sum" + i, new BasicDBObject(Aggregation.SUM, field));
+            group.put("min" + i, new BasicDBObject(Aggregation.MIN, field));
+            group.put("max" + i, new BasicDBObject(Aggregation.MAX, field));
+        }
+        Iterable<DBObject> results = null;
+        try{
+            results = aggregate().addStage(Pipeline.match(query)).addStage(Pipeline.group(group)).results();
+        }catch(AggregationException ex){
+            logger.error(ex.getMessage(), ex);
         }
-        double sum = this.sum(key, query);
-        return sum / count;
+        Map<Object, Map<String, Statistics>> map = new LinkedHashMap<Object, Map<String, Statistics>>();
+        if(results == null){
+            return map;
+        }
+        for(DBObject dbo : results){
+            Object groupValue = dbo.get(Operator.ID);
+            if(groupBy.length > 1){
+                DBObject id = (DBObject)groupValue;
+                DBObject value = new BasicDBObject();
+                for(int i=0; i<groupBy.length; i++){
+                    value.put(groupBy[i], id.get("g" + i));
+                }
+                groupValue = value;
+            }
+            long count = toNumber(dbo.get("count")).longValue();
+            Map<String, Statistics> item = new HashMap<String, Statistics>();
+            for(int i=0; i<keys.length; i++){
+                double sum = toNumber(dbo.get("sum" + i)).doubleValue();
+                double min = toNumber(dbo.get("min" + i)).doubleValue();
+                double max = toNumber(dbo.get("max" + i)).doubleValue();
+                item.put(keys[i], new Statistics(count, sum, min, max));
+            }
+            map.put(groupValue, item);
+        }
+        return map;
+    }
+    
+    /**
+     * The statistics, mapReduce and aggregation run on mongoDB, they are not supported for the entities kept in memory.
+     */
+    private void checkMongo(String operation){
+        if(coll == null){
+            throw new UnsupportedOperationException(operation + "() is not supported when " + clazz.getName() + " is kept in memory");
+        }
+    }
+    
+    private Number toNumber(Object value){
+        if(value instanceof Number){
+            return (Number)value;
+        }
+        return 0;
     }
     
     public Iterable<DBObject> mapReduce(MapReduceCommand cmd) throws MapReduceException {
-        MapReduceOutput output = coll.mapReduce(cmd);
+        checkMongo("mapReduce");
+        MapReduceOutput output = runMapReduce(cmd);
         CommandResult cr = output.getCommandResult();
         if(! cr.ok()){
             throw new MapReduceException(cr.getErrorMessage());
@@ -158,7 +300,8 @@ public class AdvancedDao<T> extends BuguDao<T>{
     }
     
     public Iterable<DBObject> mapReduce(String map, String reduce) throws MapReduceException {
-        MapReduceOutput output = coll.mapReduce(map, reduce, null, OutputType.INLINE, null);
+        checkMongo("mapReduce");
+        MapReduceOutput output = runMapReduce(new MapReduceCommand(coll, map, reduce, null, OutputType.INLINE, null));
         CommandResult cr = output.getCommandResult();
         if(! cr.ok()){
             throw new MapReduceException(cr.getErrorMessage());
@@ -167,11 +310,12 @@ public class AdvancedDao<T> extends BuguDao<T>{
     }
     
     public Iterable<DBObject> mapReduce(String map, String reduce, BuguQuery query) throws MapReduceException {
+        checkMongo("mapReduce");
         return mapReduce(map, reduce, query.getCondition());
     }
     
     private Iterable<DBObject> mapReduce(String map, String reduce, DBObject query) throws MapReduceException {
-        MapReduceOutput output = coll.mapReduce(map, reduce, null, OutputType.INLINE, query);
+        MapReduceOutput output = runMapReduce(new MapReduceCommand(coll, map, reduce, null, OutputType.INLINE, query));
         CommandResult cr = output.getCommandResult();
         if(! cr.ok()){
             throw new MapReduceException(cr.getErrorMessage());
@@ -179,52 +323,245 @@ public class AdvancedDao<T> extends BuguDao<T>{
         return output.results();
     }
     
-    public Iterable<DBObject> mapReduce(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String orderBy, BuguQuery query) throws MapReduceException {
+    /**
+     * MapReduce to an output collection, and read the output by a cursor.
+     * <p>Different output targets can run concurrently. Jobs on the same output target run one by one.</p>
+     * <p>The cursor can be iterated only once, and must be closed if it's not iterated to the end.</p>
+     * @param map
+     * @param reduce
+     * @param outputTarget
+     * @param outputType
+     * @param orderBy
+     * @param query
+     * @return
+     * @throws MapReduceException 
+     */
+    public BuguCursor<DBObject> mapReduce(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String orderBy, BuguQuery query) throws MapReduceException {
+        checkMongo("mapReduce");
         return mapReduce(map, reduce, outputTarget, outputType, orderBy, query.getCondition());
     }
     
-    private synchronized Iterable<DBObject> mapReduce(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String orderBy, DBObject query) throws MapReduceException {
-        MapReduceOutput output = coll.mapReduce(map, reduce, outputTarget, outputType, query);
-        CommandResult cr = output.getCommandResult();
-        if(! cr.ok()){
-            throw new MapReduceException(cr.getErrorMessage());
+    private BuguCursor<DBObject> mapReduce(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String orderBy, DBObject query) throws MapReduceException {
+        DBCollection c = mapReduceToCollection(map, reduce, outputTarget, outputType, query);
+        DBCursor cursor = c.find();
+        if(orderBy != null){
+            cursor.sort(MapperUtil.getSort(orderBy));
         }
-        DBCollection c = output.getOutputCollection();
-        DBCursor cursor = null;
+        return new BuguCursor<DBObject>(cursor, DBObject.class);
+    }
+    
+    /**
+     * MapReduce to an output collection, and read one page of the output by a cursor.
+     * <p>Different output targets can run concurrently. Jobs on the same output target run one by one.</p>
+     * <p>The cursor can be iterated only once, and must be closed if it's not iterated to the end.</p>
+     * @param map
+     * @param reduce
+     * @param outputTarget
+     * @param outputType
+     * @param orderBy
+     * @param pageNum
+     * @param pageSize
+     * @param query
+     * @return
+     * @throws MapReduceException 
+     */
+    public BuguCursor<DBObject> mapReduce(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String orderBy, int pageNum, int pageSize, BuguQuery query) throws MapReduceException {
+        checkMongo("mapReduce");
+        return mapReduce(map, reduce, outputTarget, outputType, orderBy, pageNum, pageSize, query.getCondition());
+    }
+    
+    private BuguCursor<DBObject> mapReduce(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String orderBy, int pageNum, int pageSize, DBObject query) throws MapReduceException {
+        DBCollection c = mapReduceToCollection(map, reduce, outputTarget, outputType, query);
+        DBCursor cursor = c.find();
         if(orderBy != null){
-            cursor = c.find().sort(MapperUtil.getSort(orderBy));
-        }else{
-            cursor = c.find();
+            cursor.sort(MapperUtil.getSort(orderBy));
         }
-        List<DBObject> list = new ArrayList<DBObject>();
-        for(Iterator<DBObject> it = cursor.iterator(); it.hasNext(); ){
-            list.add(it.next());
+        cursor.skip((pageNum-1)*pageSize).limit(pageSize);
+        return new BuguCursor<DBObject>(cursor, DBObject.class);
+    }
+    
+    private MapReduceOutput runMapReduce(final MapReduceCommand cmd){
+        if(interceptors.isEmpty()){
+            return coll.mapReduce(cmd);
         }
-        return list;
+        DBObject condition = cmd.getQuery();
+        return interceptors.intercept(OperationType.MAP_REDUCE, clazz, condition, new Work<MapReduceOutput>(){
+            @Override
+            public MapReduceOutput run(){
+                return coll.mapReduce(cmd);
+            }
+        });
     }
     
-    public Iterable<DBObject> mapReduce(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String orderBy, int pageNum, int pageSize, BuguQuery query) throws MapReduceException {
-        return mapReduce(map, reduce, outputTarget, outputType, orderBy, pageNum, pageSize, query.getCondition());
+    private Object getOutputLock(String outputTarget){
+        String name = coll.getDB().getName() + "." + outputTarget;
+        Object lock = outputLocks.get(name);
+        if(lock == null){
+            Object newLock = new Object();
+            lock = outputLocks.putIfAbsent(name, newLock);
+            if(lock == null){
+                lock = newLock;
+            }
+        }
+        return lock;
     }
     
-    private synchronized Iterable<DBObject> mapReduce(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String orderBy, int pageNum, int pageSize, DBObject query) throws MapReduceException {
-        MapReduceOutput output = coll.mapReduce(map, reduce, outputTarget, outputType, query);
+    private DBCollection mapReduceToCollection(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, DBObject query) throws MapReduceException {
+        MapReduceOutput output;
+        synchronized(getOutputLock(outputTarget)){
+            output = runMapReduce(new MapReduceCommand(coll, map, reduce, outputTarget, outputType, query));
+        }
         CommandResult cr = output.getCommandResult();
         if(! cr.ok()){
             throw new MapReduceException(cr.getErrorMessage());
         }
-        DBCollection c = output.getOutputCollection();
-        DBCursor cursor = null;
+        return output.getOutputCollection();
+    }
+    
+    /**
+     * MapReduce to a temporary collection with an unique name, and read the output by a cursor.
+     * <p>The temporary collection is dropped when the cursor is closed, or iterated to the end. 
+     * The temporary collections abandoned without closing are dropped after one day, by dropTempCollections().</p>
+     * @param map
+     * @param reduce
+     * @param orderBy
+     * @param query
+     * @return
+     * @throws MapReduceException 
+     */
+    public BuguCursor<DBObject> mapReduceTemp(String map, String reduce, String orderBy, BuguQuery query) throws MapReduceException {
+        checkMongo("mapReduceTemp");
+        sweepTempCollections();
+        String outputTarget = coll.getName() + TEMP_INFIX + new ObjectId().toString();
+        //the name is unique, so no lock is needed
+        MapReduceOutput output = runMapReduce(new MapReduceCommand(coll, map, reduce, outputTarget, OutputType.REPLACE, query.getCondition()));
+        CommandResult cr = output.getCommandResult();
+        if(! cr.ok()){
+            throw new MapReduceException(cr.getErrorMessage());
+        }
+        final DBCollection c = output.getOutputCollection();
+        DBCursor cursor = c.find();
         if(orderBy != null){
-            cursor = c.find().sort(MapperUtil.getSort(orderBy)).skip((pageNum-1)*pageSize).limit(pageSize);
-        }else{
-            cursor = c.find().skip((pageNum-1)*pageSize).limit(pageSize);
+            cursor.sort(MapperUtil.getSort(orderBy));
+        }
+        return new BuguCursor<DBObject>(cursor, DBObject.class){
+            @Override
+            protected void onClose(){
+                c.drop();
+            }
+        };
+    }
+    
+    /**
+     * Sweep the abandoned temporary collections, at most once an hour for each collection.
+     */
+    private void sweepTempCollections(){
+        String name = coll.getFullName();
+        AtomicLong last = lastSweeps.get(name);
+        if(last == null){
+            AtomicLong newLast = new AtomicLong();
+            last = lastSweeps.putIfAbsent(name, newLast);
+            if(last == null){
+                last = newLast;
+            }
+        }
+        long now = System.currentTimeMillis();
+        long prev = last.get();
+        if(now - prev < TEMP_SWEEP_INTERVAL || !last.compareAndSet(prev, now)){
+            return;
+        }
+        try{
+            dropTempCollections(TEMP_MAX_AGE);
+        }catch(MongoException ex){
+            logger.error("Can not sweep the temporary mapReduce collections of " + name, ex);
         }
-        List<DBObject> list = new ArrayList<DBObject>();
-        for(Iterator<DBObject> it = cursor.iterator(); it.hasNext(); ){
-            list.add(it.next());
+    }
+    
+    /**
+     * Drop the temporary collections of mapReduceTemp() which are older than the max age. 
+     * They are left when the cursor is abandoned without closing. mapReduceTemp() calls it at most once an hour.
+     * @param maxAge time in milliseconds. The age of a collection is known from the ObjectId in its name.
+     * @return the number of dropped collections
+     */
+    public int dropTempCollections(long maxAge){
+        checkMongo("dropTempCollections");
+        String prefix = coll.getName() + TEMP_INFIX;
+        long deadline = System.currentTimeMillis() - maxAge;
+        int count = 0;
+        for(String name : coll.getDB().getCollectionNames()){
+            if(!name.startsWith(prefix)){
+                continue;
+            }
+            String id = name.substring(prefix.length());
+            if(ObjectId.isValid(id) && new ObjectId(id).getDate().getTime() < deadline){
+                try{
+                    coll.getDB().getCollection(name).drop();
+                    count++;
+                }catch(MongoException ex){
+                    logger.error("Can not drop the temporary mapReduce collection " + name, ex);
+                }
+            }
         }
-        return list;
+        return count;
+    }
+    
+    /**
+     * Incremental mapReduce, used for periodic re-runs. Only the documents that are new since last run are processed, 
+     * and the output is merged or reduced into the output collection.
+     * <p>The key must be increasing for new documents, such as an ObjectId or a timestamp. 
+     * The last processed value is saved in the checkpoint collection, for each output target. 
+     * Jobs on the same output target run one by one.</p>
+     * @param map
+     * @param reduce
+     * @param outputTarget
+     * @param outputType MERGE or REDUCE
+     * @param key the increasing field
+     * @param query
+     * @return the number of processed documents
+     * @throws MapReduceException 
+     */
+    public int mapReduceIncremental(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String key, BuguQuery query) throws MapReduceException {
+        checkMongo("mapReduceIncremental");
+        if(outputType != OutputType.MERGE && outputType != OutputType.REDUCE){
+            throw new MapReduceException("Incremental mapReduce only supports the MERGE and REDUCE output type!");
+        }
+        //the checkpoint is read and saved under the lock of the output target, so that no range is processed twice
+        synchronized(getOutputLock(outputTarget)){
+            DBObject condition = query.getCondition();
+            DBCollection checkpoints = coll.getDB().getCollection(CHECKPOINT_COLLECTION);
+            DBObject checkpointId = new BasicDBObject(Operator.ID, coll.getName() + ":" + outputTarget + ":" + key);
+            DBObject checkpoint = checkpoints.findOne(checkpointId);
+            //the upper bound is read first, so the documents inserted during the job are left to next run
+            DBCursor cursor = coll.find(condition, new BasicDBObject(key, 1)).sort(new BasicDBObject(key, -1)).limit(1);
+            Object upper = null;
+            if(cursor.hasNext()){
+                upper = MapperUtil.getValue(cursor.next(), key);
+            }
+            cursor.close();
+            if(upper == null){
+                return 0;
+            }
+            DBObject range = new BasicDBObject(Operator.LTE, upper);
+            if(checkpoint != null){
+                range.put(Operator.GT, checkpoint.get(CHECKPOINT_VALUE));
+            }
+            List<DBObject> and = new ArrayList<DBObject>();
+            and.add(condition);
+            and.add(new BasicDBObject(key, range));
+            MapReduceOutput output = runMapReduce(new MapReduceCommand(coll, map, reduce, outputTarget, outputType, new BasicDBObject(Operator.AND, and)));
+            CommandResult cr = output.getCommandResult();
+            if(! cr.ok()){
+                throw new MapReduceException(cr.getErrorMessage());
+            }
+            DBObject dbo = new BasicDBObject(checkpointId.toMap());
+            dbo.put(CHECKPOINT_VALUE, upper);
+            checkpoints.save(dbo);
+            return output.getInputCount();
+        }
+    }
+    
+    public int mapReduceIncremental(String map, String reduce, String outputTarget, MapReduceCommand.OutputType outputType, String key) throws MapReduceException {
+        return mapReduceIncremental(map, reduce, outputTarget, outputType, key, query());
     }
     
     /**
@@ -232,16 +569,25 @@ public class AdvancedDao<T> extends BuguDao<T>{
      * @return a new BuguQuery object
      */
     public BuguAggregation<T> aggregate(){
+        checkMongo("aggregate");
         return new BuguAggregation<T>(coll);
     }
     
     /**
-     * Check if any entity match the condition
-     * @param query the condition
-     * @return 
+     * Query a rollup collection declared by @Rollup.
+     * @param name the name of the rollup
+     * @return a new BuguRollup object, or null if the rollup is not declared
      */
-    private boolean exists(DBObject query){
-        return coll.findOne(query) != null;
+    public BuguRollup rollup(String name){
+        RollupBuffer buffer = null;
+        if(rollupListener != null){
+            buffer = rollupListener.getBuffer(name);
+        }
+        if(buffer == null){
+            logger.error("Can not find the rollup " + name + " in " + clazz.getName());
+            return null;
+        }
+        return new BuguRollup(buffer);
     }
     
 }
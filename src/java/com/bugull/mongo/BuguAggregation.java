@@ -17,15 +17,21 @@
 package com.bugull.mongo;
 
 import com.bugull.mongo.exception.AggregationException;
+import com.bugull.mongo.metrics.BuguMetrics;
+import com.bugull.mongo.interceptor.OperationType;
 import com.bugull.mongo.utils.Aggregation;
 import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.AggregationOptions;
 import com.mongodb.AggregationOutput;
 import com.mongodb.BasicDBObject;
 import com.mongodb.CommandResult;
+import com.mongodb.Cursor;
 import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
+import com.mongodb.MongoException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Convenient class for creating aggregating operation.
@@ -37,6 +43,11 @@ public class BuguAggregation<T> {
     private DBCollection coll;
     private List<DBObject> stages;
     
+    //options for cursor mode
+    private int batchSize;
+    private boolean allowDiskUse;
+    private long maxTime;  //in milliseconds
+    
     public BuguAggregation(DBCollection coll){
         this.coll = coll;
         stages = new ArrayList<DBObject>();
@@ -47,12 +58,52 @@ public class BuguAggregation<T> {
         return this;
     }
     
-    public Iterable<DBObject> results() throws AggregationException {
-        int size = stages.size();
-        if(size <= 0){
+    /**
+     * The number of documents returned in each batch, in cursor mode.
+     * @param batchSize
+     * @return 
+     */
+    public BuguAggregation<T> batchSize(int batchSize){
+        this.batchSize = batchSize;
+        return this;
+    }
+    
+    /**
+     * Allow the stages to write temporary data to disk, in cursor mode.
+     * @param allowDiskUse
+     * @return 
+     */
+    public BuguAggregation<T> allowDiskUse(boolean allowDiskUse){
+        this.allowDiskUse = allowDiskUse;
+        return this;
+    }
+    
+    /**
+     * The time limit of the aggregation, in cursor mode.
+     * @param maxTime time in milliseconds
+     * @return 
+     */
+    public BuguAggregation<T> maxTime(long maxTime){
+        this.maxTime = maxTime;
+        return this;
+    }
+    
+    private void checkStages() throws AggregationException {
+        if(stages.size() <= 0){
             throw new AggregationException("Empty stage in aggregation pipeline!");
         }
+    }
+    
+    /**
+     * Get the result inline. It's limited by the max size of a document.
+     * @return
+     * @throws AggregationException 
+     */
+    public Iterable<DBObject> results() throws AggregationException {
+        checkStages();
+        long start = System.nanoTime();
         AggregationOutput output = coll.aggregate(stages);
+        BuguMetrics.record(coll.getName(), OperationType.AGGREGATE, start, 0);
         CommandResult cr = output.getCommandResult();
         if(! cr.ok()){
             throw new AggregationException(cr.getErrorMessage());
@@ -60,6 +111,45 @@ public class BuguAggregation<T> {
         return output.results();
     }
     
+    /**
+     * Get the result by a cursor, so the result is not limited in size, and is not buffered in memory.
+     * @return
+     * @throws AggregationException 
+     */
+    public BuguCursor<DBObject> cursor() throws AggregationException {
+        return cursor(DBObject.class);
+    }
+    
+    /**
+     * Get the result by a cursor, and convert each document to the class, such as an entity or a DTO.
+     * @param <E>
+     * @param clazz
+     * @return
+     * @throws AggregationException 
+     */
+    public <E> BuguCursor<E> cursor(Class<E> clazz) throws AggregationException {
+        checkStages();
+        AggregationOptions.Builder builder = AggregationOptions.builder().outputMode(AggregationOptions.OutputMode.CURSOR);
+        if(batchSize > 0){
+            builder.batchSize(batchSize);
+        }
+        if(allowDiskUse){
+            builder.allowDiskUse(Boolean.TRUE);
+        }
+        if(maxTime > 0){
+            builder.maxTime(maxTime, TimeUnit.MILLISECONDS);
+        }
+        Cursor cursor = null;
+        long start = System.nanoTime();
+        try{
+            cursor = coll.aggregate(stages, builder.build());
+        }catch(MongoException ex){
+            throw new AggregationException(ex.getMessage());
+        }
+        BuguMetrics.record(coll.getName(), OperationType.AGGREGATE, start, 0);
+        return new BuguCursor<E>(cursor, clazz);
+    }
+    
     public static class Pipeline {
         
         public static DBObject project(DBObject dbo){
@@ -16,7 +16,18 @@
 
 package com.bugull.mongo;
 
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.Entity;
+import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.cache.IdSequenceCache;
+import com.bugull.mongo.cache.StorageCache;
+import com.bugull.mongo.fs.BuguFSFactory;
 import com.bugull.mongo.exception.DBConnectionException;
+import com.bugull.mongo.metrics.BuguMetrics;
+import com.bugull.mongo.misc.DeleteCascadeEngine;
+import com.bugull.mongo.misc.PartitionCursor;
+import com.bugull.mongo.misc.RollupManager;
+import com.bugull.mongo.storage.MemoryDatabase;
 import com.bugull.mongo.utils.ThreadUtil;
 import com.mongodb.DB;
 import com.mongodb.MongoClient;
@@ -25,14 +36,19 @@ import com.mongodb.ReadPreference;
 import com.mongodb.ServerAddress;
 import java.net.UnknownHostException;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 
 /**
  * The connection to MongoDB.
  * 
- * <p>Singleton Pattern is used here. An application should use only one BuguConnection.</p>
+ * <p>Singleton Pattern is used here. An application uses one default BuguConnection. 
+ * Some entities can be moved to other databases or deployments, by named connections and @Entity(connection=...).</p>
  * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
@@ -50,17 +66,77 @@ public class BuguConnection {
     private String password;
     private MongoClient mc;
     private DB db;
+    private volatile MemoryDatabase memory;
     
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
+    private volatile boolean closed;
+    
+    private volatile ExecutorService executor = newExecutor();
+    
+    private final static ConcurrentMap<String, BuguConnection> connections = new ConcurrentHashMap<String, BuguConnection>();
+    private final static ConcurrentMap<String, String> routes = new ConcurrentHashMap<String, String>();
     
     private static class Holder {
         final static BuguConnection instance = new BuguConnection();
     } 
     
+    /**
+     * Get the default connection.
+     * @return 
+     */
     public static BuguConnection getInstance(){
         return Holder.instance;
     }
     
+    /**
+     * Get a named connection. It should be connected before the entities using it are accessed.
+     * @param name the connection name, empty for the default connection
+     * @return 
+     */
+    public static BuguConnection getInstance(String name){
+        if(name == null || name.equals(Default.NAME)){
+            return getInstance();
+        }
+        BuguConnection conn = connections.get(name);
+        if(conn != null){
+            return conn;
+        }
+        
+        conn = new BuguConnection();
+        BuguConnection temp = connections.putIfAbsent(name, conn);
+        if(temp != null){
+            return temp;
+        }else{
+            return conn;
+        }
+    }
+    
+    /**
+     * Get the connection of an entity class. 
+     * The route set by route() is used first, then the @Entity(connection=...), otherwise the default connection.
+     * @param clazz
+     * @return 
+     */
+    public static BuguConnection getInstance(Class<?> clazz){
+        String name = routes.get(clazz.getName());
+        if(name == null){
+            Entity entity = clazz.getAnnotation(Entity.class);
+            if(entity != null){
+                name = entity.connection();
+            }
+        }
+        return getInstance(name);
+    }
+    
+    /**
+     * Route an entity class to a named connection, instead of its @Entity(connection=...). 
+     * It must be called before the entity is accessed.
+     * @param clazz
+     * @param name the connection name
+     */
+    public static void route(Class<?> clazz, String name){
+        routes.put(clazz.getName(), name);
+    }
+    
     public void connect(String host, int port, String database){
         this.host = host;
         this.port = port;
@@ -86,6 +162,12 @@ public class BuguConnection {
     }
     
     public void connect(){
+        if(memory != null){
+            //the storages kept in memory are not used any more
+            memory = null;
+            StorageCache.getInstance().clear();
+        }
+        reopen();
         try {
             doConnect();
         } catch (UnknownHostException ex) {
@@ -102,11 +184,58 @@ public class BuguConnection {
         }
     }
     
+    /**
+     * Keep the entities of this connection in memory, instead of connecting to mongoDB. 
+     * <p>It's used by test suites, and by small read-mostly collections, which can be served from memory entirely. 
+     * It must be called before the entities using it are accessed. 
+     * The DAO, query and updater operations are supported, while aggregation, mapReduce, GridFS, rollups and partition maintaining need mongoDB.</p>
+     */
+    public void connectInMemory(){
+        reopen();
+        memory = new MemoryDatabase();
+        StorageCache.getInstance().clear();
+    }
+    
+    private synchronized void reopen(){
+        if(closed){
+            executor = newExecutor();
+            closed = false;
+        }
+    }
+    
+    private static ExecutorService newExecutor(){
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+    }
+    
+    /**
+     * Close the connection. Closing the default connection also stops the background tasks, and closes all named connections. 
+     * <p>The routes to a closed named connection are kept, so its entities fail with DBConnectionException until it's connected again, 
+     * instead of going to another database. The cached collections, DAOs, id sequences and BuguFS objects are forgotten.</p>
+     */
     public void close(){
-        ThreadUtil.safeClose(executor);
+        if(this == getInstance()){
+            DeleteCascadeEngine.getInstance().close();
+            RollupManager.getInstance().close();
+            BuguMetrics.getInstance().close();
+            PartitionCursor.closeExecutor();
+            for(BuguConnection conn : connections.values()){
+                conn.close();
+            }
+        }
+        synchronized(this){
+            closed = true;
+            ThreadUtil.safeClose(executor);
+        }
         if(mc != null){
             mc.close();
         }
+        mc = null;
+        db = null;
+        memory = null;
+        StorageCache.getInstance().clear();
+        DaoCache.getInstance().clear();
+        IdSequenceCache.getInstance().clear();
+        BuguFSFactory.getInstance().clear();
     }
 
     private void doConnect() throws UnknownHostException, DBConnectionException {
@@ -186,6 +315,9 @@ public class BuguConnection {
     }
 
     public DB getDB() throws DBConnectionException {
+        if(closed){
+            throw new DBConnectionException("Can not get database instance! The connection is closed.");
+        }
         if(db == null){
             throw new DBConnectionException("Can not get database instance! Please ensure connected to mongoDB correctly.");
         }else{
@@ -193,6 +325,14 @@ public class BuguConnection {
         }
     }
     
+    /**
+     * Get the database kept in memory.
+     * @return null if the connection is not kept in memory
+     */
+    public MemoryDatabase getMemoryDatabase(){
+        return memory;
+    }
+    
     public ExecutorService getExecutor(){
         return executor;
     }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.Cursor;
+import com.mongodb.DBObject;
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Iterate the documents of a server-side cursor one by one, without buffering the whole result.
+ * 
+ * <p>Each document is converted to the given class by the mapping annotations, 
+ * or returned as is when the class is DBObject. The cursor is closed automatically when exhausted.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class BuguCursor<T> implements Iterator<T>, Iterable<T>, Closeable {
+    
+    private Cursor cursor;
+    private Class<T> clazz;
+    private boolean closed;
+    
+    public BuguCursor(Cursor cursor, Class<T> clazz){
+        this.cursor = cursor;
+        this.clazz = clazz;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(closed){
+            return false;
+        }
+        boolean result = cursor.hasNext();
+        if(!result){
+            close();
+        }
+        return result;
+    }
+
+    @Override
+    public T next() {
+        DBObject dbo = cursor.next();
+        if(clazz == null || DBObject.class.isAssignableFrom(clazz)){
+            return (T)dbo;
+        }
+        return MapperUtil.fromDBObject(clazz, dbo);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Can not remove from a cursor");
+    }
+    
+    /**
+     * The cursor can be iterated only once.
+     * @return 
+     */
+    @Override
+    public Iterator<T> iterator() {
+        return this;
+    }
+
+    @Override
+    public void close() {
+        if(!closed){
+            closed = true;
+            cursor.close();
+            onClose();
+        }
+    }
+    
+    /**
+     * Called once after the cursor is closed. Override it to release the relative resource.
+     */
+    protected void onClose(){
+        
+    }
+    
+}
@@ -16,34 +16,39 @@
 
 package com.bugull.mongo;
 
-import com.bugull.mongo.annotations.Default;
-import com.bugull.mongo.annotations.EnsureIndex;
 import com.bugull.mongo.annotations.Entity;
 import com.bugull.mongo.annotations.Id;
 import com.bugull.mongo.annotations.IdType;
 import com.bugull.mongo.annotations.SplitType;
 import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.cache.IdSequenceCache;
+import com.bugull.mongo.cache.StorageCache;
 import com.bugull.mongo.exception.DBConnectionException;
 import com.bugull.mongo.exception.IdException;
+import com.bugull.mongo.interceptor.Interceptor;
+import com.bugull.mongo.interceptor.InterceptorChain;
+import com.bugull.mongo.interceptor.OperationType;
+import com.bugull.mongo.interceptor.Work;
 import com.bugull.mongo.lucene.backend.EntityChangedListener;
 import com.bugull.mongo.lucene.backend.IndexChecker;
 import com.bugull.mongo.misc.CascadeChecker;
-import com.bugull.mongo.misc.DBIndex;
 import com.bugull.mongo.misc.EntityRemovedListener;
+import com.bugull.mongo.misc.RollupListener;
+import com.bugull.mongo.storage.Storage;
+import com.bugull.mongo.storage.StorageCursor;
 import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.utils.Operator;
+import com.bugull.mongo.utils.PartitionUtil;
 import com.bugull.mongo.utils.ReferenceUtil;
 import com.bugull.mongo.utils.StringUtil;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DB;
 import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
 import java.lang.reflect.Field;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -58,23 +63,34 @@ public class BuguDao<T> {
     
     private final static Logger logger = Logger.getLogger(BuguDao.class);
     
-    protected DBCollection coll;
+    private final static int BATCH_SIZE = 1000;  //entities per batch, when removing many entities
+    
+    protected DBCollection coll;  //null if the entities are kept in memory
+    protected Storage storage;
     protected Class<T> clazz;
     protected DBObject keys;  //non-lazy fields
     protected WriteConcern concern;
     protected EntityChangedListener luceneListener;
     protected EntityRemovedListener cascadeListener;
+    protected RollupListener rollupListener;
+    protected InterceptorChain interceptors = new InterceptorChain();
     
     public BuguDao(Class<T> clazz){
         this.clazz = clazz;
-        DB db = null;
-        try {
-            db = BuguConnection.getInstance().getDB();
-        } catch (DBConnectionException ex) {
-            logger.error(ex.getMessage(), ex);
+        BuguConnection conn = BuguConnection.getInstance(clazz);
+        boolean memory = conn.getMemoryDatabase() != null;
+        if(memory){
+            concern = WriteConcern.ACKNOWLEDGED;
+        }else{
+            DB db = null;
+            try {
+                db = conn.getDB();
+            } catch (DBConnectionException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
+            //The default write concern is ACKNOWLEDGED, set in MongoClientOptions.
+            concern = db.getWriteConcern();
         }
-        //The default write concern is ACKNOWLEDGED, set in MongoClientOptions.
-        concern = db.getWriteConcern();
         //init none-split collection
         Entity entity = clazz.getAnnotation(Entity.class);
         SplitType split = entity.split();
@@ -92,80 +108,96 @@ public class BuguDao<T> {
         if(CascadeChecker.needListener(clazz)){
             cascadeListener = new EntityRemovedListener(clazz);
         }
+        //for @Rollup, the rollups are stored in mongoDB only
+        if(RollupListener.needListener(clazz)){
+            if(memory){
+                logger.warn("The rollups of " + clazz.getName() + " are not maintained, because it's kept in memory");
+            }else{
+                rollupListener = new RollupListener(clazz);
+            }
+        }
+    }
+    
+    /**
+     * Create a view bound to a partition, sharing the settings and listeners of the dao.
+     * @param dao
+     * @param storage the storage of the partition
+     */
+    protected BuguDao(BuguDao<T> dao, Storage storage){
+        this.clazz = dao.clazz;
+        this.storage = storage;
+        this.coll = storage.getCollection();
+        this.keys = dao.keys;
+        this.concern = dao.concern;
+        this.luceneListener = dao.luceneListener;
+        this.cascadeListener = dao.cascadeListener;
+        this.rollupListener = dao.rollupListener;
+        this.interceptors = dao.interceptors;
     }
     
     private void initCollection(String name){
-        DB db = null;
-        try {
-            db = BuguConnection.getInstance().getDB();
-        } catch (DBConnectionException ex) {
-            logger.error(ex.getMessage(), ex);
-        }
-        Entity entity = clazz.getAnnotation(Entity.class);
-        //if capped
-        if(entity.capped() && !db.collectionExists(name)){
-            DBObject options = new BasicDBObject("capped", true);
-            long capSize = entity.capSize();
-            if(capSize != Default.CAP_SIZE){
-                options.put("size", capSize);
-            }
-            long capMax = entity.capMax();
-            if(capMax != Default.CAP_MAX){
-                options.put("max", capMax);
-            }
-            coll = db.createCollection(name, options);
-        }else{
-            coll = db.getCollection(name);
-        }
-        //for @EnsureIndex
-        EnsureIndex ei = clazz.getAnnotation(EnsureIndex.class);
-        if(ei != null){
-            List<DBIndex> list = MapperUtil.getDBIndex(ei.value());
-            for(DBIndex dbi : list){
-                coll.createIndex(dbi.getKeys(), dbi.getOptions());
-            }
-        }
+        storage = StorageCache.getInstance().get(clazz, name);
+        coll = storage.getCollection();
     }
     
     /**
      * If collection is splitted by date, you have to set the date to check which collection is in use.
+     * <p>It changes the collection of this dao, so it's not safe when threads use different dates. Use partition(date) instead.</p>
      * @param date 
      */
     public void setSplitSuffix(Date date){
         Entity entity = clazz.getAnnotation(Entity.class);
-        SplitType split = entity.split();
-        SimpleDateFormat sdf = null;
-        switch(split){
-            case DAILY:
-                sdf = new SimpleDateFormat("yyyy-MM-dd");
-                break;
-            case MONTHLY:
-                sdf = new SimpleDateFormat("yyyy-MM");
-                break;
-            case YEARLY:
-                sdf = new SimpleDateFormat("yyyy");
-                break;
-            default:
-                break;
-        }
-        if(sdf != null){
-            String ext = sdf.format(date);
-            String name = MapperUtil.getEntityName(clazz);
-            initCollection(name + "-" + ext);
+        String suffix = PartitionUtil.getSuffix(entity.split(), date);
+        if(suffix != null){
+            initCollection(PartitionUtil.getName(clazz, suffix));
         }
     }
     
     /**
      * If collection is splitted by string, you have to set the string value to check which collection is in use.
+     * <p>It changes the collection of this dao, so it's not safe when threads use different strings. Use partition(s) instead.</p>
      * @param s 
      */
     public void setSplitSuffix(String s){
         Entity entity = clazz.getAnnotation(Entity.class);
         SplitType split = entity.split();
         if(split == SplitType.STRING){
-            String name = MapperUtil.getEntityName(clazz);
-            initCollection(name + "-" + s);
+            initCollection(PartitionUtil.getName(clazz, s));
+        }
+    }
+    
+    /**
+     * Get a view of the partition of a date, for the collection splitted by date.
+     * <p>The view is bound to a cached storage, and this dao is not changed, so threads can use different partitions safely.</p>
+     * @param date
+     * @return null if the collection is not splitted by date
+     */
+    public BuguDao<T> partition(Date date){
+        Entity entity = clazz.getAnnotation(Entity.class);
+        String suffix = PartitionUtil.getSuffix(entity.split(), date);
+        if(suffix == null){
+            logger.error(clazz.getName() + " is not splitted by date");
+            return null;
+        }
+        return createView(StorageCache.getInstance().get(clazz, PartitionUtil.getName(clazz, suffix)));
+    }
+    
+    /**
+     * Get a view of the partition of a string, for the collection splitted by string.
+     * @param s
+     * @return null if the collection is not splitted by string
+     */
+    public BuguDao<T> partition(String s){
+        Entity entity = clazz.getAnnotation(Entity.class);
+        if(entity.split() != SplitType.STRING){
+            logger.error(clazz.getName() + " is not splitted by string");
+            return null;
         }
+        return createView(StorageCache.getInstance().get(clazz, PartitionUtil.getName(clazz, s)));
+    }
+    
+    protected BuguDao<T> createView(Storage storage){
+        return new BuguDao<T>(this, storage);
     }
     
     /**
@@ -176,20 +208,50 @@ public class BuguDao<T> {
         this.concern = concern;
     }
     
+    /**
+     * Add an interceptor to the operations of this dao, and the queries and updaters created by it. 
+     * The partition views share the interceptors of the dao.
+     * @param interceptor 
+     */
+    public void addInterceptor(Interceptor interceptor){
+        interceptors.add(interceptor);
+    }
+    
+    public void removeInterceptor(Interceptor interceptor){
+        interceptors.remove(interceptor);
+    }
+    
     /**
      * Insert an entity to mongoDB.
      * @param t
      * @return 
      */
     public WriteResult insert(T t){
-        DBObject dbo = MapperUtil.toDBObject(t);
-        WriteResult wr = coll.insert(dbo, concern);
+        final DBObject dbo = MapperUtil.toDBObject(t);
+        WriteResult wr;
+        if(interceptors.isEmpty()){
+            wr = storage.insert(dbo, concern);
+        }else{
+            wr = interceptors.intercept(OperationType.INSERT, clazz, null, new Work<WriteResult>(){
+                @Override
+                public WriteResult run(){
+                    return storage.insert(dbo, concern);
+                }
+                @Override
+                public long getResultSize(WriteResult result){
+                    return 1;
+                }
+            });
+        }
         String id = dbo.get(Operator.ID).toString();
         BuguEntity ent = (BuguEntity)t;
         ent.setId(id);
         if(luceneListener != null){
             luceneListener.entityInsert(ent);
         }
+        if(rollupListener != null){
+            rollupListener.entityInsert(dbo);
+        }
         return wr;
     }
     
@@ -199,11 +261,26 @@ public class BuguDao<T> {
      * @return 
      */
     public WriteResult insert(List<T> list){
-        List<DBObject> dboList = new ArrayList<DBObject>();
+        reserveIds(list);
+        final List<DBObject> dboList = new ArrayList<DBObject>();
         for(T t : list){
             dboList.add(MapperUtil.toDBObject(t));
         }
-        WriteResult wr = coll.insert(dboList, concern);
+        WriteResult wr;
+        if(interceptors.isEmpty()){
+            wr = storage.insert(dboList, concern);
+        }else{
+            wr = interceptors.intercept(OperationType.INSERT, clazz, null, new Work<WriteResult>(){
+                @Override
+                public WriteResult run(){
+                    return storage.insert(dboList, concern);
+                }
+                @Override
+                public long getResultSize(WriteResult result){
+                    return dboList.size();
+                }
+            });
+        }
         int len = dboList.size();
         for(int i=0; i<len; i++){
             String id = dboList.get(i).get(Operator.ID).toString();
@@ -215,9 +292,46 @@ public class BuguDao<T> {
                 luceneListener.entityInsert((BuguEntity)t);
             }
         }
+        if(rollupListener != null){
+            for(DBObject dbo : dboList){
+                rollupListener.entityInsert(dbo);
+            }
+        }
         return wr;
     }
     
+    /**
+     * For auto increased id, reserve the ids of the whole list at once.
+     * @param list 
+     */
+    private void reserveIds(List<T> list){
+        Field idField = null;
+        try{
+            idField = FieldsCache.getInstance().getIdField(clazz);
+        }catch(IdException ex){
+            logger.error(ex.getMessage(), ex);
+        }
+        if(idField.getAnnotation(Id.class).type() != IdType.AUTO_INCREASE){
+            return;
+        }
+        int count = 0;
+        for(T t : list){
+            if(StringUtil.isEmpty(((BuguEntity)t).getId())){
+                count++;
+            }
+        }
+        if(count == 0){
+            return;
+        }
+        long id = IdSequenceCache.getInstance().get(clazz).next(count);
+        for(T t : list){
+            BuguEntity ent = (BuguEntity)t;
+            if(StringUtil.isEmpty(ent.getId())){
+                ent.setId(String.valueOf(id++));
+            }
+        }
+    }
+    
     /**
      * Save an entity to mongoDB. 
      * If no id in it, then insert the entity.
@@ -254,7 +368,23 @@ public class BuguDao<T> {
     }
     
     private WriteResult doSave(BuguEntity ent){
-        WriteResult wr = coll.save(MapperUtil.toDBObject(ent), concern);
+        final DBObject dbo = MapperUtil.toDBObject(ent);
+        WriteResult wr;
+        if(interceptors.isEmpty()){
+            wr = storage.save(dbo, concern);
+        }else{
+            wr = interceptors.intercept(OperationType.SAVE, clazz, null, new Work<WriteResult>(){
+                @Override
+                public WriteResult run(){
+                    return storage.save(dbo, concern);
+                }
+                @Override
+                public long getResultSize(WriteResult result){
+                    return 1;
+                }
+            });
+        }
+        evict(ent.getId());
         if(luceneListener != null){
             luceneListener.entityUpdate(ent);
         }
@@ -266,14 +396,20 @@ public class BuguDao<T> {
      * It will automatically drop all indexes from this collection.
      */
     public void drop(){
-        if(luceneListener != null || cascadeListener != null){
-            List<T> list = findAll();
-            for(T t : list){
-                remove(t);
-            }
+        notifyRemove(new BasicDBObject());
+        evict(null);
+        StorageCache.getInstance().remove(clazz, storage.getName());
+        if(interceptors.isEmpty()){
+            storage.drop();
+            return;
         }
-        coll.drop();
-        coll.dropIndexes();
+        interceptors.intercept(OperationType.DROP, clazz, null, new Work<Void>(){
+            @Override
+            public Void run(){
+                storage.drop();
+                return null;
+            }
+        });
     }
     
     /**
@@ -294,28 +430,58 @@ public class BuguDao<T> {
     public WriteResult remove(String id){
         if(cascadeListener != null){
             BuguEntity entity = (BuguEntity)findOne(id);
-            cascadeListener.entityRemove(entity);
+            if(entity != null){
+                cascadeListener.entityRemove(entity);
+            }
         }
         if(luceneListener != null){
             luceneListener.entityRemove(id);
         }
-        DBObject dbo = new BasicDBObject(Operator.ID, IdUtil.toDbId(clazz, id));
-        return coll.remove(dbo, concern);
+        final DBObject dbo = new BasicDBObject(Operator.ID, IdUtil.toDbId(clazz, id));
+        DBObject removed = null;
+        if(rollupListener != null){
+            removed = storage.findOne(dbo, rollupListener.getKeys());
+        }
+        evict(id);
+        WriteResult wr;
+        if(interceptors.isEmpty()){
+            wr = storage.remove(dbo, concern);
+        }else{
+            wr = interceptors.intercept(OperationType.REMOVE, clazz, dbo, new Work<WriteResult>(){
+                @Override
+                public WriteResult run(){
+                    return storage.remove(dbo, concern);
+                }
+            });
+        }
+        //the rollups are decreased only if the entity is really removed
+        if(removed != null && wr.getN() > 0){
+            rollupListener.entityRemove(removed);
+        }
+        return wr;
     }
     
     /**
      * Batch remove by id.
+     * <p>A large list is removed in several commands, and the result of the last command is returned.</p>
      * @param idList
      * @return 
      */
     public WriteResult remove(List<String> idList){
-        int len = idList.size();
-        Object[] arr = new Object[len];
-        for(int i=0; i<len; i++){
-            arr[i] = IdUtil.toDbId(clazz, idList.get(i));
-        }
-        DBObject in = new BasicDBObject(Operator.IN, arr);
-        return removeMulti(new BasicDBObject(Operator.ID, in));
+        WriteResult wr = null;
+        int size = idList.size();
+        int begin = 0;
+        do{
+            int end = Math.min(size, begin + BATCH_SIZE);
+            Object[] arr = new Object[end - begin];
+            for(int i=begin; i<end; i++){
+                arr[i-begin] = IdUtil.toDbId(clazz, idList.get(i));
+            }
+            DBObject in = new BasicDBObject(Operator.IN, arr);
+            wr = removeMulti(new BasicDBObject(Operator.ID, in));
+            begin = end;
+        }while(begin < size);
+        return wr;
     }
     
     /**
@@ -338,21 +504,82 @@ public class BuguDao<T> {
         return removeMulti(query.getCondition());
     }
     
-    private WriteResult removeMulti(DBObject condition){
-        DBCursor cursor = coll.find(condition, keys);
-        List<T> list = MapperUtil.toList(clazz, cursor);
+    private WriteResult removeMulti(final DBObject condition){
+        notifyRemove(condition);
+        evict(null);
+        if(interceptors.isEmpty()){
+            return storage.remove(condition, concern);
+        }
+        return interceptors.intercept(OperationType.REMOVE, clazz, condition, new Work<WriteResult>(){
+            @Override
+            public WriteResult run(){
+                return storage.remove(condition, concern);
+            }
+        });
+    }
+    
+    /**
+     * Notify the listeners about the entities to be removed.
+     * <p>Only the id, and the fields needed by cascade delete and rollups, are read. The matches are streamed and processed in batches.</p>
+     * @param condition 
+     */
+    private void notifyRemove(DBObject condition){
+        if(luceneListener == null && cascadeListener == null && rollupListener == null){
+            return;
+        }
+        DBObject fields = new BasicDBObject(Operator.ID, 1);
         if(cascadeListener != null){
-            for(T t : list){
-                cascadeListener.entityRemove((BuguEntity)t);
+            fields.putAll(cascadeListener.getRefKeys());
+        }
+        if(rollupListener != null){
+            fields.putAll(rollupListener.getKeys());
+        }
+        StorageCursor cursor = storage.find(condition, fields).batchSize(BATCH_SIZE);
+        List<String> ids = new ArrayList<String>();
+        List<BuguEntity> entities = new ArrayList<BuguEntity>();
+        while(cursor.hasNext()){
+            DBObject dbo = cursor.next();
+            ids.add(dbo.get(Operator.ID).toString());
+            if(rollupListener != null){
+                rollupListener.entityRemove(dbo);
+            }
+            if(cascadeListener != null){
+                entities.add((BuguEntity)MapperUtil.fromDBObject(clazz, dbo));
+            }
+            if(ids.size() >= BATCH_SIZE){
+                notifyRemove(ids, entities);
+                ids = new ArrayList<String>();
+                entities = new ArrayList<BuguEntity>();
             }
         }
+        cursor.close();
+        if(!ids.isEmpty()){
+            notifyRemove(ids, entities);
+        }
+    }
+    
+    private void notifyRemove(List<String> ids, List<BuguEntity> entities){
+        if(cascadeListener != null){
+            cascadeListener.entityRemove(entities);
+        }
         if(luceneListener != null){
-            for(T t : list){
-                BuguEntity ent = (BuguEntity)t;
-                luceneListener.entityRemove(ent.getId());
+            luceneListener.entityRemove(ids);
+        }
+    }
+    
+    /**
+     * Evict the changed entities from the scope of current thread.
+     * @param id null for all entities of this class
+     */
+    private void evict(String id){
+        BuguScope scope = BuguScope.current();
+        if(scope != null){
+            if(id != null){
+                scope.evict(clazz, id);
+            }else{
+                scope.evictAll(clazz);
             }
         }
-        return coll.remove(condition, concern);
     }
     
     private Object checkSpecialValue(String key, Object value){
@@ -375,7 +602,7 @@ public class BuguDao<T> {
     public boolean exists(String id){
         DBObject query = new BasicDBObject();
         query.put(Operator.ID, IdUtil.toDbId(clazz, id));
-        return coll.findOne(query) != null;
+        return findOneDBObject(query) != null;
     }
     
     /**
@@ -387,7 +614,7 @@ public class BuguDao<T> {
     public boolean exists(String key, Object value){
         value = checkSpecialValue(key, value);
         DBObject query = new BasicDBObject(key, value);
-        return coll.findOne(query) != null;
+        return findOneDBObject(query) != null;
     }
     
     /**
@@ -395,7 +622,7 @@ public class BuguDao<T> {
      * @return 
      */
     public T findOne(){
-        DBObject result = coll.findOne();
+        DBObject result = findOneDBObject(null);
         return MapperUtil.fromDBObject(clazz, result);
     }
     
@@ -405,10 +632,21 @@ public class BuguDao<T> {
      * @return 
      */
     public T findOne(String id){
+        BuguScope scope = BuguScope.current();
+        if(scope != null){
+            BuguEntity ent = scope.get(clazz, id, true);
+            if(ent != null){
+                return (T)ent;
+            }
+        }
         DBObject dbo = new BasicDBObject();
         dbo.put(Operator.ID, IdUtil.toDbId(clazz, id));
-        DBObject result = coll.findOne(dbo);
-        return MapperUtil.fromDBObject(clazz, result);
+        DBObject result = findOneDBObject(dbo);
+        T t = MapperUtil.fromDBObject(clazz, result);
+        if(scope != null && t != null){
+            t = (T)scope.put((BuguEntity)t, true);
+        }
+        return t;
     }
     
     /**
@@ -420,7 +658,7 @@ public class BuguDao<T> {
     public T findOne(String key, Object value){
         value = checkSpecialValue(key, value);
         DBObject query = new BasicDBObject(key, value);
-        DBObject dbo = coll.findOne(query);
+        DBObject dbo = findOneDBObject(query);
         return MapperUtil.fromDBObject(clazz, dbo);
     }
 
@@ -429,8 +667,8 @@ public class BuguDao<T> {
      * @return 
      */
     public List<T> findAll(){
-        DBCursor cursor = coll.find(new BasicDBObject(), keys);
-        return MapperUtil.toList(clazz, cursor);
+        StorageCursor cursor = storage.find(new BasicDBObject(), keys);
+        return toList(cursor);
     }
     
     /**
@@ -440,8 +678,8 @@ public class BuguDao<T> {
      */
     public List<T> findAll(String orderBy){
         DBObject dbo = MapperUtil.getSort(orderBy);
-        DBCursor cursor = coll.find(new BasicDBObject(), keys).sort(dbo);
-        return MapperUtil.toList(clazz, cursor);
+        StorageCursor cursor = storage.find(new BasicDBObject(), keys).sort(dbo);
+        return toList(cursor);
     }
 
     /**
@@ -451,8 +689,8 @@ public class BuguDao<T> {
      * @return 
      */
     public List<T> findAll(int pageNum, int pageSize){
-        DBCursor cursor = coll.find(new BasicDBObject(), keys).skip((pageNum-1)*pageSize).limit(pageSize);
-        return MapperUtil.toList(clazz, cursor);
+        StorageCursor cursor = storage.find(new BasicDBObject(), keys).skip((pageNum-1)*pageSize).limit(pageSize);
+        return toList(cursor);
     }
     
     /**
@@ -464,12 +702,44 @@ public class BuguDao<T> {
      */
     public List<T> findAll(String orderBy, int pageNum, int pageSize){
         DBObject dbo = MapperUtil.getSort(orderBy);
-        DBCursor cursor = coll.find(new BasicDBObject(), keys).sort(dbo).skip((pageNum-1)*pageSize).limit(pageSize);
-        return MapperUtil.toList(clazz, cursor);
+        StorageCursor cursor = storage.find(new BasicDBObject(), keys).sort(dbo).skip((pageNum-1)*pageSize).limit(pageSize);
+        return toList(cursor);
+    }
+    
+    private DBObject findOneDBObject(final DBObject query){
+        if(interceptors.isEmpty()){
+            return storage.findOne(query, null);
+        }
+        return interceptors.intercept(OperationType.FIND_ONE, clazz, query, new Work<DBObject>(){
+            @Override
+            public DBObject run(){
+                return storage.findOne(query, null);
+            }
+        });
+    }
+    
+    private List<T> toList(final StorageCursor cursor){
+        if(interceptors.isEmpty()){
+            return MapperUtil.toList(clazz, cursor);
+        }
+        return interceptors.intercept(OperationType.FIND, clazz, cursor.getQuery(), new Work<List<T>>(){
+            @Override
+            public List<T> run(){
+                return MapperUtil.toList(clazz, cursor);
+            }
+        });
     }
     
-    public List distinct(String key){
-        return coll.distinct(key);
+    public List distinct(final String key){
+        if(interceptors.isEmpty()){
+            return storage.distinct(key, null);
+        }
+        return interceptors.intercept(OperationType.DISTINCT, clazz, null, new Work<List>(){
+            @Override
+            public List run(){
+                return storage.distinct(key, null);
+            }
+        });
     }
 
     /**
@@ -477,7 +747,15 @@ public class BuguDao<T> {
      * @return 
      */
     public long count(){
-        return coll.count();
+        if(interceptors.isEmpty()){
+            return storage.count(null);
+        }
+        return interceptors.intercept(OperationType.COUNT, clazz, null, new Work<Long>(){
+            @Override
+            public Long run(){
+                return storage.count(null);
+            }
+        });
     }
     
     /**
@@ -488,23 +766,36 @@ public class BuguDao<T> {
      */
     public long count(String key, Object value){
         value = checkSpecialValue(key, value);
-        return coll.count(new BasicDBObject(key, value));
+        final DBObject condition = new BasicDBObject(key, value);
+        if(interceptors.isEmpty()){
+            return storage.count(condition);
+        }
+        return interceptors.intercept(OperationType.COUNT, clazz, condition, new Work<Long>(){
+            @Override
+            public Long run(){
+                return storage.count(condition);
+            }
+        });
     }
     
     /**
      * Get the DBCollection object, supplied by the mongodb java driver.
-     * @return 
+     * @return null if the entities are kept in memory
      */
     public DBCollection getCollection(){
         return coll;
     }
     
+    public Storage getStorage(){
+        return storage;
+    }
+    
     /**
      * Create a query.
      * @return a new BuguQuery object
      */
     public BuguQuery<T> query(){
-        return new BuguQuery<T>(coll, clazz, keys);
+        return new BuguQuery<T>(storage, clazz, keys, interceptors);
     }
     
     /**
@@ -512,7 +803,7 @@ public class BuguDao<T> {
      * @return a new BuguUpdater object
      */
     public BuguUpdater<T> update(){
-        return new BuguUpdater(coll, clazz, concern, luceneListener);
+        return new BuguUpdater(storage, clazz, concern, luceneListener, rollupListener, interceptors);
     }
     
 }
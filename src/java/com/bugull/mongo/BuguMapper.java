@@ -16,28 +16,19 @@
 
 package com.bugull.mongo;
 
-import com.bugull.mongo.annotations.Default;
 import com.bugull.mongo.annotations.Ref;
 import com.bugull.mongo.annotations.RefList;
 import com.bugull.mongo.cache.DaoCache;
 import com.bugull.mongo.cache.FieldsCache;
 import com.bugull.mongo.exception.FieldException;
-import com.bugull.mongo.utils.DataType;
-import com.bugull.mongo.utils.FieldUtil;
-import com.bugull.mongo.misc.InternalDao;
+import com.bugull.mongo.misc.RefBatch;
 import com.bugull.mongo.utils.MapperUtil;
-import com.bugull.mongo.utils.Operator;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
-import java.lang.reflect.Array;
 import java.lang.reflect.Field;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -69,13 +60,21 @@ public class BuguMapper {
      * @param list the list needs to operate on
      */
     public static void fetchLazy(List list){
+        Map<Class<?>, List<BuguEntity>> map = new LinkedHashMap<Class<?>, List<BuguEntity>>();
         for(Object o : list){
             if(o != null){
                 BuguEntity obj = (BuguEntity)o;
-                BuguEntity newObj = (BuguEntity)DaoCache.getInstance().get(obj.getClass()).findOne(obj.getId());
-                FieldUtil.copy(newObj, obj);
+                List<BuguEntity> entities = map.get(obj.getClass());
+                if(entities == null){
+                    entities = new ArrayList<BuguEntity>();
+                    map.put(obj.getClass(), entities);
+                }
+                entities.add(obj);
             }
         }
+        for(Entry<Class<?>, List<BuguEntity>> entry : map.entrySet()){
+            DaoCache.getInstance().get(entry.getKey()).fetchLazy(entry.getValue());
+        }
     }
     
     /**
@@ -84,8 +83,11 @@ public class BuguMapper {
      * @param obj the entity needs to operate on
      */
     public static void fetchLazy(BuguEntity obj){
-        BuguEntity newObj = (BuguEntity)DaoCache.getInstance().get(obj.getClass()).findOne(obj.getId());
-        FieldUtil.copy(newObj, obj);
+        if(obj != null){
+            List<BuguEntity> list = new ArrayList<BuguEntity>();
+            list.add(obj);
+            DaoCache.getInstance().get(obj.getClass()).fetchLazy(list);
+        }
     }
     
     /**
@@ -95,202 +97,81 @@ public class BuguMapper {
      */
     public static void fetchCascade(BuguEntity obj, String... names){
         if(obj != null){
-            for(String name : names){
-                String remainder = null;
-                int index = name.indexOf(".");
-                if(index > 0){
-                    remainder = name.substring(index+1);
-                    name = name.substring(0, index);
-                }
-                fetchOneLevel(obj, name);
-                if(remainder != null){
-                    fetchRemainder(obj, name, remainder);
-                }
-            }
+            List<BuguEntity> list = new ArrayList<BuguEntity>();
+            list.add(obj);
+            fetchCascade(list, names);
         }
     }
     
     /**
      * Fetch out the cascade @Ref or @RefList entity.
+     * <p>The referenced ids are collected across the whole list, and every referenced class is queried by chunked $in, 
+     * so the round-trips don't grow with the size of the list.</p>
      * @param list the list needs to operate on
      * @param names the fields' names
      */
     public static void fetchCascade(List list, String... names){
+        List<BuguEntity> entities = new ArrayList<BuguEntity>();
         for(Object o : list){
             if(o != null){
-                BuguEntity obj = (BuguEntity)o;
-                fetchCascade(obj, names);
+                entities.add((BuguEntity)o);
             }
         }
-    }
-    
-    private static void fetchOneLevel(BuguEntity obj, String fieldName){
-        Field field = null;
-        try{
-            field = FieldsCache.getInstance().getField(obj.getClass(), fieldName);
-        }catch(FieldException ex){
-            logger.error(ex.getMessage(), ex);
-        }
-        if(field.getAnnotation(Ref.class) != null){
-            fetchRef(obj, field);
-        }else if(field.getAnnotation(RefList.class) != null){
-            fetchRefList(obj, field);
-        }
-    }
-    
-    private static void fetchRemainder(BuguEntity obj, String fieldName, String remainder){
-        Field field = null;
-        try{
-            field = FieldsCache.getInstance().getField(obj.getClass(), fieldName);
-        }catch(FieldException ex){
-            logger.error(ex.getMessage(), ex);
-        }
-        Object value = FieldUtil.get(obj, field);
-        if(value == null){
+        if(entities.isEmpty()){
             return;
         }
-        if(field.getAnnotation(Ref.class) != null){
-            BuguEntity entity = (BuguEntity)value;
-            fetchCascade(entity, remainder);
-        }else if(field.getAnnotation(RefList.class) != null){
-            Class type = field.getType();
-            if(DataType.isMapType(type)){
-                Map<Object, BuguEntity> map = (Map<Object, BuguEntity>)value;
-                for(Entry<Object, BuguEntity> entry : map.entrySet()){
-                    fetchCascade(entry.getValue(), remainder);
-                }
-            }
-            else{
-                Collection<BuguEntity> collection = (Collection<BuguEntity>)value;
-                for(BuguEntity entity : collection){
-                    fetchCascade(entity, remainder);
-                }
-            }
+        for(String name : names){
+            fetchPath(entities, name);
         }
     }
     
-    private static void fetchRef(BuguEntity obj, Field field){
-        Object o = FieldUtil.get(obj, field);
-        if( o == null){
-            return;
+    /**
+     * Fetch a nested path like "a.b.c" level by level.
+     */
+    private static void fetchPath(List<BuguEntity> entities, String name){
+        String remainder = null;
+        int index = name.indexOf(".");
+        if(index > 0){
+            remainder = name.substring(index+1);
+            name = name.substring(0, index);
         }
-        BuguEntity refObj = (BuguEntity)o;
-        String id = refObj.getId();
-        Class cls = FieldUtil.getRealType(field);
-        InternalDao dao = DaoCache.getInstance().get(cls);
-        Object value = dao.findOne(id);
-        FieldUtil.set(obj, field, value);
-    }
-    
-    private static void fetchRefList(BuguEntity obj, Field field){
-        Class<?> type = field.getType();
-        if(type.isArray()){
-            fetchArray(obj, field, type.getComponentType());
-        }else{
-            ParameterizedType paramType = (ParameterizedType)field.getGenericType();
-            Type[] types = paramType.getActualTypeArguments();
-            int len = types.length;
-            if(len == 1){
-                //for Collection
-                fetchCollection(obj, field, (Class)types[0]);
-            }else if(len == 2){
-                //for Map
-                fetchMap(obj, field, (Class)types[1]);
-            }
+        List<BuguEntity> children = fetchOneLevel(entities, name);
+        if(remainder != null && !children.isEmpty()){
+            fetchPath(children, remainder);
         }
     }
     
-    private static void fetchArray(BuguEntity obj, Field field, Class clazz) {
-        Object o = FieldUtil.get(obj, field);
-        if(o == null){
-            return;
-        }
-        int len = Array.getLength(o);
-        clazz = FieldUtil.getRealType(clazz, field);
-        Object arr = Array.newInstance(clazz, len);
-        List<String> idList = new ArrayList<String>();
-        for(int i=0; i<len; i++){
-            Object item = Array.get(o, i);
-            if(item != null){
-                BuguEntity ent = (BuguEntity)item;
-                idList.add(ent.getId());
+    /**
+     * Fetch one field of all the entities.
+     * @return the fetched entities, which are the input of next level
+     */
+    private static List<BuguEntity> fetchOneLevel(List<BuguEntity> entities, String fieldName){
+        RefBatch batch = new RefBatch();
+        Map<Class<?>, Field> fieldMap = new HashMap<Class<?>, Field>();
+        for(BuguEntity obj : entities){
+            Field field = getField(fieldMap, obj.getClass(), fieldName);
+            if(field != null){
+                batch.add(obj, field);
             }
         }
-        RefList refList = field.getAnnotation(RefList.class);
-        String sort = refList.sort();
-        InternalDao dao = DaoCache.getInstance().get(clazz);
-        BuguQuery query = dao.query().in(Operator.ID, idList);
-        List<BuguEntity> entityList = null;
-        if(sort.equals(Default.SORT)){
-            entityList = query.results();
-        }else{
-            entityList = query.sort(sort).results();
-        }
-        if(entityList.size() != len){
-            len = entityList.size();
-            arr = Array.newInstance(clazz, len);
-        }
-        for(int i=0; i<len; i++){
-            Array.set(arr, i, entityList.get(i));
-        }
-        FieldUtil.set(obj, field, arr);
+        return batch.fetch();
     }
     
-    private static void fetchCollection(BuguEntity obj, Field field, Class clazz){
-        Object o = FieldUtil.get(obj, field);
-        if(o == null){
-            return;
+    private static Field getField(Map<Class<?>, Field> fieldMap, Class<?> clazz, String fieldName){
+        if(fieldMap.containsKey(clazz)){
+            return fieldMap.get(clazz);
         }
-        Collection<BuguEntity> collection = (Collection<BuguEntity>)o;
-        List<String> idList = new ArrayList<String>();
-        for(BuguEntity ent : collection){
-            if(ent != null){
-                idList.add(ent.getId());
-            }
-        }
-        RefList refList = field.getAnnotation(RefList.class);
-        String sort = refList.sort();
-        clazz = FieldUtil.getRealType(clazz, field);
-        InternalDao dao = DaoCache.getInstance().get(clazz);
-        BuguQuery query = dao.query().in(Operator.ID, idList);
-        List result = null;
-        if(sort.equals(Default.SORT)){
-            result = query.results();
-        }else{
-            result = query.sort(sort).results();
-        }
-        Class type = field.getType();
-        if(DataType.isListType(type)){
-            FieldUtil.set(obj, field, result);
-        }
-        else if(DataType.isSetType(type)){
-            FieldUtil.set(obj, field, new HashSet(result));
-        }
-        else if(DataType.isQueueType(type)){
-            FieldUtil.set(obj, field, new LinkedList(result));
-        }
-    }
-    
-    private static void fetchMap(BuguEntity obj, Field field, Class clazz) {
-        Object o = FieldUtil.get(obj, field);
-        if(o == null){
-            return;
+        Field field = null;
+        try{
+            field = FieldsCache.getInstance().getField(clazz, fieldName);
+        }catch(FieldException ex){
+            logger.error(ex.getMessage(), ex);
         }
-        Map<Object, BuguEntity> map = (Map<Object, BuguEntity>)o;
-        Map result = new HashMap();
-        clazz = FieldUtil.getRealType(clazz, field);
-        InternalDao dao = DaoCache.getInstance().get(clazz);
-        for(Entry<Object, BuguEntity> entry : map.entrySet()){
-            BuguEntity refObj = entry.getValue();
-            if(refObj != null){
-                String id = refObj.getId();
-                Object value = dao.findOne(id);
-                result.put(entry.getKey(), value);
-            }else{
-                result.put(entry.getKey(), null);
-            }
+        if(field != null && field.getAnnotation(Ref.class) == null && field.getAnnotation(RefList.class) == null){
+            field = null;
         }
-        FieldUtil.set(obj, field, result);
+        fieldMap.put(clazz, field);
+        return field;
     }
     
 }
@@ -16,22 +16,34 @@
 
 package com.bugull.mongo;
 
+import com.bugull.mongo.annotations.Entity;
 import com.bugull.mongo.annotations.Id;
+import com.bugull.mongo.cache.StorageCache;
 import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.exception.DBConnectionException;
 import com.bugull.mongo.exception.DBQueryException;
 import com.bugull.mongo.exception.FieldException;
+import com.bugull.mongo.interceptor.InterceptorChain;
+import com.bugull.mongo.interceptor.OperationType;
+import com.bugull.mongo.interceptor.Work;
+import com.bugull.mongo.misc.PartitionCursor;
+import com.bugull.mongo.storage.MongoStorage;
+import com.bugull.mongo.storage.Storage;
+import com.bugull.mongo.storage.StorageCursor;
 import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.utils.Operator;
+import com.bugull.mongo.utils.PartitionUtil;
 import com.bugull.mongo.utils.ReferenceUtil;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCollection;
-import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 
@@ -45,7 +57,7 @@ public class BuguQuery<T> {
     
     private final static Logger logger = Logger.getLogger(BuguQuery.class);
     
-    private DBCollection coll;
+    private Storage storage;
     private Class<T> clazz;
     private DBObject keys;
     
@@ -58,10 +70,17 @@ public class BuguQuery<T> {
     private int pageNumber = 0;  //default value is zero
     private int pageSize = 0;  //default value is zero
     
+    private InterceptorChain interceptors;
+    
     public BuguQuery(DBCollection coll, Class<T> clazz, DBObject keys){
-        this.coll = coll;
+        this(new MongoStorage(coll), clazz, keys, new InterceptorChain());
+    }
+    
+    public BuguQuery(Storage storage, Class<T> clazz, DBObject keys, InterceptorChain interceptors){
+        this.storage = storage;
         this.clazz = clazz;
         this.keys = keys;
+        this.interceptors = interceptors;
     }
     
     private void appendEquals(String key, String op, Object value){
@@ -406,44 +425,174 @@ public class BuguQuery<T> {
         }catch(DBQueryException ex){
             logger.error(ex.getMessage(), ex);
         }
-        DBObject dbo = null;
-        if(fieldsSpecified){
-            dbo = coll.findOne(condition, fields);
-        }else if(slices != null){
-            dbo = coll.findOne(condition, slices);
-        }else{
-            dbo = coll.findOne(condition);
+        final DBObject projection = fieldsSpecified ? fields : slices;
+        if(interceptors.isEmpty()){
+            return MapperUtil.fromDBObject(clazz, storage.findOne(condition, projection));
         }
-        return MapperUtil.fromDBObject(clazz, dbo);
+        return interceptors.intercept(OperationType.FIND_ONE, clazz, condition, new Work<T>(){
+            @Override
+            public T run(){
+                return MapperUtil.fromDBObject(clazz, storage.findOne(condition, projection));
+            }
+        });
     }
     
     public List<T> results(){
-        DBCursor cursor = null;
-        if(fieldsSpecified){
-            cursor = coll.find(condition, fields);
-        }else{
-            cursor = coll.find(condition, keys);
-        }
+        final StorageCursor cursor = storage.find(condition, fieldsSpecified ? fields : keys);
         if(orderBy != null){
             cursor.sort(MapperUtil.getSort(orderBy));
         }
         if(pageNumber>0 && pageSize>0){
             cursor.skip((pageNumber-1)*pageSize).limit(pageSize);
         }
-        return MapperUtil.toList(clazz, cursor);
+        if(interceptors.isEmpty()){
+            return MapperUtil.toList(clazz, cursor);
+        }
+        return interceptors.intercept(OperationType.FIND, clazz, condition, new Work<List<T>>(){
+            @Override
+            public List<T> run(){
+                return MapperUtil.toList(clazz, cursor);
+            }
+        });
     }
     
     public long count(){
-        return coll.count(condition);
+        if(interceptors.isEmpty()){
+            return storage.count(condition);
+        }
+        return interceptors.intercept(OperationType.COUNT, clazz, condition, new Work<Long>(){
+            @Override
+            public Long run(){
+                return storage.count(condition);
+            }
+        });
+    }
+    
+    /**
+     * Query the partitions between two dates, for the collection splitted by date.
+     * <p>The partitions are queried concurrently, and the results are merged in the sort order. 
+     * The page number and page size apply to the merged results. The partitions not created yet are skipped.</p>
+     * @param from
+     * @param to
+     * @return 
+     */
+    public List<T> results(final Date from, final Date to){
+        if(interceptors.isEmpty()){
+            return doResults(getPartitions(from, to));
+        }
+        return interceptors.intercept(OperationType.FIND, clazz, condition, new Work<List<T>>(){
+            @Override
+            public List<T> run(){
+                return doResults(getPartitions(from, to));
+            }
+        });
+    }
+    
+    private List<T> doResults(List<Storage> partitions){
+        DBObject projection = keys;
+        if(fieldsSpecified){
+            projection = fields;
+        }
+        DBObject sort = null;
+        if(orderBy != null){
+            sort = MapperUtil.getSort(orderBy);
+        }
+        int skip = 0;
+        int limit = 0;
+        if(pageNumber>0 && pageSize>0){
+            skip = (pageNumber-1)*pageSize;
+            limit = pageSize;
+        }
+        List<DBObject> list = new ArrayList<DBObject>();
+        //every partition may contribute the whole page
+        PartitionCursor cursor = new PartitionCursor(partitions, condition, projection, sort, skip + limit);
+        try{
+            for(int i=0; i<skip && cursor.hasNext(); i++){
+                cursor.next();
+            }
+            while(cursor.hasNext() && (limit == 0 || list.size() < limit)){
+                list.add(cursor.next());
+            }
+        }finally{
+            cursor.close();
+        }
+        return MapperUtil.toList(clazz, list);
+    }
+    
+    /**
+     * Count the partitions between two dates concurrently, for the collection splitted by date.
+     * @param from
+     * @param to
+     * @return 
+     */
+    public long count(final Date from, final Date to){
+        if(interceptors.isEmpty()){
+            return PartitionCursor.count(getPartitions(from, to), condition);
+        }
+        return interceptors.intercept(OperationType.COUNT, clazz, condition, new Work<Long>(){
+            @Override
+            public Long run(){
+                return PartitionCursor.count(getPartitions(from, to), condition);
+            }
+        });
+    }
+    
+    /**
+     * Get the existing partitions between two dates.
+     */
+    private List<Storage> getPartitions(Date from, Date to){
+        List<Storage> list = new ArrayList<Storage>();
+        Entity entity = clazz.getAnnotation(Entity.class);
+        List<String> suffixes = PartitionUtil.getSuffixes(entity.split(), from, to);
+        if(suffixes.isEmpty()){
+            return list;
+        }
+        BuguConnection conn = BuguConnection.getInstance(clazz);
+        Set<String> names = null;
+        if(conn.getMemoryDatabase() != null){
+            names = conn.getMemoryDatabase().getNames();
+        }else{
+            try{
+                names = conn.getDB().getCollectionNames();
+            }catch(DBConnectionException ex){
+                logger.error(ex.getMessage(), ex);
+                return list;
+            }
+        }
+        for(String suffix : suffixes){
+            String name = PartitionUtil.getName(clazz, suffix);
+            if(names.contains(name)){
+                list.add(StorageCache.getInstance().get(clazz, name));
+            }
+        }
+        return list;
     }
     
     public boolean exists(){
-        DBObject dbo = coll.findOne(condition);
+        DBObject dbo;
+        if(interceptors.isEmpty()){
+            dbo = storage.findOne(condition, null);
+        }else{
+            dbo = interceptors.intercept(OperationType.FIND_ONE, clazz, condition, new Work<DBObject>(){
+                @Override
+                public DBObject run(){
+                    return storage.findOne(condition, null);
+                }
+            });
+        }
         return dbo != null;
     }
     
-    public List distinct(String key){
-        return coll.distinct(key, condition);
+    public List distinct(final String key){
+        if(interceptors.isEmpty()){
+            return storage.distinct(key, condition);
+        }
+        return interceptors.intercept(OperationType.DISTINCT, clazz, condition, new Work<List>(){
+            @Override
+            public List run(){
+                return storage.distinct(key, condition);
+            }
+        });
     }
 
     public DBObject getCondition() {
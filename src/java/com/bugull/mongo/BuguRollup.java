@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.misc.RollupBuffer;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Convenient class for reading a rollup collection, which is declared by @Rollup.
+ * 
+ * <p>The pending increments are flushed before reading. Each result is a bucket document, 
+ * such as {_id:{t:date, groupBy:value}, count:10, sumField:100}.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class BuguRollup {
+    
+    private RollupBuffer buffer;
+    private DBObject condition = new BasicDBObject();
+    
+    public BuguRollup(RollupBuffer buffer){
+        this.buffer = buffer;
+    }
+    
+    /**
+     * The buckets which begin in [from, to).
+     * @param from
+     * @param to
+     * @return 
+     */
+    public BuguRollup between(Date from, Date to){
+        DBObject range = new BasicDBObject(Operator.GTE, buffer.truncate(from));
+        range.put(Operator.LT, to);
+        condition.put(Operator.ID + "." + RollupBuffer.TIME, range);
+        return this;
+    }
+    
+    /**
+     * The buckets of a group value.
+     * @param groupBy the group field
+     * @param value
+     * @return 
+     */
+    public BuguRollup is(String groupBy, Object value){
+        condition.put(Operator.ID + "." + RollupBuffer.toRollupKey(groupBy), value);
+        return this;
+    }
+    
+    /**
+     * Get the buckets, sorted by time.
+     * @return 
+     */
+    public List<DBObject> results(){
+        buffer.flush();
+        DBCursor cursor = buffer.getCollection().find(condition).sort(new BasicDBObject(Operator.ID + "." + RollupBuffer.TIME, 1));
+        List<DBObject> list = new ArrayList<DBObject>();
+        while(cursor.hasNext()){
+            list.add(cursor.next());
+        }
+        cursor.close();
+        return list;
+    }
+    
+    /**
+     * The number of documents in the matched buckets.
+     * @return 
+     */
+    public long count(){
+        long count = 0;
+        for(DBObject dbo : results()){
+            Object value = dbo.get(RollupBuffer.COUNT);
+            if(value instanceof Number){
+                count += ((Number)value).longValue();
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * The sum of a field in the matched buckets.
+     * @param key the sum field
+     * @return 
+     */
+    public double sum(String key){
+        double sum = 0;
+        String name = RollupBuffer.toRollupKey(key);
+        for(DBObject dbo : results()){
+            Object value = dbo.get(name);
+            if(value instanceof Number){
+                sum += ((Number)value).doubleValue();
+            }
+        }
+        return sum;
+    }
+    
+}
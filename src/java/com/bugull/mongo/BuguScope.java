@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.utils.FieldUtil;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An opt-in identity map bound to current thread, such as one web request.
+ * 
+ * <p>Inside a scope, BuguDao.findOne(id) and the resolving of @Ref and @RefList return one instance per class and id, 
+ * and an entity already loaded is not fetched again. The entities are evicted when they are saved, updated or removed 
+ * through the DAO. Query results are not put into the scope.</p>
+ * 
+ * <p>Usage:</p>
+ * <pre>
+ * BuguScope scope = BuguScope.open();
+ * try{
+ *     ...
+ * }finally{
+ *     scope.close();
+ * }
+ * </pre>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public final class BuguScope {
+    
+    private final static ThreadLocal<BuguScope> local = new ThreadLocal<BuguScope>();
+    
+    private final Map<String, BuguEntity> entities = new HashMap<String, BuguEntity>();
+    private final Set<String> partial = new HashSet<String>();  //the entities loaded without lazy fields
+    private int level;
+    
+    private BuguScope(){
+        
+    }
+    
+    /**
+     * Open a scope for current thread. If a scope is already open, it's reused, and must be closed as many times as it's opened.
+     * @return 
+     */
+    public static BuguScope open(){
+        BuguScope scope = local.get();
+        if(scope == null){
+            scope = new BuguScope();
+            local.set(scope);
+        }
+        scope.level++;
+        return scope;
+    }
+    
+    /**
+     * Get the scope of current thread.
+     * @return null if no scope is open
+     */
+    public static BuguScope current(){
+        return local.get();
+    }
+    
+    public void close(){
+        level--;
+        if(level <= 0){
+            entities.clear();
+            partial.clear();
+            local.remove();
+        }
+    }
+    
+    /**
+     * Get a loaded entity.
+     * @param clazz
+     * @param id
+     * @param withLazy true if the lazy fields are needed
+     * @return null if the entity is not loaded in this scope
+     */
+    public BuguEntity get(Class<?> clazz, String id, boolean withLazy){
+        String key = getKey(clazz, id);
+        if(withLazy && partial.contains(key)){
+            return null;
+        }
+        return entities.get(key);
+    }
+    
+    /**
+     * Put a loaded entity into the scope. 
+     * <p>If the entity is already in the scope, the existing instance is kept and returned. 
+     * It's completed by the new one if it has no lazy fields.</p>
+     * @param ent
+     * @param withLazy if the entity is loaded with lazy fields
+     * @return the instance in the scope
+     */
+    public BuguEntity put(BuguEntity ent, boolean withLazy){
+        String key = getKey(ent.getClass(), ent.getId());
+        BuguEntity exist = entities.get(key);
+        if(exist == null){
+            entities.put(key, ent);
+            if(!withLazy){
+                partial.add(key);
+            }
+            return ent;
+        }
+        if(withLazy && partial.remove(key)){
+            FieldUtil.copy(ent, exist);
+        }
+        return exist;
+    }
+    
+    public void evict(Class<?> clazz, String id){
+        String key = getKey(clazz, id);
+        entities.remove(key);
+        partial.remove(key);
+    }
+    
+    public void evictAll(Class<?> clazz){
+        String prefix = clazz.getName() + "@";
+        Iterator<String> it = entities.keySet().iterator();
+        while(it.hasNext()){
+            String key = it.next();
+            if(key.startsWith(prefix)){
+                it.remove();
+                partial.remove(key);
+            }
+        }
+    }
+    
+    private String getKey(Class<?> clazz, String id){
+        return clazz.getName() + "@" + id;
+    }
+    
+}
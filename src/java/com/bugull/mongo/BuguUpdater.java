@@ -18,6 +18,13 @@ package com.bugull.mongo;
 import com.bugull.mongo.cache.FieldsCache;
 import com.bugull.mongo.lucene.backend.EntityChangedListener;
 import com.bugull.mongo.lucene.backend.IndexChecker;
+import com.bugull.mongo.interceptor.InterceptorChain;
+import com.bugull.mongo.interceptor.OperationType;
+import com.bugull.mongo.interceptor.Work;
+import com.bugull.mongo.misc.RollupListener;
+import com.bugull.mongo.storage.MongoStorage;
+import com.bugull.mongo.storage.Storage;
+import com.bugull.mongo.storage.StorageCursor;
 import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.utils.Operator;
@@ -27,6 +34,7 @@ import com.mongodb.DBCollection;
 import com.mongodb.DBObject;
 import com.mongodb.WriteConcern;
 import com.mongodb.WriteResult;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,47 +47,221 @@ import java.util.Set;
 @SuppressWarnings("unchecked")
 public class BuguUpdater<T> {
     
-    private DBCollection coll;
+    private final static int BATCH_SIZE = 1000;  //entities per re-fetch query and per lucene index task
+    
+    private Storage storage;
     private Class<T> clazz;
     private WriteConcern concern;
     private EntityChangedListener luceneListener;
+    private RollupListener rollupListener;
+    private InterceptorChain interceptors;
+    private boolean captureIds;
     
     public BuguUpdater(DBCollection coll, Class<T> clazz, WriteConcern concern, EntityChangedListener luceneListener){
-        this.coll = coll;
+        this(coll, clazz, concern, luceneListener, null);
+    }
+    
+    public BuguUpdater(DBCollection coll, Class<T> clazz, WriteConcern concern, EntityChangedListener luceneListener, RollupListener rollupListener){
+        this(new MongoStorage(coll), clazz, concern, luceneListener, rollupListener, new InterceptorChain());
+    }
+    
+    public BuguUpdater(Storage storage, Class<T> clazz, WriteConcern concern, EntityChangedListener luceneListener, RollupListener rollupListener, InterceptorChain interceptors){
+        this.storage = storage;
         this.clazz = clazz;
         this.concern = concern;
         this.luceneListener = luceneListener;
+        this.rollupListener = rollupListener;
+        this.interceptors = interceptors;
     }
     
-    private T findOne(String id){
-        DBObject dbo = new BasicDBObject();
-        dbo.put(Operator.ID, IdUtil.toDbId(clazz, id));
-        DBObject result = coll.findOne(dbo);
-        return MapperUtil.fromDBObject(clazz, result);
+    private WriteResult updateOne(String id, DBObject dbo, String... keys){
+        return updateOne(id, dbo, null, keys);
     }
     
-    private WriteResult updateOne(String id, DBObject dbo, String... keys){
+    /**
+     * @param incValue the increased value of $inc, used to maintain the rollups. It's null for other operations.
+     */
+    private WriteResult updateOne(String id, DBObject dbo, Number incValue, String... keys){
         DBObject condition = new BasicDBObject(Operator.ID, IdUtil.toDbId(clazz, id));
-        WriteResult wr = coll.update(condition, dbo, false, false, concern); //update one
-        if(luceneListener != null && IndexChecker.hasIndexAnnotation(clazz, keys)){
-            BuguEntity entity = (BuguEntity)findOne(id);
-            luceneListener.entityUpdate(entity);
+        WriteResult wr = doUpdate(condition, dbo, false);
+        BuguScope scope = BuguScope.current();
+        if(scope != null){
+            scope.evict(clazz, id);
+        }
+        boolean lucene = luceneListener != null && IndexChecker.hasIndexAnnotation(clazz, keys);
+        boolean rollup = needRollup(incValue, keys);
+        if(lucene || rollup){
+            DBObject result = null;
+            if(lucene){
+                result = storage.findOne(condition, null);
+            }else{
+                result = storage.findOne(condition, rollupListener.getKeys());
+            }
+            if(result != null){
+                if(rollup){
+                    rollupListener.entityInc(result, keys[0], incValue);
+                }
+                if(lucene){
+                    luceneListener.entityUpdate((BuguEntity)MapperUtil.fromDBObject(clazz, result));
+                }
+            }
         }
         return wr;
     }
     
     private WriteResult updateMulti(DBObject condition, DBObject dbo, String... keys){
-        WriteResult wr = coll.update(condition, dbo, false, true, concern);  //update multi
-        if(luceneListener != null && IndexChecker.hasIndexAnnotation(clazz, keys)){
-            List ids = coll.distinct(Operator.ID, condition);
-            for(Object id : ids){
-                BuguEntity entity = (BuguEntity)findOne(id.toString());
-                luceneListener.entityUpdate(entity);
+        return updateMulti(condition, dbo, null, keys);
+    }
+    
+    /**
+     * @param incValue the increased value of $inc, used to maintain the rollups. It's null for other operations.
+     */
+    private WriteResult updateMulti(DBObject condition, DBObject dbo, Number incValue, String... keys){
+        BuguScope scope = BuguScope.current();
+        if(scope != null){
+            scope.evictAll(clazz);
+        }
+        boolean lucene = luceneListener != null && IndexChecker.hasIndexAnnotation(clazz, keys);
+        boolean rollup = needRollup(incValue, keys);
+        if(!lucene && !rollup){
+            return doUpdate(condition, dbo, true);
+        }
+        //lucene needs the whole entity, while rollups need only a few fields
+        DBObject fields = null;
+        if(!lucene){
+            fields = rollupListener.getKeys();
+        }
+        Number rollupValue = rollup ? incValue : null;
+        WriteResult wr = null;
+        if(captureIds || isConditionChanged(condition, keys)){
+            //the update changes the matching condition, so the ids must be read before updating
+            List<Object> ids = findIds(condition);
+            wr = doUpdate(condition, dbo, true);
+            int size = ids.size();
+            for(int i=0; i<size; i+=BATCH_SIZE){
+                List<Object> sub = ids.subList(i, Math.min(size, i+BATCH_SIZE));
+                DBObject in = new BasicDBObject(Operator.ID, new BasicDBObject(Operator.IN, sub));
+                notifyUpdate(storage.find(in, fields), lucene, keys[0], rollupValue);
             }
+        }else{
+            wr = doUpdate(condition, dbo, true);
+            notifyUpdate(storage.find(condition, fields), lucene, keys[0], rollupValue);
         }
         return wr;
     }
     
+    private WriteResult doUpdate(final DBObject condition, final DBObject dbo, final boolean multi){
+        if(interceptors.isEmpty()){
+            return storage.update(condition, dbo, multi, concern);
+        }
+        return interceptors.intercept(OperationType.UPDATE, clazz, condition, new Work<WriteResult>(){
+            @Override
+            public WriteResult run(){
+                return storage.update(condition, dbo, multi, concern);
+            }
+        });
+    }
+    
+    private boolean needRollup(Number incValue, String... keys){
+        return incValue != null && rollupListener != null && rollupListener.isSumField(keys[0]);
+    }
+    
+    private Number toNumber(Object value){
+        if(value instanceof Number){
+            return (Number)value;
+        }
+        return null;
+    }
+    
+    private List<Object> findIds(DBObject condition){
+        List<Object> ids = new ArrayList<Object>();
+        StorageCursor cursor = storage.find(condition, new BasicDBObject(Operator.ID, 1)).batchSize(BATCH_SIZE);
+        while(cursor.hasNext()){
+            ids.add(cursor.next().get(Operator.ID));
+        }
+        cursor.close();
+        return ids;
+    }
+    
+    /**
+     * Stream the updated entities, maintain the rollups, and submit the lucene index update in batches.
+     * @param cursor
+     * @param lucene if need to update lucene index
+     * @param key the updated field
+     * @param rollupValue the increased value for rollups, or null if no rollup need to update
+     */
+    private void notifyUpdate(StorageCursor cursor, boolean lucene, String key, Number rollupValue){
+        cursor.batchSize(BATCH_SIZE);
+        List<BuguEntity> list = new ArrayList<BuguEntity>();
+        while(cursor.hasNext()){
+            DBObject dbo = cursor.next();
+            if(rollupValue != null){
+                rollupListener.entityInc(dbo, key, rollupValue);
+            }
+            if(lucene){
+                list.add((BuguEntity)MapperUtil.fromDBObject(clazz, dbo));
+                if(list.size() >= BATCH_SIZE){
+                    luceneListener.entityUpdate(list);
+                    list = new ArrayList<BuguEntity>();
+                }
+            }
+        }
+        cursor.close();
+        if(!list.isEmpty()){
+            luceneListener.entityUpdate(list);
+        }
+    }
+    
+    /**
+     * Check if any updated field is used in the query condition.
+     * @param condition
+     * @param keys the updated fields
+     * @return 
+     */
+    private boolean isConditionChanged(DBObject condition, String... keys){
+        for(String conditionKey : condition.keySet()){
+            if(conditionKey.equals(Operator.WHERE)){
+                return true;  //javascript can read any field
+            }
+            if(conditionKey.equals(Operator.AND) || conditionKey.equals(Operator.OR) || conditionKey.equals(Operator.NOR)){
+                Object value = condition.get(conditionKey);
+                if(value instanceof List){
+                    for(Object o : (List)value){
+                        if(o instanceof DBObject && isConditionChanged((DBObject)o, keys)){
+                            return true;
+                        }
+                    }
+                }
+                continue;
+            }
+            for(String key : keys){
+                if(isSameField(conditionKey, key)){
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private boolean isSameField(String a, String b){
+        if(a.equals(b)){
+            return true;
+        }
+        //one is the embedded path of the other, such as "address" and "address.city"
+        return a.startsWith(b + ".") || b.startsWith(a + ".");
+    }
+    
+    /**
+     * Read the ids of the matched entities before a multi-update, and re-fetch them by id after updating.
+     * <p>By default, it's done only when the updated fields are used in the query condition. 
+     * It takes effect only when the updated fields are indexed by lucene.</p>
+     * @return 
+     */
+    public BuguUpdater<T> captureIdsBeforeUpdate(){
+        this.captureIds = true;
+        return this;
+    }
+    
     private Object checkSingleValue(String key, Object value){
         Object result = value;
         if(value instanceof BuguEntity){
@@ -249,7 +431,7 @@ public class BuguUpdater<T> {
     public WriteResult inc(String id, String key, Object value){
         DBObject dbo = new BasicDBObject(key, value);
         DBObject inc = new BasicDBObject(Operator.INC, dbo);
-        return updateOne(id, inc, key);
+        return updateOne(id, inc, toNumber(value), key);
     }
     
     /**
@@ -262,7 +444,7 @@ public class BuguUpdater<T> {
     public WriteResult inc(BuguQuery query, String key, Object value){
         DBObject dbo = new BasicDBObject(key, value);
         DBObject inc = new BasicDBObject(Operator.INC, dbo);
-        return updateMulti(query.getCondition(), inc, key);
+        return updateMulti(query.getCondition(), inc, toNumber(value), key);
     }
     
     /**
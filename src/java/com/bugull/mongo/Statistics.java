@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+/**
+ * The statistics of a numeric field, calculated in one aggregation.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class Statistics {
+    
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+    
+    public Statistics(){
+        
+    }
+    
+    public Statistics(long count, double sum, double min, double max){
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * The number of the matched documents.
+     * @return 
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+    
+    /**
+     * The average value, which is sum / count.
+     * @return 
+     */
+    public double getAverage() {
+        if(count == 0){
+            return 0;
+        }
+        return sum / count;
+    }
+    
+    @Override
+    public String toString(){
+        return "{count:" + count + ", sum:" + sum + ", min:" + min + ", max:" + max + ", average:" + getAverage() + "}";
+    }
+    
+}
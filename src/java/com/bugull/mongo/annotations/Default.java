@@ -30,6 +30,8 @@ public final class Default {
     public final static long CAP_SIZE = -1;
     public final static long CAP_MAX = -1;
     
+    public final static int ID_BLOCK_SIZE = 20;
+    
     public final static String CASCADE = "";
     
     public final static String CASCADE_CREATE = "C";
@@ -37,4 +39,6 @@ public final class Default {
     public final static String CASCADE_UPDATE = "U";
     public final static String CASCADE_DELETE = "D";
     
+    public final static int CASCADE_READ_DEPTH = 5;
+    
 }
\ No newline at end of file
@@ -33,4 +33,5 @@ public @interface Entity {
     public boolean capped() default false;
     public long capSize() default Default.CAP_SIZE;
     public long capMax() default Default.CAP_MAX;
+    public String connection() default Default.NAME;
 }
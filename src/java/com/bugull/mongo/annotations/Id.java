@@ -30,4 +30,5 @@ import java.lang.annotation.Target;
 public @interface Id {
     public IdType type() default IdType.AUTO_GENERATE;
     public long start() default 1L;
+    public int blockSize() default Default.ID_BLOCK_SIZE;
 }
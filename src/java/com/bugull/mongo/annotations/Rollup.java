@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declare a rollup collection, which is kept up to date when entities are inserted, removed, or increased by BuguUpdater.inc().
+ * 
+ * <p>The field names are the names stored in mongoDB.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Rollup {
+    public String name();
+    public String time() default Default.NAME;
+    public RollupPeriod period() default RollupPeriod.DAILY;
+    public String[] groupBy() default {};
+    public String[] sum() default {};
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.EnsureIndex;
+import com.bugull.mongo.annotations.Entity;
+import com.bugull.mongo.exception.DBConnectionException;
+import com.bugull.mongo.metrics.BuguMetrics;
+import com.bugull.mongo.metrics.MetricsDecoderFactory;
+import com.bugull.mongo.misc.DBIndex;
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBDecoderFactory;
+import com.mongodb.DBObject;
+import com.mongodb.DefaultDBDecoder;
+import com.mongodb.Mongo;
+import com.mongodb.MongoClient;
+import com.mongodb.MongoException;
+import java.util.Map.Entry;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.log4j.Logger;
+
+/**
+ * Cache(Map) contains collection handles. 
+ * 
+ * <p>A collection is created with the capped options, and the @EnsureIndex are ensured, only at the first time it's used.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CollectionCache {
+    
+    private final static Logger logger = Logger.getLogger(CollectionCache.class);
+    
+    private final ConcurrentMap<String, DBCollection> cache = new ConcurrentHashMap<String, DBCollection>();
+    
+    //key --> entity name, for the metrics of decoding
+    private final ConcurrentMap<String, String> entities = new ConcurrentHashMap<String, String>();
+    
+    private static class Holder {
+        final static CollectionCache instance = new CollectionCache();
+    } 
+    
+    public static CollectionCache getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Get the collection of an entity.
+     * @param clazz the entity class
+     * @param name the collection name, with the split suffix if any
+     * @return 
+     */
+    public DBCollection get(Class<?> clazz, String name){
+        //the class decides the connection
+        String key = clazz.getName() + "/" + name;
+        DBCollection coll = cache.get(key);
+        if(coll != null){
+            return coll;
+        }
+        
+        coll = init(clazz, name);
+        DBCollection temp = cache.putIfAbsent(key, coll);
+        if(temp != null){
+            return temp;
+        }else{
+            String entity = MapperUtil.getEntityName(clazz);
+            entities.put(key, entity);
+            //checked after the collection is cached, so it's not missed by setMetricsEnabled()
+            if(BuguMetrics.getInstance().isEnabled()){
+                installMetrics(coll, entity);
+            }
+            return coll;
+        }
+    }
+    
+    /**
+     * Get the collection of an entity, and make sure it exists in database, even if it's not capped and has no index.
+     * @param clazz
+     * @param name
+     * @return 
+     */
+    public DBCollection create(Class<?> clazz, String name){
+        DBCollection coll = get(clazz, name);
+        DB db = coll.getDB();
+        if(!db.collectionExists(name)){
+            try{
+                db.createCollection(name, new BasicDBObject());
+            }catch(MongoException ex){
+                //created by another thread or process
+            }
+        }
+        return coll;
+    }
+    
+    /**
+     * Forget a collection, after it's dropped. Next time it's used, it will be created and indexed again.
+     * @param clazz
+     * @param name 
+     */
+    public void remove(Class<?> clazz, String name){
+        cache.remove(clazz.getName() + "/" + name);
+    }
+    
+    /**
+     * Forget all collections.
+     */
+    public void clear(){
+        cache.clear();
+        entities.clear();
+    }
+    
+    /**
+     * Install or uninstall the decoder which measures the decoding, on all the cached collections. 
+     * It's called by BuguMetrics when metrics is enabled or disabled.
+     * @param enabled 
+     */
+    public void setMetricsEnabled(boolean enabled){
+        for(Entry<String, DBCollection> entry : cache.entrySet()){
+            DBCollection coll = entry.getValue();
+            if(enabled){
+                String entity = entities.get(entry.getKey());
+                if(entity != null){
+                    installMetrics(coll, entity);
+                }
+            }else{
+                uninstallMetrics(coll);
+            }
+        }
+    }
+    
+    private void installMetrics(DBCollection coll, String entity){
+        synchronized(coll){
+            DBDecoderFactory factory = coll.getDBDecoderFactory();
+            if(factory instanceof MetricsDecoderFactory){
+                return;
+            }
+            if(factory == null){
+                factory = getDefaultDecoderFactory(coll);
+            }
+            coll.setDBDecoderFactory(new MetricsDecoderFactory(entity, factory));
+        }
+    }
+    
+    private void uninstallMetrics(DBCollection coll){
+        synchronized(coll){
+            DBDecoderFactory factory = coll.getDBDecoderFactory();
+            if(factory instanceof MetricsDecoderFactory){
+                coll.setDBDecoderFactory(((MetricsDecoderFactory)factory).getFactory());
+            }
+        }
+    }
+    
+    private DBDecoderFactory getDefaultDecoderFactory(DBCollection coll){
+        Mongo mongo = coll.getDB().getMongo();
+        if(mongo instanceof MongoClient){
+            DBDecoderFactory factory = ((MongoClient)mongo).getMongoClientOptions().getDbDecoderFactory();
+            if(factory != null){
+                return factory;
+            }
+        }
+        return DefaultDBDecoder.FACTORY;
+    }
+    
+    private DBCollection init(Class<?> clazz, String name){
+        DB db = null;
+        try {
+            db = BuguConnection.getInstance(clazz).getDB();
+        } catch (DBConnectionException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        DBCollection coll = null;
+        Entity entity = clazz.getAnnotation(Entity.class);
+        //if capped
+        if(entity.capped() && !db.collectionExists(name)){
+            DBObject options = new BasicDBObject("capped", true);
+            long capSize = entity.capSize();
+            if(capSize != Default.CAP_SIZE){
+                options.put("size", capSize);
+            }
+            long capMax = entity.capMax();
+            if(capMax != Default.CAP_MAX){
+                options.put("max", capMax);
+            }
+            try{
+                coll = db.createCollection(name, options);
+            }catch(MongoException ex){
+                //created by another thread or process
+                coll = db.getCollection(name);
+            }
+        }else{
+            coll = db.getCollection(name);
+        }
+        //for @EnsureIndex
+        EnsureIndex ei = clazz.getAnnotation(EnsureIndex.class);
+        if(ei != null){
+            List<DBIndex> list = MapperUtil.getDBIndex(ei.value());
+            for(DBIndex dbi : list){
+                coll.createIndex(dbi.getKeys(), dbi.getOptions());
+            }
+        }
+        return coll;
+    }
+    
+}
@@ -38,6 +38,13 @@ public class DaoCache {
         return Holder.instance;
     }
     
+    /**
+     * Forget all DAOs. It's called when a connection is closed.
+     */
+    public void clear(){
+        cache.clear();
+    }
+    
     public <T> InternalDao<T> get(Class<T> clazz){
         String name = clazz.getName();
         InternalDao<?> dao = cache.get(name);
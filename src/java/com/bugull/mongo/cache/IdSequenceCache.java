@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.misc.IdSequence;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache(Map) contains id sequence instance, for auto increased id.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class IdSequenceCache {
+    
+    private final ConcurrentMap<String, IdSequence> cache = new ConcurrentHashMap<String, IdSequence>();
+    
+    private static class Holder {
+        final static IdSequenceCache instance = new IdSequenceCache();
+    } 
+    
+    public static IdSequenceCache getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Forget all id sequences. It's called when a connection is closed.
+     */
+    public void clear(){
+        cache.clear();
+    }
+    
+    public IdSequence get(Class<?> clazz){
+        String name = clazz.getName();
+        IdSequence seq = cache.get(name);
+        if(seq != null){
+            return seq;
+        }
+        
+        seq = new IdSequence(clazz);
+        IdSequence temp = cache.putIfAbsent(name, seq);
+        if(temp != null){
+            return temp;
+        }else{
+            return seq;
+        }
+    }
+    
+}
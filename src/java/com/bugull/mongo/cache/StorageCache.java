@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.cache;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.annotations.EnsureIndex;
+import com.bugull.mongo.misc.DBIndex;
+import com.bugull.mongo.storage.MemoryDatabase;
+import com.bugull.mongo.storage.MemoryStorage;
+import com.bugull.mongo.storage.MongoStorage;
+import com.bugull.mongo.storage.Storage;
+import com.bugull.mongo.utils.MapperUtil;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache(Map) contains the storages of entity collections.
+ * 
+ * <p>If the connection of an entity is kept in memory, the storage is a MemoryStorage, and the @EnsureIndex are created in memory. 
+ * Otherwise, it's a MongoStorage of the collection in CollectionCache.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class StorageCache {
+    
+    private final ConcurrentMap<String, Storage> cache = new ConcurrentHashMap<String, Storage>();
+    
+    private static class Holder {
+        final static StorageCache instance = new StorageCache();
+    } 
+    
+    public static StorageCache getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Get the storage of an entity.
+     * @param clazz the entity class
+     * @param name the collection name, with the split suffix if any
+     * @return 
+     */
+    public Storage get(Class<?> clazz, String name){
+        String key = clazz.getName() + "/" + name;
+        Storage storage = cache.get(key);
+        if(storage != null){
+            return storage;
+        }
+        
+        storage = init(clazz, name);
+        Storage temp = cache.putIfAbsent(key, storage);
+        if(temp != null){
+            return temp;
+        }else{
+            return storage;
+        }
+    }
+    
+    /**
+     * Forget a storage, after it's dropped. Next time it's used, it will be created and indexed again.
+     * @param clazz
+     * @param name 
+     */
+    public void remove(Class<?> clazz, String name){
+        cache.remove(clazz.getName() + "/" + name);
+        CollectionCache.getInstance().remove(clazz, name);
+    }
+    
+    /**
+     * Forget all storages, and the collections in CollectionCache. 
+     * It's called when a connection is closed or kept in memory, because a storage is bound to the database it's created on.
+     */
+    public void clear(){
+        cache.clear();
+        CollectionCache.getInstance().clear();
+    }
+    
+    private Storage init(Class<?> clazz, String name){
+        MemoryDatabase memory = BuguConnection.getInstance(clazz).getMemoryDatabase();
+        if(memory == null){
+            return new MongoStorage(CollectionCache.getInstance().get(clazz, name));
+        }
+        MemoryStorage storage = new MemoryStorage(memory, name);
+        //for @EnsureIndex
+        EnsureIndex ei = clazz.getAnnotation(EnsureIndex.class);
+        if(ei != null){
+            List<DBIndex> list = MapperUtil.getDBIndex(ei.value());
+            for(DBIndex dbi : list){
+                boolean unique = Boolean.TRUE.equals(dbi.getOptions().get("unique"));
+                storage.createIndex(dbi.getKeys(), unique);
+            }
+        }
+        return storage;
+    }
+    
+}
@@ -16,6 +16,8 @@
 
 package com.bugull.mongo.decoder;
 
+import com.bugull.mongo.misc.CascadeReadContext;
+import com.bugull.mongo.misc.RefBatch;
 import java.lang.reflect.Field;
 
 /**
@@ -36,4 +38,19 @@ public abstract class AbstractDecoder implements Decoder{
         return value == null;
     }
     
+    /**
+     * Defer the CASCADE_READ field, which has been set with the referenced entities with id only.
+     * @param obj 
+     */
+    protected void cascadeRead(Object obj){
+        CascadeReadContext context = CascadeReadContext.current();
+        if(context != null){
+            context.add(obj, field);
+        }else{
+            RefBatch batch = new RefBatch();
+            batch.add(obj, field);
+            batch.fetch();
+        }
+    }
+    
 }
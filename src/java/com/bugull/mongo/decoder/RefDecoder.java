@@ -20,9 +20,7 @@ import com.bugull.mongo.BuguEntity;
 import com.bugull.mongo.annotations.Default;
 import com.bugull.mongo.annotations.Ref;
 import com.bugull.mongo.cache.ConstructorCache;
-import com.bugull.mongo.cache.DaoCache;
 import com.bugull.mongo.utils.FieldUtil;
-import com.bugull.mongo.misc.InternalDao;
 import com.bugull.mongo.utils.ReferenceUtil;
 import com.mongodb.DBObject;
 import java.lang.reflect.Field;
@@ -50,15 +48,12 @@ public class RefDecoder extends AbstractDecoder{
     public void decode(Object obj){
         String refId = ReferenceUtil.fromDbReference(ref, value);
         Class<?> clazz = FieldUtil.getRealType(field);
-        BuguEntity refObj = null;
-        if(ref.cascade().toUpperCase().indexOf(Default.CASCADE_READ)==-1){
-            refObj = (BuguEntity)ConstructorCache.getInstance().create(clazz);
-            refObj.setId(refId);
-        }else{
-            InternalDao dao = DaoCache.getInstance().get(clazz);
-            refObj = (BuguEntity)dao.findOne(refId);
-        }
+        BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(clazz);
+        refObj.setId(refId);
         FieldUtil.set(obj, field, refObj);
+        if(ref.cascade().toUpperCase().indexOf(Default.CASCADE_READ) != -1){
+            cascadeRead(obj);
+        }
     }
     
 }
@@ -17,15 +17,11 @@
 package com.bugull.mongo.decoder;
 
 import com.bugull.mongo.BuguEntity;
-import com.bugull.mongo.BuguQuery;
 import com.bugull.mongo.annotations.Default;
 import com.bugull.mongo.annotations.RefList;
 import com.bugull.mongo.cache.ConstructorCache;
-import com.bugull.mongo.cache.DaoCache;
 import com.bugull.mongo.utils.DataType;
 import com.bugull.mongo.utils.FieldUtil;
-import com.bugull.mongo.misc.InternalDao;
-import com.bugull.mongo.utils.Operator;
 import com.bugull.mongo.utils.ReferenceUtil;
 import com.mongodb.DBObject;
 import java.lang.reflect.Array;
@@ -85,75 +81,34 @@ public class RefListDecoder extends AbstractDecoder{
             return;
         }
         Object arr = Array.newInstance(clazz, size);
-        if(refList.cascade().toUpperCase().indexOf(Default.CASCADE_READ)==-1){
-            for(int i=0; i<size; i++){
-                Object item = list.get(i);
-                if(item != null){
-                    String refId = ReferenceUtil.fromDbReference(refList, item);
-                    BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(clazz);
-                    refObj.setId(refId);
-                    Array.set(arr, i, refObj);
-                }else{
-                    Array.set(arr, i, null);
-                }
-            }
-        }
-        else{
-            List<String> idList = new ArrayList<String>();
-            for(int i=0; i<size; i++){
-                Object item = list.get(i);
-                if(item != null){
-                    String refId = ReferenceUtil.fromDbReference(refList, item);
-                    idList.add(refId);
-                }
-            }
-            InternalDao dao = DaoCache.getInstance().get(clazz);
-            BuguQuery query = dao.query().in(Operator.ID, idList);
-            String sort = refList.sort();
-            if(!sort.equals(Default.SORT)){
-                query.sort(sort);
-            }
-            List<BuguEntity> entityList = query.results();
-            //when query returns, the size maybe changed
-            if(entityList.size() != size){
-                size = entityList.size();
-                arr = Array.newInstance(clazz, size);
-            }
-            for(int i=0; i<size; i++){
-                Array.set(arr, i, entityList.get(i));
+        for(int i=0; i<size; i++){
+            Object item = list.get(i);
+            if(item != null){
+                String refId = ReferenceUtil.fromDbReference(refList, item);
+                BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(clazz);
+                refObj.setId(refId);
+                Array.set(arr, i, refObj);
+            }else{
+                Array.set(arr, i, null);
             }
         }
         FieldUtil.set(obj, field, arr);
+        if(isCascadeRead()){
+            cascadeRead(obj);
+        }
     }
     
     private void decodeCollection(Object obj, Class clazz){
         clazz = FieldUtil.getRealType(clazz, field);
         Collection collection = (Collection)value;
         List<BuguEntity> result = new ArrayList<BuguEntity>();
-        if(refList.cascade().toUpperCase().indexOf(Default.CASCADE_READ)==-1){
-            for(Object item : collection){
-                if(item != null){
-                    String refId = ReferenceUtil.fromDbReference(refList, item);
-                    BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(clazz);
-                    refObj.setId(refId);
-                    result.add(refObj);
-                }
-            }
-        }else{
-            List<String> idList = new ArrayList<String>();
-            for(Object item : collection){
-                if(item != null){
-                    String refId = ReferenceUtil.fromDbReference(refList, item);
-                    idList.add(refId);
-                }
+        for(Object item : collection){
+            if(item != null){
+                String refId = ReferenceUtil.fromDbReference(refList, item);
+                BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(clazz);
+                refObj.setId(refId);
+                result.add(refObj);
             }
-            InternalDao dao = DaoCache.getInstance().get(clazz);
-            BuguQuery query = dao.query().in(Operator.ID, idList);
-            String sort = refList.sort();
-            if(!sort.equals(Default.SORT)){
-                query.sort(sort);
-            }
-            result = query.results();
         }
         Class type = field.getType();
         if(DataType.isListType(type)){
@@ -165,38 +120,34 @@ public class RefListDecoder extends AbstractDecoder{
         else if(DataType.isQueueType(type)){
             FieldUtil.set(obj, field, new LinkedList(result));
         }
+        if(isCascadeRead()){
+            cascadeRead(obj);
+        }
     }
     
     private void decodeMap(Object obj, Class clazz){
         clazz = FieldUtil.getRealType(clazz, field);
         Map map = (Map)value;
         Map<Object, BuguEntity> result = new HashMap<Object, BuguEntity>();
-        if(refList.cascade().toUpperCase().indexOf(Default.CASCADE_READ)==-1){
-            for(Object key : map.keySet()){
-                Object item = map.get(key);
-                if(item != null){
-                    String refId = ReferenceUtil.fromDbReference(refList, item);
-                    BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(clazz);
-                    refObj.setId(refId);
-                    result.put(key, refObj);
-                }else{
-                    result.put(key, null);
-                }
-            }
-        }else{
-            InternalDao dao = DaoCache.getInstance().get(clazz);
-            for(Object key : map.keySet()){
-                Object item = map.get(key);
-                if(item != null){
-                    String refId = ReferenceUtil.fromDbReference(refList, item);
-                    BuguEntity refObj = (BuguEntity)dao.findOne(refId);
-                    result.put(key, refObj);
-                }else{
-                    result.put(key, null);
-                }
+        for(Object key : map.keySet()){
+            Object item = map.get(key);
+            if(item != null){
+                String refId = ReferenceUtil.fromDbReference(refList, item);
+                BuguEntity refObj = (BuguEntity)ConstructorCache.getInstance().create(clazz);
+                refObj.setId(refId);
+                result.put(key, refObj);
+            }else{
+                result.put(key, null);
             }
         }
         FieldUtil.set(obj, field, result);
+        if(isCascadeRead()){
+            cascadeRead(obj);
+        }
+    }
+    
+    private boolean isCascadeRead(){
+        return refList.cascade().toUpperCase().indexOf(Default.CASCADE_READ) != -1;
     }
     
 }
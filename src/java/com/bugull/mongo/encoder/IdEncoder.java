@@ -17,9 +17,8 @@
 package com.bugull.mongo.encoder;
 
 import com.bugull.mongo.annotations.Id;
-import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.cache.IdSequenceCache;
 import com.bugull.mongo.exception.IdException;
-import com.bugull.mongo.misc.InternalDao;
 import com.bugull.mongo.utils.Operator;
 import java.lang.reflect.Field;
 import org.apache.log4j.Logger;
@@ -73,13 +72,7 @@ public class IdEncoder extends AbstractEncoder{
                 break;
             case AUTO_INCREASE:
                 if(value == null){
-                    InternalDao dao = DaoCache.getInstance().get(clazz);
-                    long max = dao.getMaxId();
-                    if(max == 0){
-                        result = id.start();
-                    }else{
-                        result = max + 1L;
-                    }
+                    result = IdSequenceCache.getInstance().get(clazz).next();
                 }else{
                     result = Long.parseLong(value.toString());
                 }
@@ -17,7 +17,10 @@
 package com.bugull.mongo.fs;
 
 import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.annotations.Default;
 import com.bugull.mongo.exception.DBConnectionException;
+import com.bugull.mongo.metrics.BuguMetrics;
+import com.bugull.mongo.interceptor.OperationType;
 import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.utils.Operator;
 import com.mongodb.BasicDBObject;
@@ -58,11 +61,20 @@ public class BuguFS {
     public final static String FILENAME = "filename";
     
     public BuguFS(String bucketName, long chunkSize){
+        this(Default.NAME, bucketName, chunkSize);
+    }
+    
+    /**
+     * @param connection the name of the connection, empty for the default connection
+     * @param bucketName
+     * @param chunkSize 
+     */
+    public BuguFS(String connection, String bucketName, long chunkSize){
         this.bucketName = bucketName;
         this.chunkSize = chunkSize;
         DB db = null;
         try {
-            db = BuguConnection.getInstance().getDB();
+            db = BuguConnection.getInstance(connection).getDB();
         } catch (DBConnectionException ex) {
             logger.error(ex.getMessage(), ex);
         }
@@ -94,7 +106,7 @@ public class BuguFS {
         f.setChunkSize(chunkSize);
         f.setFilename(filename);
         setAttributes(f, attributes);
-        f.save();
+        doSave(f);
     }
     
     public void save(InputStream is, String filename){
@@ -106,7 +118,7 @@ public class BuguFS {
         f.setChunkSize(chunkSize);
         f.setFilename(filename);
         setAttributes(f, attributes);
-        f.save();
+        doSave(f);
     }
     
     public void save(byte[] data, String filename){
@@ -118,7 +130,13 @@ public class BuguFS {
         f.setChunkSize(chunkSize);
         f.setFilename(filename);
         setAttributes(f, attributes);
+        doSave(f);
+    }
+    
+    private void doSave(GridFSInputFile f){
+        long start = System.nanoTime();
         f.save();
+        BuguMetrics.record(getMetricsName(), OperationType.SAVE, start, 1);
     }
     
     private void setAttributes(GridFSInputFile f, Map<String, Object> attributes){
@@ -130,20 +148,29 @@ public class BuguFS {
     }
     
     public GridFSDBFile findOne(String filename){
-        return fs.findOne(filename);
+        return findOne(new BasicDBObject(FILENAME, filename));
     }
     
     public GridFSDBFile findOne(DBObject query){
-        return fs.findOne(query);
+        long start = System.nanoTime();
+        GridFSDBFile f = fs.findOne(query);
+        BuguMetrics.record(getMetricsName(), OperationType.FIND_ONE, start, f == null ? 0 : 1);
+        return f;
     }
     
     public List<GridFSDBFile> find(DBObject query){
-        return fs.find(query);
+        long start = System.nanoTime();
+        List<GridFSDBFile> list = fs.find(query);
+        BuguMetrics.record(getMetricsName(), OperationType.FIND, start, list.size());
+        return list;
     }
     
     public List<GridFSDBFile> find(DBObject query, String orderBy){
         DBObject sort = MapperUtil.getSort(orderBy);
-        return fs.find(query, sort);
+        long start = System.nanoTime();
+        List<GridFSDBFile> list = fs.find(query, sort);
+        BuguMetrics.record(getMetricsName(), OperationType.FIND, start, list.size());
+        return list;
     }
     
     public List<GridFSDBFile> find(DBObject query, int pageNum, int pageSize){
@@ -173,22 +200,30 @@ public class BuguFS {
     }
     
     public void remove(String filename){
-        fs.remove(filename);
+        remove(new BasicDBObject(FILENAME, filename));
     }
     
     public void remove(DBObject query){
+        long start = System.nanoTime();
         fs.remove(query);
+        BuguMetrics.record(getMetricsName(), OperationType.REMOVE, start, 0);
     }
     
     private List<GridFSDBFile> toFileList(DBCursor cursor){
+        long start = System.nanoTime();
         List<GridFSDBFile> list = new ArrayList<GridFSDBFile>();
         while(cursor.hasNext()){
             DBObject dbo = cursor.next();
             list.add((GridFSDBFile)dbo);
         }
         cursor.close();
+        BuguMetrics.record(getMetricsName(), OperationType.FIND, start, list.size());
         return list;
     }
+    
+    private String getMetricsName(){
+        return "fs:" + bucketName;
+    }
 
     public String getBucketName() {
         return bucketName;
@@ -15,6 +15,7 @@
  */
 package com.bugull.mongo.fs;
 
+import com.bugull.mongo.annotations.Default;
 import com.mongodb.gridfs.GridFS;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -36,6 +37,13 @@ public class BuguFSFactory {
         return Holder.instance;
     }
     
+    /**
+     * Forget all BuguFS objects. It's called when a connection is closed.
+     */
+    public void clear(){
+        cache.clear();
+    }
+    
     public BuguFS create(){
         return create(GridFS.DEFAULT_BUCKET, GridFS.DEFAULT_CHUNKSIZE);
     }
@@ -49,12 +57,24 @@ public class BuguFSFactory {
     }
     
     public BuguFS create(String bucketName, long chunkSize){
-        BuguFS fs = cache.get(bucketName);
+        return create(Default.NAME, bucketName, chunkSize);
+    }
+    
+    /**
+     * Create a BuguFS on a named connection.
+     * @param connection the name of the connection, empty for the default connection
+     * @param bucketName
+     * @param chunkSize
+     * @return 
+     */
+    public BuguFS create(String connection, String bucketName, long chunkSize){
+        String key = connection + "/" + bucketName;
+        BuguFS fs = cache.get(key);
         if(fs != null){
             return fs;
         }
-        fs = new BuguFS(bucketName, chunkSize);
-        BuguFS temp = cache.putIfAbsent(bucketName, fs);
+        fs = new BuguFS(connection, bucketName, chunkSize);
+        BuguFS temp = cache.putIfAbsent(key, fs);
         if(temp != null){
             return temp;
         }else{
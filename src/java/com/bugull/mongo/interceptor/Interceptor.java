@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.interceptor;
+
+/**
+ * Intercept the operations of DAO, query and updater, for tracing, profiling, cost accounting and so on.
+ * 
+ * <p>An interceptor is called in the thread doing the operation, so it should be fast. 
+ * The exceptions thrown by an interceptor are logged, and don't break the operation.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface Interceptor {
+    
+    /**
+     * Called before the operation is sent to database.
+     * @param op 
+     */
+    public void before(Operation op);
+    
+    /**
+     * Called after the operation succeeds.
+     * @param op
+     * @param elapsed time in nanoseconds
+     * @param resultSize documents returned or affected, 0 if unknown
+     */
+    public void after(Operation op, long elapsed, long resultSize);
+    
+    /**
+     * Called after the operation fails.
+     * @param op
+     * @param elapsed time in nanoseconds
+     * @param ex 
+     */
+    public void onError(Operation op, long elapsed, Throwable ex);
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.interceptor;
+
+import com.mongodb.DBObject;
+import org.apache.log4j.Logger;
+
+/**
+ * A chain of interceptors. 
+ * 
+ * <p>Every DAO has its own chain, and the global chain applies to all DAOs. 
+ * When no interceptor is installed, isEmpty() returns true, and the callers run the operation directly, 
+ * without creating a Work object.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class InterceptorChain {
+    
+    private final static Logger logger = Logger.getLogger(InterceptorChain.class);
+    
+    private final static Interceptor[] EMPTY = new Interceptor[0];
+    
+    private final static InterceptorChain global = new InterceptorChain(null);
+    
+    private final InterceptorChain parent;
+    private volatile Interceptor[] interceptors = EMPTY;
+    
+    /**
+     * Create a chain, which calls the global interceptors first, then its own.
+     */
+    public InterceptorChain(){
+        this(global);
+    }
+    
+    private InterceptorChain(InterceptorChain parent){
+        this.parent = parent;
+    }
+    
+    /**
+     * @return the chain applies to all DAOs
+     */
+    public static InterceptorChain getGlobal(){
+        return global;
+    }
+    
+    public synchronized void add(Interceptor interceptor){
+        Interceptor[] arr = new Interceptor[interceptors.length + 1];
+        System.arraycopy(interceptors, 0, arr, 0, interceptors.length);
+        arr[interceptors.length] = interceptor;
+        interceptors = arr;
+    }
+    
+    public synchronized void remove(Interceptor interceptor){
+        int index = -1;
+        for(int i=0; i<interceptors.length; i++){
+            if(interceptors[i] == interceptor){
+                index = i;
+                break;
+            }
+        }
+        if(index == -1){
+            return;
+        }
+        Interceptor[] arr = new Interceptor[interceptors.length - 1];
+        System.arraycopy(interceptors, 0, arr, 0, index);
+        System.arraycopy(interceptors, index + 1, arr, index, arr.length - index);
+        interceptors = arr;
+    }
+    
+    /**
+     * Check whether there is no interceptor to call, neither in this chain nor in the global chain.
+     * @return 
+     */
+    public boolean isEmpty(){
+        return interceptors.length == 0 && (parent == null || parent.interceptors.length == 0);
+    }
+    
+    /**
+     * Start an operation.
+     * @param type see OperationType
+     * @param clazz the entity class
+     * @param condition the query condition, or null
+     * @return null if no interceptor is installed
+     */
+    public Operation before(String type, Class<?> clazz, DBObject condition){
+        Interceptor[] own = interceptors;
+        Interceptor[] shared = parent == null ? EMPTY : parent.interceptors;
+        if(own.length == 0 && shared.length == 0){
+            return null;
+        }
+        Interceptor[] all = own;
+        if(shared.length > 0){
+            all = new Interceptor[shared.length + own.length];
+            System.arraycopy(shared, 0, all, 0, shared.length);
+            System.arraycopy(own, 0, all, shared.length, own.length);
+        }
+        Operation op = new Operation(type, clazz, condition, all);
+        for(Interceptor i : all){
+            try{
+                i.before(op);
+            }catch(RuntimeException ex){
+                logger.error("Interceptor failed before " + type, ex);
+            }
+        }
+        op.startTime = System.nanoTime();
+        return op;
+    }
+    
+    /**
+     * Run the work of an operation between before() and after(), or onError() if it throws.
+     * @param type see OperationType
+     * @param clazz the entity class
+     * @param condition the query condition, or null
+     * @param work
+     * @return the result of the work
+     */
+    public <R> R intercept(String type, Class<?> clazz, DBObject condition, Work<R> work){
+        Operation op = before(type, clazz, condition);
+        R result = null;
+        try{
+            result = work.run();
+        }catch(RuntimeException ex){
+            onError(op, ex);
+            throw ex;
+        }
+        if(op != null){
+            after(op, work.getResultSize(result));
+        }
+        return result;
+    }
+
+    /**
+     * Finish an operation successfully. The interceptors are called in reverse order.
+     * @param op the operation returned by before(), may be null
+     * @param resultSize 
+     */
+    public void after(Operation op, long resultSize){
+        if(op == null){
+            return;
+        }
+        long elapsed = System.nanoTime() - op.startTime;
+        Interceptor[] all = op.interceptors;
+        for(int i=all.length-1; i>=0; i--){
+            try{
+                all[i].after(op, elapsed, resultSize);
+            }catch(RuntimeException ex){
+                logger.error("Interceptor failed after " + op.getType(), ex);
+            }
+        }
+    }
+    
+    /**
+     * Finish an operation with an error. The interceptors are called in reverse order.
+     * @param op the operation returned by before(), may be null
+     * @param error 
+     */
+    public void onError(Operation op, Throwable error){
+        if(op == null){
+            return;
+        }
+        long elapsed = System.nanoTime() - op.startTime;
+        Interceptor[] all = op.interceptors;
+        for(int i=all.length-1; i>=0; i--){
+            try{
+                all[i].onError(op, elapsed, error);
+            }catch(RuntimeException ex){
+                logger.error("Interceptor failed on error of " + op.getType(), ex);
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.interceptor;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An operation being intercepted.
+ * 
+ * <p>Interceptors can keep their own state of the operation, such as a tracing span, in the attributes.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class Operation {
+    
+    private final static String PLACEHOLDER = "?";
+    
+    private final String type;
+    private final Class<?> entityClass;
+    private final DBObject condition;
+    final Interceptor[] interceptors;
+    
+    long startTime;
+    private DBObject shape;
+    private Map<String, Object> attributes;
+    
+    Operation(String type, Class<?> entityClass, DBObject condition, Interceptor[] interceptors){
+        this.type = type;
+        this.entityClass = entityClass;
+        this.condition = condition;
+        this.interceptors = interceptors;
+    }
+
+    /**
+     * @return see OperationType
+     */
+    public String getType() {
+        return type;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    /**
+     * @return the query condition, null if the operation has no condition
+     */
+    public DBObject getCondition() {
+        return condition;
+    }
+    
+    /**
+     * Get the shape of the condition, in which all the values are replaced by "?". 
+     * Operations of the same shape are the same query with different parameters.
+     * @return null if the operation has no condition
+     */
+    public DBObject getConditionShape(){
+        if(shape == null && condition != null){
+            shape = (DBObject)toShape(condition);
+        }
+        return shape;
+    }
+    
+    /**
+     * @return the System.nanoTime() when the operation is sent to database
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    public Object getAttribute(String name){
+        return attributes == null ? null : attributes.get(name);
+    }
+    
+    public void setAttribute(String name, Object value){
+        if(attributes == null){
+            attributes = new HashMap<String, Object>();
+        }
+        attributes.put(name, value);
+    }
+    
+    private Object toShape(Object value){
+        if(value instanceof List){
+            //elements of $and, $or and $nor are conditions too
+            List<Object> list = new ArrayList<Object>();
+            for(Object o : (List)value){
+                if(o instanceof DBObject){
+                    list.add(toShape(o));
+                }
+            }
+            return list.isEmpty() ? PLACEHOLDER : list;
+        }
+        if(value instanceof DBObject){
+            DBObject dbo = (DBObject)value;
+            DBObject result = new BasicDBObject();
+            for(String key : dbo.keySet()){
+                result.put(key, toShape(dbo.get(key)));
+            }
+            return result;
+        }
+        return PLACEHOLDER;
+    }
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.interceptor;
+
+/**
+ * Operation names used in metrics.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public final class OperationType {
+    
+    public final static String INSERT = "insert";
+    public final static String SAVE = "save";
+    public final static String REMOVE = "remove";
+    public final static String DROP = "drop";
+    public final static String FIND_ONE = "findOne";
+    public final static String FIND = "find";
+    public final static String COUNT = "count";
+    public final static String DISTINCT = "distinct";
+    public final static String UPDATE = "update";
+    public final static String AGGREGATE = "aggregate";
+    public final static String MAP_REDUCE = "mapReduce";
+    public final static String DECODE = "decode";
+    
+}
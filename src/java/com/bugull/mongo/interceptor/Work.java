@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.interceptor;
+
+import com.bugull.mongo.BuguEntity;
+import com.mongodb.DBObject;
+import com.mongodb.WriteResult;
+import java.util.Collection;
+
+/**
+ * The work of an operation, which is run by InterceptorChain.intercept().
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class Work<R> {
+    
+    public abstract R run();
+    
+    /**
+     * The result size passed to the interceptors. Override it when the size can't be known from the result.
+     * @param result
+     * @return n of a WriteResult, size of a collection, 1 for a found document, otherwise 0
+     */
+    public long getResultSize(R result){
+        if(result instanceof WriteResult){
+            return ((WriteResult)result).getN();
+        }
+        if(result instanceof Collection){
+            return ((Collection)result).size();
+        }
+        if(result instanceof DBObject || result instanceof BuguEntity){
+            return 1;
+        }
+        return 0;
+    }
+    
+}
@@ -16,8 +16,14 @@
 
 package com.bugull.mongo.lucene;
 
+import com.bugull.mongo.lucene.cache.IndexQueueCache;
 import com.bugull.mongo.lucene.cache.IndexWriterCache;
+import com.bugull.mongo.lucene.backend.IndexRefresher;
 import com.bugull.mongo.lucene.backend.IndexReopenTask;
+import com.bugull.mongo.lucene.backend.IndexWriteQueue;
+import com.bugull.mongo.lucene.backend.RejectPolicy;
+import com.bugull.mongo.lucene.backend.TaskExecutor;
+import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.lucene.cluster.ClusterConfig;
 import com.bugull.mongo.utils.ThreadUtil;
 import java.io.IOException;
@@ -25,7 +31,6 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -55,11 +60,24 @@ public class BuguIndex {
     private String directoryPath;
     private ClusterConfig clusterConfig;  //used in clustering environment
     
-    private ExecutorService executor;  //thread pool to maintain index writing 
+    private TaskExecutor executor;  //thread pool to maintain index writing 
     private int threadPoolSize;
+    private int queueCapacity = 1000;
+    private RejectPolicy rejectPolicy = RejectPolicy.CALLER_RUNS;
+    private int queueBatchSize = 500;  //max number of index writes applied in one batch
+    private int maxPendingWrites = 100000;  //max number of index writes waiting in an IndexWriteQueue
     
-    private ScheduledExecutorService scheduler;  //scheduler to reopen index
-    private long period = 30L * 1000L;  //by default, reopen index per 30 seconds
+    private TaskExecutor rebuildExecutor;  //thread pool to rebuild index, with low priority
+    private int rebuildThreads = Runtime.getRuntime().availableProcessors();
+    private double rebuildBufferSizeMB = 64;
+    
+    private TaskExecutor clusterExecutor;  //thread pool to send and handle cluster messages
+    private int clusterThreads = 2;
+    private int clusterQueueCapacity = 10000;
+    private RejectPolicy clusterRejectPolicy = RejectPolicy.CALLER_RUNS;
+    
+    private ScheduledExecutorService scheduler;  //scheduler to reopen the changed index
+    private long maxStaleness = 1000L;  //by default, a write can be searched within 1 second
     
     private boolean reopening;
     private Set<String> rebuildingSet;
@@ -75,21 +93,34 @@ public class BuguIndex {
     public void open(){
         rebuildingSet = Collections.synchronizedSet(new HashSet<String>());
         //default thread pool size is: cpu * 2 + 1
-        threadPoolSize = Runtime.getRuntime().availableProcessors() * 2 + 1;
-        executor = Executors.newFixedThreadPool(threadPoolSize);
+        if(threadPoolSize <= 0){
+            threadPoolSize = Runtime.getRuntime().availableProcessors() * 2 + 1;
+        }
+        executor = new TaskExecutor("bugu-index", threadPoolSize, queueCapacity, rejectPolicy, Thread.NORM_PRIORITY);
+        //rebuilding yields to the live index writing
+        rebuildExecutor = new TaskExecutor("bugu-index-rebuild", rebuildThreads, 100, RejectPolicy.ABORT, Thread.MIN_PRIORITY);
+        if(clusterConfig != null){
+            clusterExecutor = new TaskExecutor("bugu-index-cluster", clusterThreads, clusterQueueCapacity, clusterRejectPolicy, Thread.NORM_PRIORITY);
+        }
         scheduler = Executors.newSingleThreadScheduledExecutor();
-        scheduler.scheduleAtFixedRate(new IndexReopenTask(), period, period, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(new IndexReopenTask(), maxStaleness, maxStaleness, TimeUnit.MILLISECONDS);
         if(clusterConfig != null){
             clusterConfig.validate();
         }
     }
     
     public void close(){
-        ThreadUtil.safeClose(executor);
-        ThreadUtil.safeClose(scheduler);
         if(clusterConfig != null){
             clusterConfig.invalidate();
         }
+        ThreadUtil.safeClose(clusterExecutor);
+        ThreadUtil.safeClose(rebuildExecutor);
+        //apply the pending index writes before the threads stop
+        for(IndexWriteQueue queue : IndexQueueCache.getInstance().getAll().values()){
+            queue.flush();
+        }
+        ThreadUtil.safeClose(executor);
+        ThreadUtil.safeClose(scheduler);
         
         Map<String, IndexWriter>  map = IndexWriterCache.getInstance().getAll();
         for(IndexWriter writer : map.values()){
@@ -115,13 +146,117 @@ public class BuguIndex {
         }
     }
     
-    public ExecutorService getExecutor(){
+    /**
+     * Get the thread pool to write index.
+     * @return 
+     */
+    public TaskExecutor getExecutor(){
         return executor;
     }
     
+    public TaskExecutor getRebuildExecutor(){
+        return rebuildExecutor;
+    }
+    
+    /**
+     * Get the thread pool to send and handle cluster messages.
+     * @return null if not in clustering environment
+     */
+    public TaskExecutor getClusterExecutor(){
+        return clusterExecutor;
+    }
+    
+    /**
+     * Set the number of threads to write index, before open(). Default is cpu * 2 + 1.
+     * @param threadPoolSize 
+     */
     public void setThreadPoolSize(int threadPoolSize){
         this.threadPoolSize = threadPoolSize;
     }
+    
+    /**
+     * Set the capacity of the tasks waiting for the index writing threads, before open().
+     * @param queueCapacity 
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    public RejectPolicy getRejectPolicy() {
+        return rejectPolicy;
+    }
+
+    /**
+     * Set what to do when the index writing is overloaded, before open(). 
+     * It applies to the tasks of the index writing threads, and to the writes of a full IndexWriteQueue. 
+     * Default is CALLER_RUNS.
+     * @param rejectPolicy 
+     */
+    public void setRejectPolicy(RejectPolicy rejectPolicy) {
+        this.rejectPolicy = rejectPolicy;
+    }
+
+    public int getMaxPendingWrites() {
+        return maxPendingWrites;
+    }
+
+    /**
+     * Set the max number of index writes waiting in the IndexWriteQueue of an entity. 
+     * The writes of the same entity are coalesced, so they count as one.
+     * @param maxPendingWrites 
+     */
+    public void setMaxPendingWrites(int maxPendingWrites) {
+        this.maxPendingWrites = maxPendingWrites;
+    }
+    
+    /**
+     * Set the number of threads to rebuild index, before open(). Default is the number of cpu. 
+     * A rebuilding task creates the documents with all the threads.
+     * @param rebuildThreads 
+     */
+    public void setRebuildThreads(int rebuildThreads) {
+        this.rebuildThreads = rebuildThreads;
+    }
+    
+    public double getRebuildBufferSizeMB() {
+        return rebuildBufferSizeMB;
+    }
+
+    /**
+     * Set the RAM buffer size of the IndexWriter used in rebuilding. It's larger than the normal one, to flush less.
+     * @param rebuildBufferSizeMB 
+     */
+    public void setRebuildBufferSizeMB(double rebuildBufferSizeMB) {
+        this.rebuildBufferSizeMB = rebuildBufferSizeMB;
+    }
+    
+    /**
+     * Set the number of threads to send and handle cluster messages, before open(). Default is 2.
+     * @param clusterThreads 
+     */
+    public void setClusterThreads(int clusterThreads) {
+        this.clusterThreads = clusterThreads;
+    }
+
+    public void setClusterQueueCapacity(int clusterQueueCapacity) {
+        this.clusterQueueCapacity = clusterQueueCapacity;
+    }
+
+    public void setClusterRejectPolicy(RejectPolicy clusterRejectPolicy) {
+        this.clusterRejectPolicy = clusterRejectPolicy;
+    }
+
+    public int getQueueBatchSize() {
+        return queueBatchSize;
+    }
+
+    /**
+     * Set the max number of index writes applied in one batch by an IndexWriteQueue.
+     * @param queueBatchSize 
+     */
+    public void setQueueBatchSize(int queueBatchSize) {
+        this.queueBatchSize = queueBatchSize;
+    }
 
     public double getBufferSizeMB() {
         return bufferSizeMB;
@@ -131,8 +266,35 @@ public class BuguIndex {
         this.bufferSizeMB = bufferSizeMB;
     }
     
+    /**
+     * Same as setMaxStaleness(). 
+     * @param period 
+     */
     public void setIndexReopenPeriod(long period){
-        this.period = period;
+        this.maxStaleness = period;
+    }
+    
+    public long getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    /**
+     * Set the max time before a write can be searched, in milliseconds. Only the changed index is reopened. 
+     * Must be set before open().
+     * @param maxStaleness 
+     */
+    public void setMaxStaleness(long maxStaleness) {
+        this.maxStaleness = maxStaleness;
+    }
+    
+    /**
+     * Get the generation of the latest index write on an entity. 
+     * Use it to create a BuguSearcher that can read the writes submitted before.
+     * @param clazz
+     * @return 
+     */
+    public long getGeneration(Class<?> clazz){
+        return IndexRefresher.getInstance().getLatest(MapperUtil.getEntityName(clazz));
     }
 
     public Version getVersion() {
@@ -171,6 +333,15 @@ public class BuguIndex {
         return rebuildingSet.contains(entityName);
     }
 
+    /**
+     * Mark an entity as rebuilding, if it's not.
+     * @param entityName
+     * @return false if the entity is rebuilding already
+     */
+    public boolean tryRebuilding(String entityName) {
+        return rebuildingSet.add(entityName);
+    }
+
     public void setRebuilding(String entityName, boolean rebuilding) {
         if(rebuilding){
             rebuildingSet.add(entityName);
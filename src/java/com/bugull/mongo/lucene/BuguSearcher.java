@@ -18,6 +18,7 @@ package com.bugull.mongo.lucene;
 
 import com.bugull.mongo.cache.DaoCache;
 import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.lucene.backend.IndexRefresher;
 import com.bugull.mongo.lucene.cache.IndexSearcherCache;
 import com.bugull.mongo.exception.FieldException;
 import com.bugull.mongo.utils.FieldUtil;
@@ -63,11 +64,31 @@ public class BuguSearcher<T> {
     private BuguHighlighter highlighter;
     
     public BuguSearcher(Class<T> clazz){
+        this.clazz = clazz;
+        acquire(MapperUtil.getEntityName(clazz));
+    }
+    
+    /**
+     * Create a searcher that can read the index writes until a generation, to read your own writes. 
+     * @param clazz
+     * @param generation the generation returned by BuguIndex.getGeneration()
+     * @param timeout the max time to wait for the writes, in milliseconds. If timeout, the current index is searched.
+     */
+    public BuguSearcher(Class<T> clazz, long generation, long timeout){
         this.clazz = clazz;
         String name = MapperUtil.getEntityName(clazz);
-        searcher = IndexSearcherCache.getInstance().get(name);
-        reader = searcher.getIndexReader();
-        reader.incRef();
+        IndexSearcherCache.getInstance().get(name);
+        IndexRefresher.getInstance().waitForGeneration(name, generation, timeout);
+        acquire(name);
+    }
+    
+    private void acquire(String name){
+        IndexSearcherCache cache = IndexSearcherCache.getInstance();
+        //the reader may be closed by a refresh between get and incRef, then get the new one
+        do{
+            searcher = cache.get(name);
+            reader = searcher.getIndexReader();
+        }while(!reader.tryIncRef());
     }
     
     public BuguSearcher<T> setQuery(Query query){
@@ -39,7 +39,7 @@ public class IndexRebuilder {
     
     public void rebuild(){
         IndexRebuildTask task = new IndexRebuildTask(clazz, batchSize);
-        BuguIndex.getInstance().getExecutor().execute(task);
+        BuguIndex.getInstance().getRebuildExecutor().execute(task);
     }
 
     public void setBatchSize(int batchSize) {
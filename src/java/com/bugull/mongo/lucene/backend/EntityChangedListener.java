@@ -21,10 +21,13 @@ import com.bugull.mongo.annotations.Id;
 import com.bugull.mongo.cache.FieldsCache;
 import com.bugull.mongo.lucene.BuguIndex;
 import com.bugull.mongo.lucene.annotations.IndexRefBy;
+import com.bugull.mongo.lucene.cache.IndexQueueCache;
 import com.bugull.mongo.lucene.cluster.*;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -71,8 +74,7 @@ public class EntityChangedListener {
         if(checker.needIndex()){
             //insert to local index
             if(cluster == null || cluster.isSelfNode()){
-                IndexInsertTask task = new IndexInsertTask(obj);
-                BuguIndex.getInstance().getExecutor().execute(task);
+                IndexQueueCache.getInstance().get(clazz).insert(obj);
             }
             //insert to remote cluster index
             if(cluster != null){
@@ -87,8 +89,7 @@ public class EntityChangedListener {
         if(checker.needIndex()){
             //update local index
             if(cluster == null || cluster.isSelfNode()){
-                IndexUpdateTask task = new IndexUpdateTask(ent);
-                BuguIndex.getInstance().getExecutor().execute(task);
+                IndexQueueCache.getInstance().get(clazz).update(ent);
             }
             //update remote cluster index
             if(cluster != null){
@@ -105,6 +106,38 @@ public class EntityChangedListener {
         }
     }
     
+    /**
+     * Update a batch of entities. The local index is updated by one queue for the whole batch.
+     * @param list 
+     */
+    public void entityUpdate(List<BuguEntity> list){
+        List<BuguEntity> indexList = new ArrayList<BuguEntity>();
+        for(BuguEntity ent : list){
+            IndexFilterChecker checker = new IndexFilterChecker(ent);
+            if(checker.needIndex()){
+                indexList.add(ent);
+                //update remote cluster index
+                if(cluster != null){
+                    EntityMessage message = MessageFactory.createUpdateMessage(ent);
+                    cluster.sendMessage(message);
+                }
+            }
+            else{
+                processRemove(ent.getId());
+            }
+        }
+        //update local index
+        if(!indexList.isEmpty() && (cluster == null || cluster.isSelfNode())){
+            IndexQueueCache.getInstance().get(clazz).update(indexList);
+        }
+        //for @IndexRefBy
+        if(refListener != null && !onlyIdRefBy){
+            for(BuguEntity ent : list){
+                processRefBy(ent.getId());
+            }
+        }
+    }
+    
     public void entityRemove(String id){
         processRemove(id);
         //for @IndexRefBy
@@ -113,11 +146,34 @@ public class EntityChangedListener {
         }
     }
     
+    /**
+     * Remove a batch of entities. The local index is updated by one queue for the whole batch.
+     * @param ids 
+     */
+    public void entityRemove(List<String> ids){
+        //remove from local index
+        if(cluster == null || cluster.isSelfNode()){
+            IndexQueueCache.getInstance().get(clazz).remove(ids);
+        }
+        //remove from remote cluster index
+        if(cluster != null){
+            for(String id : ids){
+                ClassIdMessage message = MessageFactory.createRemoveMessage(clazz, id);
+                cluster.sendMessage(message);
+            }
+        }
+        //for @IndexRefBy
+        if(refListener != null){
+            for(String id : ids){
+                processRefBy(id);
+            }
+        }
+    }
+    
     private void processRemove(String id){
         //remove from local index
         if(cluster == null || cluster.isSelfNode()){
-            IndexRemoveTask task = new IndexRemoveTask(clazz, id);
-            BuguIndex.getInstance().getExecutor().execute(task);
+            IndexQueueCache.getInstance().get(clazz).remove(id);
         }
         //remove from remote cluster index
         if(cluster != null){
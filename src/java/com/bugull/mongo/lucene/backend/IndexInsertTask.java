@@ -34,15 +34,25 @@ public class IndexInsertTask implements Runnable {
     private final static Logger logger = Logger.getLogger(IndexInsertTask.class);
     
     private BuguEntity obj;
+    private String name;
+    private long generation;
     
     public IndexInsertTask(BuguEntity obj){
         this.obj = obj;
+        name = MapperUtil.getEntityName(obj.getClass());
+        generation = IndexRefresher.getInstance().next(name);
     }
 
     @Override
     public void run() {
-        Class<?> clazz = obj.getClass();
-        String name = MapperUtil.getEntityName(clazz);
+        try{
+            insert();
+        }finally{
+            IndexRefresher.getInstance().done(name, generation);
+        }
+    }
+    
+    private void insert(){
         IndexWriterCache cache = IndexWriterCache.getInstance();
         IndexWriter writer = cache.get(name);
         Document doc = new Document();
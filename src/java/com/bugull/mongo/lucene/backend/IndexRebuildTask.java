@@ -18,93 +18,242 @@ package com.bugull.mongo.lucene.backend;
 
 import com.bugull.mongo.BuguEntity;
 import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.lucene.cache.IndexQueueCache;
 import com.bugull.mongo.lucene.cache.IndexWriterCache;
 import com.bugull.mongo.lucene.BuguIndex;
 import com.bugull.mongo.misc.InternalDao;
+import com.bugull.mongo.storage.StorageCursor;
 import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.DBObject;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.store.FSDirectory;
 
 /**
- *
+ * Rebuild the lucene index of an entity in a new directory, and then swap it in.
+ * 
+ * <p>The collection is read by one cursor, and the documents are created and written by all the rebuilding threads. 
+ * The searches use the old index until the swap. The writes that happen during the rebuilding are captured, 
+ * and replayed to the new index before the swap.</p>
+ * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
 public class IndexRebuildTask implements Runnable{
     
     private final static Logger logger = Logger.getLogger(IndexRebuildTask.class);
     
+    private final static long MAX_YIELD = 200L;
+    
+    //the rounds of replaying the captured writes, before the index writing is blocked for the last round
+    private final static int MAX_REPLAY = 3;
+    
     private Class<?> clazz;
-    private IndexWriter writer;
     private int batchSize;
     
     private String entityName;
+    private String idName;
     
     public IndexRebuildTask(Class<?> clazz, int batchSize){
         this.clazz = clazz;
         this.batchSize = batchSize;
         entityName = MapperUtil.getEntityName(clazz);
-        IndexWriterCache cache = IndexWriterCache.getInstance();
-        writer = cache.get(entityName);
+        idName = FieldsCache.getInstance().getIdFieldName(clazz);
     }
 
     @Override
     public void run() {
         BuguIndex index = BuguIndex.getInstance();
-        if(index.isRebuilding(entityName)){
+        if(!index.tryRebuilding(entityName)){
             logger.error("Another rebuilding task is running on: " + entityName);
             return;
         }
-        index.setRebuilding(entityName, true);
         logger.info("Index rebuilding start on: " + entityName);
+        IndexWriteQueue queue = IndexQueueCache.getInstance().get(clazz);
+        File dir = new File(index.getDirectoryPath(), entityName + "." + System.currentTimeMillis());
+        IndexWriter writer = null;
+        Swap swap = null;
+        //capture before reading, so the writes missed by the cursor are replayed
+        queue.startCapture();
         try{
-            writer.deleteAll();
+            writer = IndexWriterCache.getInstance().create(dir, index.getRebuildBufferSizeMB());
+            build(writer);
+            //replay without blocking the index writing, until few writes are left
+            int rounds = 0;
+            while(queue.replayCaptured(writer) > batchSize && ++rounds < MAX_REPLAY){
+                //replay again
+            }
+            swap = new Swap(writer, dir);
+            queue.finishCapture(writer, swap);
         }catch(IOException ex){
-            logger.error("Something is wrong when lucene IndexWriter doing deleteAll()", ex);
+            logger.error("Something is wrong when rebuild the lucene index of " + entityName, ex);
+        }finally{
+            if(swap == null || !swap.done){
+                queue.cancelCapture();
+                close(writer, dir);
+            }
+            index.setRebuilding(entityName, false);
+        }
+        if(swap != null && swap.done){
+            close(swap.oldWriter, swap.oldDir);
+            logger.info("Index rebuilding finish on: " + entityName);
         }
+    }
+    
+    private void build(IndexWriter writer){
         InternalDao dao = DaoCache.getInstance().get(clazz);
-        long count = dao.count();
-        int pages = (int) (count / batchSize);
-        int remainder = (int) (count % batchSize);
-        if(pages > 0){
-            for(int i=1; i<=pages; i++){
-                List list = dao.findForLucene(i, batchSize);
-                process(list);
+        StorageCursor cursor = dao.findAllForLucene(batchSize);
+        try{
+            List<DBObject> list = new ArrayList<DBObject>(batchSize);
+            while(cursor.hasNext()){
+                list.add(cursor.next());
+                if(list.size() >= batchSize){
+                    process(writer, list);
+                    list = new ArrayList<DBObject>(batchSize);
+                }
+            }
+            if(!list.isEmpty()){
+                process(writer, list);
             }
+        }finally{
+            cursor.close();
         }
-        //process the remainder
-        if(remainder > 0){
-            List list = dao.findForLucene(++pages, batchSize);
-            process(list);
+    }
+    
+    private void process(final IndexWriter writer, List<DBObject> dbos){
+        yieldToLiveWrites();
+        final List list = MapperUtil.toList(clazz, dbos);
+        int size = list.size();
+        int parts = Math.max(1, Math.min(BuguIndex.getInstance().getRebuildExecutor().getCorePoolSize(), size));
+        int partSize = (size + parts - 1) / parts;
+        List<Runnable> tasks = new ArrayList<Runnable>();
+        for(int from=0; from<size; from+=partSize){
+            final int start = from;
+            final int end = Math.min(from + partSize, size);
+            tasks.add(new Runnable(){
+                @Override
+                public void run(){
+                    for(int i=start; i<end; i++){
+                        process(writer, (BuguEntity)list.get(i));
+                    }
+                }
+            });
         }
-        index.setRebuilding(entityName, false);
-        logger.info("Index rebuilding finish on: " + entityName);
+        TaskExecutor.runAll(BuguIndex.getInstance().getRebuildExecutor(), tasks);
     }
     
-    private void process(List list){
-        for(Object o : list){
-            BuguEntity obj = (BuguEntity)o;
-            process(obj);
+    /**
+     * Wait while the index writing threads are busy, so the live writes go first. 
+     * At most 200 milliseconds per batch, so the rebuilding is never starved.
+     */
+    private void yieldToLiveWrites(){
+        TaskExecutor executor = BuguIndex.getInstance().getExecutor();
+        long end = System.currentTimeMillis() + MAX_YIELD;
+        while((executor.getActiveCount() > 0 || executor.getQueueSize() > 0) && System.currentTimeMillis() < end){
+            try{
+                Thread.sleep(10);
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return;
+            }
         }
     }
     
-    private void process(BuguEntity obj){
+    private void process(IndexWriter writer, BuguEntity obj){
         IndexFilterChecker checker = new IndexFilterChecker(obj);
         if(checker.needIndex()){
             Document doc = new Document();
             IndexCreator creator = new IndexCreator(obj, "");
             creator.create(doc);
+            //the cursor is not a snapshot, an entity moved while reading may be returned twice, so update by id
             try {
-                writer.addDocument(doc);
+                writer.updateDocument(new Term(idName, obj.getId()), doc);
             } catch (CorruptIndexException ex) {
-                logger.error("IndexWriter can not add a document to the lucene index", ex);
+                logger.error("IndexWriter can not update the document", ex);
             } catch (IOException ex) {
-                logger.error("IndexWriter can not add a document to the lucene index", ex);
+                logger.error("IndexWriter can not update the document", ex);
+            }
+        }
+    }
+    
+    /**
+     * Close an IndexWriter which is not used any more, and delete its directory.
+     */
+    private void close(IndexWriter writer, File dir){
+        if(writer != null){
+            try{
+                writer.rollback();
+            }catch(IOException ex){
+                logger.error("Can not close the lucene IndexWriter of " + dir, ex);
+            }
+        }
+        if(dir != null && !delete(dir)){
+            logger.warn("Can not delete the old lucene index directory: " + dir);
+        }
+    }
+    
+    private boolean delete(File file){
+        File[] files = file.listFiles();
+        if(files != null){
+            for(File f : files){
+                delete(f);
+            }
+        }
+        return file.delete() || !file.exists();
+    }
+    
+    /**
+     * Swap in the new index, while the index writing is blocked.
+     */
+    private class Swap implements Runnable {
+        
+        private final IndexWriter writer;
+        private final File dir;
+        
+        boolean done;
+        IndexWriter oldWriter;
+        File oldDir;
+        
+        Swap(IndexWriter writer, File dir){
+            this.writer = writer;
+            this.dir = dir;
+        }
+
+        @Override
+        public void run() {
+            IndexWriterCache writerCache = IndexWriterCache.getInstance();
+            IndexReader reader = null;
+            try{
+                writer.commit();
+                reader = IndexReader.open(writer, true);
+                File currentDir = writerCache.getDirectory(entityName);
+                oldWriter = writerCache.swap(entityName, writer, dir);
+                oldDir = (oldWriter != null && oldWriter.getDirectory() instanceof FSDirectory) 
+                        ? ((FSDirectory)oldWriter.getDirectory()).getDirectory() : currentDir;
+            }catch(IOException ex){
+                logger.error("Can not swap in the rebuilt lucene index of " + entityName, ex);
+                if(reader != null){
+                    try{
+                        reader.close();
+                    }catch(IOException e){
+                        logger.error("Can not close the lucene IndexReader", e);
+                    }
+                }
+                return;
             }
+            IndexRefresher.getInstance().swap(entityName, new IndexSearcher(reader));
+            done = true;
         }
+        
     }
     
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.lucene.backend;
+
+import com.bugull.mongo.lucene.cache.IndexSearcherCache;
+import java.io.IOException;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.IndexSearcher;
+
+/**
+ * Near-real-time refresh of the IndexSearchers.
+ * 
+ * <p>Every index write task takes a generation when it's created, and reports it when it's done. 
+ * Only the indexes that have been written since the last refresh are reopened. 
+ * A caller can wait for the generation of its own writes, to read them back.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class IndexRefresher {
+    
+    private final static Logger logger = Logger.getLogger(IndexRefresher.class);
+    
+    private final ConcurrentMap<String, Generation> cache = new ConcurrentHashMap<String, Generation>();
+    
+    private static class Holder {
+        final static IndexRefresher instance = new IndexRefresher();
+    } 
+    
+    public static IndexRefresher getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Take a new generation for a write on the index.
+     * @param name the index name
+     * @return 
+     */
+    public long next(String name){
+        return getGeneration(name).next();
+    }
+    
+    /**
+     * Report that the write of a generation is done, successful or not.
+     * @param name
+     * @param generation 
+     */
+    public void done(String name, long generation){
+        getGeneration(name).done(generation);
+    }
+    
+    /**
+     * Mark the index as changed, by a write without generation, such as rebuilding.
+     * @param name 
+     */
+    public void changed(String name){
+        getGeneration(name).changed();
+    }
+    
+    /**
+     * Get the generation of the latest write on the index. 
+     * @param name
+     * @return 
+     */
+    public long getLatest(String name){
+        return getGeneration(name).getLatest();
+    }
+    
+    /**
+     * Get the generation that can be read by the current IndexSearcher.
+     * @param name
+     * @return 
+     */
+    public long getSearchable(String name){
+        return getGeneration(name).searchable;
+    }
+    
+    public boolean isDirty(String name){
+        Generation gen = cache.get(name);
+        return gen != null && gen.isDirty();
+    }
+    
+    /**
+     * Reopen the IndexSearchers of all the dirty indexes.
+     */
+    public void refreshDirty(){
+        Map<String, IndexSearcher> map = IndexSearcherCache.getInstance().getAll();
+        for(String name : map.keySet()){
+            if(isDirty(name)){
+                refresh(name);
+            }
+        }
+    }
+    
+    /**
+     * Wait until the write of a generation is done, and can be read by the IndexSearcher.
+     * @param name
+     * @param generation the generation returned by getLatest()
+     * @param timeout the max time to wait, in milliseconds
+     * @return false if timeout
+     */
+    public boolean waitForGeneration(String name, long generation, long timeout){
+        Generation gen = getGeneration(name);
+        if(gen.searchable >= generation){
+            return true;
+        }
+        try{
+            if(!gen.waitApplied(generation, timeout)){
+                return false;
+            }
+        }catch(InterruptedException ex){
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        if(gen.searchable < generation){
+            refresh(name);
+        }
+        return gen.searchable >= generation;
+    }
+    
+    /**
+     * Reopen the IndexSearcher of an index, if it has been opened.
+     * @param name 
+     */
+    public void refresh(String name){
+        Generation gen = getGeneration(name);
+        IndexSearcherCache searcherCache = IndexSearcherCache.getInstance();
+        synchronized(gen.refreshLock){
+            IndexSearcher searcher = searcherCache.getAll().get(name);
+            if(searcher == null){
+                return;
+            }
+            //the writes done before reopen are all visible to the new reader
+            long applied = gen.getApplied();
+            long changes = gen.getChanges();
+            IndexReader reader = searcher.getIndexReader();
+            IndexReader newReader = null;
+            try{
+                newReader = IndexReader.openIfChanged(reader, true);
+            }catch(IOException ex){
+                logger.error("Something is wrong when reopen the Lucene IndexReader", ex);
+                return;
+            }
+            if(newReader!=null && newReader!=reader){
+                //publish the new searcher before releasing the old reader
+                searcherCache.put(name, new IndexSearcher(newReader));
+                try{
+                    reader.decRef();
+                }catch(IOException ex){
+                    logger.error("Something is wrong when decrease the reference of the lucene IndexReader", ex);
+                }
+            }
+            gen.refreshed(applied, changes);
+        }
+    }
+    
+    /**
+     * Replace the IndexSearcher of an index by a searcher of a new index, which contains all the writes done.
+     * @param name
+     * @param searcher 
+     */
+    public void swap(String name, IndexSearcher searcher){
+        Generation gen = getGeneration(name);
+        IndexSearcherCache searcherCache = IndexSearcherCache.getInstance();
+        synchronized(gen.refreshLock){
+            long applied = gen.getApplied();
+            long changes = gen.getChanges();
+            IndexSearcher old = searcherCache.getAll().get(name);
+            searcherCache.put(name, searcher);
+            if(old != null){
+                try{
+                    old.getIndexReader().decRef();
+                }catch(IOException ex){
+                    logger.error("Something is wrong when decrease the reference of the lucene IndexReader", ex);
+                }
+            }
+            gen.refreshed(applied, changes);
+        }
+    }
+    
+    private Generation getGeneration(String name){
+        Generation gen = cache.get(name);
+        if(gen != null){
+            return gen;
+        }
+        gen = new Generation();
+        Generation temp = cache.putIfAbsent(name, gen);
+        return temp != null ? temp : gen;
+    }
+    
+    /**
+     * The write generations of an index. The tasks may be done out of order, 
+     * so a generation is applied only when all the generations before it are done.
+     */
+    private static class Generation {
+        
+        final Object refreshLock = new Object();
+        
+        private long latest;
+        private long changes;
+        private final SortedSet<Long> pending = new TreeSet<Long>();
+        
+        private long refreshedChanges;
+        volatile long searchable;
+        
+        synchronized long next(){
+            latest++;
+            pending.add(latest);
+            return latest;
+        }
+        
+        synchronized void done(long generation){
+            pending.remove(generation);
+            changes++;
+            notifyAll();
+        }
+        
+        synchronized void changed(){
+            changes++;
+        }
+        
+        synchronized long getLatest(){
+            return latest;
+        }
+        
+        synchronized long getChanges(){
+            return changes;
+        }
+        
+        synchronized long getApplied(){
+            return pending.isEmpty() ? latest : pending.first() - 1;
+        }
+        
+        synchronized boolean isDirty(){
+            return changes != refreshedChanges;
+        }
+        
+        synchronized void refreshed(long applied, long changes){
+            refreshedChanges = changes;
+            if(applied > searchable){
+                searchable = applied;
+            }
+        }
+        
+        synchronized boolean waitApplied(long generation, long timeout) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeout;
+            while(getApplied() < generation){
+                long remain = deadline - System.currentTimeMillis();
+                if(remain <= 0){
+                    return false;
+                }
+                wait(remain);
+            }
+            return true;
+        }
+        
+    }
+    
+}
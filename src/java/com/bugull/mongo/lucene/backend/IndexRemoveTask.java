@@ -20,6 +20,8 @@ import com.bugull.mongo.cache.FieldsCache;
 import com.bugull.mongo.lucene.cache.IndexWriterCache;
 import com.bugull.mongo.utils.MapperUtil;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexWriter;
@@ -34,21 +36,53 @@ public class IndexRemoveTask implements Runnable{
     private final static Logger logger = Logger.getLogger(IndexRemoveTask.class);
     
     private Class<?> clazz;
-    private String id;
+    private List<String> ids;
+    private String name;
+    private long generation;
     
     public IndexRemoveTask(Class<?> clazz, String id){
         this.clazz = clazz;
-        this.id = id;
+        ids = new ArrayList<String>();
+        ids.add(id);
+        init();
+    }
+    
+    /**
+     * Remove a batch of documents in one task.
+     * @param clazz
+     * @param ids 
+     */
+    public IndexRemoveTask(Class<?> clazz, List<String> ids){
+        this.clazz = clazz;
+        this.ids = ids;
+        init();
+    }
+    
+    private void init(){
+        name = MapperUtil.getEntityName(clazz);
+        generation = IndexRefresher.getInstance().next(name);
     }
 
     @Override
     public void run() {
-        String name = MapperUtil.getEntityName(clazz);
+        try{
+            remove();
+        }finally{
+            IndexRefresher.getInstance().done(name, generation);
+        }
+    }
+    
+    private void remove(){
         IndexWriterCache cache = IndexWriterCache.getInstance();
         IndexWriter writer = cache.get(name);
-        Term term = new Term(FieldsCache.getInstance().getIdFieldName(clazz), id);
+        String idName = FieldsCache.getInstance().getIdFieldName(clazz);
+        int size = ids.size();
+        Term[] terms = new Term[size];
+        for(int i=0; i<size; i++){
+            terms[i] = new Term(idName, ids.get(i));
+        }
         try {
-            writer.deleteDocuments(term);
+            writer.deleteDocuments(terms);
         } catch (CorruptIndexException ex) {
             logger.error("IndexWriter can not delete a document from the lucene index", ex);
         } catch (IOException ex) {
@@ -16,23 +16,15 @@
 
 package com.bugull.mongo.lucene.backend;
 
-import com.bugull.mongo.lucene.cache.IndexSearcherCache;
 import com.bugull.mongo.lucene.BuguIndex;
-import java.io.IOException;
-import java.util.Map;
-import java.util.Map.Entry;
-import org.apache.log4j.Logger;
-import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.search.IndexSearcher;
 
 /**
- *
+ * Reopen the IndexSearchers of the indexes changed since last time.
+ * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
 public class IndexReopenTask implements Runnable {
     
-    private final static Logger logger = Logger.getLogger(IndexReopenTask.class);
-
     @Override
     public void run() {
         BuguIndex index = BuguIndex.getInstance();
@@ -40,28 +32,11 @@ public class IndexReopenTask implements Runnable {
             return;
         }
         index.setReopening(true);
-        IndexSearcherCache searcherCache = IndexSearcherCache.getInstance();
-        Map<String, IndexSearcher> map = searcherCache.getAll();
-        for(Entry<String, IndexSearcher> entry : map.entrySet()){
-            IndexSearcher searcher = entry.getValue();
-            IndexReader reader = searcher.getIndexReader();
-            IndexReader newReader = null;
-            try{
-                newReader = IndexReader.openIfChanged(reader, true);
-            }catch(IOException ex){
-                logger.error("Something is wrong when reopen the Lucene IndexReader", ex);
-            }
-            if(newReader!=null && newReader!=reader){
-                try{
-                    reader.decRef();
-                }catch(IOException ex){
-                    logger.error("Something is wrong when decrease the reference of the lucene IndexReader", ex);
-                }
-                IndexSearcher newSearcher = new IndexSearcher(newReader);
-                searcherCache.put(entry.getKey(), newSearcher);
-            }
+        try{
+            IndexRefresher.getInstance().refreshDirty();
+        }finally{
+            index.setReopening(false);
         }
-        index.setReopening(false);
     }
     
 }
@@ -21,6 +21,8 @@ import com.bugull.mongo.cache.FieldsCache;
 import com.bugull.mongo.lucene.cache.IndexWriterCache;
 import com.bugull.mongo.utils.MapperUtil;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
@@ -35,22 +37,59 @@ public class IndexUpdateTask implements Runnable{
     
     private final static Logger logger = Logger.getLogger(IndexUpdateTask.class);
     
-    private BuguEntity obj;
+    private List<BuguEntity> list;
+    private String name;
+    private long generation;
     
     public IndexUpdateTask(BuguEntity obj){
-        this.obj = obj;
+        list = new ArrayList<BuguEntity>();
+        list.add(obj);
+        init();
+    }
+    
+    /**
+     * Update a batch of entities of the same class in one task.
+     * @param list 
+     */
+    public IndexUpdateTask(List<BuguEntity> list){
+        this.list = list;
+        init();
+    }
+    
+    private void init(){
+        if(!list.isEmpty()){
+            name = MapperUtil.getEntityName(list.get(0).getClass());
+            generation = IndexRefresher.getInstance().next(name);
+        }
     }
 
     @Override
     public void run() {
-        Class<?> clazz = obj.getClass();
-        String name = MapperUtil.getEntityName(clazz);
+        if(list.isEmpty()){
+            return;
+        }
+        try{
+            update();
+        }finally{
+            IndexRefresher.getInstance().done(name, generation);
+        }
+    }
+    
+    private void update(){
+        Class<?> clazz = list.get(0).getClass();
         IndexWriterCache cache = IndexWriterCache.getInstance();
         IndexWriter writer = cache.get(name);
+        String idName = FieldsCache.getInstance().getIdFieldName(clazz);
+        for(BuguEntity obj : list){
+            update(writer, idName, obj);
+        }
+    }
+    
+    private void update(IndexWriter writer, String idName, BuguEntity obj){
         Document doc = new Document();
         IndexCreator creator = new IndexCreator(obj, "");
         creator.create(doc);
-        Term term = new Term(FieldsCache.getInstance().getIdFieldName(clazz), obj.getId());
+        Term term = new Term(idName, obj.getId());
         try {
             writer.updateDocument(term, doc);
         } catch (CorruptIndexException ex) {
@@ -0,0 +1,432 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.lucene.backend;
+
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.lucene.BuguIndex;
+import com.bugull.mongo.lucene.cache.IndexWriterCache;
+import com.bugull.mongo.utils.MapperUtil;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+
+/**
+ * The pending writes of a lucene index, coalesced by entity id.
+ * 
+ * <p>Only the last write of an entity is applied: a later insert or update replaces the earlier one, 
+ * and a remove replaces any write before it. An update after a remove is ignored, because the entity is gone.</p>
+ * 
+ * <p>The writes are drained in batches by one thread at a time. The documents of a batch are created in parallel, 
+ * and then written to the index in one pass.</p>
+ * 
+ * <p>The number of pending entities is bounded by BuguIndex.setMaxPendingWrites(). 
+ * When it's full, the RejectPolicy of BuguIndex is applied. CALLER_RUNS drains a batch in the writing thread.</p>
+ * 
+ * <p>While the index is rebuilt in a new directory, the writes are also captured, and replayed to the new index before it's swapped in.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class IndexWriteQueue {
+    
+    private final static Logger logger = Logger.getLogger(IndexWriteQueue.class);
+    
+    private final static int INSERT = 1;
+    private final static int UPDATE = 2;
+    private final static int REMOVE = 3;
+    
+    //the min number of documents created by a thread
+    private final static int MIN_BUILD_SIZE = 16;
+    
+    private final String name;
+    private final String idName;
+    
+    private final Object lock = new Object();
+    private final Object writeLock = new Object();
+    private LinkedHashMap<String, Write> pending = new LinkedHashMap<String, Write>();
+    private LinkedHashMap<String, Write> captured;  //the writes captured while rebuilding
+    private boolean scheduled;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    
+    public IndexWriteQueue(Class<?> clazz){
+        name = MapperUtil.getEntityName(clazz);
+        idName = FieldsCache.getInstance().getIdFieldName(clazz);
+    }
+    
+    public void insert(BuguEntity obj){
+        offer(obj.getId(), INSERT, obj);
+    }
+    
+    public void update(BuguEntity obj){
+        offer(obj.getId(), UPDATE, obj);
+    }
+    
+    public void update(List<BuguEntity> list){
+        for(BuguEntity obj : list){
+            offer(obj.getId(), UPDATE, obj);
+        }
+    }
+    
+    public void remove(String id){
+        offer(id, REMOVE, null);
+    }
+    
+    public void remove(List<String> ids){
+        for(String id : ids){
+            offer(id, REMOVE, null);
+        }
+    }
+    
+    public int size(){
+        synchronized(lock){
+            return pending.size();
+        }
+    }
+    
+    /**
+     * Apply all the pending writes in the current thread.
+     */
+    public void flush(){
+        while(drain()){
+            //until the queue is empty
+        }
+    }
+    
+    /**
+     * @return the number of writes rejected or discarded, when the queue is full
+     */
+    public long getRejectedCount(){
+        return rejectedCount.get();
+    }
+    
+    private void offer(String id, int type, BuguEntity obj){
+        BuguIndex index = BuguIndex.getInstance();
+        int maxPending = index.getMaxPendingWrites();
+        RejectPolicy policy = index.getRejectPolicy();
+        long generation = IndexRefresher.getInstance().next(name);
+        boolean schedule = false;
+        while(true){
+            synchronized(lock){
+                Write write = pending.get(id);
+                if(write != null){
+                    write.merge(type, obj);
+                    write.generations.add(generation);
+                    capture(id, type, obj);
+                    break;
+                }
+                if(pending.size() < maxPending){
+                    write = new Write(id, type, obj);
+                    write.generations.add(generation);
+                    pending.put(id, write);
+                    capture(id, type, obj);
+                    if(!scheduled){
+                        scheduled = true;
+                        schedule = true;
+                    }
+                    break;
+                }
+                if(policy == RejectPolicy.BLOCK){
+                    try{
+                        lock.wait();
+                    }catch(InterruptedException ex){
+                        Thread.currentThread().interrupt();
+                        reject(generation);
+                        throw new RejectedExecutionException("Interrupted when waiting for the index queue of " + name, ex);
+                    }
+                    continue;
+                }
+            }
+            //the queue is full
+            if(policy == RejectPolicy.CALLER_RUNS){
+                drain();
+            }else if(policy == RejectPolicy.ABORT){
+                reject(generation);
+                throw new RejectedExecutionException("The index queue of " + name + " is full");
+            }else{
+                reject(generation);
+                return;
+            }
+        }
+        if(schedule && !tryDrainLater()){
+            new DrainTask().run();
+        }
+    }
+    
+    /**
+     * Start to capture the writes, while the index is rebuilt in a new directory.
+     */
+    public void startCapture(){
+        synchronized(lock){
+            captured = new LinkedHashMap<String, Write>();
+        }
+    }
+    
+    /**
+     * Apply the writes captured so far to the new index, and keep capturing.
+     * @param writer the writer of the new index
+     * @return the number of writes applied
+     */
+    public int replayCaptured(IndexWriter writer){
+        LinkedHashMap<String, Write> writes;
+        synchronized(lock){
+            writes = captured;
+            captured = new LinkedHashMap<String, Write>();
+        }
+        List<Write> list = new ArrayList<Write>(writes.values());
+        apply(list, writer, true);
+        return list.size();
+    }
+    
+    /**
+     * Apply the last captured writes to the new index and stop capturing, then swap the index. 
+     * The index writing is blocked until the swap finishes, so no write is lost or applied twice.
+     * @param writer the writer of the new index
+     * @param swap 
+     */
+    public void finishCapture(IndexWriter writer, Runnable swap){
+        synchronized(writeLock){
+            LinkedHashMap<String, Write> writes;
+            synchronized(lock){
+                writes = captured;
+                captured = null;
+                //the pending inserts are captured already, so they must not add a second document to the new index
+                for(Write write : pending.values()){
+                    if(write.type == INSERT){
+                        write.type = UPDATE;
+                    }
+                }
+            }
+            apply(new ArrayList<Write>(writes.values()), writer, true);
+            swap.run();
+        }
+    }
+    
+    /**
+     * Stop capturing, when the rebuilding fails.
+     */
+    public void cancelCapture(){
+        synchronized(lock){
+            captured = null;
+        }
+    }
+    
+    private void capture(String id, int type, BuguEntity obj){
+        if(captured == null){
+            return;
+        }
+        Write write = captured.get(id);
+        if(write == null){
+            captured.put(id, new Write(id, type, obj));
+        }else{
+            write.merge(type, obj);
+        }
+    }
+    
+    private void reject(long generation){
+        rejectedCount.incrementAndGet();
+        IndexRefresher.getInstance().done(name, generation);
+    }
+    
+    /**
+     * Submit a drain task to the index threads. It never blocks, and is never dropped by the pool, 
+     * otherwise the pending writes would be stuck.
+     * @return false if the pool is full or closed
+     */
+    private boolean tryDrainLater(){
+        TaskExecutor executor = BuguIndex.getInstance().getExecutor();
+        return executor != null && executor.tryExecute(new DrainTask());
+    }
+    
+    /**
+     * Take a batch and apply it. The batches are applied one by one, in the order they are taken.
+     * @return false if the queue is empty
+     */
+    private boolean drain(){
+        synchronized(writeLock){
+            List<Write> batch = take();
+            if(batch.isEmpty()){
+                return false;
+            }
+            try{
+                apply(batch, IndexWriterCache.getInstance().get(name), false);
+            }finally{
+                IndexRefresher refresher = IndexRefresher.getInstance();
+                for(Write write : batch){
+                    for(Long generation : write.generations){
+                        refresher.done(name, generation);
+                    }
+                }
+            }
+            return true;
+        }
+    }
+    
+    private List<Write> take(){
+        int batchSize = BuguIndex.getInstance().getQueueBatchSize();
+        List<Write> batch = new ArrayList<Write>();
+        synchronized(lock){
+            Iterator<Write> it = pending.values().iterator();
+            while(it.hasNext() && batch.size() < batchSize){
+                batch.add(it.next());
+                it.remove();
+            }
+            //wake up the blocked writers
+            lock.notifyAll();
+        }
+        return batch;
+    }
+    
+    /**
+     * @param replay if true, an insert is written as an update, because the document may be in the new index already
+     */
+    private void apply(List<Write> batch, IndexWriter writer, boolean replay){
+        Document[] docs = create(batch);
+        List<Term> removes = new ArrayList<Term>();
+        for(int i=0; i<docs.length; i++){
+            Write write = batch.get(i);
+            if(write.type == REMOVE){
+                removes.add(new Term(idName, write.id));
+                continue;
+            }
+            if(docs[i] == null){
+                continue;
+            }
+            try{
+                if(write.type == INSERT && !replay){
+                    writer.addDocument(docs[i]);
+                }else{
+                    writer.updateDocument(new Term(idName, write.id), docs[i]);
+                }
+            }catch(CorruptIndexException ex){
+                logger.error("IndexWriter can not write the document to the lucene index", ex);
+            }catch(IOException ex){
+                logger.error("IndexWriter can not write the document to the lucene index", ex);
+            }
+        }
+        if(!removes.isEmpty()){
+            try{
+                writer.deleteDocuments(removes.toArray(new Term[removes.size()]));
+            }catch(CorruptIndexException ex){
+                logger.error("IndexWriter can not delete a document from the lucene index", ex);
+            }catch(IOException ex){
+                logger.error("IndexWriter can not delete a document from the lucene index", ex);
+            }
+        }
+    }
+    
+    /**
+     * Create the documents in parallel, by the index writing threads and the current thread.
+     */
+    private Document[] create(final List<Write> batch){
+        final Document[] docs = new Document[batch.size()];
+        int parts = Math.min(Runtime.getRuntime().availableProcessors(), batch.size() / MIN_BUILD_SIZE);
+        if(parts <= 1){
+            create(batch, docs, 0, docs.length);
+            return docs;
+        }
+        int partSize = (docs.length + parts - 1) / parts;
+        List<Runnable> list = new ArrayList<Runnable>();
+        for(int from=0; from<docs.length; from+=partSize){
+            final int start = from;
+            final int end = Math.min(from + partSize, docs.length);
+            list.add(new Runnable(){
+                @Override
+                public void run(){
+                    create(batch, docs, start, end);
+                }
+            });
+        }
+        TaskExecutor.runAll(BuguIndex.getInstance().getExecutor(), list);
+        return docs;
+    }
+    
+    private void create(List<Write> batch, Document[] docs, int start, int end){
+        for(int i=start; i<end; i++){
+            Write write = batch.get(i);
+            if(write.type != REMOVE){
+                Document doc = new Document();
+                IndexCreator creator = new IndexCreator(write.obj, "");
+                creator.create(doc);
+                docs[i] = doc;
+            }
+        }
+    }
+    
+    private class DrainTask implements Runnable {
+        @Override
+        public void run() {
+            //submit the next batch as a new task, so other indexes can be written too. Loop if the pool is full.
+            do{
+                try{
+                    drain();
+                }catch(RuntimeException ex){
+                    logger.error("Something is wrong when write the lucene index of " + name, ex);
+                }
+                synchronized(lock){
+                    if(pending.isEmpty()){
+                        scheduled = false;
+                        return;
+                    }
+                }
+            }while(!tryDrainLater());
+        }
+    }
+    
+    /**
+     * A pending write of an entity, with the generations of all the writes coalesced into it. 
+     * The captured writes have no generation.
+     */
+    private static class Write {
+        
+        final String id;
+        int type;
+        BuguEntity obj;
+        final List<Long> generations = new ArrayList<Long>(1);
+        
+        Write(String id, int type, BuguEntity obj){
+            this.id = id;
+            this.type = type;
+            this.obj = obj;
+        }
+        
+        void merge(int type, BuguEntity obj){
+            if(type == REMOVE){
+                this.type = REMOVE;
+                this.obj = null;
+            }else if(this.type == REMOVE){
+                //the entity is inserted again with the same id
+                if(type == INSERT){
+                    this.type = UPDATE;
+                    this.obj = obj;
+                }
+            }else{
+                //keep the type of a pending insert
+                this.obj = obj;
+            }
+        }
+        
+    }
+    
+}
@@ -22,9 +22,9 @@ import com.bugull.mongo.annotations.Ref;
 import com.bugull.mongo.annotations.RefList;
 import com.bugull.mongo.cache.DaoCache;
 import com.bugull.mongo.cache.FieldsCache;
-import com.bugull.mongo.lucene.BuguIndex;
 import com.bugull.mongo.lucene.annotations.IndexRef;
 import com.bugull.mongo.lucene.annotations.IndexRefList;
+import com.bugull.mongo.lucene.cache.IndexQueueCache;
 import com.bugull.mongo.misc.InternalDao;
 import com.bugull.mongo.utils.ReferenceUtil;
 import com.mongodb.BasicDBObject;
@@ -98,9 +98,8 @@ public class RefEntityChangedListener {
             Object refObj = ReferenceUtil.toDbReference(cls, fieldName, refClass, id);
             DBObject query = new BasicDBObject(fieldName, refObj);
             List<BuguEntity> list = dao.findForLucene(query);
-            for(BuguEntity o : list){
-                IndexUpdateTask task = new IndexUpdateTask(o);
-                BuguIndex.getInstance().getExecutor().execute(task);
+            if(!list.isEmpty()){
+                IndexQueueCache.getInstance().get(cls).update(list);
             }
         }
     }
@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.lucene.backend;
+
+/**
+ * What to do when a bounded lucene queue is full.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public enum RejectPolicy {
+    
+    /**
+     * Wait until there is room in the queue.
+     */
+    BLOCK,
+    
+    /**
+     * Run the work in the submitting thread, which slows down the producer.
+     */
+    CALLER_RUNS,
+    
+    /**
+     * Throw a RejectedExecutionException.
+     */
+    ABORT,
+    
+    /**
+     * Drop the work silently. The dropped work is counted.
+     */
+    DISCARD
+    
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.lucene.backend;
+
+import com.bugull.mongo.metrics.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * A thread pool with fixed threads and a bounded queue, used by one concern of the lucene subsystem.
+ * 
+ * <p>When the queue is full, the RejectPolicy is applied. 
+ * The time a task waits in the queue, and the time it runs, are recorded in nanoseconds.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class TaskExecutor extends ThreadPoolExecutor {
+    
+    private final static Logger logger = Logger.getLogger(TaskExecutor.class);
+    
+    private final String name;
+    private final LatencyHistogram waitTime = new LatencyHistogram();
+    private final LatencyHistogram runTime = new LatencyHistogram();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final ThreadLocal<Long> startTime = new ThreadLocal<Long>();
+    
+    /**
+     * @param name the prefix of thread names
+     * @param threads
+     * @param queueCapacity
+     * @param policy
+     * @param priority the priority of the threads, such as Thread.NORM_PRIORITY
+     */
+    public TaskExecutor(String name, int threads, int queueCapacity, RejectPolicy policy, int priority){
+        super(threads, threads, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity));
+        this.name = name;
+        setThreadFactory(new NamedThreadFactory(name, priority));
+        setRejectedExecutionHandler(new PolicyHandler(policy));
+        prestartAllCoreThreads();
+    }
+    
+    @Override
+    public void execute(Runnable command){
+        super.execute(new TimedTask(command));
+    }
+    
+    /**
+     * Run a task only if there is room in the queue. It never blocks, and the policy is not applied.
+     * @param command
+     * @return false if the task is not accepted
+     */
+    public boolean tryExecute(Runnable command){
+        if(isShutdown()){
+            return false;
+        }
+        //all the threads are started, so the queue is always polled
+        return getQueue().offer(new TimedTask(command));
+    }
+
+    /**
+     * Run the parts in parallel, and wait until all of them finish. 
+     * The current thread runs parts too, including the parts not started by the pool yet, so it never waits for a busy pool.
+     * @param executor the pool, or null to run all the parts in the current thread
+     * @param parts 
+     */
+    public static void runAll(TaskExecutor executor, List<Runnable> parts){
+        if(parts.isEmpty()){
+            return;
+        }
+        List<FutureTask<Object>> tasks = new ArrayList<FutureTask<Object>>();
+        for(int i=1; i<parts.size(); i++){
+            FutureTask<Object> task = new FutureTask<Object>(parts.get(i), null);
+            tasks.add(task);
+            if(executor != null){
+                executor.tryExecute(task);
+            }
+        }
+        parts.get(0).run();
+        for(FutureTask<Object> task : tasks){
+            task.run();  //do nothing if it's started by the pool
+            try{
+                task.get();
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return;
+            }catch(ExecutionException ex){
+                logger.error("Something is wrong when run a part of the task", ex.getCause());
+            }
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        long now = System.nanoTime();
+        if(r instanceof TimedTask){
+            waitTime.record(now - ((TimedTask)r).createTime);
+        }
+        startTime.set(now);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        Long start = startTime.get();
+        if(start != null){
+            runTime.record(System.nanoTime() - start);
+        }
+    }
+    
+    public String getName(){
+        return name;
+    }
+    
+    public int getQueueSize(){
+        return getQueue().size();
+    }
+    
+    /**
+     * @return the times the queue was full when a task was submitted
+     */
+    public long getRejectedCount(){
+        return rejectedCount.get();
+    }
+    
+    public LatencyHistogram getWaitTime(){
+        return waitTime;
+    }
+    
+    public LatencyHistogram getRunTime(){
+        return runTime;
+    }
+    
+    private static class TimedTask implements Runnable {
+        
+        final Runnable task;
+        final long createTime = System.nanoTime();
+        
+        TimedTask(Runnable task){
+            this.task = task;
+        }
+        
+        @Override
+        public void run(){
+            task.run();
+        }
+        
+    }
+    
+    private class PolicyHandler implements RejectedExecutionHandler {
+        
+        private final RejectPolicy policy;
+        
+        PolicyHandler(RejectPolicy policy){
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejectedCount.incrementAndGet();
+            if(executor.isShutdown()){
+                throw new RejectedExecutionException("The executor " + name + " is shutdown");
+            }
+            switch(policy){
+                case BLOCK:
+                    try{
+                        executor.getQueue().put(r);
+                    }catch(InterruptedException ex){
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted when waiting for the executor " + name, ex);
+                    }
+                    break;
+                case CALLER_RUNS:
+                    r.run();
+                    break;
+                case ABORT:
+                    throw new RejectedExecutionException("The queue of executor " + name + " is full");
+                default:
+                    break;
+            }
+        }
+        
+    }
+    
+    private static class NamedThreadFactory implements ThreadFactory {
+        
+        private final String name;
+        private final int priority;
+        private final AtomicInteger count = new AtomicInteger();
+        
+        NamedThreadFactory(String name, int priority){
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setPriority(priority);
+            return t;
+        }
+        
+    }
+    
+}
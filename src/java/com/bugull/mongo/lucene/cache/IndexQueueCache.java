@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.bugull.mongo.lucene.cache;
+
+import com.bugull.mongo.lucene.backend.IndexWriteQueue;
+import com.bugull.mongo.utils.MapperUtil;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache(Map) contains IndexWriteQueue.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class IndexQueueCache {
+    
+    private final ConcurrentMap<String, IndexWriteQueue> cache = new ConcurrentHashMap<String, IndexWriteQueue>();
+    
+    private static class Holder {
+        final static IndexQueueCache instance = new IndexQueueCache();
+    } 
+    
+    public static IndexQueueCache getInstance(){
+        return Holder.instance;
+    }
+    
+    public IndexWriteQueue get(Class<?> clazz){
+        String name = MapperUtil.getEntityName(clazz);
+        IndexWriteQueue queue = cache.get(name);
+        if(queue != null){
+            return queue;
+        }
+        queue = new IndexWriteQueue(clazz);
+        IndexWriteQueue temp = cache.putIfAbsent(name, queue);
+        return temp != null ? temp : queue;
+    }
+    
+    public Map<String, IndexWriteQueue> getAll(){
+        return cache;
+    }
+    
+}
@@ -17,8 +17,14 @@
 package com.bugull.mongo.lucene.cache;
 
 import com.bugull.mongo.lucene.BuguIndex;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -37,6 +43,9 @@ public class IndexWriterCache {
     
     private final static Logger logger = Logger.getLogger(IndexWriterCache.class);
     
+    //the file remembering the current directory of an index
+    private final static String CURRENT = ".current";
+    
     private final ConcurrentMap<String, IndexWriter> cache = new ConcurrentHashMap<String, IndexWriter>();
     
     private static class Holder {
@@ -57,13 +66,8 @@ public class IndexWriterCache {
             writer = cache.get(name);
             if(writer == null){
                 BuguIndex index = BuguIndex.getInstance();
-                IndexWriterConfig conf = new IndexWriterConfig(index.getVersion(), index.getAnalyzer());
-                double bufferSizeMB = index.getBufferSizeMB();
-                conf.setRAMBufferSizeMB(bufferSizeMB);
                 try{
-                    String path = index.getDirectoryPath();
-                    Directory directory = FSDirectory.open(new File(path + "/" + name));
-                    writer = new IndexWriter(directory, conf);
+                    writer = create(getDirectory(name), index.getBufferSizeMB());
                 }catch(IOException ex){
                     logger.error("Something is wrong when create IndexWriter for " + name, ex);
                 }
@@ -73,6 +77,81 @@ public class IndexWriterCache {
         return writer;
     }
     
+    /**
+     * Create an IndexWriter, which is not cached.
+     * @param dir the directory of the index
+     * @param bufferSizeMB the RAM buffer size
+     * @return
+     * @throws IOException 
+     */
+    public IndexWriter create(File dir, double bufferSizeMB) throws IOException {
+        BuguIndex index = BuguIndex.getInstance();
+        IndexWriterConfig conf = new IndexWriterConfig(index.getVersion(), index.getAnalyzer());
+        conf.setRAMBufferSizeMB(bufferSizeMB);
+        Directory directory = FSDirectory.open(dir);
+        return new IndexWriter(directory, conf);
+    }
+    
+    /**
+     * Get the current directory of an index. 
+     * It's the directory named as the index, unless the index has been rebuilt in another directory.
+     * @param name
+     * @return 
+     */
+    public File getDirectory(String name){
+        File root = new File(BuguIndex.getInstance().getDirectoryPath());
+        File pointer = new File(root, name + CURRENT);
+        if(pointer.exists()){
+            try{
+                String current = readLine(pointer);
+                if(current != null && new File(root, current).isDirectory()){
+                    return new File(root, current);
+                }
+            }catch(IOException ex){
+                logger.error("Can not read the current directory of " + name, ex);
+            }
+        }
+        return new File(root, name);
+    }
+    
+    /**
+     * Replace the IndexWriter of an index by the writer of a new directory, and remember the directory.
+     * @param name
+     * @param writer the writer of the new directory
+     * @param dir the new directory, under the directory path of BuguIndex
+     * @return the old writer, which should be closed by the caller
+     * @throws IOException if the new directory can't be remembered
+     */
+    public synchronized IndexWriter swap(String name, IndexWriter writer, File dir) throws IOException {
+        File root = new File(BuguIndex.getInstance().getDirectoryPath());
+        File pointer = new File(root, name + CURRENT);
+        File temp = new File(root, name + CURRENT + ".tmp");
+        Writer out = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+        try{
+            out.write(dir.getName());
+        }finally{
+            out.close();
+        }
+        //renameTo can't replace an existing file on some platforms
+        if(!temp.renameTo(pointer)){
+            pointer.delete();
+            if(!temp.renameTo(pointer)){
+                throw new IOException("Can not rename " + temp + " to " + pointer);
+            }
+        }
+        return cache.put(name, writer);
+    }
+    
+    private String readLine(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try{
+            String line = in.readLine();
+            return line == null ? null : line.trim();
+        }finally{
+            in.close();
+        }
+    }
+    
     public Map<String, IndexWriter> getAll(){
         return cache;
     }
@@ -46,7 +46,9 @@ public class ClusterConfig {
     
     public void validate(){
         server = new ClusterServer();
-        BuguIndex.getInstance().getExecutor().execute(server);
+        //the server loop runs in its own thread, not in a pool
+        Thread t = new Thread(server, "bugu-index-cluster-server");
+        t.start();
     }
     
     public void addNode(String host){
@@ -71,7 +73,7 @@ public class ClusterConfig {
     public synchronized void sendMessage(ClusterMessage message) {
         for(ClusterNode node : clusterNodes.values()){
             SendMessageTask task = new SendMessageTask(node, message);
-            BuguIndex.getInstance().getExecutor().execute(task);
+            BuguIndex.getInstance().getClusterExecutor().execute(task);
         }
     }
 
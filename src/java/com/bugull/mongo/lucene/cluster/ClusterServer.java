@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
@@ -72,12 +73,14 @@ public class ClusterServer implements Runnable {
     }
     
     private void loop() {
-        while(true){
+        while(selector!=null && selector.isOpen()){
             int i = 0;
             try{
                 i = selector.select();
             }catch(IOException ex){
                 logger.error("Error when selecting", ex);
+            }catch(ClosedSelectorException ex){
+                break;  //the server is closed
             }
             if(i == 0){
                 continue;
@@ -134,7 +137,7 @@ public class ClusterServer implements Runnable {
             totalBuffer.clear();
             if(message != null){
                 HandleMessageTask task = new HandleMessageTask(message);
-                BuguIndex.getInstance().getExecutor().execute(task);
+                BuguIndex.getInstance().getClusterExecutor().execute(task);
             }
         }catch(IOException ex){
             logger.error("Error when handle read", ex);
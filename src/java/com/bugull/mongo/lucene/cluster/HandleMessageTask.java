@@ -18,8 +18,8 @@ package com.bugull.mongo.lucene.cluster;
 
 import com.bugull.mongo.BuguEntity;
 import com.bugull.mongo.cache.DaoCache;
-import com.bugull.mongo.lucene.BuguIndex;
 import com.bugull.mongo.lucene.backend.*;
+import com.bugull.mongo.lucene.cache.IndexQueueCache;
 import com.bugull.mongo.misc.InternalDao;
 
 /**
@@ -59,8 +59,7 @@ public class HandleMessageTask implements Runnable {
         EntityMessage msg = (EntityMessage)message;
         BuguEntity entity = msg.getEntity();
         if(entity != null){
-            IndexInsertTask task = new IndexInsertTask(entity);
-            BuguIndex.getInstance().getExecutor().execute(task);
+            IndexQueueCache.getInstance().get(entity.getClass()).insert(entity);
         }
     }
     
@@ -68,8 +67,7 @@ public class HandleMessageTask implements Runnable {
         EntityMessage msg = (EntityMessage)message;
         BuguEntity entity = msg.getEntity();
         if(entity != null){
-            IndexUpdateTask task = new IndexUpdateTask(entity);
-            BuguIndex.getInstance().getExecutor().execute(task);
+            IndexQueueCache.getInstance().get(entity.getClass()).update(entity);
         }
     }
     
@@ -78,8 +76,7 @@ public class HandleMessageTask implements Runnable {
         Class<?> clazz = msg.getClazz();
         String id = msg.getId();
         if(clazz!=null && id!=null){
-            IndexRemoveTask task = new IndexRemoveTask(clazz, id);
-            BuguIndex.getInstance().getExecutor().execute(task);
+            IndexQueueCache.getInstance().get(clazz).remove(id);
         }
     }
     
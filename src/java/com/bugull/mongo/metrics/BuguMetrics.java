@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+import com.bugull.mongo.cache.CollectionCache;
+import com.bugull.mongo.interceptor.InterceptorChain;
+import com.bugull.mongo.interceptor.OperationType;
+import com.bugull.mongo.utils.ThreadUtil;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.apache.log4j.Logger;
+
+/**
+ * Per-entity and per-operation metrics, published as JMX MBeans under the domain "com.bugull.mongo".
+ * 
+ * <p>It's disabled by default. When disabled, an operation costs only a System.nanoTime() call and a volatile read.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class BuguMetrics {
+    
+    private final static Logger logger = Logger.getLogger(BuguMetrics.class);
+    
+    public final static String DOMAIN = "com.bugull.mongo";
+    
+    private final ConcurrentMap<String, OperationStats> stats = new ConcurrentHashMap<String, OperationStats>();
+    private final ExecutorStats executorStats = new ExecutorStats();
+    private final MetricsInterceptor interceptor = new MetricsInterceptor(this);
+    
+    private volatile boolean enabled;
+    private boolean jmx = true;
+    private ScheduledExecutorService scheduler;
+    
+    private static class Holder {
+        final static BuguMetrics instance = new BuguMetrics();
+    } 
+    
+    public static BuguMetrics getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Record an operation which is not of a DAO, such as an aggregation or a GridFS bucket. 
+     * The operations of DAOs are recorded by an interceptor.
+     * @param entity
+     * @param operation
+     * @param start
+     * @param documents 
+     */
+    public static void record(String entity, String operation, long start, long documents){
+        BuguMetrics metrics = getInstance();
+        if(metrics.enabled){
+            metrics.getStats(entity, operation).record(System.nanoTime() - start, documents, 0);
+        }
+    }
+    
+    void recordElapsed(String entity, String operation, long nanos, long documents){
+        if(enabled){
+            getStats(entity, operation).record(nanos, documents, 0);
+        }
+    }
+    
+    void recordError(String entity, String operation){
+        if(enabled){
+            getStats(entity, operation).recordError();
+        }
+    }
+    
+    /**
+     * Record the decoding of a document from BSON.
+     * @param entity
+     * @param nanos
+     * @param bytes 
+     */
+    public void recordDecode(String entity, long nanos, long bytes){
+        if(enabled){
+            getStats(entity, OperationType.DECODE).record(nanos, 1, bytes);
+        }
+    }
+    
+    public boolean isEnabled(){
+        return enabled;
+    }
+    
+    public synchronized void setEnabled(boolean enabled){
+        if(enabled == this.enabled){
+            return;
+        }
+        if(enabled && jmx){
+            register(DOMAIN + ":type=Executors", executorStats);
+        }
+        this.enabled = enabled;
+        //the operations of DAOs are recorded by a global interceptor, so they cost nothing when disabled
+        if(enabled){
+            InterceptorChain.getGlobal().add(interceptor);
+        }else{
+            InterceptorChain.getGlobal().remove(interceptor);
+        }
+        //the decoding is measured by a decoder installed on the collections
+        CollectionCache.getInstance().setMetricsEnabled(enabled);
+    }
+    
+    /**
+     * Set whether to publish MBeans, before enabled. Default is true.
+     * @param jmx 
+     */
+    public void setJmx(boolean jmx){
+        this.jmx = jmx;
+    }
+    
+    /**
+     * Add a reporter, which is called periodically.
+     * @param reporter
+     * @param period time in milliseconds
+     */
+    public synchronized void addReporter(final MetricsReporter reporter, long period){
+        if(scheduler == null){
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable r){
+                    Thread t = new Thread(r, "bugu-metrics-reporter");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        scheduler.scheduleAtFixedRate(new Runnable(){
+            @Override
+            public void run(){
+                try{
+                    reporter.report(getStats(), executorStats);
+                }catch(RuntimeException ex){
+                    logger.error("Metrics reporter failed", ex);
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    public synchronized void close(){
+        ThreadUtil.safeClose(scheduler);
+        scheduler = null;
+    }
+    
+    /**
+     * @return the metrics of all operations recorded
+     */
+    public Collection<OperationStats> getStats(){
+        return new ArrayList<OperationStats>(stats.values());
+    }
+    
+    public ExecutorStatsMBean getExecutorStats(){
+        return executorStats;
+    }
+    
+    /**
+     * Reset all the metrics.
+     */
+    public void reset(){
+        for(OperationStats os : stats.values()){
+            os.reset();
+        }
+    }
+    
+    private OperationStats getStats(String entity, String operation){
+        String key = entity + "/" + operation;
+        OperationStats os = stats.get(key);
+        if(os != null){
+            return os;
+        }
+        
+        os = new OperationStats(entity, operation);
+        OperationStats temp = stats.putIfAbsent(key, os);
+        if(temp != null){
+            return temp;
+        }else{
+            if(jmx){
+                register(DOMAIN + ":type=Operation,entity=" + ObjectName.quote(entity) + ",operation=" + operation, os);
+            }
+            return os;
+        }
+    }
+    
+    /**
+     * Publish the MBean of a component of an entity, such as the partitions. Nothing is done if JMX is turned off.
+     * @param type the type property of the ObjectName
+     * @param entity the entity name
+     * @param mbean 
+     */
+    public void registerMBean(String type, String entity, Object mbean){
+        if(jmx){
+            register(getName(type, entity), mbean);
+        }
+    }
+    
+    public void unregisterMBean(String type, String entity){
+        String name = getName(type, entity);
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if(server.isRegistered(objectName)){
+                server.unregisterMBean(objectName);
+            }
+        }catch(Exception ex){
+            logger.error("Can not unregister MBean " + name, ex);
+        }
+    }
+    
+    private String getName(String type, String entity){
+        return DOMAIN + ":type=" + type + ",entity=" + ObjectName.quote(entity);
+    }
+    
+    private void register(String name, Object mbean){
+        try{
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if(!server.isRegistered(objectName)){
+                server.registerMBean(mbean, objectName);
+            }
+        }catch(Exception ex){
+            logger.error("Can not register MBean " + name, ex);
+        }
+    }
+    
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.lucene.BuguIndex;
+import com.bugull.mongo.lucene.backend.IndexWriteQueue;
+import com.bugull.mongo.lucene.backend.TaskExecutor;
+import com.bugull.mongo.lucene.cache.IndexQueueCache;
+import com.bugull.mongo.misc.DeleteCascadeEngine;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The queue depths and latencies of background executors.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class ExecutorStats implements ExecutorStatsMBean {
+
+    @Override
+    public int getConnectionQueueSize() {
+        return getQueueSize(BuguConnection.getInstance().getExecutor());
+    }
+
+    @Override
+    public int getIndexQueueSize() {
+        return getQueueSize(BuguIndex.getInstance().getExecutor());
+    }
+
+    @Override
+    public long getIndexPendingWrites() {
+        long total = 0;
+        for(IndexWriteQueue queue : IndexQueueCache.getInstance().getAll().values()){
+            total += queue.size();
+        }
+        return total;
+    }
+
+    @Override
+    public long getIndexRejectedWrites() {
+        long total = 0;
+        for(IndexWriteQueue queue : IndexQueueCache.getInstance().getAll().values()){
+            total += queue.getRejectedCount();
+        }
+        return total;
+    }
+
+    @Override
+    public long getIndexRejectedTasks() {
+        TaskExecutor executor = BuguIndex.getInstance().getExecutor();
+        return executor == null ? 0 : executor.getRejectedCount();
+    }
+
+    @Override
+    public long getIndexWaitP99Micros() {
+        TaskExecutor executor = BuguIndex.getInstance().getExecutor();
+        return executor == null ? 0 : executor.getWaitTime().getPercentile(99) / 1000L;
+    }
+
+    @Override
+    public long getIndexRunP99Micros() {
+        TaskExecutor executor = BuguIndex.getInstance().getExecutor();
+        return executor == null ? 0 : executor.getRunTime().getPercentile(99) / 1000L;
+    }
+
+    @Override
+    public int getRebuildQueueSize() {
+        return getQueueSize(BuguIndex.getInstance().getRebuildExecutor());
+    }
+
+    @Override
+    public int getClusterQueueSize() {
+        return getQueueSize(BuguIndex.getInstance().getClusterExecutor());
+    }
+
+    @Override
+    public long getClusterRejectedTasks() {
+        TaskExecutor executor = BuguIndex.getInstance().getClusterExecutor();
+        return executor == null ? 0 : executor.getRejectedCount();
+    }
+
+    @Override
+    public long getClusterWaitP99Micros() {
+        TaskExecutor executor = BuguIndex.getInstance().getClusterExecutor();
+        return executor == null ? 0 : executor.getWaitTime().getPercentile(99) / 1000L;
+    }
+
+    @Override
+    public int getCascadeQueueSize() {
+        return DeleteCascadeEngine.getInstance().getQueueSize();
+    }
+
+    @Override
+    public long getCascadePendingTasks() {
+        return DeleteCascadeEngine.getInstance().getPendingTasks();
+    }
+    
+    /**
+     * @return -1 if unknown
+     */
+    private int getQueueSize(ExecutorService executor){
+        if(executor instanceof ThreadPoolExecutor){
+            return ((ThreadPoolExecutor)executor).getQueue().size();
+        }
+        return -1;
+    }
+    
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+/**
+ * JMX interface for the queue depths and latencies of background executors.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface ExecutorStatsMBean {
+    
+    public int getConnectionQueueSize();
+    
+    public int getIndexQueueSize();
+    
+    public long getIndexPendingWrites();
+    
+    public long getIndexRejectedWrites();
+    
+    public long getIndexRejectedTasks();
+    
+    public long getIndexWaitP99Micros();
+    
+    public long getIndexRunP99Micros();
+    
+    public int getRebuildQueueSize();
+    
+    public int getClusterQueueSize();
+    
+    public long getClusterRejectedTasks();
+    
+    public long getClusterWaitP99Micros();
+    
+    public int getCascadeQueueSize();
+    
+    public long getCascadePendingTasks();
+    
+}
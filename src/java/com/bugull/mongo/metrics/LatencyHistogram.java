@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram, with log-linear buckets of about 12% precision, like HdrHistogram with low resolution.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class LatencyHistogram {
+    
+    private final static int SUB_BITS = 3;
+    private final static int SUB_COUNT = 1 << SUB_BITS;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    public void record(long value){
+        if(value < 0){
+            value = 0;
+        }
+        buckets.incrementAndGet(getIndex(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        long m = max.get();
+        while(value > m && !max.compareAndSet(m, value)){
+            m = max.get();
+        }
+    }
+    
+    /**
+     * Get the value at a percentile.
+     * @param percentile between 0 and 100, such as 99.9
+     * @return the upper bound of the bucket, or 0 if nothing recorded
+     */
+    public long getPercentile(double percentile){
+        long n = count.get();
+        if(n == 0){
+            return 0;
+        }
+        long target = (long)Math.ceil(n * percentile / 100.0);
+        if(target < 1){
+            target = 1;
+        }
+        long sum = 0;
+        int len = buckets.length();
+        for(int i=0; i<len; i++){
+            sum += buckets.get(i);
+            if(sum >= target){
+                return Math.min(getUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    public long getCount(){
+        return count.get();
+    }
+    
+    public long getMax(){
+        return max.get();
+    }
+    
+    public double getMean(){
+        long n = count.get();
+        return n == 0 ? 0 : (double)total.get() / n;
+    }
+    
+    public void reset(){
+        int len = buckets.length();
+        for(int i=0; i<len; i++){
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+    
+    private static int getIndex(long value){
+        if(value < SUB_COUNT){
+            return (int)value;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int)((value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1));
+        return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+    
+    private static long getUpperBound(int index){
+        if(index < SUB_COUNT){
+            return index;
+        }
+        int exp = (index >> SUB_BITS) + SUB_BITS - 1;
+        int sub = index & (SUB_COUNT - 1);
+        return ((long)(SUB_COUNT + sub + 1) << (exp - SUB_BITS)) - 1;
+    }
+    
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+import com.mongodb.DBCallback;
+import com.mongodb.DBCollection;
+import com.mongodb.DBDecoder;
+import com.mongodb.DBDecoderFactory;
+import com.mongodb.DBObject;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.bson.BSONCallback;
+import org.bson.BSONObject;
+
+/**
+ * Create decoders which measure the bytes and time of decoding BSON documents of a collection. 
+ * 
+ * <p>It wraps the decoder factory used by the collection, and is installed only when metrics is enabled.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MetricsDecoderFactory implements DBDecoderFactory {
+    
+    private final String entity;
+    private final DBDecoderFactory factory;
+    
+    public MetricsDecoderFactory(String entity, DBDecoderFactory factory){
+        this.entity = entity;
+        this.factory = factory;
+    }
+    
+    /**
+     * @return the wrapped decoder factory
+     */
+    public DBDecoderFactory getFactory(){
+        return factory;
+    }
+
+    @Override
+    public DBDecoder create() {
+        return new MetricsDecoder(factory.create());
+    }
+    
+    private class MetricsDecoder implements DBDecoder {
+        
+        private final DBDecoder decoder;
+        
+        MetricsDecoder(DBDecoder decoder){
+            this.decoder = decoder;
+        }
+        
+        @Override
+        public DBObject decode(byte[] b, DBCollection collection){
+            BuguMetrics metrics = BuguMetrics.getInstance();
+            if(!metrics.isEnabled()){
+                return decoder.decode(b, collection);
+            }
+            long start = System.nanoTime();
+            DBObject dbo = decoder.decode(b, collection);
+            metrics.recordDecode(entity, System.nanoTime() - start, b.length);
+            return dbo;
+        }
+        
+        @Override
+        public DBObject decode(InputStream in, DBCollection collection) throws IOException {
+            BuguMetrics metrics = BuguMetrics.getInstance();
+            if(!metrics.isEnabled()){
+                return decoder.decode(in, collection);
+            }
+            CountingInputStream cis = new CountingInputStream(in);
+            long start = System.nanoTime();
+            DBObject dbo = decoder.decode(cis, collection);
+            metrics.recordDecode(entity, System.nanoTime() - start, cis.count);
+            return dbo;
+        }
+        
+        @Override
+        public DBCallback getDBCallback(DBCollection collection){
+            return decoder.getDBCallback(collection);
+        }
+        
+        @Override
+        public BSONObject readObject(byte[] b){
+            return decoder.readObject(b);
+        }
+        
+        @Override
+        public BSONObject readObject(InputStream in) throws IOException {
+            return decoder.readObject(in);
+        }
+        
+        @Override
+        public int decode(byte[] b, BSONCallback callback){
+            return decoder.decode(b, callback);
+        }
+        
+        @Override
+        public int decode(InputStream in, BSONCallback callback) throws IOException {
+            return decoder.decode(in, callback);
+        }
+        
+    }
+    private static class CountingInputStream extends FilterInputStream {
+        
+        long count;
+        
+        CountingInputStream(InputStream in){
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0){
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0){
+                count += n;
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+import com.bugull.mongo.interceptor.Interceptor;
+import com.bugull.mongo.interceptor.Operation;
+import com.bugull.mongo.utils.MapperUtil;
+
+/**
+ * Record the operations of DAOs into metrics. It's installed globally when metrics is enabled.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+class MetricsInterceptor implements Interceptor {
+    
+    private final BuguMetrics metrics;
+    
+    MetricsInterceptor(BuguMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void before(Operation op) {
+        //do nothing
+    }
+
+    @Override
+    public void after(Operation op, long elapsed, long resultSize) {
+        metrics.recordElapsed(MapperUtil.getEntityName(op.getEntityClass()), op.getType(), elapsed, resultSize);
+    }
+
+    @Override
+    public void onError(Operation op, long elapsed, Throwable ex) {
+        metrics.recordError(MapperUtil.getEntityName(op.getEntityClass()), op.getType());
+    }
+    
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+import java.util.Collection;
+
+/**
+ * Ship the metrics to other systems. Register it by BuguMetrics.addReporter().
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface MetricsReporter {
+    
+    /**
+     * Called periodically in a background thread.
+     * @param stats the metrics of all operations
+     * @param executors the queue depths of background executors
+     */
+    public void report(Collection<OperationStats> stats, ExecutorStatsMBean executors);
+    
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The metrics of one operation on one entity.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class OperationStats implements OperationStatsMBean {
+    
+    private final String entity;
+    private final String operation;
+    
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    
+    public OperationStats(String entity, String operation){
+        this.entity = entity;
+        this.operation = operation;
+    }
+    
+    /**
+     * @param nanos elapsed time
+     * @param documents documents returned or affected
+     * @param bytes bytes decoded, 0 if not measured
+     */
+    public void record(long nanos, long documents, long bytes){
+        latency.record(nanos);
+        if(documents > 0){
+            this.documents.addAndGet(documents);
+        }
+        if(bytes > 0){
+            this.bytes.addAndGet(bytes);
+        }
+    }
+
+    /**
+     * Record a failed operation. It's only counted in errors, not in the count and latency of successful ones.
+     */
+    public void recordError(){
+        errors.incrementAndGet();
+    }
+
+    @Override
+    public String getEntity() {
+        return entity;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.get();
+    }
+
+    @Override
+    public long getDocuments() {
+        return documents.get();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latency.getMean() / 1000.0;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return latency.getPercentile(50) / 1000L;
+    }
+
+    @Override
+    public long getP99Micros() {
+        return latency.getPercentile(99) / 1000L;
+    }
+
+    @Override
+    public long getP999Micros() {
+        return latency.getPercentile(99.9) / 1000L;
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return latency.getMax() / 1000L;
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        documents.set(0);
+        bytes.set(0);
+        errors.set(0);
+    }
+    
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.metrics;
+
+/**
+ * JMX interface of OperationStats.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface OperationStatsMBean {
+    
+    public String getEntity();
+    
+    public String getOperation();
+    
+    public long getCount();
+    
+    public long getErrors();
+    
+    public long getDocuments();
+    
+    public long getBytes();
+    
+    public double getMeanMicros();
+    
+    public long getP50Micros();
+    
+    public long getP99Micros();
+    
+    public long getP999Micros();
+    
+    public long getMaxMicros();
+    
+    public void reset();
+    
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.annotations.Default;
+import java.lang.reflect.Field;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defer the CASCADE_READ references while decoding, and resolve them together when the outermost decoding finishes.
+ * 
+ * <p>So reading N documents costs one query per referenced class and level, rather than N queries per reference. 
+ * Every entity is loaded once in a context, and the levels are limited by max depth.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class CascadeReadContext {
+    
+    private final static ThreadLocal<CascadeReadContext> local = new ThreadLocal<CascadeReadContext>();
+    
+    private static volatile int maxDepth = Default.CASCADE_READ_DEPTH;
+    
+    private final Map<String, BuguEntity> identity = new HashMap<String, BuguEntity>();
+    private RefBatch batch = new RefBatch(identity);
+    private int level;
+    private int depth;
+    
+    /**
+     * Enter a decoding. Must be paired with end() in a finally block.
+     * @return 
+     */
+    public static CascadeReadContext begin(){
+        CascadeReadContext context = local.get();
+        if(context == null){
+            context = new CascadeReadContext();
+            local.set(context);
+        }
+        context.level++;
+        return context;
+    }
+    
+    /**
+     * Get the context of current thread.
+     * @return null if not decoding
+     */
+    public static CascadeReadContext current(){
+        return local.get();
+    }
+    
+    /**
+     * Set the max levels of cascade read. Deeper references keep the entities with id only.
+     * @param depth 
+     */
+    public static void setMaxDepth(int depth){
+        maxDepth = depth;
+    }
+    
+    /**
+     * Add a CASCADE_READ field, whose value has been decoded as entities with id only.
+     * @param obj
+     * @param field 
+     */
+    public void add(Object obj, Field field){
+        if(depth < maxDepth){
+            batch.add(obj, field);
+        }
+    }
+    
+    /**
+     * Resolve the deferred references level by level. It works only in the outermost decoding.
+     */
+    public void resolve(){
+        if(level != 1){
+            return;
+        }
+        try{
+            while(!batch.isEmpty()){
+                RefBatch current = batch;
+                batch = new RefBatch(identity);
+                depth++;
+                //decoding the loaded entities adds the references of next level
+                current.fetch();
+            }
+        }finally{
+            batch = new RefBatch(identity);
+            depth = 0;
+            identity.clear();
+        }
+    }
+    
+    public void end(){
+        level--;
+        if(level <= 0){
+            local.remove();
+        }
+    }
+    
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.utils.ThreadUtil;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Run the cascade delete.
+ * 
+ * <p>Every task removes a batch of ids of one class, and the cascade of the removed entities is submitted as next tasks, 
+ * so the reference graph is walked breadth-first. The tasks of different classes run in parallel, with bounded threads 
+ * and a bounded queue. When the queue is full, the submitting thread runs the task itself, which slows down the producer.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class DeleteCascadeEngine {
+    
+    private final static Logger logger = Logger.getLogger(DeleteCascadeEngine.class);
+    
+    private final static int BATCH_SIZE = 1000;
+    
+    private int threads = 4;
+    private int queueCapacity = 1000;
+    private ThreadPoolExecutor executor;
+    
+    private final AtomicLong submittedTasks = new AtomicLong();
+    private final AtomicLong completedTasks = new AtomicLong();
+    private final AtomicLong failedTasks = new AtomicLong();
+    private final AtomicLong removedEntities = new AtomicLong();
+    
+    private static class Holder {
+        final static DeleteCascadeEngine instance = new DeleteCascadeEngine();
+    } 
+    
+    public static DeleteCascadeEngine getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Submit the ids of one class to remove. A large set of ids is split into several tasks.
+     * @param clazz
+     * @param ids 
+     */
+    public void submit(Class<?> clazz, Collection<String> ids){
+        List<String> list = new ArrayList<String>(ids);
+        int size = list.size();
+        for(int i=0; i<size; i+=BATCH_SIZE){
+            List<String> sub = new ArrayList<String>(list.subList(i, Math.min(size, i+BATCH_SIZE)));
+            submittedTasks.incrementAndGet();
+            getExecutor().execute(new DeleteCascadeTask(clazz, sub));
+        }
+    }
+    
+    void taskCompleted(int removed){
+        completedTasks.incrementAndGet();
+        removedEntities.addAndGet(removed);
+    }
+    
+    void taskFailed(Exception ex){
+        failedTasks.incrementAndGet();
+        logger.error("Cascade delete failed", ex);
+    }
+    
+    private synchronized ThreadPoolExecutor getExecutor(){
+        if(executor == null){
+            executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, 
+                    new ArrayBlockingQueue<Runnable>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
+    
+    /**
+     * Set the number of threads, before any cascade delete happens.
+     * @param threads 
+     */
+    public void setThreads(int threads){
+        this.threads = threads;
+    }
+    
+    /**
+     * Set the capacity of waiting tasks, before any cascade delete happens.
+     * @param queueCapacity 
+     */
+    public void setQueueCapacity(int queueCapacity){
+        this.queueCapacity = queueCapacity;
+    }
+    
+    /**
+     * Wait until all the submitted tasks finish.
+     * @param timeout time in milliseconds
+     * @return true if all finished, false if timeout
+     */
+    public boolean awaitIdle(long timeout){
+        long end = System.currentTimeMillis() + timeout;
+        while(getPendingTasks() > 0){
+            if(System.currentTimeMillis() >= end){
+                return false;
+            }
+            try{
+                Thread.sleep(10);
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public synchronized void close(){
+        ThreadUtil.safeClose(executor);
+        executor = null;
+    }
+    
+    /**
+     * @return the tasks submitted but not finished yet
+     */
+    public long getPendingTasks(){
+        return submittedTasks.get() - completedTasks.get() - failedTasks.get();
+    }
+    
+    /**
+     * @return the tasks waiting in the queue
+     */
+    public synchronized int getQueueSize(){
+        return executor == null ? 0 : executor.getQueue().size();
+    }
+    
+    /**
+     * @return the tasks running now
+     */
+    public synchronized int getActiveCount(){
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    public long getSubmittedTasks() {
+        return submittedTasks.get();
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks.get();
+    }
+
+    public long getFailedTasks() {
+        return failedTasks.get();
+    }
+
+    /**
+     * @return the number of entities removed by cascade
+     */
+    public long getRemovedEntities() {
+        return removedEntities.get();
+    }
+    
+}
@@ -16,121 +16,36 @@
 
 package com.bugull.mongo.misc;
 
-import com.bugull.mongo.utils.Operator;
-import com.bugull.mongo.utils.FieldUtil;
-import com.bugull.mongo.BuguEntity;
-import com.bugull.mongo.BuguQuery;
 import com.bugull.mongo.cache.DaoCache;
-import java.lang.reflect.Array;
-import java.lang.reflect.Field;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.Collection;
+import com.mongodb.WriteResult;
 import java.util.List;
-import java.util.Map;
 
 /**
+ * Remove a batch of referenced entities of one class. 
+ * Their own cascade delete is submitted to DeleteCascadeEngine by their dao.
  *
  * @author Frank Wen(xbwen@hotmail.com)
  */
-@SuppressWarnings("unchecked")
 public class DeleteCascadeTask implements Runnable{
-        
-    private List<Field> refFields;
-    private List<Field> refListFields;
-    private BuguEntity entity;
+    
+    private Class<?> clazz;
+    private List<String> ids;
 
-    public DeleteCascadeTask(List<Field> refFields, List<Field> refListFields, BuguEntity entity) {
-        this.refFields = refFields;
-        this.refListFields = refListFields;
-        this.entity = entity;
+    public DeleteCascadeTask(Class<?> clazz, List<String> ids) {
+        this.clazz = clazz;
+        this.ids = ids;
     }
 
     @Override
     public void run(){
-        for(Field f : refFields){
-            processRef(f);
-        }
-        for(Field f : refListFields){
-            processRefList(f);
-        }
-    }
-    
-    private void processRef(Field f){
-        Object value = FieldUtil.get(entity, f);
-        if(value != null){
-            Class<?> type = f.getType();
-            InternalDao dao = DaoCache.getInstance().get(type);
-            dao.remove(value);
-        }
-    }
-    
-    private void processRefList(Field f){
-        Object value = FieldUtil.get(entity, f);
-        if(value == null){
-            return;
-        }
-        List<String> idList = null;
-        Class<?> clazz = null;
-        Class<?> type = f.getType();
-        if(type.isArray()){
-            clazz = type.getComponentType();
-            idList = getArrayIds(value);
-        }else{
-            ParameterizedType paramType = (ParameterizedType)f.getGenericType();
-            Type[] types = paramType.getActualTypeArguments();
-            int len = types.length;
-            if(len == 1){
-                clazz = (Class)types[0];
-                idList = getCollectionIds(value);
-            }else if(len == 2){
-                clazz = (Class)types[1];
-                idList = getMapIds(value);
-            }
-        }
-        if(clazz == null){
-            return;
-        }
-        InternalDao dao = DaoCache.getInstance().get(clazz);
-        BuguQuery query = dao.query().in(Operator.ID, idList);
-        dao.remove(query);
-    }
-    
-    private List<String> getArrayIds(Object value){
-        int len = Array.getLength(value);
-        List<String> idList = new ArrayList<String>();
-        for(int i=0; i<len; i++){
-            Object item = Array.get(value, i);
-            if(item != null){
-                BuguEntity ent = (BuguEntity)item;
-                idList.add(ent.getId());
-            }
-        }
-        return idList;
-    }
-    
-    private List<String> getCollectionIds(Object value){
-        Collection<BuguEntity> collection = (Collection<BuguEntity>)value;
-        List<String> idList = new ArrayList<String>();
-        for(BuguEntity ent : collection){
-            if(ent != null){
-                idList.add(ent.getId());
-            }
-        }
-        return idList;
-    }
-    
-    private List<String> getMapIds(Object value){
-        Map<Object, BuguEntity> map = (Map<Object, BuguEntity>)value;
-        Collection<BuguEntity> values = map.values();
-        List<String> idList = new ArrayList<String>();
-        for(BuguEntity ent : values){
-            if(ent != null){
-                idList.add(ent.getId());
-            }
+        try{
+            InternalDao dao = DaoCache.getInstance().get(clazz);
+            //a task has no more ids than a batch of remove, so the result is of all of them
+            WriteResult wr = dao.remove(ids);
+            DeleteCascadeEngine.getInstance().taskCompleted(wr == null ? 0 : wr.getN());
+        }catch(Exception ex){
+            DeleteCascadeEngine.getInstance().taskFailed(ex);
         }
-        return idList;
     }
     
 }
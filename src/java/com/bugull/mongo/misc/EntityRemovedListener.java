@@ -16,25 +16,40 @@
 
 package com.bugull.mongo.misc;
 
-import com.bugull.mongo.BuguConnection;
 import com.bugull.mongo.BuguEntity;
 import com.bugull.mongo.annotations.Default;
 import com.bugull.mongo.annotations.Ref;
 import com.bugull.mongo.annotations.RefList;
 import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.utils.FieldUtil;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * Listener for cascade delete
  * 
  * @author Frank Wen(xbwen@hotmail.com)
  */
+@SuppressWarnings("unchecked")
 public class EntityRemovedListener {
     
     private List<Field> refFields = new ArrayList<Field>();
     private List<Field> refListFields = new ArrayList<Field>();
+    private DBObject refKeys = new BasicDBObject(Operator.ID, 1);
 
     public EntityRemovedListener(Class<?> clazz) {
         Field[] fields = FieldsCache.getInstance().get(clazz);
@@ -42,19 +57,119 @@ public class EntityRemovedListener {
             Ref ref = f.getAnnotation(Ref.class);
             if(ref!=null && ref.cascade().toUpperCase().indexOf(Default.CASCADE_DELETE)!=-1){
                 refFields.add(f);
+                String name = f.getName();
+                if(!ref.name().equals(Default.NAME)){
+                    name = ref.name();
+                }
+                refKeys.put(name, 1);
                 continue;
             }
             RefList refList = f.getAnnotation(RefList.class);
             if(refList!=null && refList.cascade().toUpperCase().indexOf(Default.CASCADE_DELETE)!=-1){
                 refListFields.add(f);
+                String name = f.getName();
+                if(!refList.name().equals(Default.NAME)){
+                    name = refList.name();
+                }
+                refKeys.put(name, 1);
                 continue;
             }
         }
     }
     
     public void entityRemove(BuguEntity entity){
-        DeleteCascadeTask task = new DeleteCascadeTask(refFields, refListFields, entity);
-        BuguConnection.getInstance().getExecutor().execute(task);
+        if(entity == null){
+            //not found, nothing to cascade
+            return;
+        }
+        List<BuguEntity> entities = new ArrayList<BuguEntity>();
+        entities.add(entity);
+        entityRemove(entities);
+    }
+    
+    /**
+     * Cascade delete for a batch of entities. 
+     * The referenced ids are grouped by class, and each class is removed by its own tasks.
+     * @param entities null elements are skipped
+     */
+    public void entityRemove(List<BuguEntity> entities){
+        if(entities.contains(null)){
+            entities = new ArrayList<BuguEntity>(entities);
+            entities.removeAll(Collections.singleton(null));
+        }
+        Map<Class<?>, Set<String>> map = new LinkedHashMap<Class<?>, Set<String>>();
+        for(Field f : refFields){
+            Set<String> idSet = getIdSet(map, FieldUtil.getRealType(f));
+            for(BuguEntity entity : entities){
+                Object value = FieldUtil.get(entity, f);
+                if(value != null){
+                    idSet.add(((BuguEntity)value).getId());
+                }
+            }
+        }
+        for(Field f : refListFields){
+            Class<?> type = f.getType();
+            Class<?> clazz = null;
+            boolean isMap = false;
+            if(type.isArray()){
+                clazz = type.getComponentType();
+            }else{
+                ParameterizedType paramType = (ParameterizedType)f.getGenericType();
+                Type[] types = paramType.getActualTypeArguments();
+                clazz = (Class)types[types.length - 1];
+                isMap = types.length == 2;
+            }
+            Set<String> idSet = getIdSet(map, FieldUtil.getRealType(clazz, f));
+            for(BuguEntity entity : entities){
+                Object value = FieldUtil.get(entity, f);
+                if(value == null){
+                    continue;
+                }
+                if(type.isArray()){
+                    int len = Array.getLength(value);
+                    for(int i=0; i<len; i++){
+                        addId(idSet, Array.get(value, i));
+                    }
+                }else if(isMap){
+                    for(Object item : ((Map)value).values()){
+                        addId(idSet, item);
+                    }
+                }else{
+                    for(Object item : (Collection)value){
+                        addId(idSet, item);
+                    }
+                }
+            }
+        }
+        DeleteCascadeEngine engine = DeleteCascadeEngine.getInstance();
+        for(Entry<Class<?>, Set<String>> entry : map.entrySet()){
+            if(!entry.getValue().isEmpty()){
+                engine.submit(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+    
+    private Set<String> getIdSet(Map<Class<?>, Set<String>> map, Class<?> clazz){
+        Set<String> idSet = map.get(clazz);
+        if(idSet == null){
+            idSet = new LinkedHashSet<String>();
+            map.put(clazz, idSet);
+        }
+        return idSet;
+    }
+    
+    private void addId(Set<String> idSet, Object item){
+        if(item != null){
+            idSet.add(((BuguEntity)item).getId());
+        }
+    }
+    
+    /**
+     * Get the fields needed by cascade delete, used to read the removed entities partially.
+     * @return 
+     */
+    public DBObject getRefKeys(){
+        return refKeys;
     }
     
 }
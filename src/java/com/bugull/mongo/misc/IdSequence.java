@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.annotations.Id;
+import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.cache.FieldsCache;
+import com.bugull.mongo.exception.DBConnectionException;
+import com.bugull.mongo.exception.IdException;
+import com.bugull.mongo.storage.MemoryCollection;
+import com.bugull.mongo.storage.MemoryDatabase;
+import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.DuplicateKeyException;
+import com.mongodb.MongoException;
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Allocate the auto increased id, for IdType.AUTO_INCREASE.
+ * 
+ * <p>The sequence is stored in a counter collection, and is increased by findAndModify. 
+ * The counter collection is kept in memory too, if the connection is kept in memory. 
+ * Each JVM reserves a block of ids at once, and hands them out from memory.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class IdSequence {
+    
+    private final static Logger logger = Logger.getLogger(IdSequence.class);
+    
+    public final static String COUNTER_COLLECTION = "bugu_counters";
+    
+    private final static String SEQ = "seq";
+    
+    private final Class<?> clazz;
+    private final String name;
+    private final long start;
+    private final int blockSize;
+    
+    private volatile Block block;
+    private volatile boolean seeded;
+    
+    public IdSequence(Class<?> clazz){
+        this.clazz = clazz;
+        this.name = MapperUtil.getEntityName(clazz);
+        Field idField = null;
+        try{
+            idField = FieldsCache.getInstance().getIdField(clazz);
+        }catch(IdException ex){
+            logger.error(ex.getMessage(), ex);
+        }
+        Id id = idField.getAnnotation(Id.class);
+        this.start = id.start();
+        this.blockSize = Math.max(1, id.blockSize());
+    }
+    
+    /**
+     * Get the next id. Only when the reserved block is used up, it accesses the counter collection.
+     * @return 
+     */
+    public long next(){
+        while(true){
+            Block b = block;
+            if(b != null){
+                long value = b.next.getAndIncrement();
+                if(value <= b.end){
+                    return value;
+                }
+            }
+            synchronized(this){
+                if(block == b){
+                    long end = reserve(blockSize);
+                    block = new Block(end - blockSize + 1, end);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reserve a range of ids at once, such as for batch insert.
+     * @param count the number of ids
+     * @return the first id of the range
+     */
+    public long next(int count){
+        long end = reserve(count);
+        return end - count + 1;
+    }
+    
+    private long reserve(int count){
+        DBObject query = new BasicDBObject(Operator.ID, name);
+        DBObject update = new BasicDBObject(Operator.INC, new BasicDBObject(SEQ, (long)count));
+        DBObject result = null;
+        MemoryDatabase memory = BuguConnection.getInstance(clazz).getMemoryDatabase();
+        if(memory != null){
+            MemoryCollection counters = memory.get(COUNTER_COLLECTION);
+            if(!seeded){
+                seed(counters);
+            }
+            result = counters.findAndModify(query, null, null, false, update, true, true);
+        }else{
+            DBCollection counters = getCounterCollection();
+            if(!seeded){
+                seed(counters);
+            }
+            result = counters.findAndModify(query, null, null, false, update, true, true);
+        }
+        return ((Number)result.get(SEQ)).longValue();
+    }
+    
+    /**
+     * The counter starts from the max id in the collection, so the existing data can be continued.
+     * @param counters 
+     */
+    private synchronized void seed(DBCollection counters){
+        if(seeded){
+            return;
+        }
+        DBObject query = new BasicDBObject(Operator.ID, name);
+        if(counters.findOne(query) == null){
+            long max = DaoCache.getInstance().get(clazz).getMaxId();
+            long seq = (max == 0) ? start - 1 : max;
+            DBObject dbo = new BasicDBObject(Operator.ID, name);
+            dbo.put(SEQ, seq);
+            try{
+                counters.insert(dbo);
+            }catch(DuplicateKeyException ex){
+                //another JVM has created the counter
+            }
+        }
+        seeded = true;
+    }
+    
+    private synchronized void seed(MemoryCollection counters){
+        if(seeded){
+            return;
+        }
+        DBObject query = new BasicDBObject(Operator.ID, name);
+        if(counters.findOne(query, null) == null){
+            long max = DaoCache.getInstance().get(clazz).getMaxId();
+            DBObject dbo = new BasicDBObject(Operator.ID, name);
+            dbo.put(SEQ, (max == 0) ? start - 1 : max);
+            try{
+                counters.insert(Collections.singletonList(dbo));
+            }catch(MongoException ex){
+                //another thread has created the counter
+            }
+        }
+        seeded = true;
+    }
+    
+    private DBCollection getCounterCollection(){
+        DB db = null;
+        try {
+            db = BuguConnection.getInstance(clazz).getDB();
+        } catch (DBConnectionException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        return db.getCollection(COUNTER_COLLECTION);
+    }
+    
+    private static class Block {
+        
+        final AtomicLong next;
+        final long end;
+        
+        Block(long first, long end){
+            this.next = new AtomicLong(first);
+            this.end = end;
+        }
+        
+    }
+    
+}
@@ -20,11 +20,17 @@ import com.bugull.mongo.utils.Operator;
 import com.bugull.mongo.utils.MapperUtil;
 import com.bugull.mongo.utils.IdUtil;
 import com.bugull.mongo.AdvancedDao;
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.utils.FieldUtil;
 import com.bugull.mongo.lucene.backend.EntityChangedListener;
+import com.bugull.mongo.storage.StorageCursor;
 import com.mongodb.BasicDBObject;
-import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The dao used in BuguMongo framework itself. Do not use this in your application.
@@ -33,6 +39,8 @@ import java.util.List;
  */
 public final class InternalDao<T> extends AdvancedDao<T> {
     
+    private final static int BATCH_SIZE = 1000;
+    
     public InternalDao(Class<T> clazz){
         super(clazz);
     }
@@ -57,20 +65,99 @@ public final class InternalDao<T> extends AdvancedDao<T> {
     public T findOneLazily(String id){
         DBObject dbo = new BasicDBObject();
         dbo.put(Operator.ID, IdUtil.toDbId(clazz, id));
-        DBObject result = coll.findOne(dbo, keys);
+        DBObject result = storage.findOne(dbo, keys);
         return MapperUtil.fromDBObject(clazz, result);
     }
     
+    /**
+     * Fetch out the lazy fields of entities, which were loaded without them.
+     * <p>Only the lazy fields are queried, by chunked $in, and only they are set on the entities.</p>
+     * @param list 
+     */
+    public void fetchLazy(List<BuguEntity> list){
+        List<Field> lazyFields = MapperUtil.getLazyFields(clazz);
+        if(lazyFields.isEmpty()){
+            return;
+        }
+        DBObject lazyKeys = MapperUtil.getLazyKeyFields(clazz);
+        Map<String, List<BuguEntity>> map = new LinkedHashMap<String, List<BuguEntity>>();
+        for(BuguEntity ent : list){
+            List<BuguEntity> same = map.get(ent.getId());
+            if(same == null){
+                same = new ArrayList<BuguEntity>();
+                map.put(ent.getId(), same);
+            }
+            same.add(ent);
+        }
+        List<Object> dbIds = new ArrayList<Object>(map.size());
+        for(String id : map.keySet()){
+            dbIds.add(IdUtil.toDbId(clazz, id));
+        }
+        int size = dbIds.size();
+        for(int i=0; i<size; i+=BATCH_SIZE){
+            List<Object> sub = dbIds.subList(i, Math.min(size, i+BATCH_SIZE));
+            DBObject query = new BasicDBObject(Operator.ID, new BasicDBObject(Operator.IN, sub));
+            StorageCursor cursor = storage.find(query, lazyKeys).batchSize(BATCH_SIZE);
+            while(cursor.hasNext()){
+                BuguEntity src = (BuguEntity)MapperUtil.fromDBObject(clazz, cursor.next());
+                List<BuguEntity> targets = map.get(src.getId());
+                if(targets == null){
+                    continue;
+                }
+                for(BuguEntity target : targets){
+                    for(Field f : lazyFields){
+                        FieldUtil.set(target, f, FieldUtil.get(src, f));
+                    }
+                }
+            }
+            cursor.close();
+        }
+    }
+    
+    /**
+     * Get entities by ids, used for the batched cascade read.
+     * @param ids
+     * @param lazy true to exclude the lazy fields
+     * @param orderBy null for no sort
+     * @return 
+     */
+    public List<T> findByIds(List<String> ids, boolean lazy, String orderBy){
+        List<Object> dbIds = new ArrayList<Object>(ids.size());
+        for(String id : ids){
+            dbIds.add(IdUtil.toDbId(clazz, id));
+        }
+        DBObject query = new BasicDBObject(Operator.ID, new BasicDBObject(Operator.IN, dbIds));
+        StorageCursor cursor = null;
+        if(lazy){
+            cursor = storage.find(query, keys);
+        }else{
+            cursor = storage.find(query, null);
+        }
+        if(orderBy != null){
+            cursor.sort(MapperUtil.getSort(orderBy));
+        }
+        return MapperUtil.toList(clazz, cursor);
+    }
+    
     /**
      * Used for the automatic lucene index maintaining.
      * @param query
      * @return 
      */
     public List<T> findForLucene(DBObject query){
-        DBCursor cursor = coll.find(query);
+        StorageCursor cursor = storage.find(query, null);
         return MapperUtil.toList(clazz, cursor);
     }
     
+    /**
+     * Used for rebuilding the lucene index. The whole collection is read by one cursor.
+     * @param batchSize the number of documents fetched in one round trip
+     * @return 
+     */
+    public StorageCursor findAllForLucene(int batchSize){
+        return storage.find(new BasicDBObject(), null).batchSize(batchSize);
+    }
+    
     /**
      * Used for the automatic lucene index maintaining.
      * @param pageNum
@@ -78,17 +165,31 @@ public final class InternalDao<T> extends AdvancedDao<T> {
      * @return 
      */
     public List<T> findForLucene(int pageNum, int pageSize){
-        DBCursor cursor = coll.find().skip((pageNum-1)*pageSize).limit(pageSize);
+        StorageCursor cursor = storage.find(new BasicDBObject(), null).skip((pageNum-1)*pageSize).limit(pageSize);
         return MapperUtil.toList(clazz, cursor);
     }
     
     /**
-     * Get the max id value, for auto increased id type.
+     * Get the max id value, for auto increased id type. It only reads the last numeric item of the _id index. 
+     * The ids of other types, such as ObjectId or string, are sorted after numbers, so they are skipped by a range in the numeric type.
      * @return 
      */
-    public synchronized long getMaxId(){
-        double d = this.max(Operator.ID);
-        return (long)d;
+    public long getMaxId(){
+        if(storage == null){
+            return 0;
+        }
+        long max = 0;
+        DBObject idKey = new BasicDBObject(Operator.ID, 1);
+        DBObject numeric = new BasicDBObject(Operator.ID, new BasicDBObject(Operator.GTE, Long.MIN_VALUE));
+        StorageCursor cursor = storage.find(numeric, idKey).sort(new BasicDBObject(Operator.ID, -1)).limit(1);
+        if(cursor.hasNext()){
+            Object id = cursor.next().get(Operator.ID);
+            if(id instanceof Number){
+                max = ((Number)id).longValue();
+            }
+        }
+        cursor.close();
+        return max;
     }
 
 }
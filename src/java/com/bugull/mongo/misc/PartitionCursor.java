@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.storage.DocumentUtil;
+import com.bugull.mongo.storage.Storage;
+import com.bugull.mongo.storage.StorageCursor;
+import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.ThreadUtil;
+import com.mongodb.DBObject;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import org.apache.log4j.Logger;
+
+/**
+ * Iterate the results of a query on many partitions.
+ * 
+ * <p>The partitions are queried concurrently by a bounded thread pool. Then the results are merged: 
+ * by k-way merge in the sort order if there is a sort, otherwise partition by partition. 
+ * Only the first batch of each partition is fetched ahead, the rest are streamed while iterating.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class PartitionCursor implements Iterator<DBObject>, Closeable {
+    
+    private final static Logger logger = Logger.getLogger(PartitionCursor.class);
+    
+    private static volatile int parallelism = 8;
+    private static ExecutorService executor;
+    
+    private final List<StorageCursor> cursors = new ArrayList<StorageCursor>();
+    private final DBObject sort;
+    private PriorityQueue<Head> heads;
+    private int current;  //the partition in use, when there is no sort
+    
+    /**
+     * @param partitions the partitions in time order
+     * @param condition
+     * @param fields null for all fields
+     * @param sort null for no sort
+     * @param limit the max results needed from each partition, 0 for no limit
+     */
+    public PartitionCursor(List<Storage> partitions, DBObject condition, DBObject fields, DBObject sort, int limit){
+        this.sort = sort;
+        for(Storage storage : partitions){
+            StorageCursor cursor = storage.find(condition, fields);
+            if(sort != null){
+                cursor.sort(sort);
+            }
+            if(limit > 0){
+                cursor.limit(limit);
+            }
+            cursors.add(cursor);
+        }
+        prefetch();
+        if(sort != null){
+            heads = new PriorityQueue<Head>(Math.max(1, cursors.size()), new HeadComparator());
+            int size = cursors.size();
+            for(int i=0; i<size; i++){
+                StorageCursor cursor = cursors.get(i);
+                if(cursor.hasNext()){
+                    heads.add(new Head(i, cursor.next()));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Run the queries concurrently, to fetch the first batch of each partition.
+     */
+    private void prefetch(){
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for(final StorageCursor cursor : cursors){
+            futures.add(getExecutor().submit(new Callable<Boolean>(){
+                @Override
+                public Boolean call(){
+                    return cursor.hasNext();
+                }
+            }));
+        }
+        for(Future<Boolean> future : futures){
+            try{
+                future.get();
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                return;
+            }catch(ExecutionException ex){
+                logger.error("Query on partition failed", ex);
+            }
+        }
+    }
+    
+    /**
+     * Count the documents of many partitions concurrently.
+     * @param partitions
+     * @param condition
+     * @return 
+     */
+    public static long count(List<Storage> partitions, final DBObject condition){
+        List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        for(final Storage storage : partitions){
+            futures.add(getExecutor().submit(new Callable<Long>(){
+                @Override
+                public Long call(){
+                    return storage.count(condition);
+                }
+            }));
+        }
+        long count = 0;
+        for(Future<Long> future : futures){
+            try{
+                count += future.get();
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                break;
+            }catch(ExecutionException ex){
+                logger.error("Count on partition failed", ex);
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public boolean hasNext(){
+        if(sort != null){
+            return !heads.isEmpty();
+        }
+        int size = cursors.size();
+        while(current < size){
+            if(cursors.get(current).hasNext()){
+                return true;
+            }
+            current++;
+        }
+        return false;
+    }
+    
+    @Override
+    public DBObject next(){
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        if(sort == null){
+            return cursors.get(current).next();
+        }
+        Head head = heads.poll();
+        StorageCursor cursor = cursors.get(head.index);
+        if(cursor.hasNext()){
+            heads.add(new Head(head.index, cursor.next()));
+        }
+        return head.dbo;
+    }
+    
+    @Override
+    public void remove(){
+        throw new UnsupportedOperationException("Not supported.");
+    }
+    
+    @Override
+    public void close(){
+        for(StorageCursor cursor : cursors){
+            cursor.close();
+        }
+    }
+    
+    /**
+     * Set the max partitions queried at the same time, before any query runs.
+     * @param parallelism 
+     */
+    public static void setParallelism(int parallelism){
+        PartitionCursor.parallelism = parallelism;
+    }
+    
+    /**
+     * Stop the query threads. They are started again by the next query. It's called by BuguConnection.close().
+     */
+    public static synchronized void closeExecutor(){
+        ThreadUtil.safeClose(executor);
+        executor = null;
+    }
+    
+    private static synchronized ExecutorService getExecutor(){
+        if(executor == null){
+            executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory(){
+                @Override
+                public Thread newThread(Runnable r){
+                    Thread t = new Thread(r, "bugu-partition-query");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+    
+    private static class Head {
+        
+        int index;
+        DBObject dbo;
+        
+        Head(int index, DBObject dbo){
+            this.index = index;
+            this.dbo = dbo;
+        }
+        
+    }
+    
+    /**
+     * Compare the current documents of partitions by the sort keys, in the type order of MongoDB. Ties keep the partition order.
+     */
+    private class HeadComparator implements Comparator<Head> {
+        
+        @Override
+        public int compare(Head h1, Head h2){
+            for(String key : sort.keySet()){
+                int direction = ((Number)sort.get(key)).intValue();
+                int result = DocumentUtil.compare(MapperUtil.getValue(h1.dbo, key), MapperUtil.getValue(h2.dbo, key));
+                if(result != 0){
+                    return direction < 0 ? -result : result;
+                }
+            }
+            return h1.index - h2.index;
+        }
+        
+    }
+    
+}
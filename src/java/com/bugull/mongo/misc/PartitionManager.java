@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.annotations.Entity;
+import com.bugull.mongo.annotations.SplitType;
+import com.bugull.mongo.cache.CollectionCache;
+import com.bugull.mongo.cache.StorageCache;
+import com.bugull.mongo.exception.DBConnectionException;
+import com.bugull.mongo.metrics.BuguMetrics;
+import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.PartitionUtil;
+import com.bugull.mongo.utils.ThreadUtil;
+import com.mongodb.CommandResult;
+import com.mongodb.DB;
+import com.mongodb.DBCollection;
+import com.mongodb.MongoException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+
+/**
+ * Manage the partitions of an entity splitted by date.
+ * 
+ * <p>It runs periodically in background: creates the upcoming partitions with capped options and indexes ahead of time, 
+ * so the first write of a day doesn't pay for them; and drops, or renames for archive, the partitions out of retention.</p>
+ * 
+ * <p>Expired partitions are dropped directly. Lucene index, cascade delete and rollups are not touched.</p>
+ * 
+ * <p>When started, the partition metrics are published by JMX, as type=Partitions under BuguMetrics.DOMAIN.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class PartitionManager implements PartitionManagerMBean {
+    
+    private final static Logger logger = Logger.getLogger(PartitionManager.class);
+    
+    public final static String ARCHIVE_PREFIX = "archive-";
+    
+    private final static String MBEAN_TYPE = "Partitions";
+    
+    private final Class<?> clazz;
+    private final SplitType split;
+    private final String prefix;
+    private final String entityName;
+    
+    private int ahead = 1;
+    private int retention = 0;  //0 means keep forever
+    private boolean archive = false;
+    private long period = 3600L * 1000L;  //by default, run per hour
+    
+    private ScheduledExecutorService scheduler;
+    
+    private volatile Map<String, Long> sizes = Collections.emptyMap();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    
+    public PartitionManager(Class<?> clazz){
+        this.clazz = clazz;
+        this.split = clazz.getAnnotation(Entity.class).split();
+        this.entityName = MapperUtil.getEntityName(clazz);
+        this.prefix = entityName + "-";
+    }
+    
+    /**
+     * Start to run in background. It runs once immediately.
+     */
+    public synchronized void start(){
+        if(split != SplitType.DAILY && split != SplitType.MONTHLY && split != SplitType.YEARLY){
+            logger.error(clazz.getName() + " is not splitted by date");
+            return;
+        }
+        if(scheduler == null){
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleWithFixedDelay(new Runnable(){
+                @Override
+                public void run(){
+                    maintain();
+                }
+            }, 0, period, TimeUnit.MILLISECONDS);
+            BuguMetrics.getInstance().registerMBean(MBEAN_TYPE, entityName, this);
+        }
+    }
+    
+    public synchronized void close(){
+        if(scheduler != null){
+            BuguMetrics.getInstance().unregisterMBean(MBEAN_TYPE, entityName);
+        }
+        ThreadUtil.safeClose(scheduler);
+        scheduler = null;
+    }
+    
+    /**
+     * Create the upcoming partitions, remove the expired ones, and refresh the metrics. 
+     * It can be called besides the background runs, but they don't run at the same time.
+     */
+    @Override
+    public synchronized void maintain(){
+        DB db = null;
+        try{
+            db = BuguConnection.getInstance(clazz).getDB();
+        }catch(DBConnectionException ex){
+            logger.error(ex.getMessage(), ex);
+            return;
+        }
+        try{
+            Date now = new Date();
+            for(int i=0; i<=ahead; i++){
+                String name = prefix + PartitionUtil.getSuffix(split, now, i);
+                if(!db.collectionExists(name)){
+                    CollectionCache.getInstance().create(clazz, name);
+                    createdCount.incrementAndGet();
+                }
+            }
+            List<String> partitions = getPartitions(db);
+            if(retention > 0){
+                String oldest = PartitionUtil.getSuffix(split, now, 1 - retention);
+                List<String> kept = new ArrayList<String>();
+                for(String name : partitions){
+                    if(name.substring(prefix.length()).compareTo(oldest) < 0){
+                        expire(db, name);
+                    }else{
+                        kept.add(name);
+                    }
+                }
+                partitions = kept;
+            }
+            Map<String, Long> map = new LinkedHashMap<String, Long>();
+            for(String name : partitions){
+                CommandResult stats = db.getCollection(name).getStats();
+                Object size = stats.get("size");
+                map.put(name, size instanceof Number ? ((Number)size).longValue() : 0L);
+            }
+            sizes = Collections.unmodifiableMap(map);
+        }catch(MongoException ex){
+            logger.error("Can not maintain the partitions of " + clazz.getName(), ex);
+        }
+    }
+    
+    private List<String> getPartitions(DB db){
+        List<String> list = new ArrayList<String>();
+        for(String name : db.getCollectionNames()){
+            if(name.startsWith(prefix) && PartitionUtil.isSuffix(split, name.substring(prefix.length()))){
+                list.add(name);
+            }
+        }
+        Collections.sort(list);
+        return list;
+    }
+    
+    private void expire(DB db, String name){
+        StorageCache.getInstance().remove(clazz, name);
+        DBCollection coll = db.getCollection(name);
+        if(archive){
+            coll.rename(ARCHIVE_PREFIX + name);
+        }else{
+            coll.drop();
+        }
+        expiredCount.incrementAndGet();
+    }
+    
+    /**
+     * Set the number of partitions created ahead, besides the current one. Default is 1.
+     * @param ahead 
+     */
+    public void setAhead(int ahead){
+        this.ahead = ahead;
+    }
+    
+    /**
+     * Set the number of partitions kept, including the current one. Default is 0, which keeps all partitions.
+     * @param retention 
+     */
+    public void setRetention(int retention){
+        this.retention = retention;
+    }
+    
+    /**
+     * Rename the expired partitions with ARCHIVE_PREFIX, instead of dropping them.
+     * @param archive 
+     */
+    public void setArchive(boolean archive){
+        this.archive = archive;
+    }
+    
+    /**
+     * Set the running period, before start.
+     * @param period time in milliseconds
+     */
+    public void setPeriod(long period){
+        this.period = period;
+    }
+    
+    /**
+     * @return the number of partitions, at the last run
+     */
+    @Override
+    public int getPartitionCount(){
+        return sizes.size();
+    }
+    
+    /**
+     * @return the data size in bytes of each partition, at the last run
+     */
+    @Override
+    public Map<String, Long> getPartitionSizes(){
+        return sizes;
+    }
+    
+    /**
+     * @return the data size in bytes of all partitions, at the last run
+     */
+    @Override
+    public long getTotalSize(){
+        long total = 0;
+        for(Long size : sizes.values()){
+            total += size;
+        }
+        return total;
+    }
+    
+    /**
+     * @return the number of partitions created ahead
+     */
+    @Override
+    public long getCreatedCount(){
+        return createdCount.get();
+    }
+    
+    /**
+     * @return the number of partitions dropped or archived
+     */
+    @Override
+    public long getExpiredCount(){
+        return expiredCount.get();
+    }
+    
+}
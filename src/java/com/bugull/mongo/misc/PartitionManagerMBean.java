@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import java.util.Map;
+
+/**
+ * JMX interface of PartitionManager.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface PartitionManagerMBean {
+    
+    public int getPartitionCount();
+    
+    public Map<String, Long> getPartitionSizes();
+    
+    public long getTotalSize();
+    
+    public long getCreatedCount();
+    
+    public long getExpiredCount();
+    
+    public void maintain();
+    
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguEntity;
+import com.bugull.mongo.BuguScope;
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.Ref;
+import com.bugull.mongo.annotations.RefList;
+import com.bugull.mongo.cache.DaoCache;
+import com.bugull.mongo.utils.DataType;
+import com.bugull.mongo.utils.FieldUtil;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Resolve the @Ref and @RefList fields of many entities together.
+ * 
+ * <p>The fields' values hold referenced entities with id only. The ids are grouped by the referenced class, 
+ * and every distinct id is loaded once by chunked $in query, then the loaded entities are set back.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@SuppressWarnings("unchecked")
+public class RefBatch {
+    
+    private final static int BATCH_SIZE = 1000;
+    
+    private final Map<String, BuguEntity> identity;
+    private final Map<String, RefGroup> groups = new LinkedHashMap<String, RefGroup>();
+    private final List<Object> owners = new ArrayList<Object>();
+    private final List<Field> fields = new ArrayList<Field>();
+    
+    public RefBatch(){
+        this(new HashMap<String, BuguEntity>());
+    }
+    
+    /**
+     * @param identity the loaded entities, shared by batches to avoid loading an entity twice
+     */
+    public RefBatch(Map<String, BuguEntity> identity){
+        this.identity = identity;
+    }
+    
+    /**
+     * Add a @Ref or @RefList field to resolve.
+     * @param obj
+     * @param field 
+     */
+    public void add(Object obj, Field field){
+        Object value = FieldUtil.get(obj, field);
+        if(value == null){
+            return;
+        }
+        RefGroup group = getGroup(field);
+        for(BuguEntity ref : getRefs(field, value)){
+            if(ref != null && ref.getId() != null){
+                group.ids.add(ref.getId());
+            }
+        }
+        owners.add(obj);
+        fields.add(field);
+    }
+    
+    public boolean isEmpty(){
+        return owners.isEmpty();
+    }
+    
+    /**
+     * Load the referenced entities, and set them back to the fields.
+     * @return the distinct referenced entities
+     */
+    public List<BuguEntity> fetch(){
+        Set<BuguEntity> result = new LinkedHashSet<BuguEntity>();
+        for(RefGroup group : groups.values()){
+            group.load();
+            result.addAll(group.loaded.values());
+        }
+        int size = owners.size();
+        for(int i=0; i<size; i++){
+            Object obj = owners.get(i);
+            Field field = fields.get(i);
+            setRefs(obj, field, FieldUtil.get(obj, field));
+        }
+        return new ArrayList<BuguEntity>(result);
+    }
+    
+    private RefGroup getGroup(Field field){
+        Class<?> clazz = null;
+        String sort = null;
+        boolean lazy = false;
+        if(field.getAnnotation(Ref.class) != null){
+            //a single reference is loaded with all fields, as findOne() does
+            clazz = FieldUtil.getRealType(field);
+        }else{
+            clazz = FieldUtil.getRealType(getElementType(field), field);
+            sort = field.getAnnotation(RefList.class).sort();
+            if(sort.equals(Default.SORT)){
+                sort = null;
+            }
+            lazy = true;
+        }
+        String key = clazz.getName() + "@" + lazy + "@" + sort;
+        RefGroup group = groups.get(key);
+        if(group == null){
+            group = new RefGroup(clazz, lazy, sort);
+            groups.put(key, group);
+        }
+        return group;
+    }
+    
+    private Class<?> getElementType(Field field){
+        Class<?> type = field.getType();
+        if(type.isArray()){
+            return type.getComponentType();
+        }
+        ParameterizedType paramType = (ParameterizedType)field.getGenericType();
+        Type[] types = paramType.getActualTypeArguments();
+        //the element of Collection, or the value of Map
+        return (Class)types[types.length - 1];
+    }
+    
+    private Collection<BuguEntity> getRefs(Field field, Object value){
+        if(field.getAnnotation(Ref.class) != null){
+            return Collections.singletonList((BuguEntity)value);
+        }
+        Class<?> type = field.getType();
+        if(type.isArray()){
+            int len = Array.getLength(value);
+            List<BuguEntity> list = new ArrayList<BuguEntity>(len);
+            for(int i=0; i<len; i++){
+                list.add((BuguEntity)Array.get(value, i));
+            }
+            return list;
+        }
+        else if(DataType.isMapType(type)){
+            return ((Map<Object, BuguEntity>)value).values();
+        }
+        else{
+            return (Collection<BuguEntity>)value;
+        }
+    }
+    
+    private void setRefs(Object obj, Field field, Object value){
+        if(value == null){
+            return;
+        }
+        RefGroup group = getGroup(field);
+        if(field.getAnnotation(Ref.class) != null){
+            FieldUtil.set(obj, field, group.loaded.get(((BuguEntity)value).getId()));
+            return;
+        }
+        Class<?> type = field.getType();
+        if(DataType.isMapType(type)){
+            Map<Object, BuguEntity> map = (Map<Object, BuguEntity>)value;
+            Map result = new HashMap();
+            for(Entry<Object, BuguEntity> entry : map.entrySet()){
+                BuguEntity ref = entry.getValue();
+                if(ref != null){
+                    result.put(entry.getKey(), group.loaded.get(ref.getId()));
+                }else{
+                    result.put(entry.getKey(), null);
+                }
+            }
+            FieldUtil.set(obj, field, result);
+            return;
+        }
+        List<BuguEntity> result = group.select(getRefs(field, value));
+        if(type.isArray()){
+            int len = result.size();
+            Object arr = Array.newInstance(group.clazz, len);
+            for(int i=0; i<len; i++){
+                Array.set(arr, i, result.get(i));
+            }
+            FieldUtil.set(obj, field, arr);
+        }
+        else if(DataType.isListType(type)){
+            FieldUtil.set(obj, field, result);
+        }
+        else if(DataType.isSetType(type)){
+            FieldUtil.set(obj, field, new HashSet(result));
+        }
+        else if(DataType.isQueueType(type)){
+            FieldUtil.set(obj, field, new LinkedList(result));
+        }
+    }
+    
+    /**
+     * The referenced ids of one class, collected across all the fields.
+     */
+    private class RefGroup {
+        
+        Class<?> clazz;
+        boolean lazy;
+        String sort;
+        Set<String> ids = new LinkedHashSet<String>();
+        Map<String, BuguEntity> loaded = new LinkedHashMap<String, BuguEntity>();
+        
+        RefGroup(Class<?> clazz, boolean lazy, String sort){
+            this.clazz = clazz;
+            this.lazy = lazy;
+            this.sort = sort;
+        }
+        
+        void load(){
+            if(ids.isEmpty()){
+                return;
+            }
+            InternalDao dao = DaoCache.getInstance().get(clazz);
+            if(sort == null){
+                BuguScope scope = BuguScope.current();
+                List<String> list = new ArrayList<String>();
+                for(String id : ids){
+                    BuguEntity ent = identity.get(getKey(id));
+                    if(ent == null && scope != null){
+                        ent = scope.get(clazz, id, !lazy);
+                    }
+                    if(ent != null){
+                        loaded.put(id, ent);
+                    }else{
+                        list.add(id);
+                    }
+                }
+                int size = list.size();
+                for(int i=0; i<size; i+=BATCH_SIZE){
+                    List<String> sub = list.subList(i, Math.min(size, i+BATCH_SIZE));
+                    put(dao.findByIds(sub, lazy, null));
+                }
+            }else{
+                //one query keeps the global sort order, which is shared by every list
+                put(dao.findByIds(new ArrayList<String>(ids), lazy, sort));
+            }
+        }
+        
+        private void put(List<BuguEntity> list){
+            BuguScope scope = BuguScope.current();
+            for(BuguEntity ent : list){
+                if(scope != null){
+                    ent = scope.put(ent, !lazy);
+                }
+                String key = getKey(ent.getId());
+                BuguEntity exist = identity.get(key);
+                if(exist != null){
+                    ent = exist;
+                }else{
+                    identity.put(key, ent);
+                }
+                loaded.put(ent.getId(), ent);
+            }
+        }
+        
+        private String getKey(String id){
+            return clazz.getName() + "@" + lazy + "@" + id;
+        }
+        
+        /**
+         * Select the loaded entities of some references.
+         * Without a sort, the order of references is kept; otherwise the sort order is used.
+         */
+        List<BuguEntity> select(Collection<BuguEntity> refs){
+            List<BuguEntity> result = new ArrayList<BuguEntity>();
+            if(sort == null){
+                for(BuguEntity ref : refs){
+                    if(ref != null){
+                        BuguEntity ent = loaded.get(ref.getId());
+                        if(ent != null){
+                            result.add(ent);
+                        }
+                    }
+                }
+            }else{
+                Set<String> refIds = new HashSet<String>();
+                for(BuguEntity ref : refs){
+                    if(ref != null){
+                        refIds.add(ref.getId());
+                    }
+                }
+                for(BuguEntity ent : loaded.values()){
+                    if(refIds.contains(ent.getId())){
+                        result.add(ent);
+                    }
+                }
+            }
+            return result;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.Rollup;
+import com.bugull.mongo.annotations.RollupPeriod;
+import com.bugull.mongo.utils.MapperUtil;
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.apache.log4j.Logger;
+
+/**
+ * Buffer the increments of a rollup collection in memory, coalesced by bucket.
+ * 
+ * <p>The buffer is flushed periodically by RollupManager, with one $inc upsert per changed bucket.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class RollupBuffer {
+    
+    private final static Logger logger = Logger.getLogger(RollupBuffer.class);
+    
+    public final static String TIME = "t";
+    public final static String COUNT = "count";
+    
+    private final DBCollection coll;
+    private final Rollup rollup;
+    private final boolean hasTime;
+    
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private ConcurrentMap<String, Delta> pending = new ConcurrentHashMap<String, Delta>();
+    
+    public RollupBuffer(DBCollection coll, Rollup rollup){
+        this.coll = coll;
+        this.rollup = rollup;
+        this.hasTime = !rollup.time().equals(Default.NAME) && rollup.period() != RollupPeriod.NONE;
+    }
+    
+    /**
+     * The field name in rollup collection, which can't contain ".".
+     * @param key
+     * @return 
+     */
+    public static String toRollupKey(String key){
+        return key.replace('.', '_');
+    }
+    
+    /**
+     * Add (sign=1) or subtract (sign=-1) a document to its bucket.
+     * @param dbo
+     * @param sign 
+     */
+    public void add(DBObject dbo, int sign){
+        DBObject id = getBucketId(dbo);
+        if(id == null){
+            return;
+        }
+        lock.readLock().lock();
+        try{
+            Delta delta = getDelta(id);
+            delta.inc(COUNT, sign);
+            for(String key : rollup.sum()){
+                Object value = MapperUtil.getValue(dbo, key);
+                if(value instanceof Number){
+                    delta.inc(toRollupKey(key), multiply((Number)value, sign));
+                }
+            }
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * A sum field of the document is increased by value.
+     * @param dbo
+     * @param key
+     * @param value 
+     */
+    public void addInc(DBObject dbo, String key, Number value){
+        if(!isSumField(key)){
+            return;
+        }
+        DBObject id = getBucketId(dbo);
+        if(id == null){
+            return;
+        }
+        lock.readLock().lock();
+        try{
+            getDelta(id).inc(toRollupKey(key), value);
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+    
+    public boolean isSumField(String key){
+        for(String s : rollup.sum()){
+            if(s.equals(key)){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Write the buffered increments to the rollup collection. 
+     * The increments of a bucket which fails to write are put back to the buffer, and retried in the next flush.
+     */
+    public void flush(){
+        Map<String, Delta> map = null;
+        lock.writeLock().lock();
+        try{
+            if(pending.isEmpty()){
+                return;
+            }
+            map = pending;
+            pending = new ConcurrentHashMap<String, Delta>();
+        }finally{
+            lock.writeLock().unlock();
+        }
+        for(Delta delta : map.values()){
+            DBObject query = new BasicDBObject(Operator.ID, delta.id);
+            DBObject update = new BasicDBObject(Operator.INC, delta.toDBObject());
+            try{
+                coll.update(query, update, true, false);
+            }catch(RuntimeException ex){
+                logger.error("Can not flush the rollup collection " + coll.getName(), ex);
+                restore(delta);
+            }
+        }
+    }
+    
+    private void restore(Delta delta){
+        lock.readLock().lock();
+        try{
+            getDelta(delta.id).merge(delta);
+        }finally{
+            lock.readLock().unlock();
+        }
+    }
+    
+    private Delta getDelta(DBObject id){
+        String key = id.toString();
+        Delta delta = pending.get(key);
+        if(delta == null){
+            delta = new Delta(id);
+            Delta temp = pending.putIfAbsent(key, delta);
+            if(temp != null){
+                delta = temp;
+            }
+        }
+        return delta;
+    }
+    
+    private DBObject getBucketId(DBObject dbo){
+        DBObject id = new BasicDBObject();
+        if(hasTime){
+            Date time = toDate(MapperUtil.getValue(dbo, rollup.time()));
+            if(time == null){
+                return null;
+            }
+            id.put(TIME, truncate(time));
+        }
+        for(String key : rollup.groupBy()){
+            id.put(toRollupKey(key), MapperUtil.getValue(dbo, key));
+        }
+        return id;
+    }
+    
+    private Date toDate(Object value){
+        Date date = null;
+        if(value instanceof Date){
+            date = (Date)value;
+        }else if(value instanceof Number){
+            date = new Date(((Number)value).longValue());
+        }
+        return date;
+    }
+    
+    /**
+     * Get the beginning of the bucket, which the time is in.
+     * @param time
+     * @return 
+     */
+    public Date truncate(Date time){
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(time);
+        RollupPeriod period = rollup.period();
+        if(period == RollupPeriod.NONE){
+            return cal.getTime();
+        }
+        //a longer period clears the fields of all shorter periods too
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        if(period == RollupPeriod.DAILY || period == RollupPeriod.MONTHLY || period == RollupPeriod.YEARLY){
+            cal.set(Calendar.HOUR_OF_DAY, 0);
+        }
+        if(period == RollupPeriod.MONTHLY || period == RollupPeriod.YEARLY){
+            cal.set(Calendar.DAY_OF_MONTH, 1);
+        }
+        if(period == RollupPeriod.YEARLY){
+            cal.set(Calendar.MONTH, 0);
+        }
+        return cal.getTime();
+    }
+    
+    private static Number multiply(Number value, int sign){
+        if(sign > 0){
+            return value;
+        }
+        if(isIntegral(value)){
+            return -value.longValue();
+        }
+        return -value.doubleValue();
+    }
+    
+    private static boolean isIntegral(Number value){
+        return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+    }
+
+    public DBCollection getCollection() {
+        return coll;
+    }
+
+    public Rollup getRollup() {
+        return rollup;
+    }
+    
+    /**
+     * The increments of one bucket.
+     */
+    private static class Delta {
+        
+        final DBObject id;
+        final Map<String, Number> values = new LinkedHashMap<String, Number>();
+        
+        Delta(DBObject id){
+            this.id = id;
+        }
+        
+        synchronized void inc(String key, Number value){
+            Number old = values.get(key);
+            if(old == null){
+                values.put(key, value);
+            }else if(isIntegral(old) && isIntegral(value)){
+                values.put(key, old.longValue() + value.longValue());
+            }else{
+                values.put(key, old.doubleValue() + value.doubleValue());
+            }
+        }
+        
+        synchronized void merge(Delta other){
+            for(Entry<String, Number> entry : other.values.entrySet()){
+                inc(entry.getKey(), entry.getValue());
+            }
+        }
+        
+        synchronized DBObject toDBObject(){
+            DBObject dbo = new BasicDBObject();
+            for(Entry<String, Number> entry : values.entrySet()){
+                dbo.put(entry.getKey(), entry.getValue());
+            }
+            return dbo;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.annotations.Rollup;
+import com.bugull.mongo.annotations.Rollups;
+import com.bugull.mongo.exception.DBConnectionException;
+import com.bugull.mongo.utils.MapperUtil;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DB;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.log4j.Logger;
+
+/**
+ * Listener for @Rollup, which keeps the rollup collections up to date.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class RollupListener {
+    
+    private final static Logger logger = Logger.getLogger(RollupListener.class);
+    
+    private List<RollupBuffer> buffers = new ArrayList<RollupBuffer>();
+    private DBObject keys = new BasicDBObject();
+    
+    public RollupListener(Class<?> clazz){
+        DB db = null;
+        try {
+            db = BuguConnection.getInstance(clazz).getDB();
+        } catch (DBConnectionException ex) {
+            logger.error(ex.getMessage(), ex);
+        }
+        String entityName = MapperUtil.getEntityName(clazz);
+        for(Rollup rollup : getRollups(clazz)){
+            String name = entityName + "_rollup_" + rollup.name();
+            RollupBuffer buffer = RollupManager.getInstance().getBuffer(db.getCollection(name), rollup);
+            buffers.add(buffer);
+            if(!rollup.time().equals(Default.NAME)){
+                keys.put(rollup.time(), 1);
+            }
+            for(String key : rollup.groupBy()){
+                keys.put(key, 1);
+            }
+            for(String key : rollup.sum()){
+                keys.put(key, 1);
+            }
+        }
+    }
+    
+    /**
+     * Check if the clazz need a RollupListener
+     * @param clazz
+     * @return 
+     */
+    public static boolean needListener(Class<?> clazz){
+        return clazz.getAnnotation(Rollup.class) != null || clazz.getAnnotation(Rollups.class) != null;
+    }
+    
+    private static List<Rollup> getRollups(Class<?> clazz){
+        List<Rollup> list = new ArrayList<Rollup>();
+        Rollup rollup = clazz.getAnnotation(Rollup.class);
+        if(rollup != null){
+            list.add(rollup);
+        }
+        Rollups rollups = clazz.getAnnotation(Rollups.class);
+        if(rollups != null){
+            for(Rollup r : rollups.value()){
+                list.add(r);
+            }
+        }
+        return list;
+    }
+    
+    public void entityInsert(DBObject dbo){
+        for(RollupBuffer buffer : buffers){
+            buffer.add(dbo, 1);
+        }
+    }
+    
+    public void entityRemove(DBObject dbo){
+        for(RollupBuffer buffer : buffers){
+            buffer.add(dbo, -1);
+        }
+    }
+    
+    public void entityInc(DBObject dbo, String key, Number value){
+        for(RollupBuffer buffer : buffers){
+            buffer.addInc(dbo, key, value);
+        }
+    }
+    
+    /**
+     * Check if the key is summed by any rollup.
+     * @param key
+     * @return 
+     */
+    public boolean isSumField(String key){
+        for(RollupBuffer buffer : buffers){
+            if(buffer.isSumField(key)){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Get the fields needed by the rollups, used to read the documents partially.
+     * @return 
+     */
+    public DBObject getKeys(){
+        return keys;
+    }
+    
+    public RollupBuffer getBuffer(String name){
+        for(RollupBuffer buffer : buffers){
+            if(buffer.getRollup().name().equals(name)){
+                return buffer;
+            }
+        }
+        return null;
+    }
+    
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.annotations.Rollup;
+import com.bugull.mongo.utils.ThreadUtil;
+import com.mongodb.DBCollection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep one buffer per rollup collection, and flush all of them periodically.
+ * 
+ * <p>Singleton Pattern is used here. It's started when the first rollup is used, and closed by BuguConnection.close(). 
+ * All DAOs of an entity, including the internal ones used by cascade delete, share the buffers.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class RollupManager {
+    
+    private final ConcurrentMap<String, RollupBuffer> buffers = new ConcurrentHashMap<String, RollupBuffer>();
+    
+    private ScheduledExecutorService scheduler;
+    private long period = 1000L;  //by default, flush per second
+    
+    private static class Holder {
+        final static RollupManager instance = new RollupManager();
+    } 
+    
+    public static RollupManager getInstance(){
+        return Holder.instance;
+    }
+    
+    /**
+     * Get the buffer of a rollup collection, which is created at the first time.
+     * @param coll the rollup collection
+     * @param rollup
+     * @return 
+     */
+    public RollupBuffer getBuffer(DBCollection coll, Rollup rollup){
+        String key = coll.getFullName();
+        RollupBuffer buffer = buffers.get(key);
+        if(buffer != null){
+            return buffer;
+        }
+        
+        buffer = new RollupBuffer(coll, rollup);
+        RollupBuffer temp = buffers.putIfAbsent(key, buffer);
+        if(temp != null){
+            return temp;
+        }else{
+            start();
+            return buffer;
+        }
+    }
+    
+    private synchronized void start(){
+        if(scheduler == null){
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleWithFixedDelay(new Runnable(){
+                @Override
+                public void run(){
+                    flush();
+                }
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    /**
+     * Flush all the buffered increments immediately.
+     */
+    public void flush(){
+        for(RollupBuffer buffer : buffers.values()){
+            buffer.flush();
+        }
+    }
+    
+    /**
+     * Stop the scheduler, flush the remaining increments, and forget the buffers of the closed connections.
+     */
+    public synchronized void close(){
+        ThreadUtil.safeClose(scheduler);
+        scheduler = null;
+        flush();
+        buffers.clear();
+    }
+    
+    /**
+     * Set the flush period, before any rollup is used.
+     * @param period time in milliseconds
+     */
+    public void setFlushPeriod(long period){
+        this.period = period;
+    }
+    
+}
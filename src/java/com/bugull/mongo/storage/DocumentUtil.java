@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.bson.types.Binary;
+import org.bson.types.MaxKey;
+import org.bson.types.MinKey;
+import org.bson.types.ObjectId;
+
+/**
+ * Utility for documents: dotted paths, deep copy, and comparing values in BSON order.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public final class DocumentUtil {
+    
+    /**
+     * Get the value by a dotted path, such as "address.city". 
+     * @param dbo
+     * @param path
+     * @return null if the path doesn't exist
+     */
+    public static Object get(DBObject dbo, String path){
+        int index = path.indexOf('.');
+        if(index == -1){
+            return dbo.get(path);
+        }
+        Object value = dbo.get(path.substring(0, index));
+        if(value instanceof DBObject){
+            return get((DBObject)value, path.substring(index + 1));
+        }
+        return null;
+    }
+    
+    /**
+     * Check if the dotted path exists, even if its value is null.
+     * @param dbo
+     * @param path
+     * @return 
+     */
+    public static boolean contains(DBObject dbo, String path){
+        int index = path.indexOf('.');
+        if(index == -1){
+            return dbo.containsField(path);
+        }
+        Object value = dbo.get(path.substring(0, index));
+        if(value instanceof DBObject){
+            return contains((DBObject)value, path.substring(index + 1));
+        }
+        return false;
+    }
+    
+    /**
+     * Set the value by a dotted path. The missing parent objects are created.
+     * @param dbo
+     * @param path
+     * @param value 
+     */
+    public static void set(DBObject dbo, String path, Object value){
+        int index = path.indexOf('.');
+        if(index == -1){
+            dbo.put(path, value);
+            return;
+        }
+        String key = path.substring(0, index);
+        Object parent = dbo.get(key);
+        if(!(parent instanceof DBObject)){
+            parent = new BasicDBObject();
+            dbo.put(key, parent);
+        }
+        set((DBObject)parent, path.substring(index + 1), value);
+    }
+    
+    public static void unset(DBObject dbo, String path){
+        int index = path.indexOf('.');
+        if(index == -1){
+            dbo.removeField(path);
+            return;
+        }
+        Object parent = dbo.get(path.substring(0, index));
+        if(parent instanceof DBObject){
+            unset((DBObject)parent, path.substring(index + 1));
+        }
+    }
+    
+    /**
+     * Deep copy a value, so the stored documents are never shared with the callers. 
+     * Arrays, maps and other collections are converted to the types read back from MongoDB.
+     * @param value
+     * @return 
+     */
+    public static Object copy(Object value){
+        if(value instanceof List){
+            BasicDBList list = new BasicDBList();
+            for(Object o : (List)value){
+                list.add(copy(o));
+            }
+            return list;
+        }
+        if(value instanceof DBObject){
+            DBObject dbo = (DBObject)value;
+            BasicDBObject result = new BasicDBObject();
+            for(String key : dbo.keySet()){
+                result.put(key, copy(dbo.get(key)));
+            }
+            return result;
+        }
+        if(value instanceof Date){
+            return new Date(((Date)value).getTime());
+        }
+        if(value instanceof Map){
+            BasicDBObject result = new BasicDBObject();
+            for(Object o : ((Map)value).entrySet()){
+                Map.Entry entry = (Map.Entry)o;
+                result.put(entry.getKey().toString(), copy(entry.getValue()));
+            }
+            return result;
+        }
+        if(value instanceof Iterable){
+            BasicDBList list = new BasicDBList();
+            for(Object o : (Iterable)value){
+                list.add(copy(o));
+            }
+            return list;
+        }
+        //arrays are stored as lists, as the driver decodes them, except byte[] for binary data
+        if(value != null && value.getClass().isArray() && !(value instanceof byte[])){
+            BasicDBList list = new BasicDBList();
+            int len = Array.getLength(value);
+            for(int i=0; i<len; i++){
+                list.add(copy(Array.get(value, i)));
+            }
+            return list;
+        }
+        return value;
+    }
+    
+    public static DBObject copy(DBObject dbo){
+        return (DBObject)copy((Object)dbo);
+    }
+    
+    /**
+     * Check if two values are equal, numbers are compared by value.
+     * @param a
+     * @param b
+     * @return 
+     */
+    public static boolean isEqual(Object a, Object b){
+        if(a == null || b == null){
+            return a == b;
+        }
+        if(a instanceof Number && b instanceof Number){
+            return ((Number)a).doubleValue() == ((Number)b).doubleValue();
+        }
+        if(a instanceof List && b instanceof List){
+            List la = (List)a;
+            List lb = (List)b;
+            if(la.size() != lb.size()){
+                return false;
+            }
+            for(int i=0; i<la.size(); i++){
+                if(!isEqual(la.get(i), lb.get(i))){
+                    return false;
+                }
+            }
+            return true;
+        }
+        if(a instanceof DBObject && b instanceof DBObject){
+            DBObject da = (DBObject)a;
+            DBObject db = (DBObject)b;
+            List<String> ka = new ArrayList<String>(da.keySet());
+            List<String> kb = new ArrayList<String>(db.keySet());
+            if(!ka.equals(kb)){
+                return false;
+            }
+            for(String key : ka){
+                if(!isEqual(da.get(key), db.get(key))){
+                    return false;
+                }
+            }
+            return true;
+        }
+        if(a instanceof Pattern && b instanceof Pattern){
+            return ((Pattern)a).pattern().equals(((Pattern)b).pattern());
+        }
+        return a.equals(b);
+    }
+    
+    /**
+     * Compare two values. Values of different types are ordered as MongoDB does.
+     * @param a
+     * @param b
+     * @return 
+     */
+    public static int compare(Object a, Object b){
+        int ta = typeOrder(a);
+        int tb = typeOrder(b);
+        if(ta != tb){
+            return ta < tb ? -1 : 1;
+        }
+        if(a instanceof Number){
+            return Double.compare(((Number)a).doubleValue(), ((Number)b).doubleValue());
+        }
+        if(a instanceof String){
+            return ((String)a).compareTo((String)b);
+        }
+        if(a instanceof Date){
+            return ((Date)a).compareTo((Date)b);
+        }
+        if(a instanceof ObjectId){
+            return ((ObjectId)a).compareTo((ObjectId)b);
+        }
+        if(a instanceof Boolean){
+            return ((Boolean)a).compareTo((Boolean)b);
+        }
+        if(a instanceof List){
+            List la = (List)a;
+            List lb = (List)b;
+            int size = Math.min(la.size(), lb.size());
+            for(int i=0; i<size; i++){
+                int c = compare(la.get(i), lb.get(i));
+                if(c != 0){
+                    return c;
+                }
+            }
+            return la.size() - lb.size();
+        }
+        if(a instanceof DBObject){
+            return String.valueOf(a).compareTo(String.valueOf(b));
+        }
+        return 0;
+    }
+    
+    private static int typeOrder(Object value){
+        if(value instanceof MinKey){
+            return 0;
+        }
+        if(value == null){
+            return 1;
+        }
+        if(value instanceof Number){
+            return 2;
+        }
+        if(value instanceof String){
+            return 3;
+        }
+        if(value instanceof List){
+            return 5;
+        }
+        if(value instanceof DBObject){
+            return 4;
+        }
+        if(value instanceof byte[] || value instanceof Binary){
+            return 6;
+        }
+        if(value instanceof ObjectId){
+            return 7;
+        }
+        if(value instanceof Boolean){
+            return 8;
+        }
+        if(value instanceof Date){
+            return 9;
+        }
+        if(value instanceof Pattern){
+            return 11;
+        }
+        if(value instanceof MaxKey){
+            return 12;
+        }
+        return 10;
+    }
+
+}
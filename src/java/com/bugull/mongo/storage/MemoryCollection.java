@@ -0,0 +1,568 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.MongoException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.bson.types.ObjectId;
+
+/**
+ * A collection stored in memory.
+ * 
+ * <p>The documents are kept in a concurrent hash map by _id, and the secondary indexes are kept in skip lists. 
+ * Reads are lock-free: a stored document is never changed, an update replaces it with a changed copy. 
+ * Writes are serialized by a lock, so the unique constraints and the indexes are always consistent.</p>
+ * 
+ * <p>A query by _id is served from the hash map, a query on the first key of an index is served from the index, 
+ * and other queries scan the collection. The results are returned in insertion order, if no sort is specified.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MemoryCollection {
+    
+    private final static int DUPLICATE_KEY = 11000;
+    
+    private final String name;
+    private final ConcurrentMap<Object, Record> docs = new ConcurrentHashMap<Object, Record>();
+    private final List<MemoryIndex> indexes = new CopyOnWriteArrayList<MemoryIndex>();
+    private final Lock writeLock = new ReentrantLock();
+    private long sequence;  //insertion order, guarded by the write lock
+    
+    public MemoryCollection(String name){
+        this.name = name;
+    }
+    
+    /**
+     * Create a secondary index. Nothing happens if an index on the same keys exists.
+     * @param keys
+     * @param unique
+     * @throws MongoException if the unique index is violated by the existing documents
+     */
+    public void createIndex(DBObject keys, boolean unique){
+        writeLock.lock();
+        try{
+            for(MemoryIndex index : indexes){
+                if(DocumentUtil.isEqual(index.getKeys(), keys)){
+                    return;
+                }
+            }
+            MemoryIndex index = new MemoryIndex(DocumentUtil.copy(keys), unique);
+            for(Record r : docs.values()){
+                if(unique && findDuplicate(index, r) != null){
+                    throw duplicate(keys.toString(), r.doc.get(Operator.ID));
+                }
+                index.add(r.key, r.doc);
+            }
+            indexes.add(index);
+        }finally{
+            writeLock.unlock();
+        }
+    }
+    
+    public void dropIndexes(){
+        indexes.clear();
+    }
+    
+    /**
+     * Insert documents one by one. An _id is generated if absent, and set to the given document.
+     * <p>As in MongoDB, if a document fails, the documents before it are inserted, and the rest are not.</p>
+     * @param list
+     * @return the inserted count
+     * @throws MongoException if an _id or a unique key already exists
+     */
+    public int insert(List<DBObject> list){
+        writeLock.lock();
+        try{
+            for(DBObject dbo : list){
+                if(dbo.get(Operator.ID) == null){
+                    dbo.put(Operator.ID, new ObjectId());
+                }
+                Object key = toKey(dbo.get(Operator.ID));
+                if(docs.containsKey(key)){
+                    throw duplicate("_id_", dbo.get(Operator.ID));
+                }
+                Record r = new Record(key, ++sequence, DocumentUtil.copy(dbo));
+                checkUnique(r);
+                put(r, null);
+            }
+            return list.size();
+        }finally{
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * @param query
+     * @param fields the projection, or null
+     * @param sort the sort order, or null
+     * @param skip
+     * @param limit 0 for no limit
+     * @return copies of the matched documents
+     */
+    public List<DBObject> find(DBObject query, DBObject fields, DBObject sort, int skip, int limit){
+        List<Record> list = null;
+        if(limit > 0 && sort != null && sort.keySet().size() == 1){
+            list = matchInOrder(query, sort, skip + limit);
+        }
+        if(list == null){
+            list = match(query);
+            sort(list, query, sort);
+        }
+        int size = list.size();
+        int begin = Math.min(skip, size);
+        int end = limit > 0 ? Math.min(size, begin + limit) : size;
+        List<DBObject> result = new ArrayList<DBObject>(end - begin);
+        for(int i=begin; i<end; i++){
+            result.add(Projection.apply(list.get(i).doc, fields));
+        }
+        return result;
+    }
+    
+    /**
+     * @param query
+     * @param fields the projection, or null
+     * @return a copy of the first matched document in insertion order, or null
+     */
+    public DBObject findOne(DBObject query, DBObject fields){
+        Record first = null;
+        for(Record r : match(query)){
+            if(first == null || r.seq < first.seq){
+                first = r;
+            }
+        }
+        return first == null ? null : Projection.apply(first.doc, fields);
+    }
+    
+    public long count(DBObject query, int skip, int limit){
+        long n = (query == null || query.keySet().isEmpty()) ? docs.size() : match(query).size();
+        n = Math.max(0, n - skip);
+        return limit > 0 ? Math.min(n, limit) : n;
+    }
+    
+    public List distinct(String key, DBObject query){
+        List<Object> values = new BasicDBList();
+        List<Record> list = match(query);
+        sort(list, null, null);
+        for(Record r : list){
+            for(Object v : QueryMatcher.getValues(r.doc, key)){
+                List<Object> items = new ArrayList<Object>();
+                if(v instanceof List){
+                    items.addAll((List)v);
+                }else{
+                    items.add(v);
+                }
+                for(Object item : items){
+                    boolean found = false;
+                    for(Object o : values){
+                        if(DocumentUtil.isEqual(o, item)){
+                            found = true;
+                            break;
+                        }
+                    }
+                    if(!found){
+                        values.add(DocumentUtil.copy(item));
+                    }
+                }
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * @param query
+     * @param update
+     * @param upsert
+     * @param multi
+     * @return the status as getlasterror returns: n, updatedExisting, and upserted
+     * @throws MongoException if a unique key is violated
+     */
+    public DBObject update(DBObject query, DBObject update, boolean upsert, boolean multi){
+        DBObject status = new BasicDBObject();
+        writeLock.lock();
+        try{
+            List<Record> matched = match(query);
+            if(matched.isEmpty()){
+                if(upsert){
+                    DBObject doc = UpdateApplier.upsert(query, update);
+                    insert(Collections.singletonList(doc));
+                    status.put("n", 1);
+                    status.put("updatedExisting", false);
+                    status.put("upserted", doc.get(Operator.ID));
+                }else{
+                    status.put("n", 0);
+                    status.put("updatedExisting", false);
+                }
+                return status;
+            }
+            sort(matched, null, null);
+            int n = 0;
+            for(Record r : matched){
+                replace(r, update);
+                n++;
+                if(!multi){
+                    break;
+                }
+            }
+            status.put("n", n);
+            status.put("updatedExisting", true);
+            return status;
+        }finally{
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * @param query
+     * @param justOne
+     * @return the removed count
+     */
+    public int remove(DBObject query, boolean justOne){
+        writeLock.lock();
+        try{
+            if(!justOne && (query == null || query.keySet().isEmpty())){
+                int n = docs.size();
+                docs.clear();
+                for(MemoryIndex index : indexes){
+                    index.clear();
+                }
+                return n;
+            }
+            List<Record> matched = match(query);
+            sort(matched, null, null);
+            int n = 0;
+            for(Record r : matched){
+                delete(r);
+                n++;
+                if(justOne){
+                    break;
+                }
+            }
+            return n;
+        }finally{
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Find a document and update or remove it atomically.
+     * @return the document before or after the modification, or null if nothing matches
+     */
+    public DBObject findAndModify(DBObject query, DBObject fields, DBObject sort, boolean remove, DBObject update, boolean returnNew, boolean upsert){
+        writeLock.lock();
+        try{
+            List<Record> list = match(query);
+            sort(list, query, sort);
+            if(list.isEmpty()){
+                if(upsert && update != null){
+                    DBObject doc = UpdateApplier.upsert(query, update);
+                    insert(Collections.singletonList(doc));
+                    return returnNew ? Projection.apply(doc, fields) : null;
+                }
+                return null;
+            }
+            Record r = list.get(0);
+            if(remove){
+                delete(r);
+                return Projection.apply(r.doc, fields);
+            }
+            Record updated = replace(r, update);
+            return Projection.apply(returnNew ? updated.doc : r.doc, fields);
+        }finally{
+            writeLock.unlock();
+        }
+    }
+    
+    public String getName(){
+        return name;
+    }
+    
+    public int size(){
+        return docs.size();
+    }
+    
+    /**
+     * Update a stored document, by replacing it with an updated copy. Must be called with the write lock held.
+     */
+    private Record replace(Record r, DBObject update){
+        DBObject copy = DocumentUtil.copy(r.doc);
+        UpdateApplier.apply(copy, update, false);
+        if(!DocumentUtil.isEqual(copy.get(Operator.ID), r.doc.get(Operator.ID))){
+            throw new MongoException("The _id field cannot be changed: " + r.doc.get(Operator.ID));
+        }
+        Record updated = new Record(r.key, r.seq, copy);
+        checkUnique(updated);
+        put(updated, r);
+        return updated;
+    }
+    
+    /**
+     * Must be called with the write lock held.
+     */
+    private void put(Record r, Record old){
+        for(MemoryIndex index : indexes){
+            if(old != null){
+                index.remove(old.key, old.doc);
+            }
+            index.add(r.key, r.doc);
+        }
+        docs.put(r.key, r);
+    }
+    
+    /**
+     * Must be called with the write lock held.
+     */
+    private void delete(Record r){
+        docs.remove(r.key);
+        for(MemoryIndex index : indexes){
+            index.remove(r.key, r.doc);
+        }
+    }
+    
+    /**
+     * Must be called with the write lock held.
+     */
+    private void checkUnique(Record r){
+        for(MemoryIndex index : indexes){
+            if(index.isUnique() && findDuplicate(index, r) != null){
+                throw duplicate(index.getKeys().toString(), r.doc.get(Operator.ID));
+            }
+        }
+    }
+    
+    /**
+     * @return the key of another document with the same index keys, or null if there is none
+     */
+    private Object findDuplicate(MemoryIndex index, Record r){
+        for(Object other : index.getCandidates(r.doc)){
+            if(other.equals(r.key)){
+                continue;
+            }
+            Record o = docs.get(other);
+            if(o != null && index.isSameKeys(r.doc, o.doc)){
+                return other;
+            }
+        }
+        return null;
+    }
+    
+    private MongoException duplicate(String index, Object id){
+        return new MongoException(DUPLICATE_KEY, "E11000 duplicate key error index: " + name + ".$" + index + " dup key: " + id);
+    }
+    
+    /**
+     * Find the matched documents, in no particular order.
+     */
+    private List<Record> match(DBObject query){
+        List<Record> list = new ArrayList<Record>();
+        Collection<Object> candidates = plan(query);
+        if(candidates != null){
+            for(Object key : candidates){
+                Record r = docs.get(key);
+                if(r != null && QueryMatcher.matches(r.doc, query)){
+                    list.add(r);
+                }
+            }
+            return list;
+        }
+        for(Record r : docs.values()){
+            if(QueryMatcher.matches(r.doc, query)){
+                list.add(r);
+            }
+        }
+        return list;
+    }
+    
+    /**
+     * Walk an index in the sort order, and stop when enough documents are matched. 
+     * It's used only if the query has a condition on the sort key which the index can answer, 
+     * so the documents missing the key, which are not indexed, can't match.
+     * @param n the documents needed
+     * @return the matched documents in the sort order, or null if no index can be used
+     */
+    private List<Record> matchInOrder(DBObject query, DBObject sort, int n){
+        String field = sort.keySet().iterator().next();
+        Object cond = query == null ? null : query.get(field);
+        for(MemoryIndex index : indexes){
+            if(!index.getField().equals(field)){
+                continue;
+            }
+            NavigableMap<Object, Set<Object>> range = index.range(cond);
+            if(range == null){
+                continue;
+            }
+            if(((Number)sort.get(field)).intValue() < 0){
+                range = range.descendingMap();
+            }
+            List<Record> list = new ArrayList<Record>();
+            Set<Object> seen = new HashSet<Object>();
+            for(Set<Object> ids : range.values()){
+                List<Record> same = new ArrayList<Record>();
+                for(Object key : ids){
+                    Record r = docs.get(key);
+                    if(r != null && seen.add(key) && QueryMatcher.matches(r.doc, query)){
+                        same.add(r);
+                    }
+                }
+                sort(same, null, null);
+                list.addAll(same);
+                if(list.size() >= n){
+                    break;
+                }
+            }
+            return list;
+        }
+        return null;
+    }
+    
+    /**
+     * Choose the smallest candidates from the _id and the indexes.
+     * @return the candidate keys, or null if the collection must be scanned
+     */
+    private Collection<Object> plan(DBObject query){
+        if(query == null){
+            return null;
+        }
+        Collection<Object> best = null;
+        for(String field : query.keySet()){
+            Object cond = query.get(field);
+            Collection<Object> candidates = null;
+            if(field.equals(Operator.AND)){
+                for(Object sub : (List)cond){
+                    candidates = smaller(candidates, plan((DBObject)sub));
+                }
+            }else if(field.equals(Operator.ID)){
+                candidates = planId(cond);
+            }else if(!field.startsWith("$")){
+                for(MemoryIndex index : indexes){
+                    if(index.getField().equals(field)){
+                        candidates = smaller(candidates, index.lookup(cond));
+                    }
+                }
+            }
+            best = smaller(best, candidates);
+        }
+        return best;
+    }
+    
+    private Collection<Object> planId(Object cond){
+        if(cond == null || cond instanceof List){
+            return null;
+        }
+        if(!(cond instanceof DBObject)){
+            return Collections.singletonList(toKey(cond));
+        }
+        DBObject ops = (DBObject)cond;
+        if(ops.keySet().size() == 1 && ops.get(Operator.IN) instanceof List){
+            List<Object> keys = new ArrayList<Object>();
+            for(Object id : (List)ops.get(Operator.IN)){
+                keys.add(toKey(id));
+            }
+            return keys;
+        }
+        return null;
+    }
+    
+    private Collection<Object> smaller(Collection<Object> a, Collection<Object> b){
+        if(a == null){
+            return b;
+        }
+        if(b == null){
+            return a;
+        }
+        return b.size() < a.size() ? b : a;
+    }
+    
+    private void sort(List<Record> list, final DBObject query, final DBObject sort){
+        if(list.size() < 2){
+            return;
+        }
+        Collections.sort(list, new Comparator<Record>(){
+            @Override
+            public int compare(Record a, Record b){
+                return a.seq < b.seq ? -1 : (a.seq == b.seq ? 0 : 1);
+            }
+        });
+        if(sort != null && !sort.keySet().isEmpty()){
+            Collections.sort(list, new Comparator<Record>(){
+                @Override
+                public int compare(Record a, Record b){
+                    for(String key : sort.keySet()){
+                        int c = DocumentUtil.compare(DocumentUtil.get(a.doc, key), DocumentUtil.get(b.doc, key));
+                        if(c != 0){
+                            return ((Number)sort.get(key)).intValue() < 0 ? -c : c;
+                        }
+                    }
+                    return 0;
+                }
+            });
+            return;
+        }
+        final String near = QueryMatcher.getNearField(query);
+        if(near != null){
+            Collections.sort(list, new Comparator<Record>(){
+                @Override
+                public int compare(Record a, Record b){
+                    return Double.compare(QueryMatcher.getNearDistance(a.doc, near, query), QueryMatcher.getNearDistance(b.doc, near, query));
+                }
+            });
+        }
+    }
+    
+    /**
+     * Numbers of different types are the same id, if they have the same value.
+     */
+    private static Object toKey(Object id){
+        if(id instanceof Number){
+            return ((Number)id).doubleValue();
+        }
+        return id;
+    }
+    
+    /**
+     * A stored document. It's never changed after stored.
+     */
+    private static class Record {
+        
+        final Object key;
+        final long seq;
+        final DBObject doc;
+        
+        Record(Object key, long seq, DBObject doc){
+            this.key = key;
+            this.seq = seq;
+            this.doc = doc;
+        }
+        
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collections stored in memory, keyed by name. 
+ * 
+ * <p>It's the database of a connection kept in memory. The wire protocol stand-in of the benchmarks keys it by the full name, such as "test.user".</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MemoryDatabase {
+    
+    private final ConcurrentMap<String, MemoryCollection> collections = new ConcurrentHashMap<String, MemoryCollection>();
+    
+    /**
+     * Get a collection, it's created if not exists.
+     * @param name
+     * @return 
+     */
+    public MemoryCollection get(String name){
+        MemoryCollection coll = collections.get(name);
+        if(coll != null){
+            return coll;
+        }
+        coll = new MemoryCollection(name);
+        MemoryCollection temp = collections.putIfAbsent(name, coll);
+        return temp != null ? temp : coll;
+    }
+    
+    public boolean exists(String name){
+        return collections.containsKey(name);
+    }
+    
+    public void drop(String name){
+        collections.remove(name);
+    }
+    
+    public Set<String> getNames(){
+        return new HashSet<String>(collections.keySet());
+    }
+    
+    /**
+     * @param prefix such as the database name and a dot
+     * @return the names starting with the prefix
+     */
+    public List<String> getNames(String prefix){
+        List<String> list = new ArrayList<String>();
+        for(String name : collections.keySet()){
+            if(name.startsWith(prefix)){
+                list.add(name);
+            }
+        }
+        return list;
+    }
+    
+    public void clear(){
+        collections.clear();
+    }
+
+}
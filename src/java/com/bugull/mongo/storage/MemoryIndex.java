@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.regex.Pattern;
+
+/**
+ * A secondary index of a memory collection, ordered by the first key of the index.
+ * 
+ * <p>The elements of an array are indexed one by one. Null and missing values are not indexed, as a sparse index, 
+ * so the conditions that may match them are answered by a scan. The index only narrows the candidates, 
+ * which are always checked against the whole condition.</p>
+ * 
+ * <p>Reads are lock-free. Writes are serialized by the collection.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+class MemoryIndex {
+    
+    private final static Comparator<Object> ORDER = new Comparator<Object>(){
+        @Override
+        public int compare(Object a, Object b){
+            return DocumentUtil.compare(a, b);
+        }
+    };
+    
+    private final static String REGEX_CHARS = "\\^$.|?*+()[]{}";
+    
+    private final DBObject keys;
+    private final String field;
+    private final boolean unique;
+    private final ConcurrentNavigableMap<Object, Set<Object>> entries = new ConcurrentSkipListMap<Object, Set<Object>>(ORDER);
+    
+    MemoryIndex(DBObject keys, boolean unique){
+        this.keys = keys;
+        this.field = keys.keySet().iterator().next();
+        this.unique = unique;
+    }
+    
+    DBObject getKeys(){
+        return keys;
+    }
+    
+    String getField(){
+        return field;
+    }
+    
+    boolean isUnique(){
+        return unique;
+    }
+    
+    void add(Object id, DBObject doc){
+        for(Object value : getIndexValues(doc)){
+            Set<Object> ids = entries.get(value);
+            if(ids == null){
+                ids = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+                entries.put(value, ids);
+            }
+            ids.add(id);
+        }
+    }
+    
+    void remove(Object id, DBObject doc){
+        for(Object value : getIndexValues(doc)){
+            Set<Object> ids = entries.get(value);
+            if(ids != null){
+                ids.remove(id);
+                if(ids.isEmpty()){
+                    entries.remove(value);
+                }
+            }
+        }
+    }
+    
+    void clear(){
+        entries.clear();
+    }
+    
+    /**
+     * The ids of the documents having any first key value of a document.
+     * @param doc
+     * @return 
+     */
+    Set<Object> getCandidates(DBObject doc){
+        Set<Object> result = new HashSet<Object>();
+        for(Object value : getIndexValues(doc)){
+            Set<Object> ids = entries.get(value);
+            if(ids != null){
+                result.addAll(ids);
+            }
+        }
+        return result;
+    }
+    
+    boolean isSameKeys(DBObject a, DBObject b){
+        for(String key : keys.keySet()){
+            if(!DocumentUtil.isEqual(DocumentUtil.get(a, key), DocumentUtil.get(b, key))){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Find the candidate ids of a condition on the first key.
+     * @param cond the condition of the field
+     * @return the candidate ids, or null if the index can't answer the condition
+     */
+    Collection<Object> lookup(Object cond){
+        if(cond instanceof DBObject && ((DBObject)cond).containsField(Operator.IN)){
+            return lookupIn(((DBObject)cond).get(Operator.IN));
+        }
+        if(cond != null && !(cond instanceof DBObject) && !(cond instanceof Pattern) && !(cond instanceof List)){
+            Set<Object> ids = entries.get(cond);
+            return ids != null ? ids : Collections.<Object>emptySet();
+        }
+        NavigableMap<Object, Set<Object>> range = range(cond);
+        return range == null ? null : union(range.values());
+    }
+    
+    /**
+     * Get the entries matching a condition on the first key, in the index order.
+     * @param cond the condition of the field
+     * @return null if the condition is not an equality, a range, or a prefix regex
+     */
+    NavigableMap<Object, Set<Object>> range(Object cond){
+        if(cond == null || cond instanceof List){
+            return null;
+        }
+        if(cond instanceof Pattern){
+            String prefix = getPrefix((Pattern)cond);
+            return prefix == null ? null : entries.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        }
+        if(!(cond instanceof DBObject)){
+            return entries.subMap(cond, true, cond, true);
+        }
+        DBObject ops = (DBObject)cond;
+        Object low = null;
+        boolean lowInclusive = false;
+        Object high = null;
+        boolean highInclusive = false;
+        for(String op : ops.keySet()){
+            Object arg = ops.get(op);
+            if(arg == null){
+                return null;
+            }
+            if(op.equals(Operator.GT) || op.equals(Operator.GTE)){
+                low = arg;
+                lowInclusive = op.equals(Operator.GTE);
+            }else if(op.equals(Operator.LT) || op.equals(Operator.LTE)){
+                high = arg;
+                highInclusive = op.equals(Operator.LTE);
+            }else{
+                return null;
+            }
+        }
+        if(low == null && high == null){
+            return null;
+        }
+        if(low != null && high != null && DocumentUtil.compare(low, high) > 0){
+            return entries.subMap(low, true, low, false);
+        }
+        NavigableMap<Object, Set<Object>> range = entries;
+        if(low != null){
+            range = range.tailMap(low, lowInclusive);
+        }
+        if(high != null){
+            range = range.headMap(high, highInclusive);
+        }
+        return range;
+    }
+    
+    private Collection<Object> lookupIn(Object arg){
+        if(!(arg instanceof List)){
+            return null;
+        }
+        List<Set<Object>> sets = new ArrayList<Set<Object>>();
+        for(Object value : (List)arg){
+            if(value == null || value instanceof Pattern || value instanceof DBObject){
+                return null;
+            }
+            Set<Object> ids = entries.get(value);
+            if(ids != null){
+                sets.add(ids);
+            }
+        }
+        return union(sets);
+    }
+    
+    /**
+     * A regex anchored with ^ and without flags, such as "^abc", is answered by a range of strings.
+     * <p>The prefix must be matched by every matching string: a character followed by an optional quantifier 
+     * (?, * or {) is not part of it, and an alternation (|) makes the regex not a prefix one at all.</p>
+     * @return the literal prefix, or null
+     */
+    private String getPrefix(Pattern p){
+        String regex = p.pattern();
+        if(p.flags() != 0 || !regex.startsWith("^") || regex.indexOf('|') != -1){
+            return null;
+        }
+        StringBuilder prefix = new StringBuilder();
+        for(int i=1; i<regex.length(); i++){
+            char c = regex.charAt(i);
+            if(REGEX_CHARS.indexOf(c) != -1){
+                if((c == '?' || c == '*' || c == '{') && prefix.length() > 0){
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            prefix.append(c);
+        }
+        return prefix.length() == 0 ? null : prefix.toString();
+    }
+    
+    private Collection<Object> union(Collection<Set<Object>> sets){
+        if(sets.size() == 1){
+            return sets.iterator().next();
+        }
+        Set<Object> result = new HashSet<Object>();
+        for(Set<Object> ids : sets){
+            result.addAll(ids);
+        }
+        return result;
+    }
+    
+    /**
+     * The values of the first key in a document, with the array elements expanded.
+     */
+    private List<Object> getIndexValues(DBObject doc){
+        List<Object> result = new ArrayList<Object>();
+        for(Object value : QueryMatcher.getValues(doc, field)){
+            if(value instanceof List){
+                for(Object e : (List)value){
+                    if(e != null){
+                        result.add(e);
+                    }
+                }
+            }else if(value != null){
+                result.add(value);
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+import java.lang.reflect.Constructor;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.apache.log4j.Logger;
+
+/**
+ * The storage in memory, which keeps the documents in a MemoryCollection.
+ * 
+ * <p>The documents and conditions are converted as the driver does, such as arrays to lists. 
+ * The WriteResult has the same n, updatedExisting and upserted as getlasterror returns.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MemoryStorage implements Storage {
+    
+    private final static Logger logger = Logger.getLogger(MemoryStorage.class);
+    
+    private final static String KEY = "key";
+    private final static String UNIQUE = "unique";
+    
+    private static Constructor<CommandResult> resultConstructor;
+    private static Constructor<WriteResult> writeResultConstructor;
+    private static ServerAddress address;
+    
+    static{
+        //the constructors are not public in the driver
+        try{
+            resultConstructor = CommandResult.class.getDeclaredConstructor(ServerAddress.class);
+            resultConstructor.setAccessible(true);
+            writeResultConstructor = WriteResult.class.getDeclaredConstructor(CommandResult.class, WriteConcern.class);
+            writeResultConstructor.setAccessible(true);
+            address = new ServerAddress("127.0.0.1", ServerAddress.defaultPort());
+        }catch(Exception ex){
+            logger.error("Can not create the WriteResult of the memory storage", ex);
+        }
+    }
+    
+    private final MemoryDatabase database;
+    private final String name;
+    private final List<DBObject> indexes = new CopyOnWriteArrayList<DBObject>();
+    private volatile MemoryCollection current;
+    
+    public MemoryStorage(MemoryDatabase database, String name){
+        this.database = database;
+        this.name = name;
+    }
+    
+    /**
+     * Create an index, which is created again when the collection is dropped and created again.
+     * @param keys
+     * @param unique 
+     */
+    public void createIndex(DBObject keys, boolean unique){
+        DBObject index = new BasicDBObject(KEY, keys);
+        index.put(UNIQUE, unique);
+        indexes.add(index);
+        getMemoryCollection().createIndex(keys, unique);
+    }
+    
+    /**
+     * The collection may be dropped and created again, so it's looked up every time.
+     */
+    private MemoryCollection getMemoryCollection(){
+        MemoryCollection coll = database.get(name);
+        if(coll != current){
+            for(DBObject index : indexes){
+                coll.createIndex((DBObject)index.get(KEY), (Boolean)index.get(UNIQUE));
+            }
+            current = coll;
+        }
+        return coll;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public DBCollection getCollection() {
+        return null;
+    }
+
+    @Override
+    public WriteResult insert(DBObject dbo, WriteConcern concern) {
+        return insert(Collections.singletonList(dbo), concern);
+    }
+
+    @Override
+    public WriteResult insert(List<DBObject> list, WriteConcern concern) {
+        getMemoryCollection().insert(list);
+        //as getlasterror, n is 0 for insert
+        return toWriteResult(new BasicDBObject("n", 0), concern);
+    }
+
+    @Override
+    public WriteResult save(DBObject dbo, WriteConcern concern) {
+        Object id = dbo.get(Operator.ID);
+        if(id == null){
+            return insert(dbo, concern);
+        }
+        DBObject query = new BasicDBObject(Operator.ID, id);
+        DBObject status = getMemoryCollection().update(query, DocumentUtil.copy(dbo), true, false);
+        return toWriteResult(status, concern);
+    }
+
+    @Override
+    public WriteResult update(DBObject query, DBObject dbo, boolean multi, WriteConcern concern) {
+        DBObject status = getMemoryCollection().update(DocumentUtil.copy(query), DocumentUtil.copy(dbo), false, multi);
+        return toWriteResult(status, concern);
+    }
+
+    @Override
+    public WriteResult remove(DBObject query, WriteConcern concern) {
+        int n = getMemoryCollection().remove(DocumentUtil.copy(query), false);
+        return toWriteResult(new BasicDBObject("n", n), concern);
+    }
+
+    @Override
+    public DBObject findOne(DBObject query, DBObject fields) {
+        return getMemoryCollection().findOne(copy(query), fields);
+    }
+
+    @Override
+    public StorageCursor find(DBObject query, DBObject fields) {
+        return new MemoryCursor(copy(query), fields);
+    }
+
+    @Override
+    public long count(DBObject query) {
+        return getMemoryCollection().count(copy(query), 0, 0);
+    }
+
+    @Override
+    public List distinct(String key, DBObject query) {
+        return getMemoryCollection().distinct(key, copy(query));
+    }
+
+    @Override
+    public void drop() {
+        database.drop(name);
+    }
+    
+    private DBObject copy(DBObject query){
+        return query == null ? null : DocumentUtil.copy(query);
+    }
+    
+    private WriteResult toWriteResult(DBObject status, WriteConcern concern){
+        try{
+            CommandResult result = resultConstructor.newInstance(address);
+            result.put("ok", 1.0);
+            result.put("err", null);
+            result.putAll(status);
+            return writeResultConstructor.newInstance(result, concern);
+        }catch(Exception ex){
+            logger.error("Can not create the WriteResult of the memory storage", ex);
+            return null;
+        }
+    }
+    
+    /**
+     * The query runs at the first iteration, after the sort, skip and limit are set.
+     */
+    private class MemoryCursor implements StorageCursor {
+        
+        private final DBObject query;
+        private final DBObject fields;
+        private DBObject orderBy;
+        private int skip;
+        private int limit;
+        private Iterator<DBObject> it;
+        
+        MemoryCursor(DBObject query, DBObject fields){
+            this.query = query;
+            this.fields = fields;
+        }
+
+        @Override
+        public StorageCursor sort(DBObject orderBy) {
+            this.orderBy = orderBy;
+            return this;
+        }
+
+        @Override
+        public StorageCursor skip(int n) {
+            this.skip = n;
+            return this;
+        }
+
+        @Override
+        public StorageCursor limit(int n) {
+            this.limit = Math.abs(n);
+            return this;
+        }
+
+        @Override
+        public StorageCursor batchSize(int n) {
+            return this;
+        }
+
+        @Override
+        public DBObject getQuery() {
+            return query;
+        }
+
+        @Override
+        public void close() {
+            it = Collections.<DBObject>emptyList().iterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(it == null){
+                it = getMemoryCollection().find(query, fields, orderBy, skip, limit).iterator();
+            }
+            return it.hasNext();
+        }
+
+        @Override
+        public DBObject next() {
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            return it.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported.");
+        }
+        
+    }
+    
+}
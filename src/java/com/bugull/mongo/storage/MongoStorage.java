@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+import java.util.List;
+
+/**
+ * The storage in mongoDB, which delegates to a DBCollection.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MongoStorage implements Storage {
+    
+    private final DBCollection coll;
+    
+    public MongoStorage(DBCollection coll){
+        this.coll = coll;
+    }
+
+    @Override
+    public String getName() {
+        return coll.getName();
+    }
+
+    @Override
+    public DBCollection getCollection() {
+        return coll;
+    }
+
+    @Override
+    public WriteResult insert(DBObject dbo, WriteConcern concern) {
+        return coll.insert(dbo, concern);
+    }
+
+    @Override
+    public WriteResult insert(List<DBObject> list, WriteConcern concern) {
+        return coll.insert(list, concern);
+    }
+
+    @Override
+    public WriteResult save(DBObject dbo, WriteConcern concern) {
+        return coll.save(dbo, concern);
+    }
+
+    @Override
+    public WriteResult update(DBObject query, DBObject dbo, boolean multi, WriteConcern concern) {
+        return coll.update(query, dbo, false, multi, concern);
+    }
+
+    @Override
+    public WriteResult remove(DBObject query, WriteConcern concern) {
+        return coll.remove(query, concern);
+    }
+
+    @Override
+    public DBObject findOne(DBObject query, DBObject fields) {
+        return coll.findOne(query == null ? new BasicDBObject() : query, fields);
+    }
+
+    @Override
+    public StorageCursor find(DBObject query, DBObject fields) {
+        return new MongoCursor(coll.find(query, fields));
+    }
+
+    @Override
+    public long count(DBObject query) {
+        return query == null ? coll.count() : coll.count(query);
+    }
+
+    @Override
+    public List distinct(String key, DBObject query) {
+        return query == null ? coll.distinct(key) : coll.distinct(key, query);
+    }
+
+    @Override
+    public void drop() {
+        coll.drop();
+        coll.dropIndexes();
+    }
+    
+    private static class MongoCursor implements StorageCursor {
+        
+        private final DBCursor cursor;
+        
+        MongoCursor(DBCursor cursor){
+            this.cursor = cursor;
+        }
+
+        @Override
+        public StorageCursor sort(DBObject orderBy) {
+            cursor.sort(orderBy);
+            return this;
+        }
+
+        @Override
+        public StorageCursor skip(int n) {
+            cursor.skip(n);
+            return this;
+        }
+
+        @Override
+        public StorageCursor limit(int n) {
+            cursor.limit(n);
+            return this;
+        }
+
+        @Override
+        public StorageCursor batchSize(int n) {
+            cursor.batchSize(n);
+            return this;
+        }
+
+        @Override
+        public DBObject getQuery() {
+            return cursor.getQuery();
+        }
+
+        @Override
+        public void close() {
+            cursor.close();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return cursor.hasNext();
+        }
+
+        @Override
+        public DBObject next() {
+            return cursor.next();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Not supported.");
+        }
+        
+    }
+    
+}
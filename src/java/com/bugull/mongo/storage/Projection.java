@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.List;
+
+/**
+ * Apply a projection to a document, supporting included fields, excluded fields and $slice.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+final class Projection {
+    
+    /**
+     * @param doc the stored document, which is not changed
+     * @param fields null or empty for the whole document
+     * @return a copy of the projected document
+     */
+    public static DBObject apply(DBObject doc, DBObject fields){
+        if(fields == null || fields.keySet().isEmpty()){
+            return DocumentUtil.copy(doc);
+        }
+        boolean include = false;
+        for(String key : fields.keySet()){
+            Object value = fields.get(key);
+            if(!key.equals(Operator.ID) && !(value instanceof DBObject) && isTrue(value)){
+                include = true;
+                break;
+            }
+        }
+        DBObject result;
+        if(include){
+            result = new BasicDBObject();
+            Object id = fields.get(Operator.ID);
+            if((id == null || isTrue(id)) && doc.containsField(Operator.ID)){
+                result.put(Operator.ID, DocumentUtil.copy(doc.get(Operator.ID)));
+            }
+            for(String key : fields.keySet()){
+                Object value = fields.get(key);
+                if(!key.equals(Operator.ID) && (value instanceof DBObject || isTrue(value)) && DocumentUtil.contains(doc, key)){
+                    DocumentUtil.set(result, key, DocumentUtil.copy(DocumentUtil.get(doc, key)));
+                }
+            }
+        }else{
+            result = DocumentUtil.copy(doc);
+            for(String key : fields.keySet()){
+                Object value = fields.get(key);
+                if(!(value instanceof DBObject) && !isTrue(value)){
+                    DocumentUtil.unset(result, key);
+                }
+            }
+        }
+        for(String key : fields.keySet()){
+            Object value = fields.get(key);
+            if(value instanceof DBObject && ((DBObject)value).containsField(Operator.SLICE)){
+                slice(result, key, ((DBObject)value).get(Operator.SLICE));
+            }
+        }
+        return result;
+    }
+    
+    private static void slice(DBObject doc, String path, Object arg){
+        Object value = DocumentUtil.get(doc, path);
+        if(!(value instanceof List)){
+            return;
+        }
+        List list = (List)value;
+        int size = list.size();
+        int begin;
+        int end;
+        if(arg instanceof List){
+            int skip = ((Number)((List)arg).get(0)).intValue();
+            int limit = ((Number)((List)arg).get(1)).intValue();
+            begin = skip < 0 ? Math.max(0, size + skip) : Math.min(size, skip);
+            end = Math.min(size, begin + limit);
+        }else{
+            int n = ((Number)arg).intValue();
+            if(n >= 0){
+                begin = 0;
+                end = Math.min(size, n);
+            }else{
+                begin = Math.max(0, size + n);
+                end = size;
+            }
+        }
+        BasicDBList sub = new BasicDBList();
+        sub.addAll(list.subList(begin, end));
+        DocumentUtil.set(doc, path, sub);
+    }
+    
+    private static boolean isTrue(Object value){
+        if(value instanceof Boolean){
+            return (Boolean)value;
+        }
+        if(value instanceof Number){
+            return ((Number)value).doubleValue() != 0;
+        }
+        return value != null;
+    }
+
+}
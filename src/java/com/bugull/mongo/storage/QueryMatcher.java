@@ -0,0 +1,453 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Evaluate a query condition against a document, supporting the operators that BuguQuery emits.
+ * 
+ * <p>As in MongoDB, a condition on an array field matches if any element of the array matches. 
+ * $where is not supported.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+final class QueryMatcher {
+    
+    private final static String NOT = "$not";
+    private final static String REGEX = "$regex";
+    private final static String OPTIONS = "$options";
+    private final static String ELEM_MATCH = "$elemMatch";
+    private final static String MAX_DISTANCE = "$maxDistance";
+    
+    /**
+     * @param doc
+     * @param query null or empty matches all documents
+     * @return 
+     */
+    public static boolean matches(DBObject doc, DBObject query){
+        if(query == null){
+            return true;
+        }
+        for(String key : query.keySet()){
+            Object cond = query.get(key);
+            if(key.equals(Operator.AND)){
+                for(Object sub : (List)cond){
+                    if(!matches(doc, (DBObject)sub)){
+                        return false;
+                    }
+                }
+            }else if(key.equals(Operator.OR)){
+                boolean any = false;
+                for(Object sub : (List)cond){
+                    if(matches(doc, (DBObject)sub)){
+                        any = true;
+                        break;
+                    }
+                }
+                if(!any){
+                    return false;
+                }
+            }else if(key.equals(Operator.NOR)){
+                for(Object sub : (List)cond){
+                    if(matches(doc, (DBObject)sub)){
+                        return false;
+                    }
+                }
+            }else if(key.equals(Operator.WHERE)){
+                throw new UnsupportedOperationException("$where is not supported");
+            }else if(!matchField(doc, key, cond)){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static boolean matchField(DBObject doc, String path, Object cond){
+        List<Object> values = getValues(doc, path);
+        if(isOperatorObject(cond)){
+            DBObject ops = (DBObject)cond;
+            for(String op : ops.keySet()){
+                if(!matchOperator(doc, path, values, op, ops.get(op), ops)){
+                    return false;
+                }
+            }
+            return true;
+        }
+        return matchEquals(values, cond);
+    }
+    
+    private static boolean matchOperator(DBObject doc, String path, List<Object> values, String op, Object arg, DBObject ops){
+        if(op.equals(Operator.GT)){
+            return matchCompare(values, arg, 1, false);
+        }else if(op.equals(Operator.GTE)){
+            return matchCompare(values, arg, 1, true);
+        }else if(op.equals(Operator.LT)){
+            return matchCompare(values, arg, -1, false);
+        }else if(op.equals(Operator.LTE)){
+            return matchCompare(values, arg, -1, true);
+        }else if(op.equals(Operator.NE)){
+            return !matchEquals(values, arg);
+        }else if(op.equals(Operator.IN)){
+            for(Object o : (List)arg){
+                if(matchEquals(values, o)){
+                    return true;
+                }
+            }
+            return false;
+        }else if(op.equals(Operator.NIN)){
+            for(Object o : (List)arg){
+                if(matchEquals(values, o)){
+                    return false;
+                }
+            }
+            return true;
+        }else if(op.equals(Operator.ALL)){
+            for(Object o : (List)arg){
+                if(!matchEquals(values, o)){
+                    return false;
+                }
+            }
+            return true;
+        }else if(op.equals(Operator.SIZE)){
+            int size = ((Number)arg).intValue();
+            for(Object v : values){
+                if(v instanceof List && ((List)v).size() == size){
+                    return true;
+                }
+            }
+            return false;
+        }else if(op.equals(Operator.EXISTS)){
+            boolean exists = DocumentUtil.contains(doc, path);
+            return exists == toBoolean(arg);
+        }else if(op.equals(Operator.MOD)){
+            List mod = (List)arg;
+            long divisor = ((Number)mod.get(0)).longValue();
+            long remainder = ((Number)mod.get(1)).longValue();
+            for(Object v : expand(values)){
+                if(v instanceof Number && ((Number)v).longValue() % divisor == remainder){
+                    return true;
+                }
+            }
+            return false;
+        }else if(op.equals(REGEX)){
+            Object options = ops.get(OPTIONS);
+            Pattern p = arg instanceof Pattern ? (Pattern)arg : toPattern(arg.toString(), options == null ? "" : options.toString());
+            return matchEquals(values, p);
+        }else if(op.equals(OPTIONS) || op.equals(MAX_DISTANCE)){
+            return true;  //used with $regex and $near
+        }else if(op.equals(NOT)){
+            if(arg instanceof Pattern){
+                return !matchEquals(values, arg);
+            }
+            for(String key : ((DBObject)arg).keySet()){
+                if(!matchOperator(doc, path, values, key, ((DBObject)arg).get(key), (DBObject)arg)){
+                    return true;
+                }
+            }
+            return false;
+        }else if(op.equals(ELEM_MATCH)){
+            DBObject sub = (DBObject)arg;
+            for(Object v : values){
+                if(v instanceof List){
+                    for(Object e : (List)v){
+                        if(matchElement(e, sub)){
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }else if(op.equals(Operator.NEAR)){
+            double[] near = toNear(arg, ops);
+            for(Object v : values){
+                double[] point = toPoint(v);
+                if(point != null && (near[2] < 0 || distance(point, near) <= near[2])){
+                    return true;
+                }
+            }
+            return false;
+        }else if(op.equals(Operator.WITHIN)){
+            DBObject shape = (DBObject)arg;
+            for(Object v : values){
+                double[] point = toPoint(v);
+                if(point != null && within(point, shape)){
+                    return true;
+                }
+            }
+            return false;
+        }
+        throw new UnsupportedOperationException(op + " is not supported");
+    }
+    
+    private static boolean matchElement(Object e, DBObject sub){
+        if(isOperatorObject(sub)){
+            List<Object> values = new ArrayList<Object>();
+            values.add(e);
+            for(String key : sub.keySet()){
+                if(!matchOperator(null, null, values, key, sub.get(key), sub)){
+                    return false;
+                }
+            }
+            return true;
+        }
+        return e instanceof DBObject && matches((DBObject)e, sub);
+    }
+    
+    private static boolean matchEquals(List<Object> values, Object cond){
+        if(values.isEmpty()){
+            return cond == null;
+        }
+        for(Object v : values){
+            if(cond instanceof Pattern){
+                if(v instanceof String && ((Pattern)cond).matcher((String)v).find()){
+                    return true;
+                }
+            }else if(DocumentUtil.isEqual(v, cond)){
+                return true;
+            }
+            if(v instanceof List){
+                for(Object e : (List)v){
+                    if(cond instanceof Pattern){
+                        if(e instanceof String && ((Pattern)cond).matcher((String)e).find()){
+                            return true;
+                        }
+                    }else if(DocumentUtil.isEqual(e, cond)){
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * @param sign 1 for greater than, -1 for less than
+     */
+    private static boolean matchCompare(List<Object> values, Object arg, int sign, boolean equal){
+        for(Object v : expand(values)){
+            if(!isSameType(v, arg)){
+                continue;
+            }
+            int c = DocumentUtil.compare(v, arg) * sign;
+            if(c > 0 || (equal && c == 0)){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isSameType(Object a, Object b){
+        if(a == null || b == null){
+            return a == b;
+        }
+        if(a instanceof Number && b instanceof Number){
+            return true;
+        }
+        return a.getClass() == b.getClass();
+    }
+    
+    /**
+     * The values and the elements of array values.
+     */
+    private static List<Object> expand(List<Object> values){
+        List<Object> result = new ArrayList<Object>();
+        for(Object v : values){
+            if(v instanceof List){
+                result.addAll((List)v);
+            }else{
+                result.add(v);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Get the values of a dotted path. Arrays of embedded documents on the path are traversed.
+     * @return empty if the path doesn't exist
+     */
+    static List<Object> getValues(DBObject doc, String path){
+        if(path.indexOf('.') == -1){
+            if(doc.containsField(path)){
+                return Collections.singletonList(doc.get(path));
+            }
+            return Collections.emptyList();
+        }
+        List<Object> result = new ArrayList<Object>();
+        collect(doc, path.split("\\."), 0, result);
+        return result;
+    }
+    
+    private static void collect(Object current, String[] parts, int index, List<Object> result){
+        if(index == parts.length){
+            result.add(current);
+            return;
+        }
+        if(current instanceof List){
+            List list = (List)current;
+            String part = parts[index];
+            if(isIndex(part) && Integer.parseInt(part) < list.size()){
+                collect(list.get(Integer.parseInt(part)), parts, index + 1, result);
+                return;
+            }
+            for(Object e : list){
+                if(e instanceof DBObject && !(e instanceof List)){
+                    collect(e, parts, index, result);
+                }
+            }
+        }else if(current instanceof DBObject){
+            DBObject dbo = (DBObject)current;
+            if(dbo.containsField(parts[index])){
+                collect(dbo.get(parts[index]), parts, index + 1, result);
+            }
+        }
+    }
+    
+    private static boolean isIndex(String part){
+        for(int i=0; i<part.length(); i++){
+            if(!Character.isDigit(part.charAt(i))){
+                return false;
+            }
+        }
+        return part.length() > 0;
+    }
+    
+    private static boolean isOperatorObject(Object cond){
+        if(!(cond instanceof DBObject) || cond instanceof List){
+            return false;
+        }
+        DBObject dbo = (DBObject)cond;
+        for(String key : dbo.keySet()){
+            return key.startsWith("$");
+        }
+        return false;
+    }
+    
+    private static boolean toBoolean(Object value){
+        if(value instanceof Boolean){
+            return (Boolean)value;
+        }
+        if(value instanceof Number){
+            return ((Number)value).intValue() != 0;
+        }
+        return value != null;
+    }
+    
+    private static Pattern toPattern(String regex, String options){
+        int flags = 0;
+        if(options.indexOf('i') != -1){
+            flags |= Pattern.CASE_INSENSITIVE;
+        }
+        if(options.indexOf('m') != -1){
+            flags |= Pattern.MULTILINE;
+        }
+        if(options.indexOf('s') != -1){
+            flags |= Pattern.DOTALL;
+        }
+        return Pattern.compile(regex, flags);
+    }
+    
+    /**
+     * Get the $near condition of a query, used to sort the results by distance.
+     * @param query
+     * @return the field, or null if there's no $near condition
+     */
+    public static String getNearField(DBObject query){
+        if(query == null){
+            return null;
+        }
+        for(String key : query.keySet()){
+            Object cond = query.get(key);
+            if(isOperatorObject(cond) && ((DBObject)cond).containsField(Operator.NEAR)){
+                return key;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * The distance from the field to the $near point, for sorting.
+     */
+    public static double getNearDistance(DBObject doc, String field, DBObject query){
+        DBObject ops = (DBObject)query.get(field);
+        double[] near = toNear(ops.get(Operator.NEAR), ops);
+        double[] point = toPoint(DocumentUtil.get(doc, field));
+        return point == null ? Double.MAX_VALUE : distance(point, near);
+    }
+    
+    /**
+     * @return x, y, and max distance (-1 if not limited)
+     */
+    private static double[] toNear(Object arg, DBObject ops){
+        double[] point = toPoint(arg);
+        double max = -1;
+        if(arg instanceof List && ((List)arg).size() > 2){
+            max = ((Number)((List)arg).get(2)).doubleValue();
+        }
+        if(ops.get(MAX_DISTANCE) instanceof Number){
+            max = ((Number)ops.get(MAX_DISTANCE)).doubleValue();
+        }
+        return new double[]{point[0], point[1], max};
+    }
+    
+    private static double[] toPoint(Object value){
+        List<Object> list = new ArrayList<Object>();
+        if(value instanceof List){
+            list.addAll((List)value);
+        }else if(value instanceof DBObject){
+            DBObject dbo = (DBObject)value;
+            for(String key : dbo.keySet()){
+                list.add(dbo.get(key));
+            }
+        }else if(value instanceof Object[]){
+            Collections.addAll(list, (Object[])value);
+        }
+        if(list.size() < 2 || !(list.get(0) instanceof Number) || !(list.get(1) instanceof Number)){
+            return null;
+        }
+        return new double[]{((Number)list.get(0)).doubleValue(), ((Number)list.get(1)).doubleValue()};
+    }
+    
+    private static double distance(double[] a, double[] b){
+        double dx = a[0] - b[0];
+        double dy = a[1] - b[1];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+    
+    private static boolean within(double[] point, DBObject shape){
+        if(shape.containsField(Operator.CENTER)){
+            List center = (List)shape.get(Operator.CENTER);
+            double[] c = toPoint(center.get(0));
+            double radius = ((Number)center.get(1)).doubleValue();
+            return distance(point, c) <= radius;
+        }
+        if(shape.containsField(Operator.BOX)){
+            List box = (List)shape.get(Operator.BOX);
+            double[] p1 = toPoint(box.get(0));
+            double[] p2 = toPoint(box.get(1));
+            return point[0] >= Math.min(p1[0], p2[0]) && point[0] <= Math.max(p1[0], p2[0])
+                    && point[1] >= Math.min(p1[1], p2[1]) && point[1] <= Math.max(p1[1], p2[1]);
+        }
+        throw new UnsupportedOperationException("Unsupported shape of $within: " + shape);
+    }
+
+}
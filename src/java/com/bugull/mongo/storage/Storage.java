@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import com.mongodb.WriteResult;
+import java.util.List;
+
+/**
+ * The storage of an entity collection, used by BuguDao, BuguQuery and BuguUpdater.
+ * 
+ * <p>The documents and conditions are the same as sent to mongoDB. MongoStorage sends them to mongoDB, 
+ * and MemoryStorage keeps the documents in memory.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface Storage {
+    
+    public String getName();
+    
+    /**
+     * Get the collection in mongoDB.
+     * @return null if the documents are not stored in mongoDB
+     */
+    public DBCollection getCollection();
+    
+    /**
+     * Insert a document. The generated _id is set to the document.
+     * @param dbo
+     * @param concern
+     * @return 
+     */
+    public WriteResult insert(DBObject dbo, WriteConcern concern);
+    
+    public WriteResult insert(List<DBObject> list, WriteConcern concern);
+    
+    /**
+     * Insert the document if it has no _id, otherwise replace the document with the same _id, or insert it if not exists.
+     * @param dbo
+     * @param concern
+     * @return 
+     */
+    public WriteResult save(DBObject dbo, WriteConcern concern);
+    
+    public WriteResult update(DBObject query, DBObject dbo, boolean multi, WriteConcern concern);
+    
+    public WriteResult remove(DBObject query, WriteConcern concern);
+    
+    /**
+     * @param query null for any document
+     * @param fields null for all fields
+     * @return null if nothing matches
+     */
+    public DBObject findOne(DBObject query, DBObject fields);
+    
+    /**
+     * @param query
+     * @param fields null for all fields
+     * @return 
+     */
+    public StorageCursor find(DBObject query, DBObject fields);
+    
+    /**
+     * @param query null for all documents
+     * @return 
+     */
+    public long count(DBObject query);
+    
+    /**
+     * @param key
+     * @param query null for all documents
+     * @return 
+     */
+    public List distinct(String key, DBObject query);
+    
+    /**
+     * Drop the collection with its indexes.
+     */
+    public void drop();
+    
+}
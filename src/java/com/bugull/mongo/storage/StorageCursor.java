@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.mongodb.DBObject;
+import java.util.Iterator;
+
+/**
+ * The cursor of the documents found in a storage. 
+ * 
+ * <p>As DBCursor, the sort, skip and limit must be set before iterating.</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public interface StorageCursor extends Iterator<DBObject> {
+    
+    public StorageCursor sort(DBObject orderBy);
+    
+    public StorageCursor skip(int n);
+    
+    public StorageCursor limit(int n);
+    
+    /**
+     * The documents fetched per round trip. It has no effect for the storages in memory.
+     * @param n
+     * @return 
+     */
+    public StorageCursor batchSize(int n);
+    
+    public DBObject getQuery();
+    
+    public void close();
+    
+}
@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.utils.Operator;
+import com.mongodb.BasicDBList;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Apply an update document to a document, supporting the operators that BuguUpdater emits.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+final class UpdateApplier {
+    
+    private final static String PUSH_ALL = "$pushAll";
+    private final static String PULL_ALL = "$pullAll";
+    private final static String ADD_TO_SET = "$addToSet";
+    private final static String RENAME = "$rename";
+    private final static String SET_ON_INSERT = "$setOnInsert";
+    
+    /**
+     * @param update
+     * @return true if the update has operators, false if it's a replacement document
+     */
+    public static boolean isOperatorUpdate(DBObject update){
+        for(String key : update.keySet()){
+            return key.startsWith("$");
+        }
+        return false;
+    }
+    
+    /**
+     * Apply the update to the document in place.
+     * @param doc
+     * @param update an update with operators, or a replacement document
+     * @param inserting true if the document is being inserted by an upsert
+     */
+    public static void apply(DBObject doc, DBObject update, boolean inserting){
+        if(!isOperatorUpdate(update)){
+            Object id = doc.get(Operator.ID);
+            for(String key : new BasicDBObject(doc.toMap()).keySet()){
+                doc.removeField(key);
+            }
+            if(id != null){
+                doc.put(Operator.ID, id);
+            }
+            for(String key : update.keySet()){
+                doc.put(key, DocumentUtil.copy(update.get(key)));
+            }
+            return;
+        }
+        for(String op : update.keySet()){
+            DBObject fields = (DBObject)update.get(op);
+            for(String path : fields.keySet()){
+                Object arg = DocumentUtil.copy(fields.get(path));
+                applyOperator(doc, op, path, arg, inserting);
+            }
+        }
+    }
+    
+    private static void applyOperator(DBObject doc, String op, String path, Object arg, boolean inserting){
+        Object current = DocumentUtil.get(doc, path);
+        if(op.equals(Operator.SET)){
+            DocumentUtil.set(doc, path, arg);
+        }else if(op.equals(SET_ON_INSERT)){
+            if(inserting){
+                DocumentUtil.set(doc, path, arg);
+            }
+        }else if(op.equals(Operator.UNSET)){
+            DocumentUtil.unset(doc, path);
+        }else if(op.equals(Operator.INC)){
+            DocumentUtil.set(doc, path, add(current == null ? 0 : (Number)current, (Number)arg));
+        }else if(op.equals(Operator.MUL)){
+            DocumentUtil.set(doc, path, multiply(current == null ? 0 : (Number)current, (Number)arg));
+        }else if(op.equals(Operator.MIN)){
+            if(current == null || DocumentUtil.compare(arg, current) < 0){
+                DocumentUtil.set(doc, path, arg);
+            }
+        }else if(op.equals(Operator.MAX)){
+            if(current == null || DocumentUtil.compare(arg, current) > 0){
+                DocumentUtil.set(doc, path, arg);
+            }
+        }else if(op.equals(Operator.PUSH) || op.equals(PUSH_ALL) || op.equals(ADD_TO_SET)){
+            List list = getList(doc, path, current);
+            List values = toEach(op, arg);
+            for(Object v : values){
+                if(op.equals(ADD_TO_SET) && contains(list, v)){
+                    continue;
+                }
+                list.add(v);
+            }
+        }else if(op.equals(Operator.PULL) || op.equals(PULL_ALL)){
+            if(current instanceof List){
+                List values = op.equals(PULL_ALL) ? (List)arg : null;
+                for(Iterator it = ((List)current).iterator(); it.hasNext(); ){
+                    Object e = it.next();
+                    if(values != null ? contains(values, e) : isPulled(e, arg)){
+                        it.remove();
+                    }
+                }
+            }
+        }else if(op.equals(Operator.POP)){
+            if(current instanceof List && !((List)current).isEmpty()){
+                List list = (List)current;
+                if(((Number)arg).intValue() < 0){
+                    list.remove(0);
+                }else{
+                    list.remove(list.size() - 1);
+                }
+            }
+        }else if(op.equals(Operator.BIT)){
+            long value = current == null ? 0 : ((Number)current).longValue();
+            DBObject bits = (DBObject)arg;
+            for(String key : bits.keySet()){
+                long n = ((Number)bits.get(key)).longValue();
+                if(key.equals("and")){
+                    value &= n;
+                }else if(key.equals("or")){
+                    value |= n;
+                }else if(key.equals("xor")){
+                    value ^= n;
+                }
+            }
+            if(current instanceof Long){
+                DocumentUtil.set(doc, path, value);
+            }else{
+                DocumentUtil.set(doc, path, (int)value);
+            }
+        }else if(op.equals(RENAME)){
+            if(DocumentUtil.contains(doc, path)){
+                DocumentUtil.unset(doc, path);
+                DocumentUtil.set(doc, arg.toString(), current);
+            }
+        }else{
+            throw new UnsupportedOperationException(op + " is not supported");
+        }
+    }
+    
+    /**
+     * Create the document inserted by an upsert, from the equality conditions of the query.
+     * @param query
+     * @param update
+     * @return 
+     */
+    public static DBObject upsert(DBObject query, DBObject update){
+        DBObject doc = new BasicDBObject();
+        if(query != null){
+            for(String key : query.keySet()){
+                Object value = query.get(key);
+                if(key.startsWith("$")){
+                    continue;
+                }
+                if(value instanceof DBObject && !(value instanceof List) && isOperatorUpdate((DBObject)value)){
+                    continue;
+                }
+                DocumentUtil.set(doc, key, DocumentUtil.copy(value));
+            }
+        }
+        apply(doc, update, true);
+        return doc;
+    }
+    
+    private static List getList(DBObject doc, String path, Object current){
+        if(current instanceof List){
+            return (List)current;
+        }
+        List list = new BasicDBList();
+        if(current != null){
+            list.add(current);
+        }
+        DocumentUtil.set(doc, path, list);
+        return list;
+    }
+    
+    private static List toEach(String op, Object arg){
+        if(op.equals(PUSH_ALL)){
+            return (List)arg;
+        }
+        if(arg instanceof DBObject && !(arg instanceof List) && ((DBObject)arg).containsField(Operator.EACH)){
+            return (List)((DBObject)arg).get(Operator.EACH);
+        }
+        List list = new BasicDBList();
+        list.add(arg);
+        return list;
+    }
+    
+    private static boolean contains(List list, Object value){
+        for(Object o : list){
+            if(DocumentUtil.isEqual(o, value)){
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static boolean isPulled(Object element, Object cond){
+        if(cond instanceof DBObject && !(cond instanceof List)){
+            DBObject dbo = (DBObject)cond;
+            if(isOperatorUpdate(dbo)){
+                DBObject wrapper = new BasicDBObject("v", element);
+                return QueryMatcher.matches(wrapper, new BasicDBObject("v", dbo));
+            }
+            if(element instanceof DBObject){
+                return QueryMatcher.matches((DBObject)element, dbo);
+            }
+            return false;
+        }
+        return DocumentUtil.isEqual(element, cond);
+    }
+    
+    private static Number add(Number a, Number b){
+        if(isFloat(a) || isFloat(b)){
+            return a.doubleValue() + b.doubleValue();
+        }
+        if(a instanceof Long || b instanceof Long){
+            return a.longValue() + b.longValue();
+        }
+        long sum = a.longValue() + b.longValue();
+        if(sum > Integer.MAX_VALUE || sum < Integer.MIN_VALUE){
+            return sum;
+        }
+        return (int)sum;
+    }
+    
+    private static Number multiply(Number a, Number b){
+        if(isFloat(a) || isFloat(b)){
+            return a.doubleValue() * b.doubleValue();
+        }
+        if(a instanceof Long || b instanceof Long){
+            return a.longValue() * b.longValue();
+        }
+        long product = a.longValue() * b.longValue();
+        if(product > Integer.MAX_VALUE || product < Integer.MIN_VALUE){
+            return product;
+        }
+        return (int)product;
+    }
+    
+    private static boolean isFloat(Number n){
+        return n instanceof Double || n instanceof Float;
+    }
+
+}
@@ -31,5 +31,11 @@ public final class Aggregation {
     public static final String UNWIND = "$unwind";
     public static final String GROUP = "$group";
     public static final String SORT = "$sort";
+    
+    //group accumulator
+    public static final String SUM = "$sum";
+    public static final String MIN = "$min";
+    public static final String MAX = "$max";
+    public static final String AVG = "$avg";
 
 }
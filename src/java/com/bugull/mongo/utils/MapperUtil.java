@@ -27,7 +27,9 @@ import com.bugull.mongo.decoder.Decoder;
 import com.bugull.mongo.decoder.DecoderFactory;
 import com.bugull.mongo.encoder.Encoder;
 import com.bugull.mongo.encoder.EncoderFactory;
+import com.bugull.mongo.misc.CascadeReadContext;
 import com.bugull.mongo.misc.DBIndex;
+import com.bugull.mongo.storage.StorageCursor;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBCursor;
 import com.mongodb.DBObject;
@@ -53,6 +55,17 @@ public final class MapperUtil {
         if(dbo == null){
             return null;
         }
+        CascadeReadContext context = CascadeReadContext.begin();
+        try{
+            T obj = decode(clazz, dbo);
+            context.resolve();
+            return obj;
+        }finally{
+            context.end();
+        }
+    }
+    
+    private static <T> T decode(Class<T> clazz, DBObject dbo){
         T obj = ConstructorCache.getInstance().create(clazz);
         Field[] fields = FieldsCache.getInstance().get(clazz);
         for(Field field : fields){
@@ -87,14 +100,80 @@ public final class MapperUtil {
     
     public static <T> List<T> toList(Class<T> clazz, DBCursor cursor){
         List<T> list = new ArrayList<T>();
-        while(cursor.hasNext()){
-            DBObject dbo = cursor.next();
-            list.add(fromDBObject(clazz, dbo));
+        //the cascade references of the whole list are resolved together, after the cursor is drained
+        CascadeReadContext context = CascadeReadContext.begin();
+        try{
+            while(cursor.hasNext()){
+                DBObject dbo = cursor.next();
+                list.add(decode(clazz, dbo));
+            }
+            cursor.close();
+            context.resolve();
+        }finally{
+            context.end();
+        }
+        return list;
+    }
+    
+    /**
+     * Convert the documents of a storage cursor to entities. The cascade references are resolved together.
+     * @param clazz
+     * @param cursor
+     * @return 
+     */
+    public static <T> List<T> toList(Class<T> clazz, StorageCursor cursor){
+        List<T> list = new ArrayList<T>();
+        CascadeReadContext context = CascadeReadContext.begin();
+        try{
+            while(cursor.hasNext()){
+                DBObject dbo = cursor.next();
+                list.add(decode(clazz, dbo));
+            }
+            cursor.close();
+            context.resolve();
+        }finally{
+            context.end();
         }
-        cursor.close();
         return list;
     }
     
+    /**
+     * Convert documents already read to entities. The cascade references are resolved together.
+     * @param clazz
+     * @param list
+     * @return 
+     */
+    public static <T> List<T> toList(Class<T> clazz, List<DBObject> list){
+        List<T> result = new ArrayList<T>(list.size());
+        CascadeReadContext context = CascadeReadContext.begin();
+        try{
+            for(DBObject dbo : list){
+                result.add(decode(clazz, dbo));
+            }
+            context.resolve();
+        }finally{
+            context.end();
+        }
+        return result;
+    }
+    
+    /**
+     * Get the value of a key, which may be in an embedded document, such as "a.b".
+     * @param dbo
+     * @param key
+     * @return 
+     */
+    public static Object getValue(DBObject dbo, String key){
+        Object value = dbo;
+        for(String name : key.split("\\.")){
+            if(!(value instanceof DBObject)){
+                return null;
+            }
+            value = ((DBObject)value).get(name);
+        }
+        return value;
+    }
+    
     /**
      * convert order string to DBObject.
      * @param orderBy
@@ -175,7 +254,7 @@ public final class MapperUtil {
     }
     
     /**
-     * Get the lazy fields
+     * Get the projection which excludes the lazy fields
      * @param clazz
      * @return 
      */
@@ -183,36 +262,64 @@ public final class MapperUtil {
         DBObject keys = new BasicDBObject();
         Field[] fields = FieldsCache.getInstance().get(clazz);
         for(Field field : fields){
-            String fieldName = field.getName();
-            Property property = field.getAnnotation(Property.class);
-            if(property!=null && property.lazy()){
-                String name = property.name();
-                if(!name.equals(Default.NAME)){
-                    fieldName = name;
-                }
-                keys.put(fieldName, 0);
-                continue;
+            String name = getLazyName(field);
+            if(name != null){
+                keys.put(name, 0);
             }
-            Embed embed = field.getAnnotation(Embed.class);
-            if(embed!=null && embed.lazy()){
-                String name = embed.name();
-                if(!name.equals(Default.NAME)){
-                    fieldName = name;
-                }
-                keys.put(fieldName, 0);
-                continue;
-            }
-            EmbedList embedList = field.getAnnotation(EmbedList.class);
-            if(embedList!=null && embedList.lazy()){
-                String name = embedList.name();
-                if(!name.equals(Default.NAME)){
-                    fieldName = name;
-                }
-                keys.put(fieldName, 0);
-                continue;
+        }
+        return keys;
+    }
+    
+    /**
+     * Get the lazy fields, which are @Property, @Embed and @EmbedList with lazy=true.
+     * @param clazz
+     * @return 
+     */
+    public static List<Field> getLazyFields(Class<?> clazz){
+        List<Field> list = new ArrayList<Field>();
+        Field[] fields = FieldsCache.getInstance().get(clazz);
+        for(Field field : fields){
+            if(getLazyName(field) != null){
+                list.add(field);
             }
         }
+        return list;
+    }
+    
+    /**
+     * Get the projection of lazy fields only, the inverse of getKeyFields().
+     * @param clazz
+     * @return 
+     */
+    public static DBObject getLazyKeyFields(Class<?> clazz){
+        DBObject keys = new BasicDBObject();
+        for(Field field : getLazyFields(clazz)){
+            keys.put(getLazyName(field), 1);
+        }
         return keys;
     }
     
+    /**
+     * @return the field name in database, or null if it's not a lazy field
+     */
+    private static String getLazyName(Field field){
+        String name = null;
+        Property property = field.getAnnotation(Property.class);
+        Embed embed = field.getAnnotation(Embed.class);
+        EmbedList embedList = field.getAnnotation(EmbedList.class);
+        if(property!=null && property.lazy()){
+            name = property.name();
+        }else if(embed!=null && embed.lazy()){
+            name = embed.name();
+        }else if(embedList!=null && embedList.lazy()){
+            name = embedList.name();
+        }else{
+            return null;
+        }
+        if(name.equals(Default.NAME)){
+            name = field.getName();
+        }
+        return name;
+    }
+    
 }
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.utils;
+
+import com.bugull.mongo.annotations.SplitType;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Utility class for the collections split by date or string.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public final class PartitionUtil {
+    
+    //SimpleDateFormat is not thread-safe, so one instance per thread
+    private final static ThreadLocal<SimpleDateFormat> daily = new ThreadLocal<SimpleDateFormat>(){
+        @Override
+        protected SimpleDateFormat initialValue(){
+            return new SimpleDateFormat("yyyy-MM-dd");
+        }
+    };
+    
+    private final static ThreadLocal<SimpleDateFormat> monthly = new ThreadLocal<SimpleDateFormat>(){
+        @Override
+        protected SimpleDateFormat initialValue(){
+            return new SimpleDateFormat("yyyy-MM");
+        }
+    };
+    
+    private final static ThreadLocal<SimpleDateFormat> yearly = new ThreadLocal<SimpleDateFormat>(){
+        @Override
+        protected SimpleDateFormat initialValue(){
+            return new SimpleDateFormat("yyyy");
+        }
+    };
+    
+    /**
+     * Get the collection suffix of a date.
+     * @param split
+     * @param date
+     * @return null if the split type is not by date
+     */
+    public static String getSuffix(SplitType split, Date date){
+        switch(split){
+            case DAILY:
+                return daily.get().format(date);
+            case MONTHLY:
+                return monthly.get().format(date);
+            case YEARLY:
+                return yearly.get().format(date);
+            default:
+                return null;
+        }
+    }
+    
+    /**
+     * Get the suffixes of all partitions between two dates, in time order.
+     * @param split
+     * @param from
+     * @param to
+     * @return empty if the split type is not by date
+     */
+    public static List<String> getSuffixes(SplitType split, Date from, Date to){
+        List<String> list = new ArrayList<String>();
+        int field = getCalendarField(split);
+        if(field < 0){
+            return list;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(from);
+        String last = getSuffix(split, to);
+        String suffix = getSuffix(split, cal.getTime());
+        while(suffix.compareTo(last) <= 0){
+            list.add(suffix);
+            cal.add(field, 1);
+            suffix = getSuffix(split, cal.getTime());
+        }
+        return list;
+    }
+    
+    /**
+     * Get the suffix of the partition some periods after (or before, if negative) a date.
+     * @param split
+     * @param date
+     * @param offset number of days, months or years
+     * @return null if the split type is not by date
+     */
+    public static String getSuffix(SplitType split, Date date, int offset){
+        int field = getCalendarField(split);
+        if(field < 0){
+            return null;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTime(date);
+        cal.add(field, offset);
+        return getSuffix(split, cal.getTime());
+    }
+    
+    /**
+     * Check if a string is a suffix of date partition.
+     * @param split
+     * @param s
+     * @return 
+     */
+    public static boolean isSuffix(SplitType split, String s){
+        switch(split){
+            case DAILY:
+                return s.matches("\\d{4}-\\d{2}-\\d{2}");
+            case MONTHLY:
+                return s.matches("\\d{4}-\\d{2}");
+            case YEARLY:
+                return s.matches("\\d{4}");
+            default:
+                return false;
+        }
+    }
+    
+    private static int getCalendarField(SplitType split){
+        switch(split){
+            case DAILY:
+                return Calendar.DAY_OF_MONTH;
+            case MONTHLY:
+                return Calendar.MONTH;
+            case YEARLY:
+                return Calendar.YEAR;
+            default:
+                return -1;
+        }
+    }
+    
+    /**
+     * Get the collection name of a partition.
+     * @param clazz
+     * @param suffix
+     * @return 
+     */
+    public static String getName(Class<?> clazz, String suffix){
+        return MapperUtil.getEntityName(clazz) + "-" + suffix;
+    }
+    
+}
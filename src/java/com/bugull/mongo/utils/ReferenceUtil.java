@@ -89,10 +89,14 @@ public final class ReferenceUtil {
     
     private static DBRef toDBRef(Class<?> clazz, String idStr){
         DB db = null;
-        try {
-            db = BuguConnection.getInstance().getDB();
-        } catch (DBConnectionException ex) {
-            logger.error(ex.getMessage(), ex);
+        BuguConnection conn = BuguConnection.getInstance(clazz);
+        //the reference in memory has no database
+        if(conn.getMemoryDatabase() == null){
+            try {
+                db = conn.getDB();
+            } catch (DBConnectionException ex) {
+                logger.error(ex.getMessage(), ex);
+            }
         }
         String name = MapperUtil.getEntityName(clazz);
         Object dbId = IdUtil.toDbId(clazz, idStr);
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo;
+
+import com.bugull.mongo.annotations.Default;
+import com.bugull.mongo.entity.Item;
+import com.bugull.mongo.test.TestCase;
+
+/**
+ * The connection kept in memory, as used by test suites.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MemoryConnectionTest extends TestCase {
+    
+    @Override
+    protected void setUp(){
+        BuguConnection.getInstance().connectInMemory();
+    }
+    
+    @Override
+    protected void tearDown(){
+        BuguConnection.getInstance().close();
+    }
+    
+    public void testCrud(){
+        BuguDao<Item> dao = new BuguDao<Item>(Item.class);
+        Item item = new Item("apple", 3);
+        dao.insert(item);
+        assertTrue("id is set", item.getId() != null);
+        assertEquals("found by id", "apple", dao.findOne(item.getId()).getName());
+        dao.update().inc(item, "qty", 2);
+        assertEquals("increased", 5, dao.findOne(item.getId()).getQty());
+        dao.insert(new Item("pear", 1));
+        assertEquals("query", 1, dao.query().greaterThan("qty", 2).count());
+        dao.remove(item);
+        assertEquals("removed", 1, dao.count());
+    }
+    
+    public void testClosedNamedConnectionFails(){
+        BuguConnection.getInstance("other").connectInMemory();
+        BuguConnection.route(Item.class, "other");
+        try{
+            new BuguDao<Item>(Item.class).insert(new Item("apple", 1));
+            BuguConnection.getInstance("other").close();
+            try{
+                new BuguDao<Item>(Item.class).insert(new Item("pear", 1));
+                fail("insert on a closed connection");
+            }catch(RuntimeException ex){
+                //expected
+            }
+            BuguConnection.route(Item.class, Default.NAME);
+            assertEquals("nothing written to the default database", 0, new BuguDao<Item>(Item.class).count());
+        }finally{
+            BuguConnection.route(Item.class, Default.NAME);
+        }
+    }
+    
+    public void testReconnectIsEmpty(){
+        new BuguDao<Item>(Item.class).insert(new Item("apple", 1));
+        BuguConnection.getInstance().close();
+        BuguConnection.getInstance().connectInMemory();
+        assertEquals("fresh database", 0, new BuguDao<Item>(Item.class).count());
+    }
+    
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.entity;
+
+import com.bugull.mongo.SimpleEntity;
+import com.bugull.mongo.annotations.EnsureIndex;
+import com.bugull.mongo.annotations.Entity;
+
+/**
+ * A plain entity used by the tests.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+@Entity(name="test_item")
+@EnsureIndex("{name:1}")
+public class Item extends SimpleEntity {
+    
+    private String name;
+    private int qty;
+    
+    public Item(){
+        
+    }
+    
+    public Item(String name, int qty){
+        this.name = name;
+        this.qty = qty;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getQty() {
+        return qty;
+    }
+
+    public void setQty(int qty) {
+        this.qty = qty;
+    }
+    
+}
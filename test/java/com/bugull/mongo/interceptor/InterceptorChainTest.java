@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.interceptor;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.BuguDao;
+import com.bugull.mongo.entity.Item;
+import com.bugull.mongo.test.TestCase;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The interceptors are called only when installed.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class InterceptorChainTest extends TestCase {
+    
+    private final List<String> calls = new ArrayList<String>();
+    
+    private final Interceptor interceptor = new Interceptor(){
+        @Override
+        public void before(Operation op){
+            calls.add("before " + op.getType());
+        }
+        @Override
+        public void after(Operation op, long elapsed, long resultSize){
+            calls.add("after " + op.getType() + " " + resultSize);
+        }
+        @Override
+        public void onError(Operation op, long elapsed, Throwable ex){
+            calls.add("error " + op.getType());
+        }
+    };
+    
+    @Override
+    protected void setUp(){
+        BuguConnection.getInstance().connectInMemory();
+    }
+    
+    @Override
+    protected void tearDown(){
+        InterceptorChain.getGlobal().remove(interceptor);
+        BuguConnection.getInstance().close();
+    }
+    
+    public void testEmpty(){
+        InterceptorChain chain = new InterceptorChain();
+        assertTrue("new chain", chain.isEmpty());
+        InterceptorChain.getGlobal().add(interceptor);
+        assertFalse("global interceptor", chain.isEmpty());
+        InterceptorChain.getGlobal().remove(interceptor);
+        assertTrue("global removed", chain.isEmpty());
+        chain.add(interceptor);
+        assertFalse("own interceptor", chain.isEmpty());
+    }
+    
+    public void testDaoInterceptor(){
+        BuguDao<Item> dao = new BuguDao<Item>(Item.class);
+        dao.insert(new Item("apple", 3));
+        assertEquals("not called before installed", 0, calls.size());
+        dao.addInterceptor(interceptor);
+        dao.insert(new Item("pear", 1));
+        assertEquals("count", 2, dao.count());
+        dao.removeInterceptor(interceptor);
+        dao.count();
+        assertEquals("calls", 4, calls.size());
+        assertEquals("before insert", "before " + OperationType.INSERT, calls.get(0));
+        assertEquals("after count", "after " + OperationType.COUNT + " 0", calls.get(3));
+    }
+    
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.BuguDao;
+import com.bugull.mongo.entity.Item;
+import com.bugull.mongo.entity.Order;
+import com.bugull.mongo.test.TestCase;
+
+/**
+ * Cascade delete, on the connection kept in memory.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class DeleteCascadeTest extends TestCase {
+    
+    private BuguDao<Item> itemDao;
+    private BuguDao<Order> orderDao;
+    
+    @Override
+    protected void setUp(){
+        BuguConnection.getInstance().connectInMemory();
+        itemDao = new BuguDao<Item>(Item.class);
+        orderDao = new BuguDao<Order>(Order.class);
+    }
+    
+    @Override
+    protected void tearDown(){
+        BuguConnection.getInstance().close();
+    }
+    
+    public void testCascade(){
+        DeleteCascadeEngine engine = DeleteCascadeEngine.getInstance();
+        long removed = engine.getRemovedEntities();
+        Item item = new Item("apple", 1);
+        itemDao.insert(item);
+        Order order = new Order();
+        order.setItem(item);
+        orderDao.insert(order);
+        orderDao.remove(order);
+        assertTrue("cascade finished", engine.awaitIdle(5000L));
+        assertEquals("item removed", 0, itemDao.count());
+        assertEquals("removed entities", removed + 1, engine.getRemovedEntities());
+    }
+    
+    public void testMissingReference(){
+        DeleteCascadeEngine engine = DeleteCascadeEngine.getInstance();
+        long removed = engine.getRemovedEntities();
+        Order order = new Order();
+        order.setItem(new Item("ghost", 1));
+        order.getItem().setId("000000000000000000000001");
+        orderDao.insert(order);
+        orderDao.remove(order);
+        assertTrue("cascade finished", engine.awaitIdle(5000L));
+        assertEquals("nothing removed", removed, engine.getRemovedEntities());
+    }
+    
+    public void testMissingEntity(){
+        orderDao.remove("000000000000000000000002");
+        assertEquals("nothing left", 0, orderDao.count());
+    }
+    
+}
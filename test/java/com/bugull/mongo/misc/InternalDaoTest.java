@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.entity.Item;
+import com.bugull.mongo.storage.Storage;
+import com.bugull.mongo.test.TestCase;
+import com.mongodb.BasicDBObject;
+import com.mongodb.WriteConcern;
+import org.bson.types.ObjectId;
+
+/**
+ * The max id, which seeds the auto increased id.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class InternalDaoTest extends TestCase {
+    
+    private InternalDao<Item> dao;
+    
+    @Override
+    protected void setUp(){
+        BuguConnection.getInstance().connectInMemory();
+        dao = new InternalDao<Item>(Item.class);
+    }
+    
+    @Override
+    protected void tearDown(){
+        BuguConnection.getInstance().close();
+    }
+    
+    public void testEmpty(){
+        assertEquals("no document", 0, dao.getMaxId());
+    }
+    
+    public void testSkipNonNumericIds(){
+        Storage storage = dao.getStorage();
+        storage.insert(new BasicDBObject("_id", 7L), WriteConcern.ACKNOWLEDGED);
+        storage.insert(new BasicDBObject("_id", 12), WriteConcern.ACKNOWLEDGED);
+        storage.insert(new BasicDBObject("_id", "zzz"), WriteConcern.ACKNOWLEDGED);
+        storage.insert(new BasicDBObject("_id", new ObjectId()), WriteConcern.ACKNOWLEDGED);
+        assertEquals("max numeric id", 12, dao.getMaxId());
+    }
+    
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.misc;
+
+import com.bugull.mongo.BuguConnection;
+import com.bugull.mongo.cache.StorageCache;
+import com.bugull.mongo.entity.Item;
+import com.bugull.mongo.storage.Storage;
+import com.bugull.mongo.test.TestCase;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import com.mongodb.WriteConcern;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merge the sorted results of partitions.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class PartitionCursorTest extends TestCase {
+    
+    private List<Storage> partitions;
+    
+    @Override
+    protected void setUp(){
+        BuguConnection.getInstance().connectInMemory();
+        partitions = new ArrayList<Storage>();
+        partitions.add(StorageCache.getInstance().get(Item.class, "test_item-a"));
+        partitions.add(StorageCache.getInstance().get(Item.class, "test_item-b"));
+    }
+    
+    @Override
+    protected void tearDown(){
+        BuguConnection.getInstance().close();
+    }
+    
+    public void testMergeInTypeOrder(){
+        insert(partitions.get(0), 1, 10);
+        insert(partitions.get(0), 2, "b");
+        insert(partitions.get(1), 3, "1");
+        insert(partitions.get(1), 4, null);
+        PartitionCursor cursor = new PartitionCursor(partitions, new BasicDBObject(), null, new BasicDBObject("qty", 1), 0);
+        List<Object> ids = new ArrayList<Object>();
+        while(cursor.hasNext()){
+            ids.add(cursor.next().get("_id"));
+        }
+        cursor.close();
+        //null, then numbers, then strings
+        assertEquals("merged order", "[4, 1, 3, 2]", ids.toString());
+    }
+    
+    public void testCount(){
+        insert(partitions.get(0), 1, 1);
+        insert(partitions.get(1), 2, 2);
+        insert(partitions.get(1), 3, 3);
+        assertEquals("count", 3, PartitionCursor.count(partitions, new BasicDBObject()));
+    }
+    
+    private void insert(Storage storage, int id, Object qty){
+        DBObject dbo = new BasicDBObject("_id", id);
+        dbo.put("qty", qty);
+        storage.insert(dbo, WriteConcern.ACKNOWLEDGED);
+    }
+    
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.test.TestCase;
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The queries answered by an index must return the same documents as a full scan.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class MemoryIndexTest extends TestCase {
+    
+    private final static String[] NAMES = {"color", "colour", "colouur", "colr", "cool", "col", "co", "abc", "ab|c", "xcolor", "Color"};
+    
+    private MemoryStorage indexed;
+    private MemoryStorage plain;
+    
+    @Override
+    protected void setUp(){
+        MemoryDatabase db = new MemoryDatabase();
+        indexed = new MemoryStorage(db, "indexed");
+        indexed.createIndex(new BasicDBObject("name", 1), false);
+        plain = new MemoryStorage(db, "plain");
+        for(int i=0; i<NAMES.length; i++){
+            indexed.insert(new BasicDBObject("name", NAMES[i]).append("n", i), null);
+            plain.insert(new BasicDBObject("name", NAMES[i]).append("n", i), null);
+        }
+        indexed.insert(new BasicDBObject("name", 5).append("n", 100), null);
+        plain.insert(new BasicDBObject("name", 5).append("n", 100), null);
+    }
+    
+    public void testPrefixRegex(){
+        String[] regexes = {"^colou?r", "^colou*r", "^colou{0,2}r", "^colo+r", "^colou.r", "^col", "^co.l", "^ab|c", "^ab\\|c", "^c(o)l", "^[cx]ol", "^colou?"};
+        for(String regex : regexes){
+            DBObject query = new BasicDBObject("name", Pattern.compile(regex));
+            assertEquals(regex, find(plain, query), find(indexed, query));
+        }
+    }
+    
+    public void testRegexWithFlags(){
+        DBObject query = new BasicDBObject("name", Pattern.compile("^color", Pattern.CASE_INSENSITIVE));
+        assertEquals("case insensitive", find(plain, query), find(indexed, query));
+        assertEquals("case insensitive count", 2, find(indexed, query).size());
+    }
+    
+    public void testRange(){
+        DBObject[] queries = {
+            new BasicDBObject("name", new BasicDBObject("$gte", "col").append("$lt", "com")),
+            new BasicDBObject("name", new BasicDBObject("$gt", "colour")),
+            new BasicDBObject("name", new BasicDBObject("$lte", 5)),
+            new BasicDBObject("name", "color"),
+            new BasicDBObject("name", new BasicDBObject("$in", new String[]{"color", "abc"}))
+        };
+        for(DBObject query : queries){
+            assertEquals(query.toString(), find(plain, query), find(indexed, query));
+        }
+    }
+    
+    private List<Integer> find(MemoryStorage storage, DBObject query){
+        List<Integer> list = new ArrayList<Integer>();
+        StorageCursor cursor = storage.find(query, null);
+        while(cursor.hasNext()){
+            list.add((Integer)cursor.next().get("n"));
+        }
+        Collections.sort(list);
+        return list;
+    }
+    
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.test.TestCase;
+import com.mongodb.DBObject;
+import com.mongodb.util.JSON;
+
+/**
+ * The query operators matched in memory.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class QueryMatcherTest extends TestCase {
+    
+    private final DBObject doc = parse("{name:'apple', qty:5, price:2.5, tags:['red', 'fruit'], "
+            + "address:{city:'Paris', zip:'75001'}, items:[{sku:'a', n:1}, {sku:'b', n:3}], none:null}");
+    
+    public void testEquality(){
+        assertMatch("{name:'apple'}", true);
+        assertMatch("{name:'pear'}", false);
+        assertMatch("{qty:5.0}", true);
+        assertMatch("{tags:'red'}", true);
+        assertMatch("{'address.city':'Paris'}", true);
+        assertMatch("{'items.sku':'b'}", true);
+        assertMatch("{none:null}", true);
+        assertMatch("{missing:null}", true);
+        assertMatch("{name:null}", false);
+    }
+    
+    public void testComparison(){
+        assertMatch("{qty:{$gt:4, $lte:5}}", true);
+        assertMatch("{qty:{$lt:5}}", false);
+        assertMatch("{price:{$gte:2.5}}", true);
+        assertMatch("{name:{$gt:5}}", false);
+        assertMatch("{qty:{$ne:5}}", false);
+        assertMatch("{qty:{$in:[1, 5]}}", true);
+        assertMatch("{tags:{$nin:['green']}}", true);
+        assertMatch("{tags:{$all:['fruit', 'red']}}", true);
+        assertMatch("{tags:{$size:2}}", true);
+        assertMatch("{missing:{$exists:false}}", true);
+        assertMatch("{qty:{$mod:[2, 1]}}", true);
+    }
+    
+    public void testLogical(){
+        assertMatch("{$or:[{qty:1}, {name:'apple'}]}", true);
+        assertMatch("{$and:[{qty:5}, {name:'pear'}]}", false);
+        assertMatch("{$nor:[{qty:1}, {name:'pear'}]}", true);
+        assertMatch("{qty:{$not:{$gt:4}}}", false);
+        assertMatch("{items:{$elemMatch:{sku:'b', n:{$gt:2}}}}", true);
+        assertMatch("{items:{$elemMatch:{sku:'a', n:{$gt:2}}}}", false);
+    }
+    
+    public void testRegex(){
+        assertMatch("{name:{$regex:'^app'}}", true);
+        assertMatch("{name:{$regex:'^APP', $options:'i'}}", true);
+        assertMatch("{tags:{$regex:'^fr'}}", true);
+    }
+    
+    private void assertMatch(String query, boolean expected){
+        assertEquals(query, expected, QueryMatcher.matches(doc, parse(query)));
+    }
+    
+    static DBObject parse(String json){
+        return (DBObject)JSON.parse(json);
+    }
+    
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.storage;
+
+import com.bugull.mongo.test.TestCase;
+import com.mongodb.DBObject;
+import java.util.Arrays;
+
+/**
+ * The update operators applied in memory.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class UpdateApplierTest extends TestCase {
+    
+    public void testFields(){
+        DBObject doc = apply("{_id:1, a:1, b:2, c:{d:1}}", "{$set:{a:5, 'c.e':2}, $unset:{b:1}, $inc:{'c.d':2}, $rename:{a:'z'}}");
+        assertEquals("set then renamed", 5, doc.get("z"));
+        assertFalse("renamed away", doc.containsField("a"));
+        assertFalse("unset", doc.containsField("b"));
+        assertEquals("nested inc", 3, DocumentUtil.get(doc, "c.d"));
+        assertEquals("nested set", 2, DocumentUtil.get(doc, "c.e"));
+    }
+    
+    public void testNumbers(){
+        DBObject doc = apply("{n:3, m:2.5, low:5, high:5}", "{$inc:{n:1, m:1}, $mul:{k:2}, $min:{low:3}, $max:{high:3}}");
+        assertEquals("int inc stays int", 4, doc.get("n"));
+        assertEquals("double inc", 3.5, doc.get("m"));
+        assertEquals("mul on missing field", 0, doc.get("k"));
+        assertEquals("min", 3, doc.get("low"));
+        assertEquals("max", 5, doc.get("high"));
+    }
+    
+    public void testArrays(){
+        DBObject doc = apply("{tags:['a', 'b'], nums:[1, 2, 3, 2]}", "{$push:{tags:'c'}, $addToSet:{tags:'a'}, $pull:{nums:2}}");
+        assertEquals("push and addToSet", Arrays.asList("a", "b", "c"), doc.get("tags"));
+        assertEquals("pull", Arrays.asList(1, 3), doc.get("nums"));
+        doc = apply("{tags:['a', 'b', 'c']}", "{$pop:{tags:1}}");
+        assertEquals("pop last", Arrays.asList("a", "b"), doc.get("tags"));
+    }
+    
+    public void testReplacementKeepsId(){
+        DBObject doc = apply("{_id:7, a:1}", "{b:2}");
+        assertEquals("id kept", 7, doc.get("_id"));
+        assertFalse("old field removed", doc.containsField("a"));
+        assertEquals("new field", 2, doc.get("b"));
+    }
+    
+    public void testUpsert(){
+        DBObject doc = UpdateApplier.upsert(QueryMatcherTest.parse("{name:'x', qty:{$gt:1}}"), QueryMatcherTest.parse("{$inc:{n:1}, $setOnInsert:{created:true}}"));
+        assertEquals("equality from query", "x", doc.get("name"));
+        assertFalse("operator condition not copied", doc.containsField("qty"));
+        assertEquals("inc", 1, doc.get("n"));
+        assertEquals("setOnInsert", true, doc.get("created"));
+    }
+    
+    private DBObject apply(String doc, String update){
+        DBObject dbo = QueryMatcherTest.parse(doc);
+        UpdateApplier.apply(dbo, QueryMatcherTest.parse(update), false);
+        return dbo;
+    }
+    
+}
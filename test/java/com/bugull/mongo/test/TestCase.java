@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.test;
+
+/**
+ * Base class of the tests. Every public method named test* is a test, run on a new instance by TestRunner.
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public abstract class TestCase {
+    
+    /**
+     * Called before each test.
+     */
+    protected void setUp() throws Exception {
+        //do nothing
+    }
+    
+    /**
+     * Called after each test, even if it fails.
+     */
+    protected void tearDown() throws Exception {
+        //do nothing
+    }
+    
+    protected static void assertTrue(String message, boolean condition){
+        if(!condition){
+            fail(message);
+        }
+    }
+    
+    protected static void assertFalse(String message, boolean condition){
+        assertTrue(message, !condition);
+    }
+    
+    protected static void assertEquals(String message, Object expected, Object actual){
+        if(expected == null ? actual != null : !expected.equals(actual)){
+            fail(message + ", expected: " + expected + ", actual: " + actual);
+        }
+    }
+    
+    protected static void assertEquals(String message, long expected, long actual){
+        if(expected != actual){
+            fail(message + ", expected: " + expected + ", actual: " + actual);
+        }
+    }
+    
+    protected static void assertNull(String message, Object actual){
+        assertEquals(message, null, actual);
+    }
+    
+    protected static void fail(String message){
+        throw new AssertionError(message);
+    }
+    
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) www.bugull.com
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bugull.mongo.test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Run the tests of some TestCase classes, and exit with 1 if any of them fails.
+ * 
+ * <p>Usage: test/run.sh, or java -cp test-classes:classes:libs/* com.bugull.mongo.test.TestRunner class...</p>
+ * 
+ * @author Frank Wen(xbwen@hotmail.com)
+ */
+public class TestRunner {
+    
+    private int passed;
+    private int failed;
+    
+    public static void main(String[] args) throws Exception {
+        TestRunner runner = new TestRunner();
+        for(String name : args){
+            runner.run(Class.forName(name));
+        }
+        System.out.println("Tests passed: " + runner.passed + ", failed: " + runner.failed);
+        System.exit(runner.failed == 0 ? 0 : 1);
+    }
+    
+    public void run(Class<?> clazz) throws Exception {
+        if(!TestCase.class.isAssignableFrom(clazz) || Modifier.isAbstract(clazz.getModifiers())){
+            return;
+        }
+        for(Method m : clazz.getMethods()){
+            if(m.getName().startsWith("test") && m.getParameterTypes().length == 0){
+                run(clazz, m);
+            }
+        }
+    }
+    
+    private void run(Class<?> clazz, Method m) throws Exception {
+        String name = clazz.getSimpleName() + "." + m.getName();
+        TestCase tc = (TestCase)clazz.getDeclaredConstructor().newInstance();
+        Throwable error = null;
+        try{
+            tc.setUp();
+            m.invoke(tc);
+        }catch(InvocationTargetException ex){
+            error = ex.getCause();
+        }catch(Throwable ex){
+            error = ex;
+        }finally{
+            try{
+                tc.tearDown();
+            }catch(Throwable ex){
+                if(error == null){
+                    error = ex;
+                }
+            }
+        }
+        if(error == null){
+            passed++;
+            System.out.println("PASS " + name);
+        }else{
+            failed++;
+            System.out.println("FAIL " + name);
+            error.printStackTrace(System.out);
+        }
+    }
+    
+}
@@ -0,0 +1,37 @@
+#!/bin/sh
+#
+# Compile the library and the tests, then run the tests.
+#
+# Usage: test/run.sh [test class...]
+# All classes named *Test under test/java are run by default. The tests don't need a database.
+#
+# Set LIB_CLASSES to the compiled library (a directory or jar), to skip compiling src/java.
+# The classes are written to test/target.
+
+set -e
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+TARGET="$ROOT/test/target"
+LIBS="$ROOT/libs/*"
+
+mkdir -p "$TARGET"
+if [ -z "$LIB_CLASSES" ]; then
+    LIB_CLASSES="$TARGET/classes"
+    rm -rf "$LIB_CLASSES"
+    mkdir -p "$LIB_CLASSES"
+    # the servlets need the servlet API which is not in libs/, and ImageUploader needs the JPEG codec removed from newer JDKs.
+    # the tests use neither of them.
+    find "$ROOT/src/java" -name "*.java" | xargs grep -L -e "import javax.servlet" -e "import com.sun.image.codec" > "$TARGET/sources.txt"
+    javac -nowarn -encoding UTF-8 -d "$LIB_CLASSES" -cp "$LIBS" @"$TARGET/sources.txt"
+fi
+
+rm -rf "$TARGET/test-classes"
+mkdir -p "$TARGET/test-classes"
+find "$ROOT/test/java" -name "*.java" > "$TARGET/test-sources.txt"
+javac -nowarn -encoding UTF-8 -d "$TARGET/test-classes" -cp "$LIB_CLASSES:$LIBS" @"$TARGET/test-sources.txt"
+
+if [ $# -eq 0 ]; then
+    set -- $(cd "$ROOT/test/java" && find . -name "*Test.java" | sed -e 's|^\./||' -e 's|\.java$||' -e 's|/|.|g' | sort)
+fi
+
+exec java -cp "$TARGET/test-classes:$LIB_CLASSES:$LIBS" $JAVA_OPTS com.bugull.mongo.test.TestRunner "$@"